@@ -0,0 +1,83 @@
+package com.haleywang.putty.dto;
+
+import java.io.Serializable;
+
+/**
+ * How far an sftp transfer of one file has got, kept on disk until the file is complete so that the transfer can go
+ * on from there after the connection was lost.
+ *
+ * @author haley
+ */
+public class TransferJournalDto implements Serializable {
+    private static final long serialVersionUID = -2190337153437760718L;
+
+    private boolean upload;
+    private String localPath;
+    private String remotePath;
+    /**
+     * Size and modification time of the source, a journal of a source which changed since is not used.
+     */
+    private long size;
+    private long lastModified;
+    private int blockSize;
+    /**
+     * Everything before this offset has been written to the target.
+     */
+    private long completedOffset;
+
+    public boolean isUpload() {
+        return upload;
+    }
+
+    public void setUpload(boolean upload) {
+        this.upload = upload;
+    }
+
+    public String getLocalPath() {
+        return localPath;
+    }
+
+    public void setLocalPath(String localPath) {
+        this.localPath = localPath;
+    }
+
+    public String getRemotePath() {
+        return remotePath;
+    }
+
+    public void setRemotePath(String remotePath) {
+        this.remotePath = remotePath;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public void setSize(long size) {
+        this.size = size;
+    }
+
+    public long getLastModified() {
+        return lastModified;
+    }
+
+    public void setLastModified(long lastModified) {
+        this.lastModified = lastModified;
+    }
+
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    public void setBlockSize(int blockSize) {
+        this.blockSize = blockSize;
+    }
+
+    public long getCompletedOffset() {
+        return completedOffset;
+    }
+
+    public void setCompletedOffset(long completedOffset) {
+        this.completedOffset = completedOffset;
+    }
+}
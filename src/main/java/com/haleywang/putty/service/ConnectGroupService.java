@@ -0,0 +1,93 @@
+package com.haleywang.putty.service;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Owns the bounded executor the sessions of an opened connection group
+ * connect on, and reports how far the group has got.
+ *
+ * @author haley
+ */
+public class ConnectGroupService {
+
+    /**
+     * Connecting is mostly waiting on the network, so allow far more
+     * handshakes in flight than there are cores.
+     */
+    static final int MAX_PARALLEL_CONNECTS = 32;
+
+    private final ThreadPoolExecutor executor = new ThreadPoolExecutor(MAX_PARALLEL_CONNECTS, MAX_PARALLEL_CONNECTS,
+            30L, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(), new ThreadFactory() {
+
+        final ThreadFactory defaultFactory = Executors.defaultThreadFactory();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread t = this.defaultFactory.newThread(r);
+            t.setName("ConnectGroup-" + t.getName());
+            t.setDaemon(true);
+            return t;
+        }
+    });
+
+    private static class SingletonHolder {
+        private static final ConnectGroupService INSTANCE = new ConnectGroupService();
+    }
+
+    private ConnectGroupService() {
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    public static final ConnectGroupService getInstance() {
+        return SingletonHolder.INSTANCE;
+    }
+
+    public ExecutorService getExecutor() {
+        return executor;
+    }
+
+    public GroupProgress start(String groupName, int total) {
+        NotificationsService.getInstance().info("Opening " + total + " sessions of " + groupName);
+        return new GroupProgress(groupName, total);
+    }
+
+    /**
+     * Counts the connected and failed sessions of one group.
+     */
+    public static class GroupProgress {
+        private final String groupName;
+        private final int total;
+        private final AtomicInteger connected = new AtomicInteger();
+        private final AtomicInteger failed = new AtomicInteger();
+
+        GroupProgress(String groupName, int total) {
+            this.groupName = groupName;
+            this.total = total;
+        }
+
+        public void connected() {
+            report(connected.incrementAndGet(), failed.get());
+        }
+
+        public void failed() {
+            report(connected.get(), failed.incrementAndGet());
+        }
+
+        private void report(int ok, int ko) {
+            String message = groupName + ": " + ok + "/" + total + " connected"
+                    + (ko > 0 ? ", " + ko + " failed" : "");
+            if (ko > 0 && ok + ko == total) {
+                NotificationsService.getInstance().warn(message);
+            } else {
+                NotificationsService.getInstance().info(message);
+            }
+        }
+    }
+}
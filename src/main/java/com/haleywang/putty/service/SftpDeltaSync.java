@@ -0,0 +1,472 @@
+package com.haleywang.putty.service;
+
+import com.haleywang.putty.util.SshUtils;
+import com.jcraft.jsch.ChannelExec;
+import com.jcraft.jsch.ChannelSftp;
+import com.jcraft.jsch.JSchException;
+import com.jcraft.jsch.Session;
+import com.jcraft.jsch.SftpException;
+import com.jcraft.jsch.SftpProgressMonitor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Updates a remote file from a local one by sending only what the remote file does not have already, the way rsync
+ * does.
+ * <p>
+ * The server splits its copy into blocks and prints a weak checksum and the MD5 of each. The local file is then
+ * searched for these blocks at every offset, the weak checksum rolling along one byte at a time, and what is found is
+ * sent as an instruction to copy the block while everything else is sent as it is. The server writes the new file next
+ * to the old one from these instructions and it is renamed over the old one once its MD5 is the same as the local
+ * file's. The work on the server is done by a short perl script through an exec channel.
+ *
+ * @author haley
+ */
+public class SftpDeltaSync {
+    private static final Logger LOGGER = LoggerFactory.getLogger(SftpDeltaSync.class);
+
+    static final int MIN_BLOCK_SIZE = 2048;
+    static final int MAX_BLOCK_SIZE = 64 * 1024;
+    private static final int BUFFER_SIZE = 1024 * 1024;
+    private static final long SIGNATURE_IDLE_TIMEOUT_MILLIS = 30_000;
+
+    /**
+     * Prints the signature of a file with "sig blockSize file", or writes a file from the instructions on its standard
+     * input with "apply blockSize file target" and prints its MD5.
+     */
+    private static final String HELPER = "use Digest::MD5; ($m, $b, $f, $t) = @ARGV;"
+            + " open(F, \"<\", $f) or die \"$f: $!\\n\"; binmode F;"
+            + " if ($m eq \"sig\") { $q = $b / 4; while (read(F, $d, $b) > 0) {"
+            + " printf \"%04x%04x%04x%04x %s\\n\", (map { unpack(\"%16C*\", substr($d, $_ * $q, $q)) } 0 .. 3),"
+            + " Digest::MD5::md5_hex($d) } exit 0 }"
+            + " open(T, \">\", $t) or die \"$t: $!\\n\"; binmode T; binmode STDIN; $x = Digest::MD5->new;"
+            + " while (<STDIN>) { ($o, $p, $l) = split; last if $o eq \"E\";"
+            + " if ($o eq \"C\") { seek(F, $p, 0) or die \"$f: $!\\n\"; cp(*F, $l) } else { cp(*STDIN, $p) } }"
+            + " close(T) or die \"$t: $!\\n\"; chmod((stat F)[2] & 07777, $t); print $x->hexdigest, \"\\n\";"
+            + " sub cp { my ($h, $n) = @_; while ($n > 0) { $r = read($h, $d, $n < 65536 ? $n : 65536);"
+            + " die \"short read\\n\" unless $r; print T $d or die \"$t: $!\\n\"; $x->add($d); $n -= $r } }";
+
+    private final ChannelSftp sftpChannel;
+
+    public SftpDeltaSync(ChannelSftp sftpChannel) {
+        this.sftpChannel = sftpChannel;
+    }
+
+    /**
+     * Makes the remote file the same as the local one.
+     *
+     * @return false if the server cannot work out the signature of the remote file or cannot write the new one from
+     * the instructions, the remote file is left alone then
+     */
+    public boolean upload(File local, String remote, long remoteSize, SftpProgressMonitor monitor)
+            throws SftpException, IOException {
+        int blockSize = blockSize(remoteSize);
+        Session session;
+        String output;
+        try {
+            session = sftpChannel.getSession();
+            output = SshUtils.sendCommand(session, helper("sig", blockSize, remote), SIGNATURE_IDLE_TIMEOUT_MILLIS);
+        } catch (JSchException e) {
+            LOGGER.warn("Cannot get the signature of {}", remote, e);
+            return false;
+        }
+        Signature signature = output == null ? null : Signature.parse(output, blockSize, remoteSize);
+        if (signature == null) {
+            LOGGER.warn("Cannot get the signature of {}: {}", remote, output);
+            return false;
+        }
+
+        if (monitor != null) {
+            monitor.init(SftpProgressMonitor.PUT, local.getPath(), remote, local.length());
+        }
+        String temp = tempPath(remote);
+        Delta delta;
+        String written;
+        ByteArrayOutputStream errors = new ByteArrayOutputStream();
+        ChannelExec channelExec = null;
+        try {
+            channelExec = (ChannelExec) session.openChannel("exec");
+            channelExec.setCommand(helper("apply", blockSize, remote, temp));
+            channelExec.setErrStream(errors);
+            InputStream result = channelExec.getInputStream();
+            OutputStream instructions = channelExec.getOutputStream();
+            channelExec.connect();
+
+            try (InputStream in = new FileInputStream(local);
+                 OutputStream out = new BufferedOutputStream(instructions, 64 * 1024)) {
+                delta = encode(in, signature, out, monitor);
+            }
+            written = readAll(result).trim();
+        } catch (JSchException | IOException e) {
+            LOGGER.warn("Cannot update {}: {}", remote, errorText(errors, e.getMessage()), e);
+            removeQuietly(temp);
+            return false;
+        } finally {
+            if (channelExec != null) {
+                channelExec.disconnect();
+            }
+        }
+        if (!delta.md5.equals(written)) {
+            LOGGER.warn("Cannot update {}: {}", remote, errorText(errors, "the result differs"));
+            removeQuietly(temp);
+            return false;
+        }
+
+        replace(temp, remote);
+        LOGGER.info("sftp sync {}: sent {} bytes, {} copied on the server", remote, delta.sent, delta.copied);
+        if (monitor != null) {
+            monitor.end();
+        }
+        return true;
+    }
+
+    /**
+     * Block size for a remote file of the given size, the square root of the size as rsync has it, so that the
+     * signature and the data sent for a change grow alike.
+     */
+    static int blockSize(long size) {
+        long root = ((long) Math.sqrt((double) size) + 1023) / 1024 * 1024;
+        return (int) Math.max(MIN_BLOCK_SIZE, Math.min(MAX_BLOCK_SIZE, root));
+    }
+
+    /**
+     * Writes instructions which turn the file the signature is of into the source: "C offset length" copies a range
+     * of that file, "L length" is followed by as many bytes of the source, and "E" ends them.
+     */
+    static Delta encode(InputStream source, Signature signature, OutputStream out, SftpProgressMonitor monitor)
+            throws IOException {
+        int blockSize = signature.blockSize;
+        int quarter = blockSize / 4;
+        byte[] buf = new byte[Math.max(BUFFER_SIZE, 4 * blockSize)];
+        MessageDigest md5 = SftpTransferService.newMd5();
+        Delta delta = new Delta(out);
+
+        int[] sums = new int[4];
+        boolean rolling = false;
+        boolean eof = false;
+        int previous = -1;
+        // the window is buf[start, start + blockSize), bytes from literal on up to it are sent as they are
+        int start = 0;
+        int literal = 0;
+        int end = 0;
+        while (true) {
+            if (end - start <= blockSize && !eof) {
+                delta.literal(buf, literal, start - literal);
+                System.arraycopy(buf, start, buf, 0, end - start);
+                end -= start;
+                start = 0;
+                literal = 0;
+                while (end < buf.length) {
+                    int n = source.read(buf, end, buf.length - end);
+                    if (n < 0) {
+                        eof = true;
+                        break;
+                    }
+                    md5.update(buf, end, n);
+                    end += n;
+                    if (monitor != null) {
+                        monitor.count(n);
+                    }
+                }
+            }
+            if (end - start < blockSize) {
+                break;
+            }
+            if (!rolling) {
+                for (int i = 0; i < 4; i++) {
+                    sums[i] = sum(buf, start + i * quarter, quarter);
+                }
+                rolling = true;
+            }
+            int block = signature.find(weak(sums), buf, start, previous);
+            if (block >= 0) {
+                delta.literal(buf, literal, start - literal);
+                delta.copy((long) block * blockSize, blockSize);
+                previous = block;
+                start += blockSize;
+                literal = start;
+                rolling = false;
+                continue;
+            }
+            if (end - start == blockSize) {
+                break;
+            }
+            for (int i = 0; i < 4; i++) {
+                sums[i] += (buf[start + (i + 1) * quarter] & 0xff) - (buf[start + i * quarter] & 0xff);
+            }
+            start++;
+        }
+
+        // the last block of the file the signature is of may be shorter, it can only be found at the end
+        int last = signature.strong.length - 1;
+        if (end - start == signature.lastLength && signature.lastLength > 0
+                && signature.strong[last].equals(md5Hex(buf, start, end - start))) {
+            delta.literal(buf, literal, start - literal);
+            delta.copy((long) last * blockSize, end - start);
+            literal = end;
+        }
+        delta.literal(buf, literal, end - literal);
+        delta.end();
+        delta.md5 = SftpTransferService.toHex(md5.digest());
+        return delta;
+    }
+
+    private static int sum(byte[] buf, int offset, int len) {
+        int sum = 0;
+        for (int i = offset; i < offset + len; i++) {
+            sum += buf[i] & 0xff;
+        }
+        return sum;
+    }
+
+    /**
+     * The sums of the bytes of the four quarters of a block, 16 bits each.
+     */
+    private static long weak(int[] sums) {
+        return ((long) (sums[0] & 0xffff) << 48) | ((long) (sums[1] & 0xffff) << 32)
+                | ((long) (sums[2] & 0xffff) << 16) | (sums[3] & 0xffff);
+    }
+
+    private static String md5Hex(byte[] buf, int offset, int len) {
+        MessageDigest md5 = SftpTransferService.newMd5();
+        md5.update(buf, offset, len);
+        return SftpTransferService.toHex(md5.digest());
+    }
+
+    private static String helper(String mode, int blockSize, String... files) {
+        StringBuilder sb = new StringBuilder("perl -e ").append(SftpTransferService.quote(HELPER))
+                .append(' ').append(mode).append(' ').append(blockSize);
+        for (String file : files) {
+            sb.append(' ').append(SftpTransferService.quote(file));
+        }
+        return sb.toString();
+    }
+
+    private static String tempPath(String remote) {
+        int slash = remote.lastIndexOf('/');
+        return remote.substring(0, slash + 1) + "." + remote.substring(slash + 1) + ".springremote";
+    }
+
+    /**
+     * Renames the temporary file over the remote one. JSch renames with posix-rename@openssh.com where the server has
+     * it, which replaces the old file; a plain SFTP rename fails when the target exists, and only then is the old file
+     * removed first.
+     */
+    private void replace(String temp, String remote) throws SftpException, IOException {
+        try {
+            sftpChannel.rename(temp, remote);
+            return;
+        } catch (SftpException e) {
+            if (e.id != ChannelSftp.SSH_FX_FAILURE || !exists(remote)) {
+                removeQuietly(temp);
+                throw e;
+            }
+        }
+        sftpChannel.rm(remote);
+        try {
+            sftpChannel.rename(temp, remote);
+        } catch (SftpException e) {
+            throw new IOException("Cannot rename " + temp + " to " + remote + ", the new file is left at " + temp, e);
+        }
+    }
+
+    private boolean exists(String path) throws SftpException {
+        try {
+            sftpChannel.lstat(path);
+            return true;
+        } catch (SftpException e) {
+            if (e.id == ChannelSftp.SSH_FX_NO_SUCH_FILE) {
+                return false;
+            }
+            throw e;
+        }
+    }
+
+    private void removeQuietly(String path) {
+        try {
+            sftpChannel.rm(path);
+        } catch (SftpException e) {
+            LOGGER.debug("Cannot remove {}", path, e);
+        }
+    }
+
+    private static String readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buf = new byte[4096];
+        int n;
+        while ((n = in.read(buf)) >= 0) {
+            out.write(buf, 0, n);
+        }
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private static String errorText(ByteArrayOutputStream errors, String otherwise) {
+        String text = new String(errors.toByteArray(), StandardCharsets.UTF_8).trim();
+        return text.isEmpty() ? otherwise : text;
+    }
+
+    /**
+     * Weak checksums and MD5s of the blocks of a file.
+     */
+    static final class Signature {
+        private final int blockSize;
+        private final long[] weak;
+        private final String[] strong;
+        private final int lastLength;
+        private final Map<Long, Integer> first = new HashMap<>();
+        private final int[] next;
+
+        Signature(int blockSize, long size, long[] weak, String[] strong) {
+            this.blockSize = blockSize;
+            this.weak = weak;
+            this.strong = strong;
+            this.lastLength = (int) (size % blockSize);
+            // only whole blocks can be found anywhere in the source
+            int blocks = (int) (size / blockSize);
+            this.next = new int[blocks];
+            for (int i = blocks - 1; i >= 0; i--) {
+                Integer head = first.put(weak[i], i);
+                next[i] = head == null ? -1 : head;
+            }
+        }
+
+        /**
+         * @return null unless the output has a line for every block
+         */
+        static Signature parse(String output, int blockSize, long size) {
+            int blocks = (int) ((size + blockSize - 1) / blockSize);
+            String[] lines = output.trim().split("\n");
+            if (lines.length != blocks || blocks == 0) {
+                return null;
+            }
+            long[] weak = new long[blocks];
+            String[] strong = new String[blocks];
+            for (int i = 0; i < blocks; i++) {
+                String[] parts = lines[i].trim().split(" ");
+                if (parts.length != 2 || !parts[0].matches("[0-9a-f]{16}") || !parts[1].matches("[0-9a-f]{32}")) {
+                    return null;
+                }
+                weak[i] = Long.parseUnsignedLong(parts[0], 16);
+                strong[i] = parts[1];
+            }
+            return new Signature(blockSize, size, weak, strong);
+        }
+
+        /**
+         * Works out the signature here, the way the server does.
+         */
+        static Signature of(InputStream in, long size, int blockSize) throws IOException {
+            int blocks = (int) ((size + blockSize - 1) / blockSize);
+            long[] weak = new long[blocks];
+            String[] strong = new String[blocks];
+            byte[] buf = new byte[blockSize];
+            int[] sums = new int[4];
+            for (int i = 0; i < blocks; i++) {
+                int len = (int) Math.min(blockSize, size - (long) i * blockSize);
+                for (int n = 0; n < len; ) {
+                    int r = in.read(buf, n, len - n);
+                    if (r < 0) {
+                        throw new IOException("Unexpected end of file");
+                    }
+                    n += r;
+                }
+                for (int j = 0; j < 4; j++) {
+                    int from = Math.min(len, j * blockSize / 4);
+                    sums[j] = sum(buf, from, Math.min(len, (j + 1) * blockSize / 4) - from);
+                }
+                weak[i] = weak(sums);
+                strong[i] = md5Hex(buf, 0, len);
+            }
+            return new Signature(blockSize, size, weak, strong);
+        }
+
+        /**
+         * @return a block which is the same as buf[offset, offset + blockSize), the one after the previous block if
+         * that is one, or -1
+         */
+        int find(long weakSum, byte[] buf, int offset, int previous) {
+            Integer head = first.get(weakSum);
+            if (head == null) {
+                return -1;
+            }
+            String md5 = md5Hex(buf, offset, blockSize);
+            if (previous + 1 < next.length && weak[previous + 1] == weakSum && strong[previous + 1].equals(md5)) {
+                return previous + 1;
+            }
+            for (int i = head; i >= 0; i = next[i]) {
+                if (strong[i].equals(md5)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+    }
+
+    /**
+     * Writes the instructions, joining copies of adjacent blocks, and counts what they amount to.
+     */
+    static final class Delta {
+        private final OutputStream out;
+        private long copyOffset = -1;
+        private long copyLength;
+        long sent;
+        long copied;
+        String md5;
+
+        Delta(OutputStream out) {
+            this.out = out;
+        }
+
+        void copy(long offset, long len) throws IOException {
+            if (copyOffset >= 0 && copyOffset + copyLength == offset) {
+                copyLength += len;
+            } else {
+                flushCopy();
+                copyOffset = offset;
+                copyLength = len;
+            }
+            copied += len;
+        }
+
+        void literal(byte[] buf, int offset, int len) throws IOException {
+            if (len == 0) {
+                return;
+            }
+            flushCopy();
+            write("L " + len + "\n");
+            out.write(buf, offset, len);
+            sent += len;
+        }
+
+        void end() throws IOException {
+            flushCopy();
+            write("E\n");
+            out.flush();
+        }
+
+        private void flushCopy() throws IOException {
+            if (copyOffset >= 0) {
+                write("C " + copyOffset + " " + copyLength + "\n");
+                copyOffset = -1;
+            }
+        }
+
+        private void write(String instruction) throws IOException {
+            byte[] bytes = instruction.getBytes(StandardCharsets.US_ASCII);
+            out.write(bytes);
+            sent += bytes.length;
+        }
+    }
+}
@@ -0,0 +1,444 @@
+package com.haleywang.putty.service;
+
+import com.haleywang.putty.common.Preconditions;
+import com.haleywang.putty.dto.TransferJournalDto;
+import com.haleywang.putty.storage.FileStorage;
+import com.haleywang.putty.util.SshUtils;
+import com.jcraft.jsch.ChannelSftp;
+import com.jcraft.jsch.JSchException;
+import com.jcraft.jsch.Session;
+import com.jcraft.jsch.SftpATTRS;
+import com.jcraft.jsch.SftpException;
+import com.jcraft.jsch.SftpProgressMonitor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Uploads and downloads single files over sftp so that a transfer which broke off goes on where it stopped.
+ * <p>
+ * Files are sent in blocks of {@link #BLOCK_SIZE}, and how far the target is complete is journalled under
+ * spring_remote_data as the blocks are written. When a transfer is started again, the MD5 of each block of the target
+ * is compared with the same block of the source and only the blocks which differ are sent. Once done all blocks are
+ * compared again, and those which still differ are sent once more. The hashes of remote blocks are computed on the
+ * server with dd and md5sum through an exec channel. Where that does not work the journal alone says how far the
+ * target is complete, and the result is not verified.
+ *
+ * @author haley
+ */
+public class SftpTransferService {
+    private static final Logger LOGGER = LoggerFactory.getLogger(SftpTransferService.class);
+
+    static final int BLOCK_SIZE = 4 << 20;
+    /**
+     * Blocks sent before the remote file is closed, which waits for the server to acknowledge them, and the journal
+     * is saved.
+     */
+    private static final int JOURNAL_BLOCKS = 16;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    /**
+     * The server prints the hash of a block at a time, if it prints nothing for this long it does not run commands.
+     */
+    private static final long HASH_IDLE_TIMEOUT_MILLIS = 30_000;
+
+    private final ChannelSftp sftpChannel;
+
+    public SftpTransferService(ChannelSftp sftpChannel) {
+        this.sftpChannel = sftpChannel;
+    }
+
+    /**
+     * Uploads a local file, like {@link ChannelSftp#put(String, String, SftpProgressMonitor, int)}.
+     *
+     * @param dst remote file, or the directory to put the file in
+     */
+    public void put(String src, String dst, SftpProgressMonitor monitor) throws SftpException, IOException {
+        transfer(upload(src, dst), monitor);
+    }
+
+    /**
+     * Uploads a local file like {@link #put(String, String, SftpProgressMonitor)}, but where the remote file is there
+     * already only what differs from it is sent, see {@link SftpDeltaSync}.
+     */
+    public void sync(String src, String dst, SftpProgressMonitor monitor) throws SftpException, IOException {
+        Transfer t = upload(src, dst);
+        long targetSize = getTargetSize(t);
+        if (targetSize > 0 && new SftpDeltaSync(sftpChannel).upload(t.local, t.remote, targetSize, monitor)) {
+            return;
+        }
+        transfer(t, monitor);
+    }
+
+    private Transfer upload(String src, String dst) throws SftpException, IOException {
+        File local = new File(src);
+        Preconditions.checkArgument(local.isFile(), "Not a file: " + src);
+        String remote = isRemoteDirectory(dst) ? (dst.endsWith("/") ? dst : dst + "/") + local.getName() : dst;
+        return new Transfer(true, local, sftpChannel.realpath(remote), local.length(), local.lastModified());
+    }
+
+    /**
+     * Downloads a remote file, like {@link ChannelSftp#get(String, String, SftpProgressMonitor, int)}.
+     *
+     * @param dst local file, or the directory to put the file in
+     */
+    public void get(String src, String dst, SftpProgressMonitor monitor) throws SftpException, IOException {
+        String remote = sftpChannel.realpath(src);
+        SftpATTRS attrs = sftpChannel.stat(remote);
+        Preconditions.checkArgument(!attrs.isDir(), "Not a file: " + src);
+        File local = new File(dst);
+        if (local.isDirectory()) {
+            local = new File(local, remote.substring(remote.lastIndexOf('/') + 1));
+        }
+        transfer(new Transfer(false, local, remote, attrs.getSize(), attrs.getMTime() * 1000L), monitor);
+    }
+
+    private void transfer(Transfer t, SftpProgressMonitor monitor) throws SftpException, IOException {
+        TransferJournalDto journal = FileStorage.INSTANCE.getTransferJournal(t.key);
+        if (journal == null || journal.getSize() != t.size || journal.getLastModified() != t.lastModified
+                || journal.getBlockSize() != BLOCK_SIZE) {
+            journal = new TransferJournalDto();
+            journal.setUpload(t.upload);
+            journal.setLocalPath(t.local.getAbsolutePath());
+            journal.setRemotePath(t.remote);
+            journal.setSize(t.size);
+            journal.setLastModified(t.lastModified);
+            journal.setBlockSize(BLOCK_SIZE);
+        }
+
+        boolean[] done = new boolean[blockCount(t.size)];
+        long targetSize = getTargetSize(t);
+        // a longer target is written afresh, there is no truncating it through JSch
+        t.truncate = targetSize > t.size;
+        if (targetSize > 0 && !t.truncate) {
+            // the last block of a partial target is partial too
+            int blocks = targetSize == t.size ? done.length : (int) (targetSize / BLOCK_SIZE);
+            markMatchingBlocks(t, done, blocks, journal.getCompletedOffset());
+        }
+
+        if (monitor != null) {
+            monitor.init(t.upload ? SftpProgressMonitor.PUT : SftpProgressMonitor.GET,
+                    t.upload ? t.local.getPath() : t.remote, t.upload ? t.remote : t.local.getPath(), t.size);
+            long skipped = 0;
+            for (int i = 0; i < done.length; i++) {
+                skipped += done[i] ? blockLength(t.size, i) : 0;
+            }
+            monitor.count(skipped);
+        }
+        LOGGER.info("sftp {} {}: {} of {} blocks already there", t.upload ? "put" : "get", t.remote,
+                countDone(done), done.length);
+
+        send(t, done, journal, monitor);
+        verify(t, done, journal);
+
+        FileStorage.INSTANCE.deleteTransferJournal(t.key);
+        if (monitor != null) {
+            monitor.end();
+        }
+    }
+
+    /**
+     * Marks the blocks of the target which are the same as in the source, or if their hashes cannot be had, those the
+     * journal has as complete.
+     */
+    private void markMatchingBlocks(Transfer t, boolean[] done, int blocks, long completedOffset)
+            throws IOException {
+        List<String> remoteHashes = getRemoteHashes(t, blocks);
+        if (remoteHashes == null) {
+            for (int i = 0; i < blocks; i++) {
+                done[i] = (long) i * BLOCK_SIZE + blockLength(t.size, i) <= completedOffset;
+            }
+            return;
+        }
+        List<String> localHashes = getLocalHashes(t.local, blocks);
+        for (int i = 0; i < blocks; i++) {
+            done[i] = remoteHashes.get(i).equals(localHashes.get(i));
+        }
+    }
+
+    /**
+     * Compares all blocks once the transfer is done, sends those which differ once more and fails if they still do.
+     */
+    private void verify(Transfer t, boolean[] done, TransferJournalDto journal) throws SftpException, IOException {
+        for (int attempt = 0; ; attempt++) {
+            List<String> remoteHashes = getRemoteHashes(t, done.length);
+            if (remoteHashes == null) {
+                LOGGER.warn("sftp {}: cannot hash the remote file, not verified", t.remote);
+                return;
+            }
+            List<String> localHashes = getLocalHashes(t.local, done.length);
+            for (int i = 0; i < done.length; i++) {
+                done[i] = remoteHashes.get(i).equals(localHashes.get(i));
+            }
+            int bad = done.length - countDone(done);
+            if (bad == 0) {
+                return;
+            }
+            if (attempt > 0) {
+                throw new IOException(bad + " blocks of " + t.remote + " differ after the transfer");
+            }
+            LOGGER.warn("sftp {}: {} blocks differ, sending them again", t.remote, bad);
+            t.truncate = false;
+            send(t, done, journal, null);
+        }
+    }
+
+    /**
+     * Sends the blocks which are not done, saving the journal every few blocks.
+     */
+    private void send(Transfer t, boolean[] done, TransferJournalDto journal, SftpProgressMonitor monitor)
+            throws SftpException, IOException {
+        if (done.length == 0) {
+            // an empty file has no blocks, but is created all the same
+            writeRange(t, 0, 0, monitor);
+            return;
+        }
+        int i = 0;
+        while (i < done.length) {
+            if (done[i]) {
+                i++;
+                continue;
+            }
+            int end = i + 1;
+            while (end < done.length && !done[end] && end - i < JOURNAL_BLOCKS) {
+                end++;
+            }
+            long offset = (long) i * BLOCK_SIZE;
+            long endOffset = Math.min((long) end * BLOCK_SIZE, t.size);
+            writeRange(t, offset, endOffset - offset, monitor);
+            t.truncate = false;
+            for (int j = i; j < end; j++) {
+                done[j] = true;
+            }
+            int complete = 0;
+            while (complete < done.length && done[complete]) {
+                complete++;
+            }
+            journal.setCompletedOffset(Math.min((long) complete * BLOCK_SIZE, t.size));
+            FileStorage.INSTANCE.saveTransferJournal(t.key, journal);
+            i = end;
+        }
+    }
+
+    /**
+     * Copies a range of the source to the same range of the target, which is closed afterwards so that the range is
+     * written when this returns.
+     */
+    private void writeRange(Transfer t, long offset, long len, SftpProgressMonitor monitor)
+            throws SftpException, IOException {
+        byte[] buf = new byte[BUFFER_SIZE];
+        if (t.upload) {
+            try (RandomAccessFile in = new RandomAccessFile(t.local, "r");
+                 OutputStream out = openRemote(t.remote, offset, t.truncate)) {
+                in.seek(offset);
+                for (long left = len; left > 0; ) {
+                    int n = (int) Math.min(buf.length, left);
+                    in.readFully(buf, 0, n);
+                    out.write(buf, 0, n);
+                    left -= n;
+                    count(monitor, n);
+                }
+            }
+        } else {
+            try (RandomAccessFile out = new RandomAccessFile(t.local, "rw");
+                 InputStream in = sftpChannel.get(t.remote, null, offset)) {
+                if (t.truncate || out.length() > t.size) {
+                    out.setLength(t.size);
+                }
+                out.seek(offset);
+                for (long left = len; left > 0; ) {
+                    int n = in.read(buf, 0, (int) Math.min(buf.length, left));
+                    if (n < 0) {
+                        throw new IOException("Unexpected end of " + t.remote);
+                    }
+                    out.write(buf, 0, n);
+                    left -= n;
+                    count(monitor, n);
+                }
+            }
+        }
+    }
+
+    private static void count(SftpProgressMonitor monitor, int n) {
+        if (monitor != null) {
+            monitor.count(n);
+        }
+    }
+
+    /**
+     * Opens a remote file for writing from the given offset on. JSch only leaves the file as it is in the RESUME mode,
+     * which adds the size of the file to the offset.
+     */
+    private OutputStream openRemote(String path, long offset, boolean truncate) throws SftpException {
+        if (truncate) {
+            return sftpChannel.put(path, null, ChannelSftp.OVERWRITE, offset);
+        }
+        long size = 0;
+        try {
+            size = sftpChannel.stat(path).getSize();
+        } catch (SftpException e) {
+            // not there yet
+        }
+        return sftpChannel.put(path, null, ChannelSftp.RESUME, offset - size);
+    }
+
+    private long getTargetSize(Transfer t) {
+        if (!t.upload) {
+            return t.local.exists() ? t.local.length() : -1;
+        }
+        try {
+            return sftpChannel.stat(t.remote).getSize();
+        } catch (SftpException e) {
+            return -1;
+        }
+    }
+
+    private boolean isRemoteDirectory(String path) {
+        try {
+            return sftpChannel.stat(path).isDir();
+        } catch (SftpException e) {
+            return false;
+        }
+    }
+
+    /**
+     * @return MD5 of the first blocks of the remote file, null if the server cannot compute them
+     */
+    private List<String> getRemoteHashes(Transfer t, int blocks) {
+        if (blocks == 0) {
+            return Collections.emptyList();
+        }
+        if (t.noRemoteHashes) {
+            return null;
+        }
+        List<String> hashes = getRemoteHashes(t.remote, blocks);
+        t.noRemoteHashes = hashes == null;
+        return hashes;
+    }
+
+    private List<String> getRemoteHashes(String path, int blocks) {
+        String command = "f=" + quote(path) + "; i=0; while [ $i -lt " + blocks + " ]; do"
+                + " dd if=\"$f\" bs=" + BLOCK_SIZE + " skip=$i count=1 2>/dev/null | { md5sum 2>/dev/null || md5 -q; };"
+                + " i=$((i+1)); done";
+        String output;
+        try {
+            Session session = sftpChannel.getSession();
+            output = SshUtils.sendCommand(session, command, HASH_IDLE_TIMEOUT_MILLIS);
+        } catch (JSchException | IOException e) {
+            LOGGER.warn("Cannot hash {} on the server", path, e);
+            return null;
+        }
+        if (output == null) {
+            LOGGER.warn("Cannot hash {} on the server: no output", path);
+            return null;
+        }
+        List<String> hashes = new ArrayList<>();
+        for (String line : output.split("\n")) {
+            String hash = line.trim().split("\\s+")[0];
+            if (hash.matches("[0-9a-fA-F]{32}")) {
+                hashes.add(hash.toLowerCase());
+            }
+        }
+        if (hashes.size() != blocks) {
+            LOGGER.warn("Cannot hash {} on the server: {}", path, output);
+            return null;
+        }
+        return hashes;
+    }
+
+    private static List<String> getLocalHashes(File file, int blocks) throws IOException {
+        MessageDigest md5 = newMd5();
+        List<String> hashes = new ArrayList<>();
+        byte[] buf = new byte[BUFFER_SIZE];
+        try (InputStream in = new FileInputStream(file)) {
+            for (int i = 0; i < blocks; i++) {
+                for (int left = BLOCK_SIZE; left > 0; ) {
+                    int n = in.read(buf, 0, Math.min(buf.length, left));
+                    if (n < 0) {
+                        break;
+                    }
+                    md5.update(buf, 0, n);
+                    left -= n;
+                }
+                hashes.add(toHex(md5.digest()));
+            }
+        }
+        return hashes;
+    }
+
+    static MessageDigest newMd5() {
+        try {
+            return MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static String toHex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            sb.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return sb.toString();
+    }
+
+    static String quote(String s) {
+        return "'" + s.replace("'", "'\\''") + "'";
+    }
+
+    private static int blockCount(long size) {
+        return (int) ((size + BLOCK_SIZE - 1) / BLOCK_SIZE);
+    }
+
+    private static long blockLength(long size, int block) {
+        return Math.min(BLOCK_SIZE, size - (long) block * BLOCK_SIZE);
+    }
+
+    private static int countDone(boolean[] done) {
+        int count = 0;
+        for (boolean d : done) {
+            count += d ? 1 : 0;
+        }
+        return count;
+    }
+
+    private final class Transfer {
+        private final boolean upload;
+        private final File local;
+        private final String remote;
+        private final long size;
+        private final long lastModified;
+        private final String key;
+        private boolean truncate;
+        private boolean noRemoteHashes;
+
+        Transfer(boolean upload, File local, String remote, long size, long lastModified) throws IOException {
+            this.upload = upload;
+            this.local = local;
+            this.remote = remote;
+            this.size = size;
+            this.lastModified = lastModified;
+
+            Session session;
+            try {
+                session = sftpChannel.getSession();
+            } catch (JSchException e) {
+                throw new IOException(e.getMessage(), e);
+            }
+            String id = (upload ? "put " : "get ") + session.getUserName() + "@" + session.getHost() + ":"
+                    + session.getPort() + " " + local.getAbsolutePath() + " " + remote;
+            this.key = toHex(newMd5().digest(id.getBytes(StandardCharsets.UTF_8)));
+        }
+    }
+}
@@ -5,6 +5,7 @@ import com.haleywang.putty.common.Constants;
 import com.haleywang.putty.dto.CommandDto;
 import com.haleywang.putty.dto.SettingDto;
 import com.haleywang.putty.dto.TmpCommandsDto;
+import com.haleywang.putty.dto.TransferJournalDto;
 import com.haleywang.putty.service.NotificationsService;
 import com.haleywang.putty.util.CollectionUtils;
 import com.haleywang.putty.util.IoTool;
@@ -46,6 +47,7 @@ public enum FileStorage {
     private static final String PATH_ACCOUNT = Constants.PATH_ROOT + DATA_FOLDER + "/setting/currentAccount.json";
     private static final String PATH_ACCOUNT_SETTING = Constants.PATH_ROOT + DATA_FOLDER + "/setting/setting_{key}.json";
     private static final String PATH_COMMON_SETTING = Constants.PATH_ROOT + DATA_FOLDER + "/setting/settings.json";
+    private static final String PATH_TRANSFER_JOURNAL = Constants.PATH_ROOT + DATA_FOLDER + "/transfers/{key}.json";
 
     public static final Pattern NAME_PATTERN = Pattern.compile(".*[ ]+\\(([0-9]+)\\)");
 
@@ -297,4 +299,24 @@ public enum FileStorage {
         settingDto.setTheme(themeClassName);
         saveSetting(settingDto);
     }
+
+    public TransferJournalDto getTransferJournal(String key) {
+        String text = readToString(getTransferJournalFile(key));
+        return JsonUtils.fromJson(text, TransferJournalDto.class);
+    }
+
+    public void saveTransferJournal(String key, TransferJournalDto journal) {
+        IoTool.write(JsonUtils.toJson(journal), getTransferJournalFile(key));
+    }
+
+    public void deleteTransferJournal(String key) {
+        File file = getTransferJournalFile(key);
+        if (file.exists() && !file.delete()) {
+            LOGGER.warn("Cannot delete transfer journal {}", file);
+        }
+    }
+
+    private File getTransferJournalFile(String key) {
+        return new File(PATH_TRANSFER_JOURNAL.replace("{key}", key));
+    }
 }
@@ -4,8 +4,11 @@ import com.jcraft.jsch.ChannelExec;
 import com.jcraft.jsch.JSchException;
 import com.jcraft.jsch.Session;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 
 /**
  * @author haley
@@ -37,4 +40,53 @@ public class SshUtils {
         channelExec.disconnect();
         return outputBuffer.toString();
     }
+
+    /**
+     * Runs a command with nothing on its standard input and returns its output, or null if the command printed
+     * nothing for the given time, like when the server does not run commands at all.
+     */
+    public static String sendCommand(Session sesConnection, String command, long idleTimeoutMillis)
+            throws JSchException, IOException {
+        ChannelExec channelExec = (ChannelExec) sesConnection.openChannel("exec");
+        try {
+            channelExec.setCommand(command);
+            channelExec.setInputStream(new ByteArrayInputStream(new byte[0]));
+            InputStream commandOutput = channelExec.getInputStream();
+            channelExec.connect();
+
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            byte[] buf = new byte[4096];
+            long lastOutput = System.currentTimeMillis();
+            while (true) {
+                if (commandOutput.available() > 0) {
+                    int n = commandOutput.read(buf);
+                    if (n < 0) {
+                        break;
+                    }
+                    output.write(buf, 0, n);
+                    lastOutput = System.currentTimeMillis();
+                } else if (channelExec.isClosed()) {
+                    if (commandOutput.available() <= 0) {
+                        break;
+                    }
+                } else if (System.currentTimeMillis() - lastOutput > idleTimeoutMillis) {
+                    return null;
+                } else {
+                    sleep(10);
+                }
+            }
+            return new String(output.toByteArray(), StandardCharsets.UTF_8);
+        } finally {
+            channelExec.disconnect();
+        }
+    }
+
+    private static void sleep(long millis) throws IOException {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted", e);
+        }
+    }
 }
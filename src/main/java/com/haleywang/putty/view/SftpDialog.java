@@ -3,6 +3,7 @@ package com.haleywang.putty.view;
 import com.haleywang.putty.common.Preconditions;
 import com.haleywang.putty.dto.SettingDto;
 import com.haleywang.putty.service.NotificationsService;
+import com.haleywang.putty.service.SftpTransferService;
 import com.haleywang.putty.storage.FileStorage;
 import com.haleywang.putty.util.StringUtils;
 import com.jcraft.jsch.ChannelSftp;
@@ -15,6 +16,7 @@ import org.slf4j.LoggerFactory;
 import javax.annotation.Resource;
 import javax.swing.ButtonGroup;
 import javax.swing.JButton;
+import javax.swing.JCheckBox;
 import javax.swing.JDialog;
 import javax.swing.JFileChooser;
 import javax.swing.JPanel;
@@ -149,6 +151,8 @@ public class SftpDialog extends JDialog {
         @Resource
         private JTextField tfLocalPth;
         @Resource
+        private JCheckBox cbDelta;
+        @Resource
         private JButton okBtn;
         @Resource
         private JButton btnOpenLocal;
@@ -199,14 +203,11 @@ public class SftpDialog extends JDialog {
 
             try {
 
-                int mode = ChannelSftp.OVERWRITE;
-                //ChannelSftp.RESUME
-                //ChannelSftp.APPEND
-
                 threadPoolExecutor.execute(() -> {
 
                     String localFile = tfRemote.getText().trim();
                     String remoteFolder = tfLocalPth.getText().trim();
+                    boolean delta = cbDelta.isSelected();
                     Preconditions.checkArgument(!StringUtils.isBlank(remoteFolder), "Remote folder path is empty");
                     Preconditions.checkArgument(!StringUtils.isBlank(localFile), "Local file path is empty");
 
@@ -222,7 +223,12 @@ public class SftpDialog extends JDialog {
                             sftpChannel.connect();
                         }
 
-                        sftpChannel.put(remoteFolder, localFile, monitor, mode);
+                        SftpTransferService transferService = new SftpTransferService(sftpChannel);
+                        if (delta) {
+                            transferService.sync(remoteFolder, localFile, monitor);
+                        } else {
+                            transferService.put(remoteFolder, localFile, monitor);
+                        }
                     } catch (SftpException e) {
                         NotificationsService.getInstance().showErrorDialog(this, null, e.getMessage());
                         LOGGER.error("startUpload sftp_error", e);
@@ -294,10 +300,6 @@ public class SftpDialog extends JDialog {
 
             try {
 
-
-                int mode = ChannelSftp.OVERWRITE;
-
-
                 threadPoolExecutor.execute(() -> {
 
                     String remoteFile = tfRemote.getText().trim();
@@ -316,7 +318,7 @@ public class SftpDialog extends JDialog {
                             sftpChannel.connect();
                         }
 
-                        sftpChannel.get(remoteFile, localFolder, monitor, mode);
+                        new SftpTransferService(sftpChannel).get(remoteFile, localFolder, monitor);
                     } catch (SftpException e) {
                         NotificationsService.getInstance().showErrorDialog(this, null, e.getMessage());
                         LOGGER.error("sftp get exception", e);
@@ -9,6 +9,7 @@ import com.haleywang.putty.dto.EventDto;
 import com.haleywang.putty.dto.RemoteSystemInfo;
 import com.haleywang.putty.dto.SettingDto;
 import com.haleywang.putty.service.ActionExecuteService;
+import com.haleywang.putty.service.ConnectGroupService;
 import com.haleywang.putty.service.NotificationsService;
 import com.haleywang.putty.service.action.ActionCategoryEnum;
 import com.haleywang.putty.service.action.ActionsData;
@@ -16,6 +17,7 @@ import com.haleywang.putty.storage.FileStorage;
 import com.haleywang.putty.util.StringUtils;
 import com.haleywang.putty.util.UiTool;
 import com.haleywang.putty.view.puttypanel.IdeaPuttyPanel;
+import com.haleywang.putty.view.puttypanel.connector.ssh.ConnectProgressListener;
 import com.haleywang.putty.view.side.SideView;
 import com.intellij.util.ArrayUtil;
 import com.jcraft.jsch.ChannelSftp;
@@ -237,6 +239,20 @@ public class SpringRemoteView extends JFrame implements MyWindowListener {
 
         });
         popup.add(item);
+
+        JTabbedPane tabPanel = (JTabbedPane) SwingUtilities.getAncestorOfClass(JTabbedPane.class, tabComp);
+        int tabIndex = tabPanel == null ? -1 : tabPanel.indexOfTabComponent(tabComp);
+        Component component = tabIndex < 0 ? null : tabPanel.getComponentAt(tabIndex);
+        if (component instanceof IdeaPuttyPanel && !((IdeaPuttyPanel) component).isLocal()) {
+            JMenuItem duplicateItem = new JMenuItem("Duplicate Session");
+            duplicateItem.addActionListener(ev -> {
+
+                LOGGER.info("===== click duplicate session event");
+                addPuttyPane(tabPanel, tabPanel.getTitleAt(tabIndex), ((IdeaPuttyPanel) component).duplicate());
+
+            });
+            popup.add(duplicateItem);
+        }
         popup.show(tabComp, x, y);
     }
 
@@ -302,6 +318,11 @@ public class SpringRemoteView extends JFrame implements MyWindowListener {
 
 
     private void createAndAddPuttyPane(JTabbedPane tab, ConnectionDto connectionDto, AccountDto connectionAccountIn) {
+        createAndAddPuttyPane(tab, connectionDto, connectionAccountIn, null);
+    }
+
+    private void createAndAddPuttyPane(JTabbedPane tab, ConnectionDto connectionDto, AccountDto connectionAccountIn,
+                                       ConnectGroupService.GroupProgress groupProgress) {
         String port = StringUtils.ifBlank(connectionDto.getPort(), "22");
         AccountDto connectionAccount = Optional.ofNullable(connectionAccountIn).orElse(new AccountDto());
 
@@ -315,9 +336,21 @@ public class SpringRemoteView extends JFrame implements MyWindowListener {
         }
 
         String pem = StringUtils.ifBlank(connectionDto.getPem(), connectionAccount.getPem());
-        IdeaPuttyPanel putty = new IdeaPuttyPanel(connectionDto.getHost(), connectionUser, port, connectionPassword, pem);
+        IdeaPuttyPanel putty;
+        if (groupProgress == null) {
+            putty = new IdeaPuttyPanel(connectionDto.getHost(), connectionUser, port, connectionPassword, pem);
+        } else {
+            TabConnectProgressListener listener = new TabConnectProgressListener(connectionDto.toString(), groupProgress);
+            putty = new IdeaPuttyPanel(connectionDto.getHost(), connectionUser, port, connectionPassword, pem,
+                    ConnectGroupService.getInstance().getExecutor(), listener);
+            listener.setPuttyPanel(putty);
+        }
 
-        tab.add(connectionDto.toString(), putty);
+        addPuttyPane(tab, connectionDto.toString(), putty);
+    }
+
+    private void addPuttyPane(JTabbedPane tab, String title, IdeaPuttyPanel putty) {
+        tab.add(title, putty);
         tab.setSelectedIndex(tab.getTabCount() - 1);
 
         SwingUtilities.invokeLater(() -> {
@@ -341,6 +374,61 @@ public class SpringRemoteView extends JFrame implements MyWindowListener {
 
     }
 
+    /**
+     * Shows the connect progress of a group session in the title of its tab.
+     */
+    private static class TabConnectProgressListener implements ConnectProgressListener {
+        private final String title;
+        private final ConnectGroupService.GroupProgress groupProgress;
+        private IdeaPuttyPanel puttyPanel;
+
+        TabConnectProgressListener(String title, ConnectGroupService.GroupProgress groupProgress) {
+            this.title = title;
+            this.groupProgress = groupProgress;
+        }
+
+        void setPuttyPanel(IdeaPuttyPanel puttyPanel) {
+            this.puttyPanel = puttyPanel;
+        }
+
+        @Override
+        public void onProgress(Stage stage, String message) {
+            if (stage == Stage.CONNECTED) {
+                groupProgress.connected();
+            } else if (stage == Stage.FAILED) {
+                groupProgress.failed();
+            }
+            // runs after the panel has been added to its tab, see createAndAddPuttyPane
+            SwingUtilities.invokeLater(() -> {
+                Container parent = puttyPanel.getParent();
+                if (!(parent instanceof DnDCloseButtonTabbedPane)) {
+                    return;
+                }
+                DnDCloseButtonTabbedPane tabPanel = (DnDCloseButtonTabbedPane) parent;
+                tabPanel.setTabTitle(puttyPanel, tabTitle(stage));
+                if (stage == Stage.PROMPT) {
+                    tabPanel.setSelectedComponent(puttyPanel);
+                    puttyPanel.setTermFocus();
+                }
+            });
+        }
+
+        private String tabTitle(Stage stage) {
+            switch (stage) {
+                case QUEUED:
+                    return "[queued] " + title;
+                case CONNECTING:
+                    return "[connecting] " + title;
+                case PROMPT:
+                    return "[login] " + title;
+                case FAILED:
+                    return "[failed] " + title;
+                default:
+                    return title;
+            }
+        }
+    }
+
     private void createAndAddPuttyPaneOld(JTabbedPane tab, ConnectionDto connectionDto, AccountDto connectionAccount) {
         String port = StringUtils.ifBlank(connectionDto.getPort(), "22");
 
@@ -678,6 +766,25 @@ public class SpringRemoteView extends JFrame implements MyWindowListener {
         }
     }
 
+    /**
+     * Open a tab for every connection of a group. The handshakes run in parallel on
+     * the executor of {@link ConnectGroupService} and report their progress in the tabs.
+     */
+    public void onCreateConnectionsGroup(String groupName, List<ConnectionDto> connectionDtos, List<AccountDto> connectionAccounts) {
+        if (!useNewTerminal) {
+            for (int i = 0; i < connectionDtos.size(); i++) {
+                onCreateConnectionsTab(connectionDtos.get(i), connectionAccounts.get(i));
+            }
+            return;
+        }
+        ConnectGroupService.GroupProgress groupProgress =
+                ConnectGroupService.getInstance().start(groupName, connectionDtos.size());
+        JTabbedPane tab = getCurrentTabPanel();
+        for (int i = 0; i < connectionDtos.size(); i++) {
+            createAndAddPuttyPane(tab, connectionDtos.get(i), connectionAccounts.get(i), groupProgress);
+        }
+    }
+
     public void changeCurrentTabPanel(int index) {
         if (tabPanels.size() <= index) {
             return;
@@ -7,6 +7,7 @@ import com.haleywang.putty.util.SshUtils;
 import com.haleywang.putty.util.StringUtils;
 import com.haleywang.putty.view.puttypanel.connector.LocalTerminalConnector;
 import com.haleywang.putty.view.puttypanel.connector.ssh.AbstractJschTtyConnector;
+import com.haleywang.putty.view.puttypanel.connector.ssh.ConnectProgressListener;
 import com.haleywang.putty.view.puttypanel.connector.ssh.JschShellPemTtyConnector;
 import com.haleywang.putty.view.puttypanel.connector.ssh.JschShellTtyConnector;
 import com.jcraft.jsch.ChannelSftp;
@@ -29,6 +30,7 @@ import java.awt.Dimension;
 import java.io.IOException;
 import java.nio.charset.Charset;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
 
 
 /**
@@ -41,11 +43,32 @@ public class IdeaPuttyPanel extends JPanel implements PuttyPane {
     JediTermWidget session;
     RemoteSystemInfo remoteSystemInfo;
 
+    private final String host;
+    private final String connectionUser;
+    private final String port;
+    private final String connectionPassword;
+    private final String pem;
+
     public IdeaPuttyPanel(String host, String connectionUser, String port, String connectionPassword) {
         this(host, connectionUser, port, connectionPassword, null);
     }
 
     public IdeaPuttyPanel(String host, String connectionUser, String port, String connectionPassword, String pem) {
+        this(host, connectionUser, port, connectionPassword, pem, null, null);
+    }
+
+    /**
+     * @param connectExecutor if not null the ssh handshake is started on this executor
+     *                        right away, see {@link AbstractJschTtyConnector#preconnect}
+     * @param listener        receives the connect progress when connectExecutor is set
+     */
+    public IdeaPuttyPanel(String host, String connectionUser, String port, String connectionPassword, String pem,
+                          ExecutorService connectExecutor, ConnectProgressListener listener) {
+        this.host = host;
+        this.connectionUser = connectionUser;
+        this.port = port;
+        this.connectionPassword = connectionPassword;
+        this.pem = pem;
         session = new JediTermWidget(new DefaultSettingsProvider());
 
         this.setLayout(new BorderLayout());
@@ -94,15 +117,29 @@ public class IdeaPuttyPanel extends JPanel implements PuttyPane {
                 LOGGER.error("port numberFormatException", e);
             }
 
+            AbstractJschTtyConnector<?> connector;
             if (!StringUtils.isBlank(pem)) {
-                openSession(new JschShellPemTtyConnector(host, portInt, connectionUser, pem));
+                connector = new JschShellPemTtyConnector(host, portInt, connectionUser, pem);
             }else {
-                openSession(new JschShellTtyConnector(host, portInt, connectionUser, connectionPassword));
+                connector = new JschShellTtyConnector(host, portInt, connectionUser, connectionPassword);
             }
+            if (connectExecutor != null) {
+                connector.preconnect(connectExecutor, listener);
+            }
+            openSession(connector);
         }
 
     }
 
+    /**
+     * Open another terminal to the same account. The new tab shares this tab's
+     * ssh session through {@link com.haleywang.putty.view.puttypanel.connector.ssh.SshSessionPool},
+     * so it only has to open a channel.
+     */
+    public IdeaPuttyPanel duplicate() {
+        return new IdeaPuttyPanel(host, connectionUser, port, connectionPassword, pem);
+    }
+
     public boolean isConnected() {
         return session.getTtyConnector().isConnected();
     }
@@ -19,7 +19,12 @@ import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
 import java.util.Optional;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * @author haley
@@ -45,6 +50,11 @@ public abstract class AbstractJschTtyConnector<T extends Channel> implements Tty
     private Dimension myPendingPixelSize;
     private InputStreamReader myInputStreamReader;
 
+    private volatile SshSessionPool.Key myPoolKey;
+    private final AtomicReference<Future<Session>> myPendingSession = new AtomicReference<>();
+    private volatile boolean myClosed;
+    private ConnectProgressListener myProgressListener;
+
     public AbstractJschTtyConnector(String host, int port, String user, String password) {
         this.myHost = host;
         this.myPort = port;
@@ -85,10 +95,49 @@ public abstract class AbstractJschTtyConnector<T extends Channel> implements Tty
         return (ChannelSftp) mySession.openChannel("sftp");
     }
 
+    /**
+     * Start dns lookup, tcp connect, kex and auth on the given executor instead of
+     * waiting for {@link #init(Questioner)}. Auth that needs a prompt fails here and
+     * is retried interactively by init, with the prompts of all the sessions of a
+     * group queued one after the other.
+     *
+     * @param executor bounded executor shared by the sessions of a group
+     * @param listener receives the connect progress
+     */
+    public void preconnect(ExecutorService executor, ConnectProgressListener listener) {
+        myProgressListener = listener;
+        if (StringUtils.isBlank(myHost) || StringUtils.isBlank(myUser)) {
+            // init will ask for them
+            return;
+        }
+        listener.onProgress(ConnectProgressListener.Stage.QUEUED, null);
+        myPendingSession.set(executor.submit(() -> {
+            if (myClosed) {
+                throw new JSchException("closed");
+            }
+            listener.onProgress(ConnectProgressListener.Stage.CONNECTING, null);
+            Session session = connectSession(null);
+            if (myClosed) {
+                SshSessionPool.INSTANCE.release(myPoolKey, session);
+                throw new JSchException("closed");
+            }
+            return session;
+        }));
+    }
+
     @Override
     public void close() {
+        myClosed = true;
+        Future<Session> pending = myPendingSession.getAndSet(null);
+        if (pending != null && !pending.cancel(true)) {
+            // connected just before it could be cancelled, nobody else will take the session
+            releaseFinished(pending);
+        }
+        if (myChannelShell != null) {
+            myChannelShell.disconnect();
+        }
         if (mySession != null) {
-            mySession.disconnect();
+            SshSessionPool.INSTANCE.release(myPoolKey, mySession);
             mySession = null;
             myInputStream = null;
             myOutputStream = null;
@@ -116,30 +165,126 @@ public abstract class AbstractJschTtyConnector<T extends Channel> implements Tty
 
         getAuthDetails(q);
 
+        ConnectProgressListener listener = myProgressListener;
         try {
-            mySession = connectSession(q);
+            mySession = awaitPendingSession();
+            if (mySession == null) {
+                mySession = connectSession(listener != null ? new QueuedQuestioner(q, listener) : q);
+            }
             myChannelShell = openChannel(mySession);
             configureChannelShell(myChannelShell);
-            myInputStream = myChannelShell.getInputStream();
+            // never blocks the session thread, which the other channels of a pooled session need
+            myInputStream = ChannelInputBuffer.attach(myChannelShell);
             myOutputStream = myChannelShell.getOutputStream();
             myInputStreamReader = new InputStreamReader(myInputStream, "utf-8");
             myChannelShell.connect();
             resizeImmediately();
+            if (listener != null) {
+                listener.onProgress(ConnectProgressListener.Stage.CONNECTED, null);
+            }
             return true;
         } catch (final IOException e) {
             q.showMessage(e.getMessage());
             LOG.error("Error opening channel", e);
+            notifyFailed(listener, e);
             return false;
         } catch (final JSchException e) {
             q.showMessage(e.getMessage());
             LOG.error("Error opening session or channel", e);
+            notifyFailed(listener, e);
             return false;
         } finally {
             isInitiated.set(true);
         }
     }
 
+    private static void notifyFailed(ConnectProgressListener listener, Exception e) {
+        if (listener != null) {
+            listener.onProgress(ConnectProgressListener.Stage.FAILED, e.getMessage());
+        }
+    }
+
+    /**
+     * @return the session connected by {@link #preconnect}, or null if there is none
+     * or its auth needs to be retried with prompts
+     */
+    private Session awaitPendingSession() throws JSchException {
+        if (myClosed) {
+            throw new JSchException("Connection closed");
+        }
+        Future<Session> pending = myPendingSession.get();
+        if (pending == null) {
+            return null;
+        }
+        Session session;
+        try {
+            session = pending.get();
+        } catch (CancellationException e) {
+            throw new JSchException("Connection closed", e);
+        } catch (InterruptedException e) {
+            if (myPendingSession.compareAndSet(pending, null) && !pending.cancel(true)) {
+                releaseFinished(pending);
+            }
+            Thread.currentThread().interrupt();
+            throw new JSchException("Interrupted while connecting", e);
+        } catch (ExecutionException e) {
+            myPendingSession.compareAndSet(pending, null);
+            Throwable cause = e.getCause();
+            if (cause instanceof AuthFailedException) {
+                LOG.info("preconnect to {} needs a login prompt: {}", myHost, cause.getMessage());
+                return null;
+            }
+            if (cause instanceof JSchException) {
+                throw (JSchException) cause;
+            }
+            throw new JSchException(String.valueOf(cause), cause);
+        }
+        if (!myPendingSession.compareAndSet(pending, null)) {
+            // close() took it in the meantime and gives the session back
+            throw new JSchException("Connection closed");
+        }
+        return session;
+    }
+
+    /**
+     * Give back the session of a preconnect which has finished, if it connected.
+     */
+    private void releaseFinished(Future<Session> pending) {
+        try {
+            SshSessionPool.INSTANCE.release(myPoolKey, pending.get());
+        } catch (ExecutionException | CancellationException e) {
+            // it did not connect, nothing to give back
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return the key this connector's session is shared under in {@link SshSessionPool}
+     */
+    protected SshSessionPool.Key poolKey() {
+        return new SshSessionPool.Key(myUser, myHost, myPort, myPassword, getPem());
+    }
+
+    /**
+     * @return path of the private key file used to log in, if any
+     */
+    protected String getPem() {
+        return null;
+    }
+
+    /**
+     * Get an authenticated session, reusing one another tab has open to the same
+     * account when there is one.
+     */
     private Session connectSession(Questioner questioner) throws JSchException {
+        SshSessionPool.Key key = poolKey();
+        Session session = SshSessionPool.INSTANCE.acquire(key, () -> newSession(questioner));
+        myPoolKey = key;
+        return session;
+    }
+
+    private Session newSession(Questioner questioner) throws JSchException {
         JSch jsch = new JSch();
         configureJsch(jsch);
 
@@ -156,11 +301,30 @@ public abstract class AbstractJschTtyConnector<T extends Channel> implements Tty
         config.put("compression.s2c", "zlib,none");
         config.put("compression.c2s", "zlib,none");
         configureSession(session, config);
-        session.connect();
+        try {
+            session.connect();
+        } catch (JSchException e) {
+            if (session.getHostKey() != null) {
+                // the key exchange is done, so it was the login which failed
+                throw new AuthFailedException(e);
+            }
+            throw e;
+        }
 
         return session;
     }
 
+    /**
+     * The server was reached but did not accept the login, which a prompt for the password or passphrase may fix.
+     */
+    private static class AuthFailedException extends JSchException {
+        private static final long serialVersionUID = 1L;
+
+        AuthFailedException(JSchException cause) {
+            super(cause.getMessage(), cause);
+        }
+    }
+
     protected void configureJsch(JSch jsch) throws JSchException {
         //do nothing
 
@@ -0,0 +1,292 @@
+package com.haleywang.putty.view.puttypanel.connector.ssh;
+
+import com.jcraft.jsch.Buffer;
+import com.jcraft.jsch.Channel;
+import com.jcraft.jsch.Packet;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+
+/**
+ * Output of an SSH channel, kept until the terminal reads it. It takes the
+ * place of the pipe JSch puts between a channel and its input stream.
+ * <p>
+ * JSch feeds all the channels of a session from the one thread of the session
+ * and opens the window of a channel again as soon as it has handed the data
+ * over, whether it was read or not. Its pipe blocks that thread while a channel
+ * has no room left, so one terminal that falls behind holds up every other
+ * channel on the session. Writing here never waits. Once more than
+ * {@link #HIGH_WATER} bytes are waiting to be read, what arrives is left out of
+ * the window JSch opens, so the server stops sending on this channel alone when
+ * it has used up its window. The window is opened for those bytes once the
+ * terminal has read down to {@link #LOW_WATER}. At most the window size more
+ * than {@link #HIGH_WATER} is ever kept.
+ *
+ * @author haley
+ */
+class ChannelInputBuffer {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ChannelInputBuffer.class);
+
+    static final int HIGH_WATER = 256 * 1024;
+    static final int LOW_WATER = 64 * 1024;
+
+    private static final byte SSH_MSG_CHANNEL_WINDOW_ADJUST = 93;
+
+    /**
+     * The flow control window of the channel, as far as the server is told
+     * about it.
+     */
+    interface Window {
+        /**
+         * Leave bytes out of the window JSch opens. Called on the session
+         * thread while it hands the bytes over, before it counts them.
+         *
+         * @param count bytes received
+         */
+        void withhold(int count);
+
+        /**
+         * Let the server send that many bytes more.
+         *
+         * @param count bytes withheld before
+         * @throws IOException if the message cannot be sent
+         */
+        void open(int count) throws IOException;
+    }
+
+    private final Window window;
+    private final byte[] buf;
+    // guarded by this
+    private int head;
+    private int count;
+    private int withheld;
+    private boolean eof;
+
+    private final InputStream input = new Input();
+    private final OutputStream output = new Output();
+
+    /**
+     * @param window     window of the channel
+     * @param windowSize most bytes the server may send without a window adjust
+     */
+    ChannelInputBuffer(Window window, int windowSize) {
+        this.window = window;
+        this.buf = new byte[HIGH_WATER + windowSize];
+    }
+
+    /**
+     * Have the channel write its output into a new buffer. Must be called
+     * before the channel is connected.
+     *
+     * @return the stream to read the output of the channel from
+     * @throws IOException if the channel cannot be set up
+     */
+    static InputStream attach(Channel channel) throws IOException {
+        if (JschWindow.LWSIZE == null) {
+            // another JSch, the window cannot be held back
+            return channel.getInputStream();
+        }
+        ChannelInputBuffer buffer = new ChannelInputBuffer(new JschWindow(channel), JschWindow.windowSize(channel));
+        channel.setOutputStream(buffer.output);
+        return buffer.input;
+    }
+
+    InputStream getInput() {
+        return input;
+    }
+
+    OutputStream getOutput() {
+        return output;
+    }
+
+    /**
+     * @return number of bytes waiting to be read
+     */
+    synchronized int available() {
+        return count;
+    }
+
+    private synchronized void write(byte[] b, int off, int len) throws IOException {
+        if (eof) {
+            // nobody reads any more
+            return;
+        }
+        if (count + len > buf.length) {
+            throw new IOException("The server sent more than the channel window allows");
+        }
+        int tail = (head + count) % buf.length;
+        int first = Math.min(len, buf.length - tail);
+        System.arraycopy(b, off, buf, tail, first);
+        System.arraycopy(b, off + first, buf, 0, len - first);
+        count += len;
+        if (count > HIGH_WATER) {
+            withheld += len;
+            window.withhold(len);
+        }
+        notifyAll();
+    }
+
+    private int read(byte[] b, int off, int len) throws IOException {
+        int read;
+        int open = 0;
+        synchronized (this) {
+            while (count == 0 && !eof) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException();
+                }
+            }
+            if (count == 0) {
+                return -1;
+            }
+            read = Math.min(len, count);
+            int first = Math.min(read, buf.length - head);
+            System.arraycopy(buf, head, b, off, first);
+            System.arraycopy(buf, 0, b, off + first, read - first);
+            head = (head + read) % buf.length;
+            count -= read;
+            if (withheld > 0 && count <= LOW_WATER) {
+                open = withheld;
+                withheld = 0;
+            }
+        }
+        if (open > 0) {
+            // not under the lock, sending may wait for the socket or a key exchange
+            window.open(open);
+        }
+        return read;
+    }
+
+    private synchronized void close() {
+        eof = true;
+        notifyAll();
+    }
+
+    private class Input extends InputStream {
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) < 0 ? -1 : b[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            return ChannelInputBuffer.this.read(b, off, len);
+        }
+
+        @Override
+        public int available() {
+            return ChannelInputBuffer.this.available();
+        }
+
+        @Override
+        public void close() {
+            ChannelInputBuffer.this.close();
+        }
+    }
+
+    private class Output extends OutputStream {
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            ChannelInputBuffer.this.write(b, off, len);
+        }
+
+        @Override
+        public void close() {
+            // the channel is closed
+            ChannelInputBuffer.this.close();
+        }
+    }
+
+    /**
+     * The window of a JSch channel. JSch keeps what it has left of the window
+     * in a field of the channel and offers no way to hold it back, so the field
+     * is set through reflection.
+     */
+    private static class JschWindow implements Window {
+        static final Field LWSIZE;
+        static final Field LWSIZE_MAX;
+        static final Method GET_RECIPIENT;
+
+        static {
+            Field lwsize = null;
+            Field lwsizeMax = null;
+            Method getRecipient = null;
+            try {
+                lwsize = Channel.class.getDeclaredField("lwsize");
+                lwsizeMax = Channel.class.getDeclaredField("lwsize_max");
+                getRecipient = Channel.class.getDeclaredMethod("getRecipient");
+                lwsize.setAccessible(true);
+                lwsizeMax.setAccessible(true);
+                getRecipient.setAccessible(true);
+            } catch (ReflectiveOperationException | RuntimeException e) {
+                LOGGER.warn("Cannot hold back the window of SSH channels, a slow terminal holds up its session", e);
+                lwsize = null;
+            }
+            LWSIZE = lwsize;
+            LWSIZE_MAX = lwsizeMax;
+            GET_RECIPIENT = getRecipient;
+        }
+
+        private final Channel channel;
+
+        JschWindow(Channel channel) {
+            this.channel = channel;
+        }
+
+        static int windowSize(Channel channel) throws IOException {
+            try {
+                return LWSIZE_MAX.getInt(channel);
+            } catch (IllegalAccessException e) {
+                throw new IOException(e);
+            }
+        }
+
+        @Override
+        public void withhold(int count) {
+            try {
+                // JSch takes the bytes off again right after, on this thread
+                LWSIZE.setInt(channel, LWSIZE.getInt(channel) + count);
+            } catch (IllegalAccessException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        @Override
+        public void open(int count) throws IOException {
+            try {
+                Buffer buffer = new Buffer(100);
+                Packet packet = new Packet(buffer);
+                packet.reset();
+                buffer.putByte(SSH_MSG_CHANNEL_WINDOW_ADJUST);
+                buffer.putInt((Integer) GET_RECIPIENT.invoke(channel));
+                buffer.putInt(count);
+                synchronized (channel) {
+                    if (!channel.isClosed()) {
+                        channel.getSession().write(packet);
+                    }
+                }
+            } catch (IOException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new IOException("Cannot open the window of the channel", e);
+            }
+        }
+    }
+}
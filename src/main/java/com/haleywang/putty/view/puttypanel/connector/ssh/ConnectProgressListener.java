@@ -0,0 +1,34 @@
+package com.haleywang.putty.view.puttypanel.connector.ssh;
+
+/**
+ * Receives the connect progress of a session that was opened as part of a group.
+ *
+ * @author haley
+ */
+public interface ConnectProgressListener {
+
+    enum Stage {
+        /**
+         * waiting for a free connect thread
+         */
+        QUEUED,
+        /**
+         * dns lookup, tcp connect, kex and auth in progress
+         */
+        CONNECTING,
+        /**
+         * waiting for the user to answer an auth prompt
+         */
+        PROMPT,
+        CONNECTED,
+        FAILED
+    }
+
+    /**
+     * onProgress, may be called from any thread
+     *
+     * @param stage
+     * @param message
+     */
+    void onProgress(Stage stage, String message);
+}
@@ -24,6 +24,11 @@ public class JschShellPemTtyConnector extends JschShellTtyConnector {
         this.pem = pem;
     }
 
+    @Override
+    protected String getPem() {
+        return pem;
+    }
+
     @Override
     protected void configureJsch(JSch jsch) throws JSchException {
         super.configureJsch(jsch);
@@ -0,0 +1,62 @@
+package com.haleywang.putty.view.puttypanel.connector.ssh;
+
+import com.jediterm.terminal.Questioner;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Lets the sessions of a group ask their auth questions one at a time, in the
+ * order they asked, so the user is never prompted in several tabs at once.
+ *
+ * @author haley
+ */
+class QueuedQuestioner implements Questioner {
+
+    private static final ReentrantLock PROMPT_LOCK = new ReentrantLock(true);
+
+    private final Questioner myQuestioner;
+    private final ConnectProgressListener myListener;
+
+    QueuedQuestioner(Questioner questioner, ConnectProgressListener listener) {
+        this.myQuestioner = questioner;
+        this.myListener = listener;
+    }
+
+    @Override
+    public String questionVisible(String question, String defValue) {
+        acquire();
+        try {
+            return myQuestioner.questionVisible(question, defValue);
+        } finally {
+            release();
+        }
+    }
+
+    @Override
+    public String questionHidden(String string) {
+        acquire();
+        try {
+            return myQuestioner.questionHidden(string);
+        } finally {
+            release();
+        }
+    }
+
+    @Override
+    public void showMessage(String message) {
+        myQuestioner.showMessage(message);
+    }
+
+    private void acquire() {
+        if (!PROMPT_LOCK.tryLock()) {
+            myQuestioner.showMessage("Waiting for another session to finish its login prompt...");
+            PROMPT_LOCK.lock();
+        }
+        myListener.onProgress(ConnectProgressListener.Stage.PROMPT, null);
+    }
+
+    private void release() {
+        myListener.onProgress(ConnectProgressListener.Stage.CONNECTING, null);
+        PROMPT_LOCK.unlock();
+    }
+}
@@ -0,0 +1,223 @@
+package com.haleywang.putty.view.puttypanel.connector.ssh;
+
+import com.jcraft.jsch.JSchException;
+import com.jcraft.jsch.Session;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Shares authenticated sessions between the tabs, sftp and exec channels that
+ * connect to the same account, like the ControlMaster option of OpenSSH. Every
+ * {@link #acquire} must be paired with a {@link #release}; a session nobody
+ * holds is disconnected once it has been idle for {@link #IDLE_TIMEOUT_MILLIS}.
+ *
+ * @author haley
+ */
+public class SshSessionPool {
+    private static final Logger LOGGER = LoggerFactory.getLogger(SshSessionPool.class);
+
+    /**
+     * OpenSSH allows 10 channels per connection by default (MaxSessions), keep
+     * some room for the sftp and exec channels of the tabs.
+     */
+    static final int MAX_REFS_PER_SESSION = 6;
+    static final long IDLE_TIMEOUT_MILLIS = 60_000L;
+
+    public static final SshSessionPool INSTANCE = new SshSessionPool();
+
+    /**
+     * Opens a new authenticated session when the pool has none to share.
+     */
+    public interface Connector {
+        /**
+         * connect
+         *
+         * @return a connected session
+         * @throws JSchException
+         */
+        Session connect() throws JSchException;
+    }
+
+    /**
+     * Identifies an account; sessions are only shared between equal keys.
+     */
+    public static final class Key {
+        private final String user;
+        private final String host;
+        private final int port;
+        private final String password;
+        private final String pem;
+
+        public Key(String user, String host, int port, String password, String pem) {
+            this.user = user;
+            this.host = host;
+            this.port = port;
+            this.password = password;
+            this.pem = pem;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return port == key.port && Objects.equals(user, key.user) && Objects.equals(host, key.host)
+                    && Objects.equals(password, key.password) && Objects.equals(pem, key.pem);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(user, host, port, password, pem);
+        }
+
+        @Override
+        public String toString() {
+            return user + "@" + host + ":" + port;
+        }
+    }
+
+    private static class Entry {
+        final Session session;
+        int refs;
+        long idleSince;
+
+        Entry(Session session) {
+            this.session = session;
+        }
+    }
+
+    private final Map<Key, List<Entry>> sessions = new HashMap<>();
+    private final Map<Key, Object> connectLocks = new HashMap<>();
+
+    private final ScheduledExecutorService evictor = new ScheduledThreadPoolExecutor(1, r -> {
+        Thread t = new Thread(r, "SshSessionPool-evictor");
+        t.setDaemon(true);
+        return t;
+    });
+
+    SshSessionPool() {
+    }
+
+    /**
+     * Get a connected session for the key, sharing one that is already open when
+     * possible. Only one session per key is connected at a time, so a second tab
+     * to the same account waits for the first to authenticate and then shares it.
+     */
+    public Session acquire(Key key, Connector connector) throws JSchException {
+        Session session = tryShare(key);
+        if (session != null) {
+            return session;
+        }
+        Object connectLock;
+        synchronized (this) {
+            connectLock = connectLocks.computeIfAbsent(key, k -> new Object());
+        }
+        synchronized (connectLock) {
+            session = tryShare(key);
+            if (session != null) {
+                return session;
+            }
+            session = connector.connect();
+            synchronized (this) {
+                Entry entry = new Entry(session);
+                entry.refs = 1;
+                sessions.computeIfAbsent(key, k -> new ArrayList<>()).add(entry);
+            }
+            LOGGER.info("session pool: new session to {}", key);
+            return session;
+        }
+    }
+
+    private synchronized Session tryShare(Key key) {
+        List<Entry> entries = sessions.get(key);
+        if (entries == null) {
+            return null;
+        }
+        Iterator<Entry> it = entries.iterator();
+        while (it.hasNext()) {
+            Entry entry = it.next();
+            if (!entry.session.isConnected()) {
+                if (entry.refs == 0) {
+                    it.remove();
+                }
+                continue;
+            }
+            if (entry.refs < MAX_REFS_PER_SESSION) {
+                entry.refs++;
+                LOGGER.info("session pool: sharing session to {} ({} users)", key, entry.refs);
+                return entry.session;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Give back a session got from {@link #acquire}.
+     */
+    public void release(Key key, Session session) {
+        synchronized (this) {
+            List<Entry> entries = sessions.get(key);
+            Entry entry = entries == null ? null : find(entries, session);
+            if (entry == null) {
+                // not pooled (any more), nobody else can be using it
+                session.disconnect();
+                return;
+            }
+            if (--entry.refs > 0) {
+                return;
+            }
+            if (!session.isConnected()) {
+                remove(key, entries, entry);
+                return;
+            }
+            entry.idleSince = System.currentTimeMillis();
+        }
+        evictor.schedule(() -> evict(key, session), IDLE_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    private void evict(Key key, Session session) {
+        synchronized (this) {
+            List<Entry> entries = sessions.get(key);
+            Entry entry = entries == null ? null : find(entries, session);
+            if (entry == null || entry.refs > 0
+                    || System.currentTimeMillis() - entry.idleSince < IDLE_TIMEOUT_MILLIS) {
+                // in use again, or released again later and evicted by that schedule
+                return;
+            }
+            remove(key, entries, entry);
+        }
+        LOGGER.info("session pool: closing idle session to {}", key);
+        session.disconnect();
+    }
+
+    private void remove(Key key, List<Entry> entries, Entry entry) {
+        entries.remove(entry);
+        if (entries.isEmpty()) {
+            sessions.remove(key);
+            connectLocks.remove(key);
+        }
+    }
+
+    private static Entry find(List<Entry> entries, Session session) {
+        for (Entry entry : entries) {
+            if (entry.session == session) {
+                return entry;
+            }
+        }
+        return null;
+    }
+}
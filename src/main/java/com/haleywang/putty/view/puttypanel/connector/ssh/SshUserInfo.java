@@ -4,6 +4,10 @@ import com.jcraft.jsch.UIKeyboardInteractive;
 import com.jcraft.jsch.UserInfo;
 import com.jediterm.terminal.Questioner;
 
+/**
+ * Asks the questioner for missing credentials. Without a questioner it never
+ * prompts, which makes auth fail fast instead of blocking a connect thread.
+ */
 class SshUserInfo implements UserInfo, UIKeyboardInteractive {
     private final Questioner myQuestioner;
     private String myPassword;
@@ -29,18 +33,27 @@ class SshUserInfo implements UserInfo, UIKeyboardInteractive {
 
     @Override
     public boolean promptPassphrase(String message) {
+        if (myQuestioner == null) {
+            return false;
+        }
         myPassPhrase = myQuestioner.questionHidden(message + ":");
         return true;
     }
 
     @Override
     public boolean promptPassword(String message) {
+        if (myQuestioner == null) {
+            return false;
+        }
         myPassword = myQuestioner.questionHidden(message + ":");
         return true;
     }
 
     @Override
     public boolean promptYesNo(String message) {
+        if (myQuestioner == null) {
+            return false;
+        }
         String yn = myQuestioner.questionVisible(message + " [Y/N]:", "Y");
         String lyn = yn.toLowerCase();
         return ("y".equals(lyn) || "yes".equals(lyn));
@@ -48,12 +61,18 @@ class SshUserInfo implements UserInfo, UIKeyboardInteractive {
 
     @Override
     public void showMessage(String message) {
+        if (myQuestioner == null) {
+            return;
+        }
         myQuestioner.showMessage(message);
     }
 
     @Override
     public String[] promptKeyboardInteractive(final String destination, final String name,
                                               final String instruction, final String[] prompt, final boolean[] echo) {
+        if (myQuestioner == null) {
+            return null;
+        }
         int len = prompt.length;
         String[] results = new String[len];
         if (destination != null && destination.length() > 0) {
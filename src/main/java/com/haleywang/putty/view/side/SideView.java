@@ -45,6 +45,7 @@ import java.awt.event.KeyAdapter;
 import java.awt.event.KeyEvent;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -391,6 +392,41 @@ public class SideView extends JSplitPane {
         }
     }
 
+    /**
+     * Open every connection below the group node, skipping the ones without an account.
+     */
+    public void createConnectionsGroupTabs(DefaultMutableTreeNode groupNode) {
+        List<ConnectionDto> connectionDtos = new ArrayList<>();
+        List<AccountDto> connectionAccounts = new ArrayList<>();
+        List<String> skipped = new ArrayList<>();
+
+        Enumeration<?> children = groupNode.depthFirstEnumeration();
+        while (children.hasMoreElements()) {
+            DefaultMutableTreeNode node = (DefaultMutableTreeNode) children.nextElement();
+            if (!node.isLeaf() || !(node.getUserObject() instanceof ConnectionDto)) {
+                continue;
+            }
+            ConnectionDto connectionDto = (ConnectionDto) node.getUserObject();
+            if (StringUtils.isBlank(connectionDto.getHost())) {
+                continue;
+            }
+            AccountDto connectionAccount = getConnectionAccount(node);
+            if (connectionAccount == null) {
+                skipped.add(connectionDto.toString());
+                continue;
+            }
+            connectionDtos.add(connectionDto);
+            connectionAccounts.add(connectionAccount);
+        }
+
+        if (!skipped.isEmpty()) {
+            NotificationsService.getInstance().warn("No account for " + String.join(", ", skipped));
+        }
+        if (!connectionDtos.isEmpty()) {
+            SpringRemoteView.getInstance().onCreateConnectionsGroup(groupNode.toString(), connectionDtos, connectionAccounts);
+        }
+    }
+
     private void findNode(List<DefaultMutableTreeNode> treeNodes, DefaultMutableTreeNode connectionsTreeNode, ConnectionDto connectionDto) {
 
         Action action = (Action) connectionsTreeNode.getUserObject();
@@ -120,12 +120,15 @@ public class ConnectionsTreePanel extends JScrollPane {
             JMenuItem deleteItem = new JMenuItem("Delete: "+ obj.toString());
             JMenuItem openFileMenuItem = new JMenuItem("Open config file");
             JMenuItem openMenuItem = new JMenuItem(openSession);
+            JMenuItem openGroupMenuItem = new JMenuItem("Open group");
             JMenuItem passwordMenuItem = new JMenuItem("Edit Account");
             openMenuItem.setEnabled(node.isLeaf());
+            openGroupMenuItem.setVisible(!node.isLeaf());
             duplicateItem.setVisible(node.isLeaf());
             deleteItem.setVisible(node.isLeaf());
 
             popup.add(openMenuItem);
+            popup.add(openGroupMenuItem);
             popup.add(openFileMenuItem);
             popup.add(editMenuItem);
             popup.add(duplicateItem);
@@ -154,6 +157,17 @@ public class ConnectionsTreePanel extends JScrollPane {
                 LOGGER.info("===== click openMenuItem event");
                 createConnectionsTab(e);
 
+            });
+            openGroupMenuItem.addActionListener(ev -> {
+
+                LOGGER.info("===== click openGroupMenuItem event");
+                SwingUtilities.invokeLater(() -> {
+                    SideView.getInstance().createConnectionsGroupTabs(node);
+
+                    treeRoot.getSelectionModel().removeSelectionPath(treeRoot.getSelectionPath());
+                    SpringRemoteView.getInstance().focusCurrentTerm();
+                });
+
             });
             openFileMenuItem.addActionListener(ev -> {
 
@@ -63,6 +63,17 @@ public class ArrayTerminalDataStream implements TerminalDataStream {
     return nonControlCharacters;
   }
 
+  @Override
+  public int writeNonControlCharacters(int maxChars, Terminal terminal) throws IOException {
+    int length = CharUtils.countNonControlCharacters(maxChars, myBuf, myOffset, myLength);
+
+    terminal.writeCharacters(myBuf, myOffset, length);
+    myOffset += length;
+    myLength -= length;
+
+    return length;
+  }
+
   public void pushBackBuffer(final char[] bytes, final int length) throws EOF {
     for (int i = length - 1; i >= 0; i--) {
       pushChar(bytes[i]);
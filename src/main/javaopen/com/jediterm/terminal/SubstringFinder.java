@@ -94,11 +94,15 @@ public class SubstringFinder {
 
   public static class FindResult {
     private final List<FindItem> items = Lists.newArrayList();
-    private final Map<CharBuffer, List<Pair<Integer, Integer>>> ranges = Maps.newHashMap();
+    // by row, lines from the frozen history are decoded again for each paint so their buffers cannot be the key
+    private final Map<Integer, List<Pair<Integer, Integer>>> ranges = Maps.newHashMap();
     private int currentFindItem = 0;
 
-    public List<Pair<Integer, Integer>> getRanges(CharBuffer characters) {
-      return ranges.get(characters);
+    /**
+     * Returns the found column ranges, end exclusive, of a row counted from the top of the history.
+     */
+    public List<Pair<Integer, Integer>> getRanges(int row) {
+      return ranges.get(row);
     }
 
     public static class FindItem {
@@ -162,30 +166,31 @@ public class SubstringFinder {
     public void patternMatched(ArrayList<TextToken> tokens, int firstIndex, int lastIndex) {
       if (tokens.size() > 1) {
         Pair<Integer, Integer> range = Pair.create(firstIndex, tokens.get(0).buf.length());
-        put(tokens.get(0).buf, range);
+        put(tokens.get(0), range);
       } else {
         Pair<Integer, Integer> range = Pair.create(firstIndex, lastIndex + 1);
-        put(tokens.get(0).buf, range);
+        put(tokens.get(0), range);
       }
 
       for (int i = 1; i < tokens.size() - 1; i++) {
-        put(tokens.get(i).buf, Pair.create(0, tokens.get(i).buf.length()));
+        put(tokens.get(i), Pair.create(0, tokens.get(i).buf.length()));
       }
 
       if (tokens.size() > 1) {
         Pair<Integer, Integer> range = Pair.create(0, lastIndex + 1);
-        put(tokens.get(tokens.size() - 1).buf, range);
+        put(tokens.get(tokens.size() - 1), range);
       }
 
       items.add(new FindItem(tokens, firstIndex, lastIndex, items.size() + 1));
 
     }
 
-    private void put(CharBuffer characters, Pair<Integer, Integer> range) {
-      if (ranges.containsKey(characters)) {
-        ranges.get(characters).add(range);
+    private void put(TextToken token, Pair<Integer, Integer> range) {
+      Pair<Integer, Integer> columns = Pair.create(token.x + range.first, token.x + range.second);
+      if (ranges.containsKey(token.y)) {
+        ranges.get(token.y).add(columns);
       } else {
-        ranges.put(characters, Lists.newArrayList(range));
+        ranges.put(token.y, Lists.newArrayList(columns));
       }
     }
 
@@ -213,12 +218,12 @@ public class SubstringFinder {
     }
   }
 
-  private static class TextToken {
+  static class TextToken {
     final CharBuffer buf;
     final int x;
     final int y;
 
-    private TextToken(int x, int y, CharBuffer buf) {
+    TextToken(int x, int y, CharBuffer buf) {
       this.x = x;
       this.y = y;
       this.buf = buf;
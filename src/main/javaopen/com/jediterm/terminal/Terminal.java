@@ -39,6 +39,13 @@ public interface Terminal {
 
   void writeCharacters(String string);
 
+  /**
+   * Writes characters straight from the given buffer, which the terminal does not keep a reference to.
+   */
+  default void writeCharacters(char[] buf, int offset, int length) {
+    writeCharacters(new String(buf, offset, length));
+  }
+
   int distanceToLineEnd();
 
   void reverseIndex();
@@ -17,6 +17,18 @@ public interface TerminalDataStream {
 
   String readNonControlCharacters(int maxChars) throws IOException;
 
+  /**
+   * Reads plain characters like {@link #readNonControlCharacters(int)} and writes them to the terminal. Streams with a
+   * buffer hand it to the terminal as it is, without copying the characters into a string first.
+   *
+   * @return number of characters written
+   */
+  default int writeNonControlCharacters(int maxChars, Terminal terminal) throws IOException {
+    String nonControlCharacters = readNonControlCharacters(maxChars);
+    terminal.writeCharacters(nonControlCharacters);
+    return nonControlCharacters.length();
+  }
+
   void pushBackBuffer(char[] bytes, int length) throws IOException;
 
   class EOF extends IOException {
@@ -0,0 +1,389 @@
+package com.jediterm.terminal;
+
+import com.jediterm.terminal.SubstringFinder.FindResult;
+import com.jediterm.terminal.model.CharBuffer;
+import com.jediterm.terminal.model.TerminalLine;
+import com.jediterm.terminal.model.TerminalTextBuffer;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+
+import javax.swing.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Searches the history and the screen of a terminal for a text or a regular expression on a thread of its own, and adds
+ * the matches to the result on the event dispatch thread as they are found. A few thousand rows at a time are copied
+ * with the text buffer locked and searched after it is unlocked. Rows wrapped onto the next one are searched as one
+ * line.
+ * <p/>
+ * A search replaces the one running before. When the text is extended, like while it is typed, only the lines that
+ * matched before are searched again, as long as the terminal has not changed since.
+ */
+public class TerminalSearch {
+  private static final Logger LOG = org.slf4j.LoggerFactory.getLogger(TerminalSearch.class);
+
+  private static final int BATCH_ROWS = 2000;
+
+  public interface Listener {
+    /**
+     * Called on the event dispatch thread after matches were added to the result, and once more when it is complete.
+     */
+    void resultUpdated(@NotNull FindResult result, boolean finished);
+  }
+
+  private final TerminalTextBuffer myTextBuffer;
+  private final AtomicInteger myGeneration = new AtomicInteger();
+  private ExecutorService myExecutor;
+
+  // the last complete search of an unchanged buffer, used on the event dispatch thread only
+  private Query myFinishedQuery;
+  private FindResult myFinishedResult;
+
+  public TerminalSearch(@NotNull TerminalTextBuffer textBuffer) {
+    myTextBuffer = textBuffer;
+  }
+
+  /**
+   * Starts a search, to be called on the event dispatch thread.
+   *
+   * @return the result the matches will be added to, null if the text is empty or not a valid regular expression
+   */
+  @Nullable
+  public FindResult search(@NotNull String text, boolean ignoreCase, boolean regex, @NotNull Listener listener) {
+    int generation = myGeneration.incrementAndGet();
+    if (text.isEmpty()) {
+      return null;
+    }
+    Query query;
+    try {
+      query = new Query(text, ignoreCase, regex);
+    }
+    catch (PatternSyntaxException e) {
+      return null;
+    }
+
+    TreeSet<Integer> rows = null;
+    int modificationCount = 0;
+    if (myFinishedQuery != null && query.narrows(myFinishedQuery)) {
+      rows = new TreeSet<>();
+      for (FindResult.FindItem item : myFinishedResult.getItems()) {
+        rows.add(item.getStart().y);
+      }
+      modificationCount = myFinishedQuery.myModificationCount;
+    }
+
+    if (myExecutor == null) {
+      myExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "TerminalSearch");
+        thread.setDaemon(true);
+        return thread;
+      });
+    }
+    FindResult result = new FindResult();
+    myExecutor.execute(new SearchTask(generation, query, rows, modificationCount, result, listener));
+    return result;
+  }
+
+  /**
+   * Stops the running search, no more matches are added to its result.
+   */
+  public void cancel() {
+    myGeneration.incrementAndGet();
+  }
+
+  public void dispose() {
+    cancel();
+    if (myExecutor != null) {
+      myExecutor.shutdownNow();
+    }
+  }
+
+  private static final class Query {
+    private final String myText;
+    private final boolean myIgnoreCase;
+    private final boolean myRegex;
+    private final Pattern myPattern;
+    // of the text buffer, while the query went through all of it
+    private int myModificationCount;
+
+    Query(@NotNull String text, boolean ignoreCase, boolean regex) {
+      myText = text;
+      myIgnoreCase = ignoreCase;
+      myRegex = regex;
+      myPattern = Pattern.compile(regex ? text : Pattern.quote(text),
+              ignoreCase ? Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE : 0);
+    }
+
+    /**
+     * Whether everything this query matches contains a match of the other one.
+     */
+    boolean narrows(@NotNull Query other) {
+      if (myRegex || other.myRegex || myIgnoreCase != other.myIgnoreCase) {
+        return false;
+      }
+      return myIgnoreCase ? myText.toLowerCase().contains(other.myText.toLowerCase()) : myText.contains(other.myText);
+    }
+  }
+
+  private final class SearchTask implements Runnable {
+    private final int myGenerationAtStart;
+    private final Query myQuery;
+    // rows with matches of the query this one narrows, all rows are searched if null
+    private TreeSet<Integer> myRows;
+    // of the text buffer when the rows were found
+    private final int myRowsModificationCount;
+    private final FindResult myResult;
+    private final Listener myListener;
+
+    // the line being collected, copied out of the text buffer
+    private final StringBuilder myLineText = new StringBuilder();
+    private final List<int[]> myLineRuns = new ArrayList<>();
+    private boolean myInLine;
+    // lines collected with the text buffer locked, searched after it is unlocked
+    private final List<Line> myLines = new ArrayList<>();
+    private final List<Match> myMatches = new ArrayList<>();
+
+    private final StyledTextConsumer myLineConsumer = new StyledTextConsumerAdapter() {
+      @Override
+      public void consume(int x, int y, @NotNull TextStyle style, @NotNull CharBuffer characters, int startRow) {
+        myLineRuns.add(new int[]{x, y - startRow, myLineText.length()});
+        myLineText.append(characters.getBuf(), characters.getStart(), characters.length());
+      }
+    };
+
+    SearchTask(int generation, @NotNull Query query, @Nullable TreeSet<Integer> rows, int rowsModificationCount,
+               @NotNull FindResult result, @NotNull Listener listener) {
+      myGenerationAtStart = generation;
+      myQuery = query;
+      myRows = rows;
+      myRowsModificationCount = rowsModificationCount;
+      myResult = result;
+      myListener = listener;
+    }
+
+    private boolean isCancelled() {
+      return myGeneration.get() != myGenerationAtStart;
+    }
+
+    @Override
+    public void run() {
+      try {
+        int row = 0;
+        int firstCount = 0;
+        int lastCount;
+        boolean first = true;
+        do {
+          myTextBuffer.lock();
+          try {
+            lastCount = myTextBuffer.getModificationCount();
+            if (first) {
+              first = false;
+              firstCount = lastCount;
+              if (myRows != null && myRowsModificationCount != firstCount) {
+                // the lines that matched before may have changed
+                myRows = null;
+              }
+            }
+            row = collectRows(row);
+          }
+          finally {
+            myTextBuffer.unlock();
+          }
+          for (Line line : myLines) {
+            if (isCancelled()) {
+              return;
+            }
+            searchLine(line);
+          }
+          myLines.clear();
+          publish(new ArrayList<>(myMatches), row < 0, firstCount == lastCount, firstCount);
+          myMatches.clear();
+        }
+        while (row >= 0 && !isCancelled());
+      }
+      catch (CancellationException e) {
+        // a newer search has started while a line was matched
+      }
+      catch (RuntimeException e) {
+        LOG.error("Cannot search for " + myQuery.myText, e);
+      }
+    }
+
+    /**
+     * Copies the lines from the given row on, until a batch of rows is done.
+     *
+     * @return row to go on from, -1 once all rows are done
+     */
+    private int collectRows(int row) {
+      int historyCount = myTextBuffer.getHistoryLinesCount();
+      int rowCount = historyCount + myTextBuffer.getScreenLinesCount();
+      int batchEnd = row + BATCH_ROWS;
+      while (row < rowCount) {
+        if (!myInLine) {
+          if (row >= batchEnd) {
+            return row;
+          }
+          if (myRows != null) {
+            Integer next = myRows.ceiling(row);
+            if (next == null || next >= rowCount) {
+              return -1;
+            }
+            // from the first row of the line
+            row = next;
+            while (row > 0 && myTextBuffer.getLine(row - 1 - historyCount).isWrapped()) {
+              row--;
+            }
+          }
+        }
+        TerminalLine line = myTextBuffer.getLine(row - historyCount);
+        line.process(row, myLineConsumer, 0);
+        myInLine = line.isWrapped();
+        if (!myInLine) {
+          endLine();
+        }
+        row++;
+      }
+      endLine();
+      return -1;
+    }
+
+    private void endLine() {
+      if (!myLineRuns.isEmpty()) {
+        char[] text = new char[myLineText.length()];
+        myLineText.getChars(0, text.length, text, 0);
+        myLines.add(new Line(text, myLineRuns.toArray(new int[myLineRuns.size()][])));
+      }
+      myLineText.setLength(0);
+      myLineRuns.clear();
+      myInLine = false;
+    }
+
+    private void searchLine(@NotNull Line line) {
+      Matcher matcher = myQuery.myPattern.matcher(new CancellableText(line.myText, 0, line.myText.length));
+      int first = 0;
+      int[][] runs = line.myRuns;
+      while (matcher.find()) {
+        if (matcher.end() == matcher.start()) {
+          continue;
+        }
+        while (first + 1 < runs.length && runs[first + 1][2] <= matcher.start()) {
+          first++;
+        }
+        int last = first;
+        while (last + 1 < runs.length && runs[last + 1][2] < matcher.end()) {
+          last++;
+        }
+        ArrayList<SubstringFinder.TextToken> tokens = new ArrayList<>(last - first + 1);
+        for (int i = first; i <= last; i++) {
+          tokens.add(line.getToken(i));
+        }
+        myMatches.add(new Match(tokens, matcher.start() - runs[first][2], matcher.end() - 1 - runs[last][2]));
+      }
+    }
+
+    private void publish(@NotNull List<Match> matches, boolean finished, boolean unchanged, int modificationCount) {
+      SwingUtilities.invokeLater(() -> {
+        if (isCancelled()) {
+          return;
+        }
+        for (Match match : matches) {
+          myResult.patternMatched(match.myTokens, match.myFirstIndex, match.myLastIndex);
+        }
+        if (finished) {
+          // which lines matched is only known for sure if the buffer did not change meanwhile
+          myQuery.myModificationCount = modificationCount;
+          myFinishedQuery = unchanged ? myQuery : null;
+          myFinishedResult = unchanged ? myResult : null;
+        }
+        myListener.resultUpdated(myResult, finished);
+      });
+    }
+
+    /**
+     * Text of a line the matcher reads, which stops it once a newer search has started, even within a line that takes
+     * long to match.
+     */
+    private final class CancellableText implements CharSequence {
+      private static final int CHECK_INTERVAL = 4096;
+
+      private final char[] myChars;
+      private final int myStart;
+      private final int myLength;
+      private int myUntilCheck = CHECK_INTERVAL;
+
+      CancellableText(@NotNull char[] chars, int start, int length) {
+        myChars = chars;
+        myStart = start;
+        myLength = length;
+      }
+
+      @Override
+      public int length() {
+        return myLength;
+      }
+
+      @Override
+      public char charAt(int index) {
+        if (--myUntilCheck == 0) {
+          myUntilCheck = CHECK_INTERVAL;
+          if (isCancelled()) {
+            throw new CancellationException();
+          }
+        }
+        return myChars[myStart + index];
+      }
+
+      @Override
+      public CharSequence subSequence(int start, int end) {
+        return new CancellableText(myChars, myStart + start, end - start);
+      }
+
+      @Override
+      public String toString() {
+        return new String(myChars, myStart, myLength);
+      }
+    }
+  }
+
+  /**
+   * Text of a line, wrapped rows joined, and where its runs start: column, row and offset in the text.
+   */
+  private static final class Line {
+    private final char[] myText;
+    private final int[][] myRuns;
+
+    Line(@NotNull char[] text, @NotNull int[][] runs) {
+      myText = text;
+      myRuns = runs;
+    }
+
+    @NotNull
+    SubstringFinder.TextToken getToken(int run) {
+      int start = myRuns[run][2];
+      int end = run + 1 < myRuns.length ? myRuns[run + 1][2] : myText.length;
+      return new SubstringFinder.TextToken(myRuns[run][0], myRuns[run][1], new CharBuffer(myText, start, end - start));
+    }
+  }
+
+  private static final class Match {
+    private final ArrayList<SubstringFinder.TextToken> myTokens;
+    private final int myFirstIndex;
+    private final int myLastIndex;
+
+    Match(@NotNull ArrayList<SubstringFinder.TextToken> tokens, int firstIndex, int lastIndex) {
+      myTokens = tokens;
+      myFirstIndex = firstIndex;
+      myLastIndex = lastIndex;
+    }
+  }
+}
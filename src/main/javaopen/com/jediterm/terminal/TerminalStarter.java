@@ -2,8 +2,10 @@ package com.jediterm.terminal;
 
 import com.jediterm.terminal.emulator.Emulator;
 import com.jediterm.terminal.emulator.JediEmulator;
+import com.jediterm.terminal.model.TerminalTextBuffer;
 import org.slf4j.Logger;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.awt.*;
 import java.io.IOException;
@@ -20,6 +22,10 @@ import java.util.concurrent.Executors;
 public class TerminalStarter implements TerminalOutputStream {
   private static final Logger LOG = org.slf4j.LoggerFactory.getLogger(TerminalStarter.class);
 
+  // longest the emulator keeps the text buffer locked while input keeps coming, checked every few steps
+  private static final long BATCH_NANOS = 2_000_000;
+  private static final int BATCH_CHECK_STEPS = 256;
+
   private final Emulator myEmulator;
 
   private final Terminal myTerminal;
@@ -27,13 +33,36 @@ public class TerminalStarter implements TerminalOutputStream {
 
   private final TtyConnector myTtyConnector;
 
+  // locked by the emulator while it works through a batch of input, null if it locks it for every change
+  @Nullable
+  private final TerminalTextBuffer myTextBuffer;
+
   private final ExecutorService myEmulatorExecutor = Executors.newSingleThreadExecutor();
 
   public TerminalStarter(final Terminal terminal, final TtyConnector ttyConnector, TerminalDataStream dataStream) {
+    this(terminal, ttyConnector, dataStream, null);
+  }
+
+  /**
+   * Reads the connector on a thread of its own, see {@link TtyInputPipe}. The emulator holds the lock of the text buffer
+   * while it works through what was read, instead of taking it for every change. It lets go of it to take the next
+   * batch, and every couple of milliseconds while output keeps coming, so the text can be painted meanwhile.
+   */
+  public TerminalStarter(final Terminal terminal, final TtyConnector ttyConnector, @NotNull TerminalTextBuffer textBuffer) {
+    this(terminal, new BatchInput(ttyConnector, textBuffer), textBuffer);
+  }
+
+  private TerminalStarter(Terminal terminal, BatchInput input, TerminalTextBuffer textBuffer) {
+    this(terminal, input, new TtyBasedArrayDataStream(input), textBuffer);
+  }
+
+  private TerminalStarter(Terminal terminal, TtyConnector ttyConnector, TerminalDataStream dataStream,
+                          @Nullable TerminalTextBuffer textBuffer) {
     myTtyConnector = ttyConnector;
     //can be implemented - just recreate channel and that's it
     myDataStream = dataStream;
     myTerminal = terminal;
+    myTextBuffer = textBuffer;
     myTerminal.setTerminalOutput(this);
     myEmulator = createEmulator(myDataStream, terminal);
   }
@@ -49,9 +78,20 @@ public class TerminalStarter implements TerminalOutputStream {
   }
 
   public void start() {
+    if (myTextBuffer != null) {
+      myTextBuffer.lock();
+    }
     try {
+      long batchStart = System.nanoTime();
+      int steps = 0;
       while (!Thread.currentThread().isInterrupted() && myEmulator.hasNext()) {
         myEmulator.next();
+        if (myTextBuffer != null && ++steps % BATCH_CHECK_STEPS == 0 && System.nanoTime() - batchStart > BATCH_NANOS) {
+          // the lock is fair, a painter waiting for it gets it now
+          myTextBuffer.unlock();
+          myTextBuffer.lock();
+          batchStart = System.nanoTime();
+        }
       }
     }
     catch (final InterruptedIOException e) {
@@ -64,6 +104,11 @@ public class TerminalStarter implements TerminalOutputStream {
       }
       LOG.error("Caught exception in terminal thread", e);
     }
+    finally {
+      if (myTextBuffer != null) {
+        myTextBuffer.unlock();
+      }
+    }
   }
 
   public byte[] getCode(final int key, final int modifiers) {
@@ -124,4 +169,32 @@ public class TerminalStarter implements TerminalOutputStream {
       }
     });
   }
+
+  /**
+   * Lets go of the text buffer lock the emulator holds while the next batch of input is taken, so the text can be
+   * painted in between.
+   */
+  private static class BatchInput extends TtyInputPipe {
+    private final TerminalTextBuffer myTextBuffer;
+
+    BatchInput(@NotNull TtyConnector ttyConnector, @NotNull TerminalTextBuffer textBuffer) {
+      super(ttyConnector);
+      myTextBuffer = textBuffer;
+    }
+
+    @Override
+    public int read(char[] buf, int offset, int length) throws IOException {
+      if (available() == 0) {
+        // the output has stopped for now, the screen is painted as it is
+        myTextBuffer.finishFastScroll();
+      }
+      myTextBuffer.unlock();
+      try {
+        return super.read(buf, offset, length);
+      }
+      finally {
+        myTextBuffer.lock();
+      }
+    }
+  }
 }
@@ -3,21 +3,21 @@ package com.jediterm.terminal;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
-import java.lang.ref.WeakReference;
 import java.util.EnumSet;
 import java.util.Objects;
-import java.util.WeakHashMap;
 
 public class TextStyle {
   private static final EnumSet<Option> NO_OPTIONS = EnumSet.noneOf(Option.class);
 
   public static final TextStyle EMPTY = new TextStyle();
 
-  private static final WeakHashMap<TextStyle, WeakReference<TextStyle>> styles = new WeakHashMap<>();
-
   private final TerminalColor myForeground;
   private final TerminalColor myBackground;
   private final EnumSet<Option> myOptions;
+  // 0 until computed
+  private int myHash;
+  // 0 until looked up in TextStyleTable, then the id plus one, or -1 if the table had no room for the style
+  volatile int myTableId;
 
   public TextStyle() {
     this(null, null, NO_OPTIONS);
@@ -38,15 +38,7 @@ public class TextStyle {
     if (currentStyle instanceof HyperlinkStyle) {
       return currentStyle;
     }
-    final WeakReference<TextStyle> canonRef = styles.get(currentStyle);
-    if (canonRef != null) {
-      final TextStyle canonStyle = canonRef.get();
-      if (canonStyle != null) {
-        return canonStyle;
-      }
-    }
-    styles.put(currentStyle, new WeakReference<>(currentStyle));
-    return currentStyle;
+    return TextStyleTable.intern(currentStyle);
   }
 
   @Nullable
@@ -83,7 +75,12 @@ public class TextStyle {
 
   @Override
   public int hashCode() {
-    return Objects.hash(myForeground, myBackground, myOptions);
+    int hash = myHash;
+    if (hash == 0) {
+      hash = Objects.hash(myForeground, myBackground, myOptions);
+      myHash = hash;
+    }
+    return hash;
   }
 
   public TerminalColor getBackgroundForRun() {
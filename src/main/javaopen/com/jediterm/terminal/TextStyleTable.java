@@ -0,0 +1,86 @@
+package com.jediterm.terminal;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Interned text styles numbered from 0, so that the cells of a line can keep their style as a compact id.
+ * {@link TextStyle#EMPTY} always has id 0. Hyperlink styles are not interned, they are equal to any other hyperlink in
+ * the same colours and live only as long as the text they were detected in.
+ * <p/>
+ * The table is shared by the emulators of all terminals. Looking up styles and ids takes no lock, only adding a style
+ * does. It holds at most {@link #MAX_STYLES} styles, lines keep the ones beyond that themselves.
+ */
+public final class TextStyleTable {
+  public static final int MAX_STYLES = 1 << 15;
+  public static final int NO_ID = -1;
+
+  private static final ConcurrentHashMap<TextStyle, Integer> ourIds = new ConcurrentHashMap<>();
+  private static final Object ourLock = new Object();
+  // written again after every added style, which publishes it to getStyle
+  private static volatile TextStyle[] ourStyles = new TextStyle[64];
+  private static int ourCount;
+
+  static {
+    getId(TextStyle.EMPTY);
+  }
+
+  private TextStyleTable() {
+  }
+
+  /**
+   * @return id of the style, adding it if the table has none equal to it, or {@link #NO_ID} if there is no room left
+   */
+  public static int getId(@NotNull TextStyle style) {
+    // the style remembers its id, emulators write runs of text in the same style object
+    int tableId = style.myTableId;
+    if (tableId != 0) {
+      return tableId > 0 ? tableId - 1 : NO_ID;
+    }
+    if (style instanceof HyperlinkStyle) {
+      throw new IllegalArgumentException("Hyperlink styles are not interned: " + style);
+    }
+    Integer id = ourIds.get(style);
+    if (id == null) {
+      id = add(style);
+    }
+    style.myTableId = id >= 0 ? id + 1 : -1;
+    return id;
+  }
+
+  private static int add(@NotNull TextStyle style) {
+    synchronized (ourLock) {
+      Integer id = ourIds.get(style);
+      if (id != null) {
+        return id;
+      }
+      if (ourCount == MAX_STYLES) {
+        return NO_ID;
+      }
+      TextStyle[] styles = ourStyles;
+      if (ourCount == styles.length) {
+        styles = Arrays.copyOf(styles, styles.length * 2);
+      }
+      styles[ourCount] = style;
+      ourStyles = styles;
+      ourIds.put(style, ourCount);
+      return ourCount++;
+    }
+  }
+
+  @NotNull
+  public static TextStyle getStyle(int id) {
+    return ourStyles[id];
+  }
+
+  /**
+   * @return the style in the table equal to the given one, or the style itself if the table has no room for it
+   */
+  @NotNull
+  public static TextStyle intern(@NotNull TextStyle style) {
+    int id = getId(style);
+    return id != NO_ID ? getStyle(id) : style;
+  }
+}
@@ -6,13 +6,17 @@ package com.jediterm.terminal;
 import java.io.IOException;
 
 /**
- * Takes data from and sends it back to TTY input and output streams via {@link TtyConnector}
+ * Takes data from and sends it back to TTY input and output streams via {@link TtyConnector}.
+ * The buffer grows while the connector fills it completely, so bulk output is read and written in long runs.
  */
 public class TtyBasedArrayDataStream extends ArrayTerminalDataStream {
+  private static final int INITIAL_BUFFER_SIZE = 1024;
+  private static final int MAX_BUFFER_SIZE = 64 * 1024;
+
   private TtyConnector myTtyConnector;
 
   public TtyBasedArrayDataStream(final TtyConnector ttyConnector) {
-    super(new char[1024], 0, 0);
+    super(new char[INITIAL_BUFFER_SIZE], 0, 0);
     myTtyConnector = ttyConnector;
   }
 
@@ -24,6 +28,12 @@ public class TtyBasedArrayDataStream extends ArrayTerminalDataStream {
       myLength = 0;
       throw new EOF();
     }
+    if (myLength == myBuf.length && myBuf.length < MAX_BUFFER_SIZE) {
+      // more is likely waiting, read it in one go next time
+      char[] buf = new char[myBuf.length * 2];
+      System.arraycopy(myBuf, 0, buf, 0, myLength);
+      myBuf = buf;
+    }
   }
 
   public char getChar() throws IOException {
@@ -40,4 +50,13 @@ public class TtyBasedArrayDataStream extends ArrayTerminalDataStream {
 
     return super.readNonControlCharacters(maxChars);
   }
+
+  @Override
+  public int writeNonControlCharacters(int maxChars, Terminal terminal) throws IOException {
+    if (myLength == 0) {
+      fillBuf();
+    }
+
+    return super.writeNonControlCharacters(maxChars, terminal);
+  }
 }
\ No newline at end of file
@@ -0,0 +1,186 @@
+package com.jediterm.terminal;
+
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+
+import java.awt.*;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+
+/**
+ * Reads the output of a {@link TtyConnector} on a thread of its own into a bounded buffer, so the emulator works
+ * through what was read before while more is read and decoded. Everything else goes to the connector as it is.
+ * <p/>
+ * The reader stops reading while the buffer is full, so output the emulator cannot keep up with is left to the
+ * connector, which has to hold it back without holding up anything else: a pty stops the program writing it, an SSH
+ * connector stops opening the window of its channel, so the server stops sending on that channel only.
+ */
+public class TtyInputPipe implements TtyConnector {
+  private static final Logger LOG = org.slf4j.LoggerFactory.getLogger(TtyInputPipe.class);
+
+  public static final int DEFAULT_CAPACITY = 256 * 1024;
+
+  private final TtyConnector myTtyConnector;
+
+  private final Object myLock = new Object();
+  private final char[] myBuf;
+  // read position and number of characters buffered, guarded by myLock
+  private int myHead;
+  private int myCount;
+  private boolean myEof;
+  private boolean myClosed;
+  private IOException myError;
+
+  private Thread myReader;
+
+  public TtyInputPipe(@NotNull TtyConnector ttyConnector) {
+    this(ttyConnector, DEFAULT_CAPACITY);
+  }
+
+  public TtyInputPipe(@NotNull TtyConnector ttyConnector, int capacity) {
+    myTtyConnector = ttyConnector;
+    myBuf = new char[capacity];
+  }
+
+  /**
+   * Takes what was read so far, up to {@code length} characters, and waits for more if nothing was.
+   *
+   * @return number of characters read, -1 once the connector has no more output
+   */
+  @Override
+  public int read(char[] buf, int offset, int length) throws IOException {
+    synchronized (myLock) {
+      if (myReader == null) {
+        // connectors are only readable after init, which happens right before the emulator starts reading
+        myReader = new Thread(this::readConnector, "TtyReader-" + myTtyConnector.getName());
+        myReader.setDaemon(true);
+        myReader.start();
+      }
+      while (myCount == 0 && !myEof) {
+        try {
+          myLock.wait();
+        }
+        catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new InterruptedIOException();
+        }
+      }
+      if (myCount == 0) {
+        if (myError != null) {
+          throw myError;
+        }
+        return -1;
+      }
+
+      int count = Math.min(length, myCount);
+      int first = Math.min(count, myBuf.length - myHead);
+      System.arraycopy(myBuf, myHead, buf, offset, first);
+      System.arraycopy(myBuf, 0, buf, offset + first, count - first);
+      myHead = (myHead + count) % myBuf.length;
+      myCount -= count;
+      myLock.notifyAll();
+      return count;
+    }
+  }
+
+  /**
+   * @return number of characters read from the connector that were not taken yet
+   */
+  public int available() {
+    synchronized (myLock) {
+      return myCount;
+    }
+  }
+
+  private void readConnector() {
+    try {
+      while (true) {
+        int tail;
+        int free;
+        synchronized (myLock) {
+          while (myCount == myBuf.length && !myClosed) {
+            myLock.wait();
+          }
+          if (myClosed) {
+            break;
+          }
+          tail = (myHead + myCount) % myBuf.length;
+          free = Math.min(myBuf.length - myCount, myBuf.length - tail);
+        }
+
+        // the emulator does not touch the free part of the buffer, it is filled without holding the lock
+        int count = myTtyConnector.read(myBuf, tail, free);
+        if (count <= 0) {
+          break;
+        }
+
+        synchronized (myLock) {
+          myCount += count;
+          myLock.notifyAll();
+        }
+      }
+    }
+    catch (IOException e) {
+      synchronized (myLock) {
+        myError = e;
+      }
+      if (myTtyConnector.isConnected()) {
+        LOG.debug("Cannot read from " + myTtyConnector.getName(), e);
+      }
+    }
+    catch (InterruptedException e) {
+      LOG.debug("Reader of " + myTtyConnector.getName() + " interrupted");
+    }
+    finally {
+      synchronized (myLock) {
+        myEof = true;
+        myLock.notifyAll();
+      }
+    }
+  }
+
+  @Override
+  public boolean init(Questioner q) {
+    return myTtyConnector.init(q);
+  }
+
+  @Override
+  public void close() {
+    synchronized (myLock) {
+      // no one reads the buffer any more, the reader must not wait for room in it
+      myClosed = true;
+      myLock.notifyAll();
+    }
+    myTtyConnector.close();
+  }
+
+  @Override
+  public void resize(Dimension termSize, Dimension pixelSize) {
+    myTtyConnector.resize(termSize, pixelSize);
+  }
+
+  @Override
+  public String getName() {
+    return myTtyConnector.getName();
+  }
+
+  @Override
+  public void write(byte[] bytes) throws IOException {
+    myTtyConnector.write(bytes);
+  }
+
+  @Override
+  public boolean isConnected() {
+    return myTtyConnector.isConnected();
+  }
+
+  @Override
+  public void write(String string) throws IOException {
+    myTtyConnector.write(string);
+  }
+
+  @Override
+  public int waitFor() throws InterruptedException {
+    return myTtyConnector.waitFor();
+  }
+}
@@ -84,9 +84,7 @@ public class JediEmulator extends DataStreamIteratingEmulator {
           unhandledLogThrottler(sb.toString());
         } else { // Plain characters
           myDataStream.pushChar(ch);
-          String nonControlCharacters = myDataStream.readNonControlCharacters(terminal.distanceToLineEnd());
-
-          terminal.writeCharacters(nonControlCharacters);
+          myDataStream.writeNonControlCharacters(terminal.distanceToLineEnd(), terminal);
         }
         break;
     }
@@ -167,6 +167,27 @@ public final class CharacterSets {
 
   // METHODS
 
+  /**
+   * Tells whether {@link #getChar} returns all the given characters as they
+   * are, which is the case for text in the default character sets.
+   *
+   * @param chars  the characters to map;
+   * @param offset the index of the first character;
+   * @param length the number of characters;
+   * @param gl     the GL graphic set, cannot be <code>null</code>.
+   * @return <code>true</code> if none of the characters is mapped.
+   */
+  public static boolean mapsToItself(char[] chars, int offset, int length, GraphicSet gl) {
+    boolean glMapsToItself = gl.getDesignation() == CharacterSet.ASCII;
+    for (int i = offset; i < offset + length; i++) {
+      char ch = chars[i];
+      if (ch <= C0_END || ch >= C1_START && ch <= C1_END || !glMapsToItself && ch >= GL_START && ch <= GL_END) {
+        return false;
+      }
+    }
+    return true;
+  }
+
   /**
    * Returns the character mapping for a given original value using the given
    * graphic sets GL and GR.
@@ -79,6 +79,18 @@ public class GraphicSetState {
     return CharacterSets.getChar(ch, getGL(), getGR());
   }
 
+  /**
+   * Tells whether {@link #map(char)} would return all the given characters as they are.
+   *
+   * @param chars the characters to map.
+   * @param offset the index of the first character.
+   * @param length the number of characters.
+   * @return <code>true</code> if none of the characters is mapped.
+   */
+  public boolean mapsToItself(char[] chars, int offset, int length) {
+    return myGlOverride == null && CharacterSets.mapsToItself(chars, offset, length, myGL);
+  }
+
   /**
    * Overrides the GL graphic set for the next written character.
    *
@@ -89,11 +89,11 @@ public class CharBuffer implements Iterable<Character>, CharSequence {
   }
 
   public boolean isNul() {
-    return myLength > 0 && myBuf[0] == CharUtils.NUL_CHAR;
+    return myLength > 0 && myBuf[myStart] == CharUtils.NUL_CHAR;
   }
 
   public void unNullify() {
-    Arrays.fill(myBuf, CharUtils.EMPTY_CHAR);
+    Arrays.fill(myBuf, myStart, myStart + myLength, CharUtils.EMPTY_CHAR);
   }
 
   @Override
@@ -0,0 +1,312 @@
+package com.jediterm.terminal.model;
+
+import com.jcraft.jzlib.Deflater;
+import com.jcraft.jzlib.DeflaterOutputStream;
+import com.jcraft.jzlib.InflaterInputStream;
+import com.jcraft.jzlib.JZlib;
+import com.jediterm.terminal.TextStyle;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.annotations.TestOnly;
+import org.slf4j.Logger;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Oldest lines of a {@link LinesBuffer}, frozen into chunks of {@link #CHUNK_LINES} lines compressed with Deflate. Once
+ * the compressed chunks take more than {@link #HEAP_BYTES} the oldest ones are spilled to a temporary file, which is
+ * deleted when the lines are cleared. Chunks are decompressed again when their lines are asked for, the last few stay
+ * decompressed.
+ * <p/>
+ * The lines handed out are copies, changes to them are lost once their chunk is decompressed again.
+ */
+final class FrozenLines {
+  private static final Logger LOG = org.slf4j.LoggerFactory.getLogger(FrozenLines.class);
+
+  static final int CHUNK_LINES = 1024;
+
+  private static final int HEAP_BYTES = 8 << 20;
+  private static final int DECODED_CHUNKS = 4;
+
+  private final int myHeapBytes;
+
+  private final List<Chunk> myChunks = new ArrayList<>();
+  // lines already removed from the first chunk
+  private int myFirstLine;
+
+  private long myChunksOnHeapBytes;
+  // the first chunks are in the spill file, in order
+  private int mySpilledChunks;
+  private FileChannel mySpillFile;
+  private Path mySpillPath;
+  private long mySpillStart;
+  private long mySpillEnd;
+
+  private final Map<Chunk, TerminalLine[]> myDecoded = new LinkedHashMap<Chunk, TerminalLine[]>(8, 0.75f, true) {
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<Chunk, TerminalLine[]> eldest) {
+      return size() > DECODED_CHUNKS;
+    }
+  };
+
+  FrozenLines() {
+    this(HEAP_BYTES);
+  }
+
+  /**
+   * @param heapBytes compressed bytes to keep on the heap before chunks are spilled to disk
+   */
+  FrozenLines(int heapBytes) {
+    myHeapBytes = heapBytes;
+  }
+
+  int getLineCount() {
+    return myChunks.size() * CHUNK_LINES - myFirstLine;
+  }
+
+  @NotNull
+  TerminalLine getLine(int index) {
+    int line = myFirstLine + index;
+    return decode(myChunks.get(line / CHUNK_LINES))[line % CHUNK_LINES];
+  }
+
+  /**
+   * Adds {@link #CHUNK_LINES} lines after the others.
+   */
+  void freeze(@NotNull List<TerminalLine> lines) {
+    List<TextStyle> linkStyles = new ArrayList<>();
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try {
+      // deflated in one go, the streams are slow with single bytes
+      ByteArrayOutputStream raw = new ByteArrayOutputStream(CHUNK_LINES * 128);
+      DataOutputStream out = new DataOutputStream(raw);
+      for (TerminalLine line : lines) {
+        line.writeTo(out, linkStyles);
+      }
+      DeflaterOutputStream deflater = new DeflaterOutputStream(bytes, new Deflater(JZlib.Z_BEST_SPEED));
+      raw.writeTo(deflater);
+      deflater.close();
+    } catch (IOException e) {
+      // not from a byte array
+      throw new IllegalStateException(e);
+    }
+
+    Chunk chunk = new Chunk(bytes.toByteArray(), linkStyles.toArray(new TextStyle[0]));
+    myChunks.add(chunk);
+    myChunksOnHeapBytes += chunk.myLength;
+    while (myChunksOnHeapBytes > myHeapBytes && mySpilledChunks < myChunks.size()) {
+      if (!spill(myChunks.get(mySpilledChunks))) {
+        break;
+      }
+      mySpilledChunks++;
+    }
+  }
+
+  /**
+   * Removes the last chunk and returns its lines.
+   */
+  @NotNull
+  List<TerminalLine> thawLast() {
+    int index = myChunks.size() - 1;
+    Chunk chunk = myChunks.get(index);
+    TerminalLine[] lines = decode(chunk);
+    int from = index == 0 ? myFirstLine : 0;
+    remove(index);
+    if (myChunks.isEmpty()) {
+      clear();
+    }
+    return Arrays.asList(lines).subList(from, lines.length);
+  }
+
+  void removeTopLines(int count) {
+    myFirstLine += count;
+    while (myFirstLine >= CHUNK_LINES && !myChunks.isEmpty()) {
+      remove(0);
+      myFirstLine -= CHUNK_LINES;
+    }
+    if (myChunks.isEmpty()) {
+      clear();
+    }
+  }
+
+  void clear() {
+    myChunks.clear();
+    myDecoded.clear();
+    myFirstLine = 0;
+    myChunksOnHeapBytes = 0;
+    mySpilledChunks = 0;
+    mySpillStart = 0;
+    mySpillEnd = 0;
+    if (mySpillFile != null) {
+      try {
+        mySpillFile.close();
+      } catch (IOException e) {
+        LOG.warn("Cannot close history file", e);
+      }
+      mySpillFile = null;
+      mySpillPath = null;
+    }
+  }
+
+  private void remove(int index) {
+    Chunk chunk = myChunks.remove(index);
+    myDecoded.remove(chunk);
+    if (chunk.myData != null) {
+      myChunksOnHeapBytes -= chunk.myLength;
+      return;
+    }
+    mySpilledChunks--;
+    if (mySpilledChunks == 0) {
+      mySpillStart = 0;
+      mySpillEnd = 0;
+    } else if (index == 0) {
+      mySpillStart = myChunks.get(0).myOffset;
+      if (mySpillStart > Math.max(mySpillEnd - mySpillStart, myHeapBytes)) {
+        compactSpillFile();
+      }
+    } else if (index == mySpilledChunks) {
+      mySpillEnd = chunk.myOffset;
+    }
+  }
+
+  private boolean spill(@NotNull Chunk chunk) {
+    try {
+      if (mySpillFile == null) {
+        // readable by the owner only on POSIX file systems, the history may hold passwords and keys
+        mySpillPath = Files.createTempFile("jediterm-history", ".bin");
+        mySpillFile = FileChannel.open(mySpillPath, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                StandardOpenOption.DELETE_ON_CLOSE);
+      }
+      write(ByteBuffer.wrap(chunk.myData), mySpillEnd);
+    } catch (IOException e) {
+      LOG.error("Cannot spill history to disk, keeping it in memory", e);
+      return false;
+    }
+    chunk.myOffset = mySpillEnd;
+    chunk.myData = null;
+    mySpillEnd += chunk.myLength;
+    myChunksOnHeapBytes -= chunk.myLength;
+    return true;
+  }
+
+  /**
+   * Moves the spilled chunks to the start of the file, the space of the removed ones is not reused otherwise.
+   */
+  private void compactSpillFile() {
+    try {
+      long offset = 0;
+      for (int i = 0; i < mySpilledChunks; i++) {
+        Chunk chunk = myChunks.get(i);
+        // lower offsets are written first, so no chunk is overwritten before it is read
+        write(read(chunk), offset);
+        chunk.myOffset = offset;
+        offset += chunk.myLength;
+      }
+      mySpillFile.truncate(offset);
+      mySpillStart = 0;
+      mySpillEnd = offset;
+    } catch (IOException e) {
+      LOG.error("Cannot compact history file", e);
+    }
+  }
+
+  @TestOnly
+  @Nullable
+  Path getSpillPath() {
+    return mySpillPath;
+  }
+
+  @TestOnly
+  long getSpillStart() {
+    return mySpillStart;
+  }
+
+  @TestOnly
+  long getSpillEnd() {
+    return mySpillEnd;
+  }
+
+  @NotNull
+  private TerminalLine[] decode(@NotNull Chunk chunk) {
+    TerminalLine[] lines = myDecoded.get(chunk);
+    if (lines != null) {
+      return lines;
+    }
+    lines = new TerminalLine[CHUNK_LINES];
+    List<TextStyle> linkStyles = Arrays.asList(chunk.myLinkStyles);
+    try {
+      byte[] data = chunk.myData != null ? chunk.myData : read(chunk).array();
+      DataInputStream in = new DataInputStream(new ByteArrayInputStream(inflate(data)));
+      for (int i = 0; i < CHUNK_LINES; i++) {
+        lines[i] = TerminalLine.readFrom(in, linkStyles);
+      }
+    } catch (IOException e) {
+      LOG.error("Cannot read history lines", e);
+      for (int i = 0; i < CHUNK_LINES; i++) {
+        if (lines[i] == null) {
+          lines[i] = TerminalLine.createEmpty();
+        }
+      }
+    }
+    myDecoded.put(chunk, lines);
+    return lines;
+  }
+
+  @NotNull
+  private static byte[] inflate(@NotNull byte[] data) throws IOException {
+    ByteArrayOutputStream raw = new ByteArrayOutputStream(data.length * 4);
+    InflaterInputStream in = new InflaterInputStream(new ByteArrayInputStream(data));
+    byte[] buffer = new byte[8192];
+    int count;
+    while ((count = in.read(buffer, 0, buffer.length)) > 0) {
+      raw.write(buffer, 0, count);
+    }
+    return raw.toByteArray();
+  }
+
+  @NotNull
+  private ByteBuffer read(@NotNull Chunk chunk) throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate(chunk.myLength);
+    while (buffer.hasRemaining()) {
+      if (mySpillFile.read(buffer, chunk.myOffset + buffer.position()) < 0) {
+        throw new IOException("History file is shorter than expected");
+      }
+    }
+    buffer.flip();
+    return buffer;
+  }
+
+  private void write(@NotNull ByteBuffer buffer, long offset) throws IOException {
+    while (buffer.hasRemaining()) {
+      mySpillFile.write(buffer, offset + buffer.position());
+    }
+  }
+
+  private static final class Chunk {
+    // null once spilled
+    private byte[] myData;
+    private long myOffset;
+    private final int myLength;
+    private final TextStyle[] myLinkStyles;
+
+    private Chunk(@NotNull byte[] data, @NotNull TextStyle[] linkStyles) {
+      myData = data;
+      myLength = data.length;
+      myLinkStyles = linkStyles;
+    }
+  }
+}
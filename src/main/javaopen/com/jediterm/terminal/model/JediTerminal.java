@@ -118,17 +118,32 @@ public class JediTerminal implements Terminal, TerminalMouseListener, TerminalCo
 
   @Override
   public void writeCharacters(String string) {
-    writeDecodedCharacters(decodeUsingGraphicalState(string));
+    char[] chars = string.toCharArray();
+    writeCharacters(chars, 0, chars.length);
+  }
+
+  @Override
+  public void writeCharacters(char[] buf, int offset, int length) {
+    if (myGraphicSetState.mapsToItself(buf, offset, length)) {
+      writeDecodedCharacters(buf, offset, length);
+    } else {
+      char[] chars = decodeUsingGraphicalState(buf, offset, length);
+      writeDecodedCharacters(chars, 0, chars.length);
+    }
   }
 
   private void writeDecodedCharacters(char[] string) {
+    writeDecodedCharacters(string, 0, string.length);
+  }
+
+  private void writeDecodedCharacters(char[] buf, int offset, int length) {
     myTerminalTextBuffer.lock();
     try {
       wrapLines();
       scrollY();
 
-      if (string.length != 0) {
-        CharBuffer characters = newCharBuf(string);
+      if (length != 0) {
+        CharBuffer characters = newCharBuf(buf, offset, length);
         myTerminalTextBuffer.writeString(myCursorX, myCursorY, characters);
         myCursorX += characters.length();
       }
@@ -145,13 +160,13 @@ public class JediTerminal implements Terminal, TerminalMouseListener, TerminalCo
   }
 
 
-  private char[] decodeUsingGraphicalState(String string) {
-    StringBuilder result = new StringBuilder();
-    for (char c : string.toCharArray()) {
-      result.append(myGraphicSetState.map(c));
+  private char[] decodeUsingGraphicalState(char[] buf, int offset, int length) {
+    char[] result = new char[length];
+    for (int i = 0; i < length; i++) {
+      result[i] = myGraphicSetState.map(buf[offset + i]);
     }
 
-    return result.toString().toCharArray();
+    return result;
   }
 
   public void writeUnwrappedString(String string) {
@@ -1094,27 +1109,33 @@ public class JediTerminal implements Terminal, TerminalMouseListener, TerminalCo
 
   @NotNull
   private CharBuffer newCharBuf(char[] str) {
-    int dwcCount = CharUtils.countDoubleWidthCharacters(str, 0, str.length, myDisplay.ambiguousCharsAreDoubleWidth());
-
-    char[] buf;
-
-    if (dwcCount > 0) {
-      // Leave gaps for the private use "DWC" character, which simply tells the rendering code to advance one cell.
-      buf = new char[str.length + dwcCount];
-
-      int j = 0;
-      for (int i = 0; i < str.length; i++) {
-        buf[j] = str[i];
-        int codePoint = Character.codePointAt(str, i);
-        boolean doubleWidthCharacter = CharUtils.isDoubleWidthCharacter(codePoint, myDisplay.ambiguousCharsAreDoubleWidth());
-        if (doubleWidthCharacter) {
-          j++;
-          buf[j] = CharUtils.DWC;
-        }
+    return newCharBuf(str, 0, str.length);
+  }
+
+  /**
+   * @return the characters as they are if none of them is double width, the buffer is not copied then
+   */
+  @NotNull
+  private CharBuffer newCharBuf(char[] str, int offset, int length) {
+    int dwcCount = CharUtils.countDoubleWidthCharacters(str, offset, length, myDisplay.ambiguousCharsAreDoubleWidth());
+
+    if (dwcCount == 0) {
+      return new CharBuffer(str, offset, length);
+    }
+
+    // Leave gaps for the private use "DWC" character, which simply tells the rendering code to advance one cell.
+    char[] buf = new char[length + dwcCount];
+
+    int j = 0;
+    for (int i = offset; i < offset + length; i++) {
+      buf[j] = str[i];
+      int codePoint = Character.codePointAt(str, i);
+      boolean doubleWidthCharacter = CharUtils.isDoubleWidthCharacter(codePoint, myDisplay.ambiguousCharsAreDoubleWidth());
+      if (doubleWidthCharacter) {
         j++;
+        buf[j] = CharUtils.DWC;
       }
-    } else {
-      buf = str;
+      j++;
     }
     return new CharBuffer(buf, 0, buf.length);
   }
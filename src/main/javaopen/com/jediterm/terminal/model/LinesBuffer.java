@@ -1,6 +1,5 @@
 package com.jediterm.terminal.model;
 
-import com.google.common.collect.Lists;
 import com.jediterm.terminal.StyledTextConsumer;
 import com.jediterm.terminal.TextStyle;
 import com.jediterm.terminal.model.TerminalLine.TextEntry;
@@ -9,47 +8,68 @@ import org.slf4j.Logger;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
-import javax.swing.*;
 import java.util.ArrayList;
 import java.util.List;
 
 /**
- * Holds styled characters lines
+ * Holds styled characters lines in a circular array, so lines are appended at the bottom and dropped from the top in
+ * constant time, which is what a full scrollback does for every new line of output.
+ * <p/>
+ * A buffer can keep just its most recent lines like that and freeze the older ones into compressed chunks, see
+ * {@link FrozenLines}. Indexes count the frozen lines first.
  */
 public class LinesBuffer {
   private static final Logger LOG = org.slf4j.LoggerFactory.getLogger(LinesBuffer.class);
 
   public static final int DEFAULT_MAX_LINES_COUNT = 5000;
 
+  private static final int INITIAL_CAPACITY = 16;
+
   // negative number means no limit
   private int myBufferMaxLinesCount = DEFAULT_MAX_LINES_COUNT;
 
-  private ArrayList<TerminalLine> myLines = Lists.newArrayList();
+  // the capacity is a power of two, line i is at (myHead + i) & (myLines.length - 1)
+  private TerminalLine[] myLines = new TerminalLine[INITIAL_CAPACITY];
+  private int myHead;
+  private int mySize;
+
+  // lines kept in myLines before older ones are frozen, negative if they are not
+  private final int myHotLinesCount;
+  @Nullable
+  private final FrozenLines myFrozenLines;
 
   @Nullable
   private final TextProcessing myTextProcessing;
 
   public LinesBuffer(@Nullable TextProcessing textProcessing) {
-    myTextProcessing = textProcessing;
+    this(DEFAULT_MAX_LINES_COUNT, textProcessing);
   }
 
   public LinesBuffer(int bufferMaxLinesCount, @Nullable TextProcessing textProcessing) {
+    this(bufferMaxLinesCount, -1, textProcessing);
+  }
+
+  /**
+   * @param hotLinesCount number of the most recent lines kept as they are, at least {@link FrozenLines#CHUNK_LINES},
+   *                      older ones are frozen into compressed chunks; negative to keep all lines as they are
+   */
+  public LinesBuffer(int bufferMaxLinesCount, int hotLinesCount, @Nullable TextProcessing textProcessing) {
     myBufferMaxLinesCount = bufferMaxLinesCount;
+    // the last lines of the history are still edited, when links are found in them for instance
+    myHotLinesCount = Math.max(hotLinesCount, FrozenLines.CHUNK_LINES);
+    myFrozenLines = hotLinesCount >= 0 ? new FrozenLines() : null;
     myTextProcessing = textProcessing;
   }
 
   public synchronized String getLines() {
     final StringBuilder sb = new StringBuilder();
 
-    boolean first = true;
-
-    for (TerminalLine line : myLines) {
-      if (!first) {
+    for (int i = 0; i < getLineCount(); i++) {
+      if (i > 0) {
         sb.append("\n");
       }
 
-      sb.append(line.getText());
-      first = false;
+      sb.append(line(i).getText());
     }
 
     return sb.toString();
@@ -66,23 +86,30 @@ public class LinesBuffer {
   }
 
   private synchronized void addLine(@NotNull TerminalLine line) {
-    if (myBufferMaxLinesCount > 0 && myLines.size() >= myBufferMaxLinesCount) {
-      removeTopLines(1);
+    if (myBufferMaxLinesCount > 0 && getLineCount() >= myBufferMaxLinesCount) {
+      removeTopLines(getLineCount() - myBufferMaxLinesCount + 1);
     }
 
-    myLines.add(line);
+    ensureCapacity(mySize + 1);
+    mySize++;
+    set(mySize - 1, line);
+    freezeOldLines();
   }
 
   public synchronized int getLineCount() {
-    return myLines.size();
+    return getFrozenLineCount() + mySize;
   }
 
   public synchronized void removeTopLines(int count) {
-    if (count >= myLines.size()) { // remove all lines
-      myLines = Lists.newArrayList();
-    } else {
-      myLines = Lists.newArrayList(myLines.subList(count, myLines.size()));
+    if (count >= getLineCount()) { // remove all lines
+      clearAll();
+      return;
+    }
+    int frozen = Math.min(count, getFrozenLineCount());
+    if (frozen > 0) {
+      myFrozenLines.removeTopLines(frozen);
     }
+    removeHotTopLines(count - frozen);
   }
 
   public String getLineText(int row) {
@@ -92,54 +119,46 @@ public class LinesBuffer {
   }
 
   public synchronized void insertLines(int y, int count, int lastLine, @NotNull TextEntry filler) {
-    LinesBuffer tail = new LinesBuffer(myTextProcessing);
-
-    if (lastLine < getLineCount() - 1) {
-      moveBottomLinesTo(getLineCount() - lastLine - 1, tail);
-    }
-
-    LinesBuffer head = new LinesBuffer(myTextProcessing);
-    if (y > 0) {
-      moveTopLinesTo(y, head);
-    }
-
-    for (int i = 0; i < count; i++) {
-      head.addNewLine(filler);
+    thawAll();
+    // lines below lastLine stay, the ones shifted past it are dropped
+    int regionEnd = Math.min(lastLine + 1, mySize);
+    int at = Math.max(0, Math.min(y, regionEnd));
+    int inserted = Math.min(count, regionEnd - at);
+
+    removeRange(regionEnd - inserted, inserted);
+    openRange(at, inserted);
+    for (int i = 0; i < inserted; i++) {
+      set(at + i, new TerminalLine(filler));
     }
-
-    head.moveBottomLinesTo(head.getLineCount(), this);
-
-    removeBottomLines(count);
-
-    tail.moveTopLinesTo(tail.getLineCount(), this);
   }
 
   public synchronized LinesBuffer deleteLines(int y, int count, int lastLine, @NotNull TextEntry filler) {
-    LinesBuffer tail = new LinesBuffer(myTextProcessing);
-
-    if (lastLine < getLineCount() - 1) {
-      moveBottomLinesTo(getLineCount() - lastLine - 1, tail);
-    }
-
-    LinesBuffer head = new LinesBuffer(myTextProcessing);
-    if (y > 0) {
-      moveTopLinesTo(y, head);
-    }
-
-    int toRemove = Math.min(count, getLineCount());
-
     LinesBuffer removed = new LinesBuffer(myTextProcessing);
-    moveTopLinesTo(toRemove, removed);
+    deleteLines(y, count, lastLine, filler, removed);
+    return removed;
+  }
 
-    head.moveBottomLinesTo(head.getLineCount(), this);
+  /**
+   * Deletes lines like {@link #deleteLines(int, int, int, TextEntry)}, but adds them to the end of the given buffer
+   * instead of a new one, which is how lines scrolled off the screen go to the history.
+   */
+  public synchronized void deleteLines(int y, int count, int lastLine, @NotNull TextEntry filler,
+                                       @NotNull LinesBuffer removedTo) {
+    thawAll();
+    // lines below lastLine stay, the region is filled up from its bottom
+    int regionEnd = Math.min(lastLine + 1, mySize);
+    int at = Math.max(0, Math.min(y, regionEnd));
+    int toRemove = Math.min(count, regionEnd - at);
 
     for (int i = 0; i < toRemove; i++) {
-      addNewLine(filler);
+      removedTo.addLine(get(at + i));
     }
+    removeRange(at, toRemove);
 
-    tail.moveTopLinesTo(tail.getLineCount(), this);
-
-    return removed;
+    openRange(regionEnd - toRemove, toRemove);
+    for (int i = 0; i < toRemove; i++) {
+      set(regionEnd - toRemove + i, new TerminalLine(filler));
+    }
   }
 
   public synchronized void writeString(int x, int y, CharBuffer str, @NotNull TextStyle style) {
@@ -160,7 +179,12 @@ public class LinesBuffer {
 
   // used for reset, style not needed here (reset as well)
   public synchronized void clearAll() {
-    myLines.clear();
+    myLines = new TerminalLine[INITIAL_CAPACITY];
+    myHead = 0;
+    mySize = 0;
+    if (myFrozenLines != null) {
+      myFrozenLines.clear();
+    }
   }
 
   public synchronized void deleteCharacters(int x, int y, int count, @NotNull TextStyle style) {
@@ -191,33 +215,38 @@ public class LinesBuffer {
     if (firstLine<0) {
       throw new IllegalArgumentException("firstLine=" + firstLine + ", should be >0");
     }
-    for (int y = firstLine; y < Math.min(firstLine + count, myLines.size()); y++) {
-      myLines.get(y).process(y, consumer, startRow);
+    for (int y = firstLine; y < Math.min(firstLine + count, getLineCount()); y++) {
+      line(y).process(y, consumer, startRow);
     }
   }
 
   public synchronized void moveTopLinesTo(int count, final @NotNull LinesBuffer buffer) {
     count = Math.min(count, getLineCount());
-    buffer.addLines(myLines.subList(0, count));
+    buffer.addLines(subList(0, count));
     removeTopLines(count);
   }
 
   public synchronized void addLines(@NotNull List<TerminalLine> lines) {
+    int from = 0;
     if (myBufferMaxLinesCount > 0) {
       // adding more lines than max size
       if (lines.size() >= myBufferMaxLinesCount) {
-        int index = lines.size() - myBufferMaxLinesCount;
-        myLines = Lists.newArrayList(lines.subList(index, lines.size()));
-        return;
-      }
-
-      int count = myLines.size() + lines.size();
-      if (count >= myBufferMaxLinesCount) {
-        removeTopLines(count - myBufferMaxLinesCount);
+        clearAll();
+        from = lines.size() - myBufferMaxLinesCount;
+      } else {
+        int count = getLineCount() + lines.size();
+        if (count >= myBufferMaxLinesCount) {
+          removeTopLines(count - myBufferMaxLinesCount);
+        }
       }
     }
 
-    myLines.addAll(lines);
+    for (int i = from; i < lines.size(); i++) {
+      ensureCapacity(mySize + 1);
+      mySize++;
+      set(mySize - 1, lines.get(i));
+      freezeOldLines();
+    }
   }
 
   @NotNull
@@ -230,32 +259,42 @@ public class LinesBuffer {
     for (int i = getLineCount(); i <= row; i++) {
       addLine(TerminalLine.createEmpty());
     }
+    if (row >= getLineCount()) {
+      // the lines were trimmed again right away
+      throw new IndexOutOfBoundsException("Line " + row + " is past the limit of " + myBufferMaxLinesCount);
+    }
 
-    return myLines.get(row);
+    return line(row);
   }
 
   public synchronized void moveBottomLinesTo(int count, final @NotNull LinesBuffer buffer) {
     count = Math.min(count, getLineCount());
-    buffer.addLinesFirst(myLines.subList(getLineCount() - count, getLineCount()));
+    while (mySize < count) {
+      thawLastChunk();
+    }
+    buffer.addLinesFirst(subList(getLineCount() - count, getLineCount()));
 
     removeBottomLines(count);
   }
 
   private synchronized void addLinesFirst(@NotNull List<TerminalLine> lines) {
-    List<TerminalLine> list = Lists.newArrayList(lines);
-    list.addAll(myLines);
-    myLines = Lists.newArrayList(list);
+    thawAll();
+    openRange(0, lines.size());
+    for (int i = 0; i < lines.size(); i++) {
+      set(i, lines.get(i));
+    }
   }
 
   private synchronized void removeBottomLines(int count) {
-    myLines = Lists.newArrayList(myLines.subList(0, getLineCount() - count));
+    removeRange(mySize - count, count);
   }
 
   public int removeBottomEmptyLines(int ind, int maxCount) {
+    thawAll();
     int i = 0;
-    while ((maxCount - i) > 0 && (ind >= myLines.size() || myLines.get(ind).isNul())) {
-      if (ind < myLines.size()) {
-        myLines.remove(ind);
+    while ((maxCount - i) > 0 && (ind >= mySize || get(ind).isNul())) {
+      if (ind < mySize) {
+        removeRange(ind, 1);
       }
       ind--;
       i++;
@@ -263,4 +302,137 @@ public class LinesBuffer {
 
     return i;
   }
+
+  @NotNull
+  private List<TerminalLine> subList(int from, int to) {
+    List<TerminalLine> lines = new ArrayList<>(to - from);
+    for (int i = from; i < to; i++) {
+      lines.add(line(i));
+    }
+    return lines;
+  }
+
+  private int getFrozenLineCount() {
+    return myFrozenLines != null ? myFrozenLines.getLineCount() : 0;
+  }
+
+  @NotNull
+  private TerminalLine line(int index) {
+    int frozen = getFrozenLineCount();
+    return index < frozen ? myFrozenLines.getLine(index) : get(index - frozen);
+  }
+
+  private void freezeOldLines() {
+    if (myFrozenLines != null && mySize >= myHotLinesCount + FrozenLines.CHUNK_LINES) {
+      List<TerminalLine> lines = new ArrayList<>(FrozenLines.CHUNK_LINES);
+      for (int i = 0; i < FrozenLines.CHUNK_LINES; i++) {
+        lines.add(get(i));
+      }
+      myFrozenLines.freeze(lines);
+      removeHotTopLines(FrozenLines.CHUNK_LINES);
+    }
+  }
+
+  private void thawLastChunk() {
+    List<TerminalLine> lines = myFrozenLines.thawLast();
+    openRange(0, lines.size());
+    for (int i = 0; i < lines.size(); i++) {
+      set(i, lines.get(i));
+    }
+  }
+
+  /**
+   * Brings all frozen lines back into the circular array, only needed where lines are edited in the middle, which is
+   * not done with the scrollback.
+   */
+  private void thawAll() {
+    while (getFrozenLineCount() > 0) {
+      thawLastChunk();
+    }
+  }
+
+  private void removeHotTopLines(int count) {
+    if (count >= mySize) {
+      myLines = new TerminalLine[INITIAL_CAPACITY];
+      myHead = 0;
+      mySize = 0;
+      return;
+    }
+    for (int i = 0; i < count; i++) {
+      set(i, null);
+    }
+    myHead = (myHead + count) & (myLines.length - 1);
+    mySize -= count;
+  }
+
+  private TerminalLine get(int index) {
+    return myLines[(myHead + index) & (myLines.length - 1)];
+  }
+
+  private void set(int index, TerminalLine line) {
+    myLines[(myHead + index) & (myLines.length - 1)] = line;
+  }
+
+  private void ensureCapacity(int size) {
+    if (size <= myLines.length) {
+      return;
+    }
+    int capacity = myLines.length;
+    while (capacity < size) {
+      capacity <<= 1;
+    }
+    TerminalLine[] lines = new TerminalLine[capacity];
+    for (int i = 0; i < mySize; i++) {
+      lines[i] = get(i);
+    }
+    myLines = lines;
+    myHead = 0;
+  }
+
+  /**
+   * Removes lines {@code [from, from + count)}, moving whichever side of them is shorter.
+   */
+  private void removeRange(int from, int count) {
+    if (count <= 0) {
+      return;
+    }
+    int after = mySize - from - count;
+    if (from < after) {
+      for (int i = from - 1; i >= 0; i--) {
+        set(i + count, get(i));
+      }
+      removeHotTopLines(count);
+    } else {
+      for (int i = 0; i < after; i++) {
+        set(from + i, get(from + count + i));
+      }
+      for (int i = mySize - count; i < mySize; i++) {
+        set(i, null);
+      }
+      mySize -= count;
+    }
+  }
+
+  /**
+   * Makes room for {@code count} lines at {@code at}, moving whichever side is shorter. The new lines are null until
+   * set.
+   */
+  private void openRange(int at, int count) {
+    if (count <= 0) {
+      return;
+    }
+    ensureCapacity(mySize + count);
+    if (at < mySize - at) {
+      myHead = (myHead - count) & (myLines.length - 1);
+      mySize += count;
+      for (int i = 0; i < at; i++) {
+        set(i, get(i + count));
+      }
+    } else {
+      mySize += count;
+      for (int i = mySize - 1; i >= at + count; i--) {
+        set(i, get(i - count));
+      }
+    }
+  }
 }
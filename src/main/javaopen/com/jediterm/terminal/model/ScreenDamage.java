@@ -0,0 +1,117 @@
+package com.jediterm.terminal.model;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.BitSet;
+
+/**
+ * Screen rows changed since the view last took the damage, so that only those rows have to be drawn again.
+ * Scrolling of one region is kept as a single shift: the view can move the pixels it already has and draw just the
+ * rows that scrolled in. Rows are screen buffer indexes, 0 being the top line of the screen.
+ */
+public final class ScreenDamage {
+  private final BitSet myRows = new BitSet();
+  private boolean myFull;
+  private int myScrollTop;
+  private int myScrollBottom;
+  private int myScrollDy;
+
+  ScreenDamage(boolean full) {
+    myFull = full;
+  }
+
+  synchronized void rows(int fromRow, int toRow) {
+    if (!myFull && toRow > fromRow) {
+      myRows.set(Math.max(fromRow, 0), toRow);
+    }
+  }
+
+  synchronized void all() {
+    myFull = true;
+    myRows.clear();
+    myScrollDy = 0;
+  }
+
+  /**
+   * Content of rows {@code [top, bottom)} moved by {@code dy} rows, positive being down. A second scrolled region
+   * that differs from the first one is not tracked and damages the whole screen.
+   */
+  synchronized void scroll(int top, int bottom, int dy) {
+    if (myFull || dy == 0 || top >= bottom) {
+      return;
+    }
+    if (myScrollDy != 0 && (top != myScrollTop || bottom != myScrollBottom)) {
+      all();
+      return;
+    }
+    myScrollTop = top;
+    myScrollBottom = bottom;
+    myScrollDy += dy;
+
+    // rows damaged earlier move along with their content
+    BitSet moved = new BitSet();
+    for (int row = myRows.nextSetBit(top); row >= 0 && row < bottom; row = myRows.nextSetBit(row + 1)) {
+      int to = row + dy;
+      if (to >= top && to < bottom) {
+        moved.set(to);
+      }
+    }
+    myRows.clear(top, bottom);
+    myRows.or(moved);
+
+    // and the rows scrolled in have to be drawn
+    if (dy > 0) {
+      myRows.set(top, Math.min(top + dy, bottom));
+    } else {
+      myRows.set(Math.max(bottom + dy, top), bottom);
+    }
+  }
+
+  /**
+   * Returns the damage collected so far and starts over with an undamaged screen.
+   */
+  @NotNull
+  synchronized ScreenDamage take() {
+    ScreenDamage taken = new ScreenDamage(myFull);
+    taken.myRows.or(myRows);
+    taken.myScrollTop = myScrollTop;
+    taken.myScrollBottom = myScrollBottom;
+    taken.myScrollDy = myScrollDy;
+
+    myFull = false;
+    myRows.clear();
+    myScrollDy = 0;
+    return taken;
+  }
+
+  /**
+   * @return true if every row has to be drawn, the other properties are meaningless then
+   */
+  public boolean isFull() {
+    return myFull;
+  }
+
+  public boolean isEmpty() {
+    return !myFull && myScrollDy == 0 && myRows.isEmpty();
+  }
+
+  /**
+   * @return rows to draw, after the scroll shift has been applied
+   */
+  @NotNull
+  public BitSet getRows() {
+    return myRows;
+  }
+
+  public int getScrollTop() {
+    return myScrollTop;
+  }
+
+  public int getScrollBottom() {
+    return myScrollBottom;
+  }
+
+  public int getScrollDy() {
+    return myScrollDy;
+  }
+}
@@ -14,7 +14,7 @@ public class StyleState {
   }
 
   public TextStyle getCurrent() {
-    return TextStyle.getCanonicalStyle(getMergedStyle());
+    return getMergedStyle();
   }
 
   @NotNull
@@ -66,7 +66,8 @@ public class StyleState {
 
   private TextStyle getMergedStyle() {
     if (myMergedStyle == null) {
-      myMergedStyle = merge(myCurrentStyle, myDefaultStyle);
+      // canonical until the style changes, so the lookup is not repeated for every write
+      myMergedStyle = TextStyle.getCanonicalStyle(merge(myCurrentStyle, myDefaultStyle));
     }
     return myMergedStyle;
   }
@@ -1,34 +1,55 @@
 package com.jediterm.terminal.model;
 
 import com.google.common.base.Joiner;
-import com.google.common.collect.Lists;
+import com.jediterm.terminal.HyperlinkStyle;
 import com.jediterm.terminal.StyledTextConsumer;
 import com.jediterm.terminal.TextStyle;
+import com.jediterm.terminal.TextStyleTable;
 import com.jediterm.terminal.util.CharUtils;
-import com.jediterm.terminal.util.Pair;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Collection;
-import java.util.Collections;
-import java.util.Iterator;
+import java.util.Arrays;
+import java.util.List;
 import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 /**
+ * Cells of a line stored column-wise: characters in one array and ids of their styles, see {@link TextStyleTable}, in
+ * another which is only there once the line has more than one style. Edits are done in place, runs of equally styled
+ * text are collected when the line is processed and kept until it changes.
+ * <p/>
+ * NUL cells can only be at the end of the line, writing text after them turns them into spaces.
+ *
  * @author traff
  */
 public class TerminalLine {
+  private static final char[] NO_CHARS = new char[0];
 
-  private TextEntries myTextEntries = new TextEntries();
+  private char[] myChars = NO_CHARS;
+  // null while all cells have myStyle
+  private int[] myStyles;
+  private int myStyle;
+  private int myLength;
+  // cells from here to myLength are NUL
+  private int myTextLength;
+
+  // hyperlink styles and those the style table has no room for, the line refers to them by negative ids
+  private TextStyle[] myLinkStyles;
+  private int myLinkStyleCount;
+
+  private List<Run> myRuns;
   private boolean myWrapped = false;
 
   public TerminalLine() {
   }
 
   public TerminalLine(@NotNull TextEntry entry) {
-    myTextEntries.add(entry);
+    appendEntry(entry);
   }
 
   public static TerminalLine createEmpty() {
@@ -36,23 +57,11 @@ public class TerminalLine {
   }
 
   public synchronized String getText() {
-    final StringBuilder sb = new StringBuilder();
-
-    for (TerminalLine.TextEntry textEntry : Lists.newArrayList(myTextEntries)) {
-      // NUL can only be at the end
-      if (textEntry.getText().isNul()) {
-        break;
-      } else {
-        sb.append(textEntry.getText());
-      }
-    }
-
-    return sb.toString();
+    return new String(myChars, 0, myTextLength);
   }
 
-  public char charAt(int x) {
-    String text = getText();
-    return x < text.length() ? text.charAt(x) : CharUtils.EMPTY_CHAR;
+  public synchronized char charAt(int x) {
+    return x < myTextLength ? myChars[x] : CharUtils.EMPTY_CHAR;
   }
 
   public boolean isWrapped() {
@@ -64,8 +73,15 @@ public class TerminalLine {
   }
 
   public synchronized void clear(@NotNull TextEntry filler) {
-    myTextEntries.clear();
-    myTextEntries.add(filler);
+    myLength = 0;
+    myTextLength = 0;
+    myStyles = null;
+    myStyle = 0;
+    if (myLinkStyles != null) {
+      Arrays.fill(myLinkStyles, 0, myLinkStyleCount, null);
+      myLinkStyleCount = 0;
+    }
+    appendEntry(filler);
     setWrapped(false);
   }
 
@@ -74,63 +90,33 @@ public class TerminalLine {
   }
 
   private synchronized void writeCharacters(int x, @NotNull TextStyle style, @NotNull CharBuffer characters) {
-    int len = myTextEntries.length();
+    int styleId = getStyleId(style);
+    int length = characters.length();
+    int end = x + length;
+    ensureCapacity(end);
 
-    if (x >= len) {
+    if (x > myLength) {
       // fill the gap
-      if (x - len > 0) {
-        myTextEntries.add(new TextEntry(TextStyle.EMPTY, new CharBuffer(CharUtils.NUL_CHAR, x - len)));
-      }
-      myTextEntries.add(new TextEntry(style, characters));
-    } else {
-      len = Math.max(len, x + characters.length());
-      myTextEntries = merge(x, characters, style, myTextEntries, len);
-    }
-  }
-
-  private static TextEntries merge(int x, @NotNull CharBuffer str, @NotNull TextStyle style, @NotNull TextEntries entries, int lineLength) {
-    Pair<char[], TextStyle[]> pair = toBuf(entries, lineLength);
-
-    for (int i = 0; i < str.length(); i++) {
-      pair.first[i + x] = str.charAt(i);
-      pair.second[i + x] = style;
+      Arrays.fill(myChars, myLength, x, CharUtils.NUL_CHAR);
+      setStyle(myLength, x, 0);
+      myLength = x;
     }
+    System.arraycopy(characters.getBuf(), characters.getStart(), myChars, x, length);
+    setStyle(x, end, styleId);
+    myLength = Math.max(myLength, end);
 
-    return collectFromBuffer(pair.first, pair.second);
-  }
-
-  private static Pair<char[], TextStyle[]> toBuf(TextEntries entries, int lineLength) {
-    Pair<char[], TextStyle[]> pair = Pair.create(new char[lineLength], new TextStyle[lineLength]);
-
-
-    int p = 0;
-    for (TextEntry entry : entries) {
-      for (int i = 0; i < entry.getLength(); i++) {
-        pair.first[p + i] = entry.getText().charAt(i);
-        pair.second[p + i] = entry.getStyle();
-      }
-      p += entry.getLength();
-    }
-    return pair;
-  }
-
-  private static TextEntries collectFromBuffer(@NotNull char[] buf, @NotNull TextStyle[] styles) {
-    TextEntries result = new TextEntries();
-
-    TextStyle curStyle = styles[0];
-    int start = 0;
-
-    for (int i = 1; i < buf.length; i++) {
-      if (styles[i] != curStyle) {
-        result.add(new TextEntry(curStyle, new CharBuffer(buf, start, i - start)));
-        curStyle = styles[i];
-        start = i;
+    if (length > 0 && !characters.isNul()) {
+      if (x > myTextLength) {
+        Arrays.fill(myChars, myTextLength, x, CharUtils.EMPTY_CHAR);
       }
+      myTextLength = Math.max(myTextLength, end);
+    } else if (end >= myTextLength) {
+      myTextLength = Math.min(myTextLength, x);
+    } else {
+      // NUL can only be at the end of the line
+      Arrays.fill(myChars, x, end, CharUtils.EMPTY_CHAR);
     }
-
-    result.add(new TextEntry(curStyle, new CharBuffer(buf, start, buf.length - start)));
-
-    return result;
+    myRuns = null;
   }
 
   public synchronized void deleteCharacters(int x) {
@@ -138,141 +124,95 @@ public class TerminalLine {
   }
 
   public synchronized void deleteCharacters(int x, @NotNull TextStyle style) {
-    deleteCharacters(x, myTextEntries.length() - x, style);
+    deleteCharacters(x, myLength - x, style);
     // delete to the end of line : line is no more wrapped
     setWrapped(false);
   }
 
   public synchronized void deleteCharacters(int x, int count, @NotNull TextStyle style) {
-    int p = 0;
-    TextEntries newEntries = new TextEntries();
-
-    int remaining = count;
-
-    for (TextEntry entry : myTextEntries) {
-      if (remaining == 0) {
-        newEntries.add(entry);
-        continue;
-      }
-      int len = entry.getLength();
-      if (p + len <= x) {
-        p += len;
-        newEntries.add(entry);
-        continue;
+    if (x < myLength && count > 0) {
+      int removed = Math.min(count, myLength - x);
+      System.arraycopy(myChars, x + removed, myChars, x, myLength - x - removed);
+      if (myStyles != null) {
+        System.arraycopy(myStyles, x + removed, myStyles, x, myLength - x - removed);
       }
-      int dx = x - p; //>=0
-      if (dx > 0) {
-        //part of entry before x
-        newEntries.add(new TextEntry(entry.getStyle(), entry.getText().subBuffer(0, dx)));
-        p = x;
-      }
-      if (dx + remaining < len) {
-        //part that left after deleting count 
-        newEntries.add(new TextEntry(entry.getStyle(), entry.getText().subBuffer(dx + remaining, len - (dx + remaining))));
-        remaining = 0;
-      } else {
-        remaining -= (len - dx);
-        p = x;
+      myLength -= removed;
+      if (myTextLength > x) {
+        myTextLength = Math.max(x, myTextLength - removed);
       }
     }
     if (count > 0 && style != TextStyle.EMPTY) { // apply style to the end of the line
-      newEntries.add(new TextEntry(style, new CharBuffer(CharUtils.NUL_CHAR, count)));
+      int styleId = getStyleId(style);
+      ensureCapacity(myLength + count);
+      Arrays.fill(myChars, myLength, myLength + count, CharUtils.NUL_CHAR);
+      setStyle(myLength, myLength + count, styleId);
+      myLength += count;
     }
-
-    myTextEntries = newEntries;
+    myRuns = null;
   }
 
   public synchronized void insertBlankCharacters(int x, int count, int maxLen, @NotNull TextStyle style) {
-    int len = myTextEntries.length();
-    len = Math.min(len + count, maxLen);
-
-    char[] buf = new char[len];
-    TextStyle[] styles = new TextStyle[len];
-
-    int p = 0;
-    for (TextEntry entry : myTextEntries) {
-      for (int i = 0; i < entry.getLength() && p < len; i++) {
-        if (p == x) {
-          for (int j = 0; j < count && p < len; j++) {
-            buf[p] = CharUtils.EMPTY_CHAR;
-            styles[p] = style;
-            p++;
-          }
-        }
-        if (p < len) {
-          buf[p] = entry.getText().charAt(i);
-          styles[p] = entry.getStyle();
-          p++;
-        }
-      }
-      if (p >= len) {
-        break;
+    int styleId = getStyleId(style);
+    int oldLength = myLength;
+    myLength = Math.min(oldLength + count, maxLen);
+    ensureCapacity(myLength);
+
+    int moved = Math.min(oldLength, myLength - count) - x;
+    if (moved > 0) {
+      System.arraycopy(myChars, x, myChars, x + count, moved);
+      if (myStyles != null) {
+        System.arraycopy(myStyles, x, myStyles, x + count, moved);
       }
     }
-
-    // if not inserted yet (ie. x > len)
-    for (; p < x && p < len; p++) {
-      buf[p] = CharUtils.EMPTY_CHAR;
-      styles[p] = TextStyle.EMPTY;
-      p++;
+    if (x > oldLength) {
+      // if not inserted yet (ie. x > len), the gap is NUL unless blanks follow it
+      Arrays.fill(myChars, oldLength, Math.min(x, myLength), x < myLength ? CharUtils.EMPTY_CHAR : CharUtils.NUL_CHAR);
+      setStyle(oldLength, Math.min(x, myLength), 0);
     }
-    for (; p < x + count && p < len; p++) {
-      buf[p] = CharUtils.EMPTY_CHAR;
-      styles[p] = style;
-      p++;
+    if (x < myLength) {
+      Arrays.fill(myChars, x, Math.min(x + count, myLength), CharUtils.EMPTY_CHAR);
+      setStyle(x, Math.min(x + count, myLength), styleId);
+      if (x <= myTextLength) {
+        myTextLength = Math.min(myTextLength + count, myLength);
+      } else {
+        // the blanks are text, NUL cells before them are not at the end any more
+        Arrays.fill(myChars, myTextLength, Math.min(x, oldLength), CharUtils.EMPTY_CHAR);
+        myTextLength = Math.min(x + count, myLength);
+      }
     }
-
-    myTextEntries = collectFromBuffer(buf, styles);
+    myRuns = null;
   }
 
   public synchronized void clearArea(int leftX, int rightX, @NotNull TextStyle style) {
     if (rightX == -1) {
-      rightX = myTextEntries.length();
+      rightX = myLength;
     }
     writeCharacters(leftX, style, new CharBuffer(
-            rightX >= myTextEntries.length() ? CharUtils.NUL_CHAR : CharUtils.EMPTY_CHAR,
+            rightX >= myLength ? CharUtils.NUL_CHAR : CharUtils.EMPTY_CHAR,
             rightX - leftX));
   }
 
   @Nullable
   public synchronized TextStyle getStyleAt(int x) {
-    int i = 0;
-
-    for (TextEntry te : myTextEntries) {
-      if (x >= i && x < i + te.getLength()) {
-        return te.getStyle();
-      }
-      i += te.getLength();
+    if (x < 0 || x >= myLength) {
+      return null;
     }
-
-    return null;
+    return getStyle(myStyles != null ? myStyles[x] : myStyle);
   }
 
   public synchronized void process(int y, StyledTextConsumer consumer, int startRow) {
-    int x = 0;
-    int nulIndex = -1;
-    for (TextEntry te : Lists.newArrayList(myTextEntries)) {
-      if (te.getText().isNul()) {
-        if (nulIndex < 0) {
-          nulIndex = x;
-        }
-        consumer.consumeNul(x, y, nulIndex, te.getStyle(), te.getText(), startRow);
+    for (Run run : getRuns()) {
+      if (run.myNul) {
+        consumer.consumeNul(run.myX, y, myTextLength, run.myStyle, run.myText, startRow);
       } else {
-        consumer.consume(x, y, te.getStyle(), te.getText(), startRow);
+        consumer.consume(run.myX, y, run.myStyle, run.myText, startRow);
       }
-      x += te.getLength();
     }
-    consumer.consumeQueue(x, y, nulIndex < 0 ? x : nulIndex, startRow);
+    consumer.consumeQueue(myLength, y, myTextLength, startRow);
   }
 
   public synchronized boolean isNul() {
-    for (TextEntry e : myTextEntries.entries()) {
-      if (!e.isNul()) {
-        return false;
-      }
-    }
-
-    return true;
+    return myTextLength == 0;
   }
 
   public void runWithLock(Runnable r) {
@@ -281,22 +221,237 @@ public class TerminalLine {
     }
   }
 
-  void forEachEntry(@NotNull Consumer<TextEntry> action) {
-    myTextEntries.forEach(action);
+  synchronized void forEachEntry(@NotNull Consumer<TextEntry> action) {
+    for (Run run : getRuns()) {
+      action.accept(new TextEntry(run.myStyle, run.myText));
+    }
   }
 
-  void appendEntry(@NotNull TextEntry entry) {
-    myTextEntries.add(entry);
+  synchronized void appendEntry(@NotNull TextEntry entry) {
+    writeCharacters(myLength, entry.getStyle(), entry.getText());
+  }
+
+  /**
+   * Writes the cells for {@link #readFrom}. Hyperlink styles cannot be written, they are added to {@code linkStyles}
+   * and referred to by their index there.
+   */
+  synchronized void writeTo(@NotNull DataOutput out, @NotNull List<TextStyle> linkStyles) throws IOException {
+    out.writeBoolean(myWrapped);
+    out.writeInt(myLength);
+    out.writeInt(myTextLength);
+    byte[] chars = new byte[myLength * 2];
+    for (int x = 0; x < myLength; x++) {
+      chars[2 * x] = (byte) (myChars[x] >> 8);
+      chars[2 * x + 1] = (byte) myChars[x];
+    }
+    out.write(chars);
+    if (myStyles == null) {
+      out.writeInt(1);
+      writeStyle(out, myStyle, myLength, linkStyles);
+      return;
+    }
+    int runs = 0;
+    for (int x = 0; x < myLength; x++) {
+      if (x == 0 || myStyles[x] != myStyles[x - 1]) {
+        runs++;
+      }
+    }
+    out.writeInt(runs);
+    for (int start = 0; start < myLength; ) {
+      int end = start + 1;
+      while (end < myLength && myStyles[end] == myStyles[start]) {
+        end++;
+      }
+      writeStyle(out, myStyles[start], end - start, linkStyles);
+      start = end;
+    }
+  }
+
+  private void writeStyle(@NotNull DataOutput out, int styleId, int length, @NotNull List<TextStyle> linkStyles)
+          throws IOException {
+    if (styleId < 0) {
+      TextStyle style = myLinkStyles[-1 - styleId];
+      int index = 0;
+      while (index < linkStyles.size() && linkStyles.get(index) != style) {
+        index++;
+      }
+      if (index == linkStyles.size()) {
+        linkStyles.add(style);
+      }
+      styleId = -1 - index;
+    }
+    out.writeInt(styleId);
+    out.writeInt(length);
+  }
+
+  @NotNull
+  static TerminalLine readFrom(@NotNull DataInput in, @NotNull List<TextStyle> linkStyles) throws IOException {
+    TerminalLine line = new TerminalLine();
+    line.myWrapped = in.readBoolean();
+    line.myLength = in.readInt();
+    line.myTextLength = in.readInt();
+    line.myChars = line.myLength > 0 ? new char[line.myLength] : NO_CHARS;
+    byte[] chars = new byte[line.myLength * 2];
+    in.readFully(chars);
+    for (int x = 0; x < line.myLength; x++) {
+      line.myChars[x] = (char) ((chars[2 * x] & 0xff) << 8 | chars[2 * x + 1] & 0xff);
+    }
+    int runs = in.readInt();
+    for (int i = 0, x = 0; i < runs; i++) {
+      int styleId = in.readInt();
+      int length = in.readInt();
+      if (styleId < 0) {
+        styleId = line.getStyleId(linkStyles.get(-1 - styleId));
+      }
+      if (runs == 1) {
+        line.myStyle = styleId;
+      } else {
+        if (line.myStyles == null) {
+          line.myStyles = new int[line.myLength];
+        }
+        Arrays.fill(line.myStyles, x, x + length, styleId);
+      }
+      x += length;
+    }
+    return line;
   }
 
   @Override
-  public String toString() {
-    return myTextEntries.length() + " chars, " +
+  public synchronized String toString() {
+    List<Run> runs = getRuns();
+    return myLength + " chars, " +
         (myWrapped ? "wrapped, " : "") +
-        myTextEntries.myTextEntries.size() + " entries: " +
-        Joiner.on("|").join(myTextEntries.myTextEntries.stream().map(
-            entry -> entry.getText().toString()).collect(Collectors.toList())
-        );
+        runs.size() + " entries: " +
+        Joiner.on("|").join(runs.stream().map(run -> run.myText.toString()).collect(Collectors.toList()));
+  }
+
+  @NotNull
+  private List<Run> getRuns() {
+    if (myRuns == null) {
+      List<Run> runs = new ArrayList<>();
+      collectRuns(0, myTextLength, false, runs);
+      collectRuns(myTextLength, myLength, true, runs);
+      myRuns = runs;
+    }
+    return myRuns;
+  }
+
+  private void collectRuns(int from, int to, boolean nul, @NotNull List<Run> runs) {
+    int start = from;
+    while (start < to) {
+      int styleId = myStyles != null ? myStyles[start] : myStyle;
+      int end = start + 1;
+      if (myStyles == null) {
+        end = to;
+      } else {
+        while (end < to && myStyles[end] == styleId) {
+          end++;
+        }
+      }
+      runs.add(new Run(start, getStyle(styleId), new CharBuffer(myChars, start, end - start), nul));
+      start = end;
+    }
+  }
+
+  private void ensureCapacity(int length) {
+    if (length > myChars.length) {
+      int capacity = Math.max(length, myChars.length + (myChars.length >> 1));
+      myChars = Arrays.copyOf(myChars, capacity);
+      if (myStyles != null) {
+        myStyles = Arrays.copyOf(myStyles, capacity);
+      }
+    }
+  }
+
+  private void setStyle(int from, int to, int styleId) {
+    if (from >= to) {
+      return;
+    }
+    if (myStyles == null) {
+      if (styleId == myStyle || myLength == 0 || from == 0 && to >= myLength) {
+        myStyle = styleId;
+        return;
+      }
+      myStyles = new int[myChars.length];
+      Arrays.fill(myStyles, myStyle);
+    }
+    Arrays.fill(myStyles, from, to, styleId);
+  }
+
+  @NotNull
+  private TextStyle getStyle(int styleId) {
+    return styleId >= 0 ? TextStyleTable.getStyle(styleId) : myLinkStyles[-1 - styleId];
+  }
+
+  private int getStyleId(@NotNull TextStyle style) {
+    if (!(style instanceof HyperlinkStyle)) {
+      int styleId = TextStyleTable.getId(style);
+      if (styleId != TextStyleTable.NO_ID) {
+        return styleId;
+      }
+      // the table is full, the line keeps the style like a hyperlink one
+    }
+    for (int i = 0; i < myLinkStyleCount; i++) {
+      if (myLinkStyles[i] == style) {
+        return -1 - i;
+      }
+    }
+    if (myLinkStyles == null) {
+      myLinkStyles = new TextStyle[2];
+    } else if (myLinkStyleCount == myLinkStyles.length) {
+      // links are detected again whenever the line changes, drop the styles no cell has any more
+      compactLinkStyles();
+      if (myLinkStyleCount * 2 > myLinkStyles.length) {
+        myLinkStyles = Arrays.copyOf(myLinkStyles, myLinkStyles.length * 2);
+      }
+    }
+    myLinkStyles[myLinkStyleCount] = style;
+    return -1 - myLinkStyleCount++;
+  }
+
+  private void compactLinkStyles() {
+    int[] newIds = new int[myLinkStyleCount];
+    if (myStyles != null) {
+      for (int x = 0; x < myLength; x++) {
+        if (myStyles[x] < 0) {
+          newIds[-1 - myStyles[x]] = 1;
+        }
+      }
+    } else if (myStyle < 0) {
+      newIds[-1 - myStyle] = 1;
+    }
+    int count = 0;
+    for (int i = 0; i < myLinkStyleCount; i++) {
+      if (newIds[i] != 0) {
+        myLinkStyles[count] = myLinkStyles[i];
+        newIds[i] = -1 - count++;
+      }
+    }
+    Arrays.fill(myLinkStyles, count, myLinkStyleCount, null);
+    myLinkStyleCount = count;
+    if (myStyles != null) {
+      for (int x = 0; x < myLength; x++) {
+        if (myStyles[x] < 0) {
+          myStyles[x] = newIds[-1 - myStyles[x]];
+        }
+      }
+    } else if (myStyle < 0) {
+      myStyle = newIds[-1 - myStyle];
+    }
+  }
+
+  private static final class Run {
+    private final int myX;
+    private final TextStyle myStyle;
+    private final CharBuffer myText;
+    private final boolean myNul;
+
+    private Run(int x, @NotNull TextStyle style, @NotNull CharBuffer text, boolean nul) {
+      myX = x;
+      myStyle = style;
+      myText = text;
+      myNul = nul;
+    }
   }
 
   static class TextEntry {
@@ -324,40 +479,4 @@ public class TerminalLine {
       return myText.isNul();
     }
   }
-
-  private static class TextEntries implements Iterable<TextEntry> {
-    private ArrayList<TextEntry> myTextEntries = new ArrayList<TextEntry>();
-
-    private int myLength = 0;
-
-    public void add(TextEntry entry) {
-      // NUL can only be at the end of the line
-      if (!entry.getText().isNul()) {
-        for (TextEntry t : myTextEntries) {
-          if (t.getText().isNul()) {
-            t.getText().unNullify();
-          }
-        }
-      }
-      myTextEntries.add(entry);
-      myLength += entry.getLength();
-    }
-
-    private Collection<TextEntry> entries() {
-      return Collections.unmodifiableCollection(myTextEntries);
-    }
-
-    public Iterator<TextEntry> iterator() {
-      return entries().iterator();
-    }
-
-    public int length() {
-      return myLength;
-    }
-
-    public void clear() {
-      myTextEntries.clear();
-      myLength = 0;
-    }
-  }
 }
@@ -30,6 +30,9 @@ import java.util.concurrent.locks.ReentrantLock;
 public class TerminalTextBuffer {
   private static final Logger LOG = org.slf4j.LoggerFactory.getLogger(TerminalTextBuffer.class);
 
+  // output that scrolls a whole screen off within a frame is mostly never painted
+  private static final long FRAME_NANOS = 16_000_000;
+
   @NotNull
   private final StyleState myStyleState;
 
@@ -41,8 +44,10 @@ public class TerminalTextBuffer {
   private int myHeight;
 
   private final int myHistoryLinesCount;
+  private final int myHistoryHotLinesCount;
 
-  private final Lock myLock = new ReentrantLock();
+  // fair, so the painter gets its turn between the batches of input the emulator works through with it held
+  private final Lock myLock = new ReentrantLock(true);
 
   private LinesBuffer myHistoryBufferBackup;
   private LinesBuffer myScreenBufferBackup; // to store textBuffer after switching to alternate buffer
@@ -53,9 +58,22 @@ public class TerminalTextBuffer {
 
   private java.util.List<TerminalModelListener> myListeners = Lists.newArrayList();
 
+  private final ScreenDamage myDamage = new ScreenDamage(true);
+
   @Nullable
   private final TextProcessing myTextProcessing;
 
+  private int myModificationCount;
+
+  // lines scrolled to the history since myScrollStart, see countScrolledLines
+  private long myScrollStart = System.nanoTime();
+  private int myScrolledLines;
+  private boolean myFastScroll;
+
+  // reused while the style and the width stay the same
+  private TextStyle myFillerSourceStyle;
+  private TextEntry myFiller;
+
   public TerminalTextBuffer(final int width, final int height, @NotNull StyleState styleState) {
     this(width, height, styleState, null);
   }
@@ -65,10 +83,20 @@ public class TerminalTextBuffer {
   }
 
   public TerminalTextBuffer(final int width, final int height, @NotNull StyleState styleState, final int historyLinesCount, @Nullable TextProcessing textProcessing) {
+    this(width, height, styleState, historyLinesCount, -1, textProcessing);
+  }
+
+  /**
+   * @param historyHotLinesCount number of the most recent history lines kept as they are, older ones are compressed;
+   *                             negative to keep the whole history as it is
+   */
+  public TerminalTextBuffer(final int width, final int height, @NotNull StyleState styleState, final int historyLinesCount,
+                            final int historyHotLinesCount, @Nullable TextProcessing textProcessing) {
     myStyleState = styleState;
     myWidth = width;
     myHeight = height;
     myHistoryLinesCount = historyLinesCount;
+    myHistoryHotLinesCount = historyHotLinesCount;
     myTextProcessing = textProcessing;
 
     myScreenBuffer = createScreenBuffer();
@@ -82,7 +110,7 @@ public class TerminalTextBuffer {
 
   @NotNull
   private LinesBuffer createHistoryBuffer() {
-    return new LinesBuffer(myHistoryLinesCount, myTextProcessing);
+    return new LinesBuffer(myHistoryLinesCount, myHistoryHotLinesCount, myTextProcessing);
   }
 
   public Dimension resize(@NotNull final Dimension pendingResize,
@@ -159,7 +187,7 @@ public class TerminalTextBuffer {
 
     resizeHandler.sizeUpdated(myWidth, myHeight, newCursorX, newCursorY);
 
-
+    myDamage.all();
     fireModelChangeEvent();
 
     return pendingResize;
@@ -174,6 +202,7 @@ public class TerminalTextBuffer {
   }
 
   private void fireModelChangeEvent() {
+    myModificationCount++;
     for (TerminalModelListener modelListener : myListeners) {
       modelListener.modelChanged();
     }
@@ -184,7 +213,13 @@ public class TerminalTextBuffer {
   }
 
   private TextEntry createFillerEntry() {
-    return new TextEntry(createEmptyStyleWithCurrentColor(), new CharBuffer(CharUtils.NUL_CHAR, myWidth));
+    // the current style stays the same object until it changes
+    TextStyle current = myStyleState.getCurrent();
+    if (myFiller == null || myFillerSourceStyle != current || myFiller.getLength() != myWidth) {
+      myFiller = new TextEntry(current.createEmptyWithColors(), new CharBuffer(CharUtils.NUL_CHAR, myWidth));
+      myFillerSourceStyle = current;
+    }
+    return myFiller;
   }
 
   public void deleteCharacters(final int x, final int y, final int count) {
@@ -196,6 +231,7 @@ public class TerminalTextBuffer {
     } else if (count > 0) {
       myScreenBuffer.deleteCharacters(x, y, count, createEmptyStyleWithCurrentColor());
 
+      myDamage.rows(y, y + 1);
       fireModelChangeEvent();
     }
   }
@@ -209,6 +245,7 @@ public class TerminalTextBuffer {
     } else if (count > 0) { //nothing to do
       myScreenBuffer.insertBlankCharacters(x, y, count, myWidth, createEmptyStyleWithCurrentColor());
 
+      myDamage.rows(y, y + 1);
       fireModelChangeEvent();
     }
   }
@@ -220,12 +257,23 @@ public class TerminalTextBuffer {
   public void addLine(@NotNull final TerminalLine line) {
     myScreenBuffer.addLines(Lists.newArrayList(line));
 
+    myDamage.rows(myScreenBuffer.getLineCount() - 1, myScreenBuffer.getLineCount());
     fireModelChangeEvent();
   }
 
   private void writeString(int x, int y, @NotNull CharBuffer str, @NotNull TextStyle style) {
-    myScreenBuffer.writeString(x, y - 1, str, style);
+    if (myFastScroll && System.nanoTime() - myScrollStart > FRAME_NANOS) {
+      // the output slowed down before another screen scrolled by
+      setFastScroll(false);
+    }
+    if (myFastScroll) {
+      // links are looked for once the flood is over, in the lines still on the screen
+      myScreenBuffer.getLine(y - 1).writeString(x, str, style);
+    } else {
+      myScreenBuffer.writeString(x, y - 1, str, style);
+    }
 
+    myDamage.rows(y - 1, y);
     fireModelChangeEvent();
   }
 
@@ -236,15 +284,57 @@ public class TerminalTextBuffer {
     if (dy > 0) {
       insertLines(scrollRegionTop - 1, dy, scrollRegionBottom);
     } else {
-      LinesBuffer removed = deleteLines(scrollRegionTop - 1, -dy, scrollRegionBottom);
       if (scrollRegionTop == 1) {
-        removed.moveTopLinesTo(removed.getLineCount(), myHistoryBuffer);
+        // the lines scrolled off the screen go straight to the history
+        int lineCount = myScreenBuffer.getLineCount();
+        myScreenBuffer.deleteLines(0, -dy, scrollRegionBottom - 1, createFillerEntry(), myHistoryBuffer);
+        damageScroll(0, scrollRegionBottom, lineCount, dy);
+        countScrolledLines(-dy);
+      } else {
+        deleteLines(scrollRegionTop - 1, -dy, scrollRegionBottom);
       }
 
       fireModelChangeEvent();
     }
   }
 
+  /**
+   * Scrolls fast while the output scrolls a whole screen to the history within a frame, most lines are not painted
+   * then. Lines written meanwhile are not looked for links, only the ones still on the screen once it slows down.
+   */
+  private void countScrolledLines(int count) {
+    myScrolledLines += count;
+    if (myScrolledLines >= myHeight) {
+      long now = System.nanoTime();
+      setFastScroll(now - myScrollStart < FRAME_NANOS);
+      myScrollStart = now;
+      myScrolledLines = 0;
+    }
+  }
+
+  /**
+   * Ends fast scrolling, called when there is no more output for now.
+   */
+  public void finishFastScroll() {
+    setFastScroll(false);
+    myScrollStart = System.nanoTime();
+    myScrolledLines = 0;
+  }
+
+  private void setFastScroll(boolean fastScroll) {
+    if (myFastScroll && !fastScroll && myTextProcessing != null) {
+      int lineCount = myScreenBuffer.getLineCount();
+      for (int i = 0; i < lineCount; i++) {
+        TerminalLine line = myScreenBuffer.getLine(i);
+        // wrapped lines are looked at together with the line they end in
+        if (!line.isWrapped() || i == lineCount - 1) {
+          myTextProcessing.processHyperlinks(myScreenBuffer, line);
+        }
+      }
+    }
+    myFastScroll = fastScroll;
+  }
+
   public String getStyleLines() {
     final Map<Integer, Integer> hashMap = Maps.newHashMap();
     myLock.lock();
@@ -332,6 +422,13 @@ public class TerminalTextBuffer {
     return myLock.tryLock();
   }
 
+  /**
+   * Returns a number that changes whenever the text changes, to be called with the buffer locked.
+   */
+  public int getModificationCount() {
+    return myModificationCount;
+  }
+
   public int getWidth() {
     return myWidth;
   }
@@ -386,6 +483,8 @@ public class TerminalTextBuffer {
       }
     } else {
       if (myUsingAlternateBuffer) {
+        // releases the disk space the alternate history may have taken
+        myHistoryBuffer.clearAll();
         myScreenBuffer = myScreenBufferBackup;
         myHistoryBuffer = myHistoryBufferBackup;
         myScreenBufferBackup = createScreenBuffer();
@@ -393,6 +492,7 @@ public class TerminalTextBuffer {
         myUsingAlternateBuffer = false;
       }
     }
+    myDamage.all();
     fireModelChangeEvent();
   }
 
@@ -401,20 +501,35 @@ public class TerminalTextBuffer {
   }
 
   public void insertLines(int y, int count, int scrollRegionBottom) {
+    int lineCount = myScreenBuffer.getLineCount();
     myScreenBuffer.insertLines(y, count, scrollRegionBottom - 1, createFillerEntry());
 
+    damageScroll(y, scrollRegionBottom, lineCount, count);
     fireModelChangeEvent();
   }
 
   // returns deleted lines
   public LinesBuffer deleteLines(int y, int count, int scrollRegionBottom) {
+    int lineCount = myScreenBuffer.getLineCount();
     LinesBuffer linesBuffer = myScreenBuffer.deleteLines(y, count, scrollRegionBottom - 1, createFillerEntry());
+    damageScroll(y, scrollRegionBottom, lineCount, -count);
     fireModelChangeEvent();
     return linesBuffer;
   }
 
+  private void damageScroll(int y, int scrollRegionBottom, int lineCount, int dy) {
+    // the screen buffer ends after its last line, only the lines it had were shifted
+    int bottom = Math.min(scrollRegionBottom, lineCount);
+    if (y < bottom) {
+      myDamage.scroll(y, bottom, dy);
+    } else {
+      myDamage.rows(y, scrollRegionBottom);
+    }
+  }
+
   public void clearLines(int startRow, int endRow) {
     myScreenBuffer.clearLines(startRow, endRow, createFillerEntry());
+    myDamage.rows(startRow, endRow + 1);
     fireModelChangeEvent();
   }
 
@@ -422,6 +537,7 @@ public class TerminalTextBuffer {
     TextStyle style = createEmptyStyleWithCurrentColor();
     if (y >= 0) {
       myScreenBuffer.clearArea(leftX, y, rightX, y + 1, style);
+      myDamage.rows(y, y + 1);
       fireModelChangeEvent();
     } else {
       LOG.error("Attempt to erase characters in line: " + y);
@@ -430,6 +546,7 @@ public class TerminalTextBuffer {
 
   public void clearAll() {
     myScreenBuffer.clearAll();
+    myDamage.all();
     fireModelChangeEvent();
   }
 
@@ -457,11 +574,72 @@ public class TerminalTextBuffer {
     }
   }
 
+  /**
+   * Processes rows {@code [firstRow, firstRow + rowCount)} of the scrolling window that starts at {@code scrollOrigin},
+   * the consumer gets rows relative to the window top as {@link #processHistoryAndScreenLines(int, int, StyledTextConsumer)}
+   * reports them.
+   */
+  public void processHistoryAndScreenLines(int scrollOrigin, int firstRow, int rowCount, StyledTextConsumer consumer) {
+    int historyLinesCount = myHistoryBuffer.getLineCount();
+    int first = scrollOrigin + firstRow;
+    int end = first + rowCount;
+    if (first < 0) {
+      int from = Math.max(historyLinesCount + first, 0);
+      int to = historyLinesCount + Math.min(end, 0);
+      if (to > from) {
+        myHistoryBuffer.processLines(from, to - from, consumer, historyLinesCount + scrollOrigin);
+      }
+    }
+    if (end > 0) {
+      int from = Math.max(first, 0);
+      myScreenBuffer.processLines(from, end - from, consumer, scrollOrigin);
+    }
+  }
+
+  /**
+   * Returns the screen damage collected since the previous call and clears it. Lines changed behind the back of this
+   * buffer should be reported with {@link #damageLines(LinesBuffer, int, int)} to show up here.
+   */
+  @NotNull
+  public ScreenDamage takeDamage() {
+    return myDamage.take();
+  }
+
+  /**
+   * Marks lines {@code [fromLine, toLine)} of {@code buffer} as changed and notifies the listeners.
+   */
+  public void damageLines(@NotNull LinesBuffer buffer, int fromLine, int toLine) {
+    if (buffer == myScreenBuffer) {
+      myDamage.rows(fromLine, toLine);
+    } else {
+      // history lines are only on screen when scrolled back, where rows are not tracked
+      myDamage.all();
+    }
+    fireModelChangeEvent();
+  }
+
   public void clearHistory() {
     myHistoryBuffer.clearAll();
+    myDamage.all();
     fireModelChangeEvent();
   }
 
+  /**
+   * Drops the history, the buffer is not shown any more.
+   */
+  public void dispose() {
+    myLock.lock();
+    try {
+      myHistoryBuffer.clearAll();
+      if (myHistoryBufferBackup != null) {
+        myHistoryBufferBackup.clearAll();
+      }
+    }
+    finally {
+      myLock.unlock();
+    }
+  }
+
   void moveScreenLinesToHistory() {
     myLock.lock();
     try {
@@ -470,6 +648,7 @@ public class TerminalTextBuffer {
       if (myHistoryBuffer.getLineCount() > 0) {
         myHistoryBuffer.getLine(myHistoryBuffer.getLineCount() - 1).setWrapped(false);
       }
+      myDamage.all();
     }
     finally {
       myLock.unlock();
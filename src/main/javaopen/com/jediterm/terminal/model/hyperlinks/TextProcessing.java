@@ -83,6 +83,7 @@ public class TextProcessing {
           }
         }
       }
+      myTerminalTextBuffer.damageLines(buffer, startLineInd, updatedLineInd + 1);
     }
     finally {
       myTerminalTextBuffer.unlock();
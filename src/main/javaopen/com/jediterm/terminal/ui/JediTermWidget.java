@@ -38,6 +38,7 @@ public class JediTermWidget extends JPanel implements TerminalSession, TerminalW
   protected final JediTerminal myTerminal;
   protected final AtomicBoolean mySessionRunning = new AtomicBoolean();
   private SearchComponent myFindComponent;
+  private final TerminalSearch mySearch;
   private final PreConnectHandler myPreConnectHandler;
   private TtyConnector myTtyConnector;
   private TerminalStarter myTerminalStarter;
@@ -67,11 +68,13 @@ public class JediTermWidget extends JPanel implements TerminalSession, TerminalW
                                           settingsProvider.getHyperlinkColor(),
                                           settingsProvider.getHyperlinkHighlightingMode());
 
-    TerminalTextBuffer terminalTextBuffer = new TerminalTextBuffer(columns, lines, styleState, settingsProvider.getBufferMaxLinesCount(), myTextProcessing);
+    TerminalTextBuffer terminalTextBuffer = new TerminalTextBuffer(columns, lines, styleState, settingsProvider.getBufferMaxLinesCount(),
+            settingsProvider.getBufferHotLinesCount(), myTextProcessing);
     myTextProcessing.setTerminalTextBuffer(terminalTextBuffer);
 
     myTerminalPanel = createTerminalPanel(mySettingsProvider, styleState, terminalTextBuffer);
     myTerminal = new JediTerminal(myTerminalPanel, terminalTextBuffer, styleState);
+    mySearch = new TerminalSearch(terminalTextBuffer);
 
     myTerminal.setModeEnabled(TerminalMode.AltSendsEscape, mySettingsProvider.altSendsEscape());
 
@@ -137,7 +140,7 @@ public class JediTermWidget extends JPanel implements TerminalSession, TerminalW
   }
 
   protected TerminalStarter createTerminalStarter(JediTerminal terminal, TtyConnector connector) {
-    return new TerminalStarter(terminal, connector, new TtyBasedArrayDataStream(connector));
+    return new TerminalStarter(terminal, connector, getTerminalTextBuffer());
   }
 
   @Override
@@ -233,7 +236,9 @@ public class JediTermWidget extends JPanel implements TerminalSession, TerminalW
     if (myTerminalStarter != null) {
       myTerminalStarter.close();
     }
+    mySearch.dispose();
     myTerminalPanel.dispose();
+    getTerminalTextBuffer().dispose();
   }
 
   @Override
@@ -276,14 +281,21 @@ public class JediTermWidget extends JPanel implements TerminalSession, TerminalW
         }
 
         private void textUpdated() {
-          findText(myFindComponent.getText(), myFindComponent.ignoreCase());
+          findText(myFindComponent.getText(), myFindComponent.ignoreCase(), myFindComponent.useRegex());
         }
       });
 
       myFindComponent.addIgnoreCaseListener(new ItemListener() {
         @Override
         public void itemStateChanged(ItemEvent e) {
-          findText(myFindComponent.getText(), myFindComponent.ignoreCase());
+          findText(myFindComponent.getText(), myFindComponent.ignoreCase(), myFindComponent.useRegex());
+        }
+      });
+
+      myFindComponent.addRegexListener(new ItemListener() {
+        @Override
+        public void itemStateChanged(ItemEvent e) {
+          findText(myFindComponent.getText(), myFindComponent.ignoreCase(), myFindComponent.useRegex());
         }
       });
 
@@ -295,6 +307,7 @@ public class JediTermWidget extends JPanel implements TerminalSession, TerminalW
             myInnerPanel.revalidate();
             myInnerPanel.repaint();
             myFindComponent = null;
+            mySearch.cancel();
             myTerminalPanel.setFindResult(null);
             myTerminalPanel.requestFocusInWindow();
           } else if (keyEvent.getKeyCode() == KeyEvent.VK_ENTER || keyEvent.getKeyCode() == KeyEvent.VK_UP) {
@@ -320,6 +333,10 @@ public class JediTermWidget extends JPanel implements TerminalSession, TerminalW
 
     boolean ignoreCase();
 
+    default boolean useRegex() {
+      return false;
+    }
+
     JComponent getComponent();
 
     void addDocumentChangeListener(DocumentListener listener);
@@ -328,6 +345,9 @@ public class JediTermWidget extends JPanel implements TerminalSession, TerminalW
 
     void addIgnoreCaseListener(ItemListener listener);
 
+    default void addRegexListener(ItemListener listener) {
+    }
+
     void onResultUpdated(FindResult results);
 
     void nextFindResultItem(FindItem selectedItem);
@@ -335,8 +355,15 @@ public class JediTermWidget extends JPanel implements TerminalSession, TerminalW
     void prevFindResultItem(FindItem selectedItem);
   }
 
-  private void findText(String text, boolean ignoreCase) {
-    FindResult results = myTerminal.searchInTerminalTextBuffer(text, ignoreCase);
+  private void findText(String text, boolean ignoreCase, boolean regex) {
+    // the search goes on in the background, matches show up as they are found
+    FindResult results = mySearch.search(text, ignoreCase, regex, (result, finished) -> {
+      if (myFindComponent != null && myTerminalPanel.getFindResult() == result) {
+        myTerminalPanel.repaint();
+        myFindComponent.onResultUpdated(result);
+        myScrollBar.repaint();
+      }
+    });
     myTerminalPanel.setFindResult(results);
     myFindComponent.onResultUpdated(results);
     myScrollBar.repaint();
@@ -396,6 +423,7 @@ public class JediTermWidget extends JPanel implements TerminalSession, TerminalW
     private final JButton prev;
     private final JButton next;
     private final JCheckBox ignoreCaseCheckBox = new JCheckBox("Ignore Case", true);
+    private final JCheckBox regexCheckBox = new JCheckBox("Regex", false);
 
     public SearchPanel() {
       next = createNextButton();
@@ -423,6 +451,7 @@ public class JediTermWidget extends JPanel implements TerminalSession, TerminalW
 
       add(myTextField);
       add(ignoreCaseCheckBox);
+      add(regexCheckBox);
       add(label);
       add(next);
       add(prev);
@@ -469,6 +498,11 @@ public class JediTermWidget extends JPanel implements TerminalSession, TerminalW
       return ignoreCaseCheckBox.isSelected();
     }
 
+    @Override
+    public boolean useRegex() {
+      return regexCheckBox.isSelected();
+    }
+
     @Override
     public JComponent getComponent() {
       return this;
@@ -493,6 +527,11 @@ public class JediTermWidget extends JPanel implements TerminalSession, TerminalW
       ignoreCaseCheckBox.addItemListener(listener);
     }
 
+    @Override
+    public void addRegexListener(ItemListener listener) {
+      regexCheckBox.addItemListener(listener);
+    }
+
   }
 
   private class FindResultScrollBarUI extends BasicScrollBarUI {
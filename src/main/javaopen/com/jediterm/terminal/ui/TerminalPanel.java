@@ -22,6 +22,7 @@ import com.jediterm.terminal.emulator.mouse.TerminalMouseListener;
 import com.jediterm.terminal.model.CharBuffer;
 import com.jediterm.terminal.model.JediTerminal;
 import com.jediterm.terminal.model.LinesBuffer;
+import com.jediterm.terminal.model.ScreenDamage;
 import com.jediterm.terminal.model.SelectionUtil;
 import com.jediterm.terminal.model.StyleState;
 import com.jediterm.terminal.model.TerminalLine;
@@ -56,10 +57,12 @@ import java.awt.Font;
 import java.awt.FontMetrics;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
 import java.awt.MouseInfo;
 import java.awt.Point;
 import java.awt.PointerInfo;
 import java.awt.Rectangle;
+import java.awt.Shape;
 import java.awt.RenderingHints;
 import java.awt.Stroke;
 import java.awt.Toolkit;
@@ -86,6 +89,7 @@ import java.lang.ref.WeakReference;
 import java.net.URI;
 import java.text.AttributedCharacterIterator;
 import java.text.CharacterIterator;
+import java.util.BitSet;
 import java.util.List;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -140,6 +144,16 @@ public class TerminalPanel extends JComponent implements TerminalDisplay, Termin
   private Timer myRepaintTimer;
   private final AtomicInteger scrollDy = new AtomicInteger(0);
   private final AtomicBoolean needRepaint = new AtomicBoolean(true);
+  private final AtomicBoolean needFullRepaint = new AtomicBoolean(true);
+
+  // rows as last drawn, only damaged rows are drawn again and paintComponent copies it to the screen
+  private BufferedImage myBackBuffer;
+  private int myBackBufferWidth;
+  private int myBackBufferHeight;
+  private double myBackBufferScale;
+  private int myBackBufferOrigin;
+  private int myPaintedCursorRow = -1;
+  private Boolean myRetina;
 
   private int myMaxFPS = 50;
   private int myBlinkingPeriod = 500;
@@ -170,7 +184,7 @@ public class TerminalPanel extends JComponent implements TerminalDisplay, Termin
     terminalTextBuffer.addModelListener(new TerminalModelListener() {
       @Override
       public void modelChanged() {
-        repaint();
+        repaintDamage();
       }
     });
   }
@@ -186,11 +200,146 @@ public class TerminalPanel extends JComponent implements TerminalDisplay, Termin
 
   @Override
   public void repaint() {
+    needFullRepaint.set(true);
+    needRepaint.set(true);
+  }
+
+  /**
+   * Like {@link #repaint()}, but only the rows the text buffer reports as damaged and the cursor are drawn again.
+   */
+  private void repaintDamage() {
     needRepaint.set(true);
   }
 
   private void doRepaint() {
-    super.repaint();
+    Rectangle dirty;
+    myTerminalTextBuffer.lock();
+    try {
+      dirty = updateBackBuffer(needFullRepaint.getAndSet(false));
+
+      int cursorRow = myCursor.getCoordY();
+      if (cursorRow != myPaintedCursorRow) {
+        dirty = union(dirty, getCursorRowBounds(myPaintedCursorRow));
+        myPaintedCursorRow = cursorRow;
+      }
+      dirty = union(dirty, getCursorRowBounds(cursorRow));
+    } finally {
+      myTerminalTextBuffer.unlock();
+    }
+    if (dirty != null) {
+      super.repaint(dirty.x, dirty.y, dirty.width, dirty.height);
+    }
+  }
+
+  /**
+   * Draws the damaged rows into the back buffer, or all of them when {@code full} is set or the buffer cannot be
+   * updated in place. Must be called on the EDT with the text buffer locked.
+   *
+   * @return area of the component to repaint, null if nothing changed
+   */
+  @Nullable
+  private Rectangle updateBackBuffer(boolean full) {
+    ScreenDamage damage = myTerminalTextBuffer.takeDamage();
+    if (getWidth() <= 0 || getHeight() <= 0) {
+      return null;
+    }
+    double scale = getBackBufferScale();
+    if (myBackBuffer == null || myBackBufferWidth != getWidth() || myBackBufferHeight != getHeight()
+            || myBackBufferScale != scale) {
+      myBackBuffer = createBufferedImage((int) Math.ceil(getWidth() * scale), (int) Math.ceil(getHeight() * scale));
+      myBackBufferWidth = getWidth();
+      myBackBufferHeight = getHeight();
+      myBackBufferScale = scale;
+      full = true;
+    }
+    // scrolled back, the rows shift with the history which is not tracked
+    if (myBackBufferOrigin != myClientScrollOrigin || (myClientScrollOrigin != 0 && damage.getScrollDy() != 0)) {
+      full = true;
+    }
+    if (!full && !damage.isFull() && damage.isEmpty()) {
+      return null;
+    }
+
+    Graphics2D gfx = myBackBuffer.createGraphics();
+    try {
+      gfx.scale(scale, scale);
+      setupAntialiasing(gfx);
+      int rowCount = getRowCount();
+      if (full || damage.isFull()) {
+        myBackBufferOrigin = myClientScrollOrigin;
+        drawRows(gfx, 0, rowCount);
+        drawMargins(gfx, getWidth(), rowCount * myCharSize.height);
+        return new Rectangle(0, 0, getWidth(), getHeight());
+      }
+
+      BitSet rows = damage.getRows();
+      int dy = damage.getScrollDy();
+      if (dy != 0) {
+        int top = damage.getScrollTop();
+        int bottom = Math.min(damage.getScrollBottom(), rowCount);
+        int rowHeight = (int) Math.round(myCharSize.height * scale);
+        if (rowHeight == myCharSize.height * scale && Math.abs(dy) < bottom - top) {
+          // move the pixels of the rows that are still in the region, in device space to avoid seams
+          Graphics2D device = myBackBuffer.createGraphics();
+          try {
+            int from = dy > 0 ? top : top - dy;
+            int count = bottom - top - Math.abs(dy);
+            device.copyArea(0, from * rowHeight, myBackBuffer.getWidth(), count * rowHeight, 0, dy * rowHeight);
+          } finally {
+            device.dispose();
+          }
+        } else {
+          rows.set(top, Math.max(bottom, top));
+        }
+      }
+
+      Rectangle dirty = null;
+      for (int row = rows.nextSetBit(0); row >= 0 && row < rowCount; ) {
+        int end = rows.nextClearBit(row);
+        end = Math.min(end, rowCount);
+        drawRows(gfx, row, end - row);
+        dirty = union(dirty, new Rectangle(0, row * myCharSize.height, getWidth(), (end - row) * myCharSize.height));
+        row = rows.nextSetBit(end);
+      }
+      if (dy != 0) {
+        dirty = union(dirty, new Rectangle(0, damage.getScrollTop() * myCharSize.height, getWidth(),
+                (Math.min(damage.getScrollBottom(), rowCount) - damage.getScrollTop()) * myCharSize.height));
+      }
+      return dirty;
+    } finally {
+      gfx.dispose();
+    }
+  }
+
+  private double getBackBufferScale() {
+    GraphicsConfiguration gc = getGraphicsConfiguration();
+    double scale = gc != null ? gc.getDefaultTransform().getScaleY() : 1;
+    if (scale == 1) {
+      if (myRetina == null) {
+        myRetina = isRetina();
+      }
+      if (myRetina) {
+        scale = 2;
+      }
+    }
+    return scale;
+  }
+
+  @Nullable
+  private Rectangle getCursorRowBounds(int row) {
+    if (row < 0 || row >= myTermSize.height) {
+      return null;
+    }
+    // input method text starts a few pixels above the row, the underline cursor ends just below it
+    return new Rectangle(0, row * myCharSize.height - 3, getWidth(), myCharSize.height + 6);
+  }
+
+  @Nullable
+  private static Rectangle union(@Nullable Rectangle a, @Nullable Rectangle b) {
+    if (a == null) {
+      return b;
+    }
+    return b == null ? a : a.union(b);
   }
 
   @Deprecated
@@ -362,7 +511,8 @@ public class TerminalPanel extends JComponent implements TerminalDisplay, Termin
                                                     @Override
                                                     public void stateChanged(final ChangeEvent e) {
                                                       myClientScrollOrigin = myBoundedRangeModel.getValue();
-                                                      repaint();
+                                                      // a changed origin makes the next redraw a full one
+                                                      repaintDamage();
                                                     }
                                                   });
 
@@ -750,67 +900,21 @@ public class TerminalPanel extends JComponent implements TerminalDisplay, Termin
 
     setupAntialiasing(gfx);
 
-    gfx.setColor(getBackground());
-
-    gfx.fillRect(0, 0, getWidth(), getHeight());
-
     try {
       myTerminalTextBuffer.lock();
-      // update myClientScrollOrigin as scrollArea might have been invoked after last WeakRedrawTimer action
-      updateScrolling(false);
-      myTerminalTextBuffer.processHistoryAndScreenLines(myClientScrollOrigin, myTermSize.height, new StyledTextConsumer() {
-        final int columnCount = getColumnCount();
-
-        @Override
-        public void consume(int x, int y, @NotNull TextStyle style, @NotNull CharBuffer characters, int startRow) {
-          int row = y - startRow;
-          drawCharacters(x, row, style, characters, gfx);
-
-          if (myFindResult != null) {
-            List<Pair<Integer, Integer>> ranges = myFindResult.getRanges(characters);
-            if (ranges != null) {
-              for (Pair<Integer, Integer> range : ranges) {
-                TextStyle foundPatternStyle = getFoundPattern(style);
-                CharBuffer foundPatternChars = characters.subBuffer(range);
-
-                drawCharacters(x + range.first, row, foundPatternStyle, foundPatternChars, gfx);
-              }
-            }
-          }
-
-          if (mySelection != null) {
-            Pair<Integer, Integer> interval = mySelection.intersect(x, row + myClientScrollOrigin, characters.length());
-            if (interval != null) {
-              TextStyle selectionStyle = getSelectionStyle(style);
-              CharBuffer selectionChars = characters.subBuffer(interval.first - x, interval.second);
-
-              drawCharacters(interval.first, row, selectionStyle, selectionChars, gfx);
-            }
-          }
-        }
-
-        @Override
-        public void consumeNul(int x, int y, int nulIndex, TextStyle style, CharBuffer characters, int startRow) {
-          int row = y - startRow;
-          if (mySelection != null) {
-            // compute intersection with all NUL areas, non-breaking
-            Pair<Integer, Integer> interval = mySelection.intersect(nulIndex, row + myClientScrollOrigin, columnCount - nulIndex);
-            if (interval != null) {
-              TextStyle selectionStyle = getSelectionStyle(style);
-              drawCharacters(x, row, selectionStyle, characters, gfx);
-              return;
-            }
-          }
-          drawCharacters(x, row, style, characters, gfx);
+      // the redraw timer keeps the back buffer up to date, it is only missing or stale right after a resize
+      if (myBackBuffer == null || myBackBufferWidth != getWidth() || myBackBufferHeight != getHeight()) {
+        if (updateBackBuffer(true) != null) {
+          super.repaint();
         }
-
-        @Override
-        public void consumeQueue(int x, int y, int nulIndex, int startRow) {
-          if (x < columnCount) {
-            consumeNul(x, y, nulIndex, TextStyle.EMPTY, new CharBuffer(CharUtils.EMPTY_CHAR, columnCount - x), startRow);
-          }
-        }
-      });
+      }
+      if (myBackBuffer == null) {
+        gfx.setColor(getBackground());
+        gfx.fillRect(0, 0, getWidth(), getHeight());
+        return;
+      }
+      drawImage(gfx, myBackBuffer, 0, 0, myBackBufferWidth, myBackBufferHeight,
+              0, 0, myBackBuffer.getWidth(), myBackBuffer.getHeight());
 
       int cursorY = myCursor.getCoordY();
       if ((myClientScrollOrigin + getRowCount() > cursorY) && !hasUncommittedChars()) {
@@ -830,8 +934,77 @@ public class TerminalPanel extends JComponent implements TerminalDisplay, Termin
     }
 
     drawInputMethodUncommitedChars(gfx);
+  }
+
+  /**
+   * Draws rows {@code [firstRow, firstRow + rowCount)} of the view over their background.
+   */
+  private void drawRows(final Graphics2D gfx, int firstRow, int rowCount) {
+    int y = firstRow * myCharSize.height;
+    int height = rowCount * myCharSize.height;
+    gfx.setClip(0, y, getWidth(), height);
+    gfx.setColor(getBackground());
+    gfx.fillRect(0, y, getWidth(), height);
+
+    myTerminalTextBuffer.processHistoryAndScreenLines(myClientScrollOrigin, firstRow, rowCount, new StyledTextConsumer() {
+      final int columnCount = getColumnCount();
+
+      @Override
+      public void consume(int x, int y, @NotNull TextStyle style, @NotNull CharBuffer characters, int startRow) {
+        int row = y - startRow;
+        drawCharacters(x, row, style, characters, gfx);
+
+        if (myFindResult != null) {
+          List<Pair<Integer, Integer>> ranges =
+                  myFindResult.getRanges(row + myClientScrollOrigin + myTerminalTextBuffer.getHistoryLinesCount());
+          if (ranges != null) {
+            for (Pair<Integer, Integer> range : ranges) {
+              int start = Math.max(range.first, x);
+              int end = Math.min(range.second, x + characters.length());
+              if (start < end) {
+                TextStyle foundPatternStyle = getFoundPattern(style);
+                CharBuffer foundPatternChars = characters.subBuffer(start - x, end - start);
+
+                drawCharacters(start, row, foundPatternStyle, foundPatternChars, gfx);
+              }
+            }
+          }
+        }
 
-    drawMargins(gfx, getWidth(), getHeight());
+        if (mySelection != null) {
+          Pair<Integer, Integer> interval = mySelection.intersect(x, row + myClientScrollOrigin, characters.length());
+          if (interval != null) {
+            TextStyle selectionStyle = getSelectionStyle(style);
+            CharBuffer selectionChars = characters.subBuffer(interval.first - x, interval.second);
+
+            drawCharacters(interval.first, row, selectionStyle, selectionChars, gfx);
+          }
+        }
+      }
+
+      @Override
+      public void consumeNul(int x, int y, int nulIndex, TextStyle style, CharBuffer characters, int startRow) {
+        int row = y - startRow;
+        if (mySelection != null) {
+          // compute intersection with all NUL areas, non-breaking
+          Pair<Integer, Integer> interval = mySelection.intersect(nulIndex, row + myClientScrollOrigin, columnCount - nulIndex);
+          if (interval != null) {
+            TextStyle selectionStyle = getSelectionStyle(style);
+            drawCharacters(x, row, selectionStyle, characters, gfx);
+            return;
+          }
+        }
+        drawCharacters(x, row, style, characters, gfx);
+      }
+
+      @Override
+      public void consumeQueue(int x, int y, int nulIndex, int startRow) {
+        if (x < columnCount) {
+          consumeNul(x, y, nulIndex, TextStyle.EMPTY, new CharBuffer(CharUtils.EMPTY_CHAR, columnCount - x), startRow);
+        }
+      }
+    });
+    gfx.setClip(null);
   }
 
   @NotNull
@@ -1046,7 +1219,7 @@ public class TerminalPanel extends JComponent implements TerminalDisplay, Termin
     public void cursorChanged() {
       myCursorHasChanged = true;
       myLastCursorChange = System.currentTimeMillis();
-      repaint();
+      repaintDamage();
     }
 
     private boolean cursorShouldChangeBlinkState(long currentTime) {
@@ -1062,7 +1235,7 @@ public class TerminalPanel extends JComponent implements TerminalDisplay, Termin
         myCursorIsShown = !myCursorIsShown;
         myLastCursorChange = currentTime;
         myCursorHasChanged = false;
-        repaint();
+        repaintDamage();
       }
     }
 
@@ -1232,6 +1405,7 @@ public class TerminalPanel extends JComponent implements TerminalDisplay, Termin
       renderingBuffer = buf;
     }
 
+    Shape clip = gfx.getClip();
     while (offset + blockLen <= buf.length()) {
       if (renderingBuffer.getBuf()[buf.getStart() + offset] == CharUtils.DWC) {
         offset += blockLen;
@@ -1259,7 +1433,8 @@ public class TerminalPanel extends JComponent implements TerminalDisplay, Termin
 
       int yCoord = y * myCharSize.height;
 
-      gfx.setClip(xCoord,
+      gfx.setClip(clip);
+      gfx.clipRect(xCoord,
               yCoord,
               getWidth() - xCoord,
               getHeight() - yCoord);
@@ -1272,7 +1447,7 @@ public class TerminalPanel extends JComponent implements TerminalDisplay, Termin
       offset += blockLen;
       blockLen = 1;
     }
-    gfx.setClip(null);
+    gfx.setClip(clip);
   }
 
   protected Font getFontToDisplay(char c, TextStyle style) {
@@ -1300,7 +1475,10 @@ public class TerminalPanel extends JComponent implements TerminalDisplay, Termin
   @Override
   public void scrollArea(final int scrollRegionTop, final int scrollRegionSize, int dy) {
     scrollDy.addAndGet(dy);
-    mySelection = null;
+    if (mySelection != null) {
+      mySelection = null;
+      needFullRepaint.set(true);
+    }
   }
 
   private void updateScrolling(boolean forceUpdate) {
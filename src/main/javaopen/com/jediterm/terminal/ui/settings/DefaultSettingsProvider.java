@@ -197,6 +197,11 @@ public class DefaultSettingsProvider implements SettingsProvider {
         return LinesBuffer.DEFAULT_MAX_LINES_COUNT;
     }
 
+    @Override
+    public int getBufferHotLinesCount() {
+        return LinesBuffer.DEFAULT_MAX_LINES_COUNT;
+    }
+
     @Override
     public boolean altSendsEscape() {
         return false;
@@ -50,6 +50,12 @@ public interface UserSettingsProvider {
   boolean forceActionOnMouseReporting();
 
   int getBufferMaxLinesCount();
+
+  /**
+   * @return number of the most recent history lines kept in memory as they are, older ones are compressed and, once
+   * there are many of them, moved to a temporary file; a negative number keeps the whole history as it is
+   */
+  int getBufferHotLinesCount();
   
   boolean altSendsEscape();
 
@@ -95,6 +95,7 @@ public final class MindTermProvider extends Provider
         put("Alg.Alias.Signature.1.3.14.3.2.24", "MD2withRSA");
         put("Alg.Alias.Signature.1.2.840.113549.1.1.2", "MD2withRSA");
         put("Alg.Alias.Signature.1.3.36.3.3.1.2", "RIPEMD160withRSA");
+        put("Signature.Ed25519", "com.mindbright.jce.provider.publickey.Ed25519Signature");
         
         
         // key factories
@@ -0,0 +1,704 @@
+/******************************************************************************
+ *
+ * Copyright (c) 1999-2011 Cryptzone Group AB. All Rights Reserved.
+ * 
+ * This file contains Original Code and/or Modifications of Original Code as
+ * defined in and that are subject to the MindTerm Public Source License,
+ * Version 2.0, (the 'License'). You may not use this file except in compliance
+ * with the License.
+ * 
+ * You should have received a copy of the MindTerm Public Source License
+ * along with this software; see the file LICENSE.  If not, write to
+ * Cryptzone Group AB, Drakegatan 7, SE-41250 Goteborg, SWEDEN
+ *
+ *****************************************************************************/
+
+package com.mindbright.jce.provider.publickey;
+
+/**
+ * Arithmetic modulo 2^255-19 and the X25519 function (RFC 7748).
+ * <p>
+ * Field elements are kept in sixteen 16 bit limbs stored in longs,
+ * which leaves plenty of room for the carries of a multiplication.
+ * All operations run in constant time with respect to secret data.
+ */
+public final class Curve25519 {
+
+    public final static int KEY_SIZE = 32;
+
+    final static long[] GF0 = new long[16];
+    final static long[] GF1 = { 1, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0 };
+
+    // (486662 - 2) / 4, short since mul() only walks the limbs b has
+    private final static long[] A24 = { 0xdb41, 1 };
+
+
+    private Curve25519() {
+    }
+
+    /**
+     * Compute the X25519 function of a scalar and the u coordinate
+     * of a point.
+     *
+     * @param k 32 byte scalar, clamped before use
+     * @param u 32 byte little endian u coordinate
+     *
+     * @return the 32 byte u coordinate of the result
+     */
+    public static byte[] x25519(byte[] k, byte[] u) {
+        byte[] z = new byte[32];
+        System.arraycopy(k, 0, z, 0, 32);
+        z[31] = (byte)((z[31] & 127) | 64);
+        z[0] &= (byte)248;
+
+        long[] x = new long[16];
+        unpack(x, u);
+        long[] a = new long[16], b = new long[16], c = new long[16];
+        long[] d = new long[16], e = new long[16], f = new long[16];
+        set(b, x);
+        a[0] = 1;
+        d[0] = 1;
+
+        for (int i = 254; i >= 0; i--) {
+            int r = ((z[i >>> 3] & 0xff) >>> (i & 7)) & 1;
+            sel(a, b, r);
+            sel(c, d, r);
+            add(e, a, c);
+            sub(a, a, c);
+            add(c, b, d);
+            sub(b, b, d);
+            sqr(d, e);
+            sqr(f, a);
+            mul(a, c, a);
+            mul(c, b, e);
+            add(e, a, c);
+            sub(a, a, c);
+            sqr(b, a);
+            sub(c, d, f);
+            mul(a, c, A24);
+            add(a, a, d);
+            mul(c, c, a);
+            mul(a, d, f);
+            mul(d, b, x);
+            sqr(b, e);
+            sel(a, b, r);
+            sel(c, d, r);
+        }
+        inv(c, c);
+        mul(a, a, c);
+
+        byte[] out = new byte[32];
+        pack(out, a);
+        return out;
+    }
+
+    /**
+     * Compute the public key belonging to a private scalar.
+     *
+     * @param k 32 byte private key
+     */
+    public static byte[] x25519Base(byte[] k) {
+        byte[] base = new byte[32];
+        base[0] = 9;
+        return x25519(k, base);
+    }
+
+    static void set(long[] r, long[] a) {
+        System.arraycopy(a, 0, r, 0, 16);
+    }
+
+    static void carry(long[] o) {
+        for (int i = 0; i < 16; i++) {
+            o[i] += (1L << 16);
+            long c = o[i] >> 16;
+            if (i < 15) {
+                o[i + 1] += c - 1;
+            } else {
+                o[0] += 38 * (c - 1);
+            }
+            o[i] -= c << 16;
+        }
+    }
+
+    /**
+     * Swap p and q if b is 1, without branching on b.
+     */
+    static void sel(long[] p, long[] q, int b) {
+        long c = ~(b - 1);
+        for (int i = 0; i < 16; i++) {
+            long t = c & (p[i] ^ q[i]);
+            p[i] ^= t;
+            q[i] ^= t;
+        }
+    }
+
+    static void pack(byte[] o, long[] n) {
+        long[] m = new long[16];
+        long[] t = new long[16];
+        set(t, n);
+        carry(t);
+        carry(t);
+        carry(t);
+        for (int j = 0; j < 2; j++) {
+            m[0] = t[0] - 0xffed;
+            for (int i = 1; i < 15; i++) {
+                m[i] = t[i] - 0xffff - ((m[i - 1] >> 16) & 1);
+                m[i - 1] &= 0xffff;
+            }
+            m[15] = t[15] - 0x7fff - ((m[14] >> 16) & 1);
+            int b = (int)((m[15] >> 16) & 1);
+            m[14] &= 0xffff;
+            sel(t, m, 1 - b);
+        }
+        for (int i = 0; i < 16; i++) {
+            o[2 * i]     = (byte)t[i];
+            o[2 * i + 1] = (byte)(t[i] >> 8);
+        }
+    }
+
+    static boolean equal(long[] a, long[] b) {
+        byte[] c = new byte[32];
+        byte[] d = new byte[32];
+        pack(c, a);
+        pack(d, b);
+        int diff = 0;
+        for (int i = 0; i < 32; i++) {
+            diff |= c[i] ^ d[i];
+        }
+        return diff == 0;
+    }
+
+    static int parity(long[] a) {
+        byte[] d = new byte[32];
+        pack(d, a);
+        return d[0] & 1;
+    }
+
+    static void unpack(long[] o, byte[] n) {
+        for (int i = 0; i < 16; i++) {
+            o[i] = (n[2 * i] & 0xff) + ((long)(n[2 * i + 1] & 0xff) << 8);
+        }
+        o[15] &= 0x7fff;
+    }
+
+    static void add(long[] o, long[] a, long[] b) {
+        for (int i = 0; i < 16; i++) {
+            o[i] = a[i] + b[i];
+        }
+    }
+
+    static void sub(long[] o, long[] a, long[] b) {
+        for (int i = 0; i < 16; i++) {
+            o[i] = a[i] - b[i];
+        }
+    }
+
+    /**
+     * Multiply, unrolled since this is where nearly all time goes.
+     */
+    static void mul(long[] o, long[] a, long[] b) {
+        if (b.length < 16) {
+            mulSmall(o, a, b);
+            return;
+        }
+        long b0 = b[0];
+        long b1 = b[1];
+        long b2 = b[2];
+        long b3 = b[3];
+        long b4 = b[4];
+        long b5 = b[5];
+        long b6 = b[6];
+        long b7 = b[7];
+        long b8 = b[8];
+        long b9 = b[9];
+        long b10 = b[10];
+        long b11 = b[11];
+        long b12 = b[12];
+        long b13 = b[13];
+        long b14 = b[14];
+        long b15 = b[15];
+        long t0 = 0;
+        long t1 = 0;
+        long t2 = 0;
+        long t3 = 0;
+        long t4 = 0;
+        long t5 = 0;
+        long t6 = 0;
+        long t7 = 0;
+        long t8 = 0;
+        long t9 = 0;
+        long t10 = 0;
+        long t11 = 0;
+        long t12 = 0;
+        long t13 = 0;
+        long t14 = 0;
+        long t15 = 0;
+        long t16 = 0;
+        long t17 = 0;
+        long t18 = 0;
+        long t19 = 0;
+        long t20 = 0;
+        long t21 = 0;
+        long t22 = 0;
+        long t23 = 0;
+        long t24 = 0;
+        long t25 = 0;
+        long t26 = 0;
+        long t27 = 0;
+        long t28 = 0;
+        long t29 = 0;
+        long t30 = 0;
+        long a0 = a[0];
+        t0 += a0 * b0;
+        t1 += a0 * b1;
+        t2 += a0 * b2;
+        t3 += a0 * b3;
+        t4 += a0 * b4;
+        t5 += a0 * b5;
+        t6 += a0 * b6;
+        t7 += a0 * b7;
+        t8 += a0 * b8;
+        t9 += a0 * b9;
+        t10 += a0 * b10;
+        t11 += a0 * b11;
+        t12 += a0 * b12;
+        t13 += a0 * b13;
+        t14 += a0 * b14;
+        t15 += a0 * b15;
+        a0 = a[1];
+        t1 += a0 * b0;
+        t2 += a0 * b1;
+        t3 += a0 * b2;
+        t4 += a0 * b3;
+        t5 += a0 * b4;
+        t6 += a0 * b5;
+        t7 += a0 * b6;
+        t8 += a0 * b7;
+        t9 += a0 * b8;
+        t10 += a0 * b9;
+        t11 += a0 * b10;
+        t12 += a0 * b11;
+        t13 += a0 * b12;
+        t14 += a0 * b13;
+        t15 += a0 * b14;
+        t16 += a0 * b15;
+        a0 = a[2];
+        t2 += a0 * b0;
+        t3 += a0 * b1;
+        t4 += a0 * b2;
+        t5 += a0 * b3;
+        t6 += a0 * b4;
+        t7 += a0 * b5;
+        t8 += a0 * b6;
+        t9 += a0 * b7;
+        t10 += a0 * b8;
+        t11 += a0 * b9;
+        t12 += a0 * b10;
+        t13 += a0 * b11;
+        t14 += a0 * b12;
+        t15 += a0 * b13;
+        t16 += a0 * b14;
+        t17 += a0 * b15;
+        a0 = a[3];
+        t3 += a0 * b0;
+        t4 += a0 * b1;
+        t5 += a0 * b2;
+        t6 += a0 * b3;
+        t7 += a0 * b4;
+        t8 += a0 * b5;
+        t9 += a0 * b6;
+        t10 += a0 * b7;
+        t11 += a0 * b8;
+        t12 += a0 * b9;
+        t13 += a0 * b10;
+        t14 += a0 * b11;
+        t15 += a0 * b12;
+        t16 += a0 * b13;
+        t17 += a0 * b14;
+        t18 += a0 * b15;
+        a0 = a[4];
+        t4 += a0 * b0;
+        t5 += a0 * b1;
+        t6 += a0 * b2;
+        t7 += a0 * b3;
+        t8 += a0 * b4;
+        t9 += a0 * b5;
+        t10 += a0 * b6;
+        t11 += a0 * b7;
+        t12 += a0 * b8;
+        t13 += a0 * b9;
+        t14 += a0 * b10;
+        t15 += a0 * b11;
+        t16 += a0 * b12;
+        t17 += a0 * b13;
+        t18 += a0 * b14;
+        t19 += a0 * b15;
+        a0 = a[5];
+        t5 += a0 * b0;
+        t6 += a0 * b1;
+        t7 += a0 * b2;
+        t8 += a0 * b3;
+        t9 += a0 * b4;
+        t10 += a0 * b5;
+        t11 += a0 * b6;
+        t12 += a0 * b7;
+        t13 += a0 * b8;
+        t14 += a0 * b9;
+        t15 += a0 * b10;
+        t16 += a0 * b11;
+        t17 += a0 * b12;
+        t18 += a0 * b13;
+        t19 += a0 * b14;
+        t20 += a0 * b15;
+        a0 = a[6];
+        t6 += a0 * b0;
+        t7 += a0 * b1;
+        t8 += a0 * b2;
+        t9 += a0 * b3;
+        t10 += a0 * b4;
+        t11 += a0 * b5;
+        t12 += a0 * b6;
+        t13 += a0 * b7;
+        t14 += a0 * b8;
+        t15 += a0 * b9;
+        t16 += a0 * b10;
+        t17 += a0 * b11;
+        t18 += a0 * b12;
+        t19 += a0 * b13;
+        t20 += a0 * b14;
+        t21 += a0 * b15;
+        a0 = a[7];
+        t7 += a0 * b0;
+        t8 += a0 * b1;
+        t9 += a0 * b2;
+        t10 += a0 * b3;
+        t11 += a0 * b4;
+        t12 += a0 * b5;
+        t13 += a0 * b6;
+        t14 += a0 * b7;
+        t15 += a0 * b8;
+        t16 += a0 * b9;
+        t17 += a0 * b10;
+        t18 += a0 * b11;
+        t19 += a0 * b12;
+        t20 += a0 * b13;
+        t21 += a0 * b14;
+        t22 += a0 * b15;
+        a0 = a[8];
+        t8 += a0 * b0;
+        t9 += a0 * b1;
+        t10 += a0 * b2;
+        t11 += a0 * b3;
+        t12 += a0 * b4;
+        t13 += a0 * b5;
+        t14 += a0 * b6;
+        t15 += a0 * b7;
+        t16 += a0 * b8;
+        t17 += a0 * b9;
+        t18 += a0 * b10;
+        t19 += a0 * b11;
+        t20 += a0 * b12;
+        t21 += a0 * b13;
+        t22 += a0 * b14;
+        t23 += a0 * b15;
+        a0 = a[9];
+        t9 += a0 * b0;
+        t10 += a0 * b1;
+        t11 += a0 * b2;
+        t12 += a0 * b3;
+        t13 += a0 * b4;
+        t14 += a0 * b5;
+        t15 += a0 * b6;
+        t16 += a0 * b7;
+        t17 += a0 * b8;
+        t18 += a0 * b9;
+        t19 += a0 * b10;
+        t20 += a0 * b11;
+        t21 += a0 * b12;
+        t22 += a0 * b13;
+        t23 += a0 * b14;
+        t24 += a0 * b15;
+        a0 = a[10];
+        t10 += a0 * b0;
+        t11 += a0 * b1;
+        t12 += a0 * b2;
+        t13 += a0 * b3;
+        t14 += a0 * b4;
+        t15 += a0 * b5;
+        t16 += a0 * b6;
+        t17 += a0 * b7;
+        t18 += a0 * b8;
+        t19 += a0 * b9;
+        t20 += a0 * b10;
+        t21 += a0 * b11;
+        t22 += a0 * b12;
+        t23 += a0 * b13;
+        t24 += a0 * b14;
+        t25 += a0 * b15;
+        a0 = a[11];
+        t11 += a0 * b0;
+        t12 += a0 * b1;
+        t13 += a0 * b2;
+        t14 += a0 * b3;
+        t15 += a0 * b4;
+        t16 += a0 * b5;
+        t17 += a0 * b6;
+        t18 += a0 * b7;
+        t19 += a0 * b8;
+        t20 += a0 * b9;
+        t21 += a0 * b10;
+        t22 += a0 * b11;
+        t23 += a0 * b12;
+        t24 += a0 * b13;
+        t25 += a0 * b14;
+        t26 += a0 * b15;
+        a0 = a[12];
+        t12 += a0 * b0;
+        t13 += a0 * b1;
+        t14 += a0 * b2;
+        t15 += a0 * b3;
+        t16 += a0 * b4;
+        t17 += a0 * b5;
+        t18 += a0 * b6;
+        t19 += a0 * b7;
+        t20 += a0 * b8;
+        t21 += a0 * b9;
+        t22 += a0 * b10;
+        t23 += a0 * b11;
+        t24 += a0 * b12;
+        t25 += a0 * b13;
+        t26 += a0 * b14;
+        t27 += a0 * b15;
+        a0 = a[13];
+        t13 += a0 * b0;
+        t14 += a0 * b1;
+        t15 += a0 * b2;
+        t16 += a0 * b3;
+        t17 += a0 * b4;
+        t18 += a0 * b5;
+        t19 += a0 * b6;
+        t20 += a0 * b7;
+        t21 += a0 * b8;
+        t22 += a0 * b9;
+        t23 += a0 * b10;
+        t24 += a0 * b11;
+        t25 += a0 * b12;
+        t26 += a0 * b13;
+        t27 += a0 * b14;
+        t28 += a0 * b15;
+        a0 = a[14];
+        t14 += a0 * b0;
+        t15 += a0 * b1;
+        t16 += a0 * b2;
+        t17 += a0 * b3;
+        t18 += a0 * b4;
+        t19 += a0 * b5;
+        t20 += a0 * b6;
+        t21 += a0 * b7;
+        t22 += a0 * b8;
+        t23 += a0 * b9;
+        t24 += a0 * b10;
+        t25 += a0 * b11;
+        t26 += a0 * b12;
+        t27 += a0 * b13;
+        t28 += a0 * b14;
+        t29 += a0 * b15;
+        a0 = a[15];
+        t15 += a0 * b0;
+        t16 += a0 * b1;
+        t17 += a0 * b2;
+        t18 += a0 * b3;
+        t19 += a0 * b4;
+        t20 += a0 * b5;
+        t21 += a0 * b6;
+        t22 += a0 * b7;
+        t23 += a0 * b8;
+        t24 += a0 * b9;
+        t25 += a0 * b10;
+        t26 += a0 * b11;
+        t27 += a0 * b12;
+        t28 += a0 * b13;
+        t29 += a0 * b14;
+        t30 += a0 * b15;
+        t0 += 38 * t16;
+        t1 += 38 * t17;
+        t2 += 38 * t18;
+        t3 += 38 * t19;
+        t4 += 38 * t20;
+        t5 += 38 * t21;
+        t6 += 38 * t22;
+        t7 += 38 * t23;
+        t8 += 38 * t24;
+        t9 += 38 * t25;
+        t10 += 38 * t26;
+        t11 += 38 * t27;
+        t12 += 38 * t28;
+        t13 += 38 * t29;
+        t14 += 38 * t30;
+        long c;
+        c = ((t0 + (1L << 16)) >> 16) - 1;
+        t1 += c;
+        t0 -= c << 16;
+        c = ((t1 + (1L << 16)) >> 16) - 1;
+        t2 += c;
+        t1 -= c << 16;
+        c = ((t2 + (1L << 16)) >> 16) - 1;
+        t3 += c;
+        t2 -= c << 16;
+        c = ((t3 + (1L << 16)) >> 16) - 1;
+        t4 += c;
+        t3 -= c << 16;
+        c = ((t4 + (1L << 16)) >> 16) - 1;
+        t5 += c;
+        t4 -= c << 16;
+        c = ((t5 + (1L << 16)) >> 16) - 1;
+        t6 += c;
+        t5 -= c << 16;
+        c = ((t6 + (1L << 16)) >> 16) - 1;
+        t7 += c;
+        t6 -= c << 16;
+        c = ((t7 + (1L << 16)) >> 16) - 1;
+        t8 += c;
+        t7 -= c << 16;
+        c = ((t8 + (1L << 16)) >> 16) - 1;
+        t9 += c;
+        t8 -= c << 16;
+        c = ((t9 + (1L << 16)) >> 16) - 1;
+        t10 += c;
+        t9 -= c << 16;
+        c = ((t10 + (1L << 16)) >> 16) - 1;
+        t11 += c;
+        t10 -= c << 16;
+        c = ((t11 + (1L << 16)) >> 16) - 1;
+        t12 += c;
+        t11 -= c << 16;
+        c = ((t12 + (1L << 16)) >> 16) - 1;
+        t13 += c;
+        t12 -= c << 16;
+        c = ((t13 + (1L << 16)) >> 16) - 1;
+        t14 += c;
+        t13 -= c << 16;
+        c = ((t14 + (1L << 16)) >> 16) - 1;
+        t15 += c;
+        t14 -= c << 16;
+        c = ((t15 + (1L << 16)) >> 16) - 1;
+        t0 += 38 * c;
+        t15 -= c << 16;
+        c = ((t0 + (1L << 16)) >> 16) - 1;
+        t1 += c;
+        t0 -= c << 16;
+        c = ((t1 + (1L << 16)) >> 16) - 1;
+        t2 += c;
+        t1 -= c << 16;
+        c = ((t2 + (1L << 16)) >> 16) - 1;
+        t3 += c;
+        t2 -= c << 16;
+        c = ((t3 + (1L << 16)) >> 16) - 1;
+        t4 += c;
+        t3 -= c << 16;
+        c = ((t4 + (1L << 16)) >> 16) - 1;
+        t5 += c;
+        t4 -= c << 16;
+        c = ((t5 + (1L << 16)) >> 16) - 1;
+        t6 += c;
+        t5 -= c << 16;
+        c = ((t6 + (1L << 16)) >> 16) - 1;
+        t7 += c;
+        t6 -= c << 16;
+        c = ((t7 + (1L << 16)) >> 16) - 1;
+        t8 += c;
+        t7 -= c << 16;
+        c = ((t8 + (1L << 16)) >> 16) - 1;
+        t9 += c;
+        t8 -= c << 16;
+        c = ((t9 + (1L << 16)) >> 16) - 1;
+        t10 += c;
+        t9 -= c << 16;
+        c = ((t10 + (1L << 16)) >> 16) - 1;
+        t11 += c;
+        t10 -= c << 16;
+        c = ((t11 + (1L << 16)) >> 16) - 1;
+        t12 += c;
+        t11 -= c << 16;
+        c = ((t12 + (1L << 16)) >> 16) - 1;
+        t13 += c;
+        t12 -= c << 16;
+        c = ((t13 + (1L << 16)) >> 16) - 1;
+        t14 += c;
+        t13 -= c << 16;
+        c = ((t14 + (1L << 16)) >> 16) - 1;
+        t15 += c;
+        t14 -= c << 16;
+        c = ((t15 + (1L << 16)) >> 16) - 1;
+        t0 += 38 * c;
+        t15 -= c << 16;
+        o[0] = t0;
+        o[1] = t1;
+        o[2] = t2;
+        o[3] = t3;
+        o[4] = t4;
+        o[5] = t5;
+        o[6] = t6;
+        o[7] = t7;
+        o[8] = t8;
+        o[9] = t9;
+        o[10] = t10;
+        o[11] = t11;
+        o[12] = t12;
+        o[13] = t13;
+        o[14] = t14;
+        o[15] = t15;
+    }
+
+    /**
+     * Multiply by a short constant.
+     */
+    private static void mulSmall(long[] o, long[] a, long[] b) {
+        long[] t = new long[31];
+        for (int i = 0; i < 16; i++) {
+            for (int j = 0; j < b.length; j++) {
+                t[i + j] += a[i] * b[j];
+            }
+        }
+        for (int i = 0; i < 15; i++) {
+            t[i] += 38 * t[i + 16];
+        }
+        System.arraycopy(t, 0, o, 0, 16);
+        carry(o);
+        carry(o);
+    }
+
+    static void sqr(long[] o, long[] a) {
+        mul(o, a, a);
+    }
+
+    /**
+     * Invert by raising to the power p-2.
+     */
+    static void inv(long[] o, long[] i) {
+        long[] c = new long[16];
+        set(c, i);
+        for (int a = 253; a >= 0; a--) {
+            sqr(c, c);
+            if (a != 2 && a != 4) {
+                mul(c, c, i);
+            }
+        }
+        set(o, c);
+    }
+
+    /**
+     * Raise to the power (p-5)/8, used for square roots.
+     */
+    static void pow2523(long[] o, long[] i) {
+        long[] c = new long[16];
+        set(c, i);
+        for (int a = 250; a >= 0; a--) {
+            sqr(c, c);
+            if (a != 1) {
+                mul(c, c, i);
+            }
+        }
+        set(o, c);
+    }
+}
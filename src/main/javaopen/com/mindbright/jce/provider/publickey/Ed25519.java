@@ -0,0 +1,344 @@
+/******************************************************************************
+ *
+ * Copyright (c) 1999-2011 Cryptzone Group AB. All Rights Reserved.
+ * 
+ * This file contains Original Code and/or Modifications of Original Code as
+ * defined in and that are subject to the MindTerm Public Source License,
+ * Version 2.0, (the 'License'). You may not use this file except in compliance
+ * with the License.
+ * 
+ * You should have received a copy of the MindTerm Public Source License
+ * along with this software; see the file LICENSE.  If not, write to
+ * Cryptzone Group AB, Drakegatan 7, SE-41250 Goteborg, SWEDEN
+ *
+ *****************************************************************************/
+
+package com.mindbright.jce.provider.publickey;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import static com.mindbright.jce.provider.publickey.Curve25519.*;
+
+/**
+ * The Ed25519 signature scheme (RFC 8032). Points on the twisted
+ * Edwards curve are kept in extended coordinates (X:Y:Z:T) using the
+ * field arithmetic of {@link Curve25519}.
+ */
+public final class Ed25519 {
+
+    public final static int SIGNATURE_SIZE = 64;
+
+    private final static long[] D = {
+        0x78a3, 0x1359, 0x4dca, 0x75eb, 0xd8ab, 0x4141, 0x0a4d, 0x0070,
+        0xe898, 0x7779, 0x4079, 0x8cc7, 0xfe73, 0x2b6f, 0x6cee, 0x5203
+    };
+    private final static long[] D2 = {
+        0xf159, 0x26b2, 0x9b94, 0xebd6, 0xb156, 0x8283, 0x149a, 0x00e0,
+        0xd130, 0xeef3, 0x80f2, 0x198e, 0xfce7, 0x56df, 0xd9dc, 0x2406
+    };
+    private final static long[] X = {
+        0xd51a, 0x8f25, 0x2d60, 0xc956, 0xa7b2, 0x9525, 0xc760, 0x692c,
+        0xdc5c, 0xfdd6, 0xe231, 0xc0a4, 0x53fe, 0xcd6e, 0x36d3, 0x2169
+    };
+    private final static long[] Y = {
+        0x6658, 0x6666, 0x6666, 0x6666, 0x6666, 0x6666, 0x6666, 0x6666,
+        0x6666, 0x6666, 0x6666, 0x6666, 0x6666, 0x6666, 0x6666, 0x6666
+    };
+    private final static long[] SQRTM1 = {
+        0xa0b0, 0x4a0e, 0x1b27, 0xc4ee, 0xe478, 0xad2f, 0x1806, 0x2f43,
+        0xd7a7, 0x3dfb, 0x0099, 0x2b4d, 0xdf0b, 0x4fc1, 0x2480, 0x2b83
+    };
+    // Order of the base point, little endian
+    private final static long[] L = {
+        0xed, 0xd3, 0xf5, 0x5c, 0x1a, 0x63, 0x12, 0x58,
+        0xd6, 0x9c, 0xf7, 0xa2, 0xde, 0xf9, 0xde, 0x14,
+        0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0x10
+    };
+
+    private Ed25519() {
+    }
+
+    /**
+     * Derive the public key from a 32 byte private key (seed).
+     */
+    public static byte[] publicKey(byte[] seed) {
+        byte[] d = sha512(seed, 0, 32);
+        clamp(d);
+        long[][] p = point();
+        scalarBase(p, d);
+        byte[] pk = new byte[32];
+        pack(pk, p);
+        return pk;
+    }
+
+    /**
+     * Sign a message.
+     *
+     * @param seed      32 byte private key
+     * @param publicKey the corresponding 32 byte public key
+     * @param msg       message to sign
+     *
+     * @return the 64 byte signature
+     */
+    public static byte[] sign(byte[] seed, byte[] publicKey, byte[] msg) {
+        MessageDigest sha = sha512();
+        byte[] d = sha512(seed, 0, 32);
+        clamp(d);
+
+        sha.update(d, 32, 32);
+        sha.update(msg);
+        byte[] r = reduce(sha.digest());
+
+        byte[] sig = new byte[SIGNATURE_SIZE];
+        long[][] p = point();
+        scalarBase(p, r);
+        pack(sig, p);
+
+        sha.update(sig, 0, 32);
+        sha.update(publicKey, 0, 32);
+        sha.update(msg);
+        byte[] h = reduce(sha.digest());
+
+        long[] x = new long[64];
+        for (int i = 0; i < 32; i++) {
+            x[i] = r[i] & 0xff;
+        }
+        for (int i = 0; i < 32; i++) {
+            for (int j = 0; j < 32; j++) {
+                x[i + j] += (h[i] & 0xff) * (long)(d[j] & 0xff);
+            }
+        }
+        byte[] s = new byte[32];
+        modL(s, x);
+        System.arraycopy(s, 0, sig, 32, 32);
+        return sig;
+    }
+
+    /**
+     * Verify a signature.
+     *
+     * @param publicKey 32 byte public key
+     * @param msg       signed message
+     * @param sig       64 byte signature
+     */
+    public static boolean verify(byte[] publicKey, byte[] msg, byte[] sig) {
+        if (sig.length != SIGNATURE_SIZE || publicKey.length != 32
+            || !isReduced(sig, 32)) {
+            return false;
+        }
+        long[][] q = point();
+        if (!unpackNeg(q, publicKey)) {
+            return false;
+        }
+
+        MessageDigest sha = sha512();
+        sha.update(sig, 0, 32);
+        sha.update(publicKey, 0, 32);
+        sha.update(msg);
+        byte[] h = reduce(sha.digest());
+
+        long[][] p = point();
+        scalarMult(p, q, h);
+        byte[] s = new byte[32];
+        System.arraycopy(sig, 32, s, 0, 32);
+        scalarBase(q, s);
+        add(p, q);
+
+        byte[] t = new byte[32];
+        pack(t, p);
+        int diff = 0;
+        for (int i = 0; i < 32; i++) {
+            diff |= t[i] ^ sig[i];
+        }
+        return diff == 0;
+    }
+
+    private static MessageDigest sha512() {
+        try {
+            return MessageDigest.getInstance("SHA-512");
+        } catch (NoSuchAlgorithmException e) {
+            throw new Error("Error in Ed25519, no SHA-512 found");
+        }
+    }
+
+    private static byte[] sha512(byte[] b, int off, int len) {
+        MessageDigest sha = sha512();
+        sha.update(b, off, len);
+        return sha.digest();
+    }
+
+    private static void clamp(byte[] d) {
+        d[0]  &= (byte)248;
+        d[31] &= 127;
+        d[31] |= 64;
+    }
+
+    private static long[][] point() {
+        return new long[4][16];
+    }
+
+    private static void add(long[][] p, long[][] q) {
+        long[] a = new long[16], b = new long[16], c = new long[16];
+        long[] d = new long[16], t = new long[16], e = new long[16];
+        long[] f = new long[16], g = new long[16], h = new long[16];
+
+        sub(a, p[1], p[0]);
+        sub(t, q[1], q[0]);
+        mul(a, a, t);
+        Curve25519.add(b, p[0], p[1]);
+        Curve25519.add(t, q[0], q[1]);
+        mul(b, b, t);
+        mul(c, p[3], q[3]);
+        mul(c, c, D2);
+        mul(d, p[2], q[2]);
+        Curve25519.add(d, d, d);
+        sub(e, b, a);
+        sub(f, d, c);
+        Curve25519.add(g, d, c);
+        Curve25519.add(h, b, a);
+
+        mul(p[0], e, f);
+        mul(p[1], h, g);
+        mul(p[2], g, f);
+        mul(p[3], e, h);
+    }
+
+    private static void cswap(long[][] p, long[][] q, int b) {
+        for (int i = 0; i < 4; i++) {
+            sel(p[i], q[i], b);
+        }
+    }
+
+    private static void pack(byte[] r, long[][] p) {
+        long[] tx = new long[16], ty = new long[16], zi = new long[16];
+        inv(zi, p[2]);
+        mul(tx, p[0], zi);
+        mul(ty, p[1], zi);
+        Curve25519.pack(r, ty);
+        r[31] ^= parity(tx) << 7;
+    }
+
+    private static void scalarMult(long[][] p, long[][] q, byte[] s) {
+        set(p[0], GF0);
+        set(p[1], GF1);
+        set(p[2], GF1);
+        set(p[3], GF0);
+        for (int i = 255; i >= 0; i--) {
+            int b = ((s[i >>> 3] & 0xff) >>> (i & 7)) & 1;
+            cswap(p, q, b);
+            add(q, p);
+            add(p, p);
+            cswap(p, q, b);
+        }
+    }
+
+    private static void scalarBase(long[][] p, byte[] s) {
+        long[][] q = point();
+        set(q[0], X);
+        set(q[1], Y);
+        set(q[2], GF1);
+        mul(q[3], X, Y);
+        scalarMult(p, q, s);
+    }
+
+    /**
+     * Decode a point and negate it. Returns false if the encoding is
+     * not a point on the curve.
+     */
+    private static boolean unpackNeg(long[][] r, byte[] p) {
+        long[] t = new long[16], chk = new long[16], num = new long[16];
+        long[] den = new long[16], den2 = new long[16], den4 = new long[16];
+        long[] den6 = new long[16];
+
+        set(r[2], GF1);
+        unpack(r[1], p);
+        sqr(num, r[1]);
+        mul(den, num, D);
+        sub(num, num, r[2]);
+        Curve25519.add(den, r[2], den);
+
+        sqr(den2, den);
+        sqr(den4, den2);
+        mul(den6, den4, den2);
+        mul(t, den6, num);
+        mul(t, t, den);
+
+        pow2523(t, t);
+        mul(t, t, num);
+        mul(t, t, den);
+        mul(t, t, den);
+        mul(r[0], t, den);
+
+        sqr(chk, r[0]);
+        mul(chk, chk, den);
+        if (!equal(chk, num)) {
+            mul(r[0], r[0], SQRTM1);
+        }
+        sqr(chk, r[0]);
+        mul(chk, chk, den);
+        if (!equal(chk, num)) {
+            return false;
+        }
+        if (parity(r[0]) == ((p[31] & 0xff) >>> 7)) {
+            sub(r[0], GF0, r[0]);
+        }
+        mul(r[3], r[0], r[1]);
+        return true;
+    }
+
+    /**
+     * Reduce a 64 byte little endian number modulo L into r.
+     */
+    private static void modL(byte[] r, long[] x) {
+        long carry;
+        for (int i = 63; i >= 32; i--) {
+            carry = 0;
+            int j;
+            for (j = i - 32; j < i - 12; j++) {
+                x[j] += carry - 16 * x[i] * L[j - (i - 32)];
+                carry = (x[j] + 128) >> 8;
+                x[j] -= carry << 8;
+            }
+            x[j] += carry;
+            x[i] = 0;
+        }
+        carry = 0;
+        for (int j = 0; j < 32; j++) {
+            x[j] += carry - (x[31] >> 4) * L[j];
+            carry = x[j] >> 8;
+            x[j] &= 255;
+        }
+        for (int j = 0; j < 32; j++) {
+            x[j] -= carry * L[j];
+        }
+        for (int i = 0; i < 32; i++) {
+            x[i + 1] += x[i] >> 8;
+            r[i] = (byte)x[i];
+        }
+    }
+
+    private static byte[] reduce(byte[] h) {
+        long[] x = new long[64];
+        for (int i = 0; i < 64; i++) {
+            x[i] = h[i] & 0xff;
+        }
+        byte[] r = new byte[32];
+        modL(r, x);
+        return r;
+    }
+
+    /**
+     * Check that the 32 byte little endian number at off is below L,
+     * signatures with a larger S are malleable and rejected.
+     */
+    private static boolean isReduced(byte[] s, int off) {
+        for (int i = 31; i >= 0; i--) {
+            int a = s[off + i] & 0xff;
+            if (a != L[i]) {
+                return a < L[i];
+            }
+        }
+        return false;
+    }
+}
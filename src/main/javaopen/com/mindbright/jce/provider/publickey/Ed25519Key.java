@@ -0,0 +1,47 @@
+/******************************************************************************
+ *
+ * Copyright (c) 1999-2011 Cryptzone Group AB. All Rights Reserved.
+ * 
+ * This file contains Original Code and/or Modifications of Original Code as
+ * defined in and that are subject to the MindTerm Public Source License,
+ * Version 2.0, (the 'License'). You may not use this file except in compliance
+ * with the License.
+ * 
+ * You should have received a copy of the MindTerm Public Source License
+ * along with this software; see the file LICENSE.  If not, write to
+ * Cryptzone Group AB, Drakegatan 7, SE-41250 Goteborg, SWEDEN
+ *
+ *****************************************************************************/
+
+package com.mindbright.jce.provider.publickey;
+
+import java.security.Key;
+
+/**
+ * Base class of Ed25519 keys. The encodings are the X.509 and
+ * PKCS#8 forms of RFC 8410 so that the keys can be handed to other
+ * providers.
+ */
+public abstract class Ed25519Key implements Key {
+	private static final long serialVersionUID = 1L;
+
+    protected byte[] key;
+
+    protected Ed25519Key(byte[] key) {
+        if (key == null || key.length != 32) {
+            throw new IllegalArgumentException("Ed25519 keys are 32 bytes");
+        }
+        this.key = key.clone();
+    }
+
+    public String getAlgorithm() {
+        return "Ed25519";
+    }
+
+    protected static byte[] encode(byte[] prefix, byte[] key) {
+        byte[] enc = new byte[prefix.length + key.length];
+        System.arraycopy(prefix, 0, enc, 0, prefix.length);
+        System.arraycopy(key, 0, enc, prefix.length, key.length);
+        return enc;
+    }
+}
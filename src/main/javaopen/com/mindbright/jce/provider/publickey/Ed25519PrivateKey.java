@@ -0,0 +1,57 @@
+/******************************************************************************
+ *
+ * Copyright (c) 1999-2011 Cryptzone Group AB. All Rights Reserved.
+ * 
+ * This file contains Original Code and/or Modifications of Original Code as
+ * defined in and that are subject to the MindTerm Public Source License,
+ * Version 2.0, (the 'License'). You may not use this file except in compliance
+ * with the License.
+ * 
+ * You should have received a copy of the MindTerm Public Source License
+ * along with this software; see the file LICENSE.  If not, write to
+ * Cryptzone Group AB, Drakegatan 7, SE-41250 Goteborg, SWEDEN
+ *
+ *****************************************************************************/
+
+package com.mindbright.jce.provider.publickey;
+
+import java.security.PrivateKey;
+
+public class Ed25519PrivateKey extends Ed25519Key implements PrivateKey {
+	private static final long serialVersionUID = 1L;
+
+    // SEQUENCE { INTEGER 0, SEQUENCE { OID 1.3.101.112 }, OCTET STRING { OCTET STRING } }
+    private final static byte[] PKCS8_PREFIX = {
+        0x30, 0x2e, 0x02, 0x01, 0x00, 0x30, 0x05, 0x06, 0x03, 0x2b, 0x65, 0x70,
+        0x04, 0x22, 0x04, 0x20
+    };
+
+    protected byte[] publicKey;
+
+    /**
+     * @param seed the 32 byte private key
+     */
+    public Ed25519PrivateKey(byte[] seed) {
+        super(seed);
+        this.publicKey = Ed25519.publicKey(seed);
+    }
+
+    public byte[] getSeed() {
+        return key.clone();
+    }
+
+    /**
+     * Get the encoded public key which belongs to this key.
+     */
+    public byte[] getA() {
+        return publicKey.clone();
+    }
+
+    public byte[] getEncoded() {
+        return encode(PKCS8_PREFIX, key);
+    }
+
+    public String getFormat() {
+        return "PKCS#8";
+    }
+}
@@ -0,0 +1,55 @@
+/******************************************************************************
+ *
+ * Copyright (c) 1999-2011 Cryptzone Group AB. All Rights Reserved.
+ * 
+ * This file contains Original Code and/or Modifications of Original Code as
+ * defined in and that are subject to the MindTerm Public Source License,
+ * Version 2.0, (the 'License'). You may not use this file except in compliance
+ * with the License.
+ * 
+ * You should have received a copy of the MindTerm Public Source License
+ * along with this software; see the file LICENSE.  If not, write to
+ * Cryptzone Group AB, Drakegatan 7, SE-41250 Goteborg, SWEDEN
+ *
+ *****************************************************************************/
+
+package com.mindbright.jce.provider.publickey;
+
+import java.security.PublicKey;
+
+public class Ed25519PublicKey extends Ed25519Key implements PublicKey {
+	private static final long serialVersionUID = 1L;
+
+    // SEQUENCE { SEQUENCE { OID 1.3.101.112 }, BIT STRING }
+    private final static byte[] X509_PREFIX = {
+        0x30, 0x2a, 0x30, 0x05, 0x06, 0x03, 0x2b, 0x65, 0x70, 0x03, 0x21, 0x00
+    };
+
+    /**
+     * @param a the 32 byte encoded point
+     */
+    public Ed25519PublicKey(byte[] a) {
+        super(a);
+    }
+
+    public byte[] getA() {
+        return key.clone();
+    }
+
+    public byte[] getEncoded() {
+        return encode(X509_PREFIX, key);
+    }
+
+    public String getFormat() {
+        return "X.509";
+    }
+
+    public boolean equals(Object o) {
+        return (o instanceof Ed25519PublicKey)
+            && java.util.Arrays.equals(key, ((Ed25519PublicKey)o).key);
+    }
+
+    public int hashCode() {
+        return java.util.Arrays.hashCode(key);
+    }
+}
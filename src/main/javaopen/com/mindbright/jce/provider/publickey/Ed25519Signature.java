@@ -0,0 +1,96 @@
+/******************************************************************************
+ *
+ * Copyright (c) 1999-2011 Cryptzone Group AB. All Rights Reserved.
+ * 
+ * This file contains Original Code and/or Modifications of Original Code as
+ * defined in and that are subject to the MindTerm Public Source License,
+ * Version 2.0, (the 'License'). You may not use this file except in compliance
+ * with the License.
+ * 
+ * You should have received a copy of the MindTerm Public Source License
+ * along with this software; see the file LICENSE.  If not, write to
+ * Cryptzone Group AB, Drakegatan 7, SE-41250 Goteborg, SWEDEN
+ *
+ *****************************************************************************/
+
+package com.mindbright.jce.provider.publickey;
+
+import java.io.ByteArrayOutputStream;
+
+import java.security.InvalidKeyException;
+import java.security.InvalidParameterException;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.SignatureException;
+import java.security.SignatureSpi;
+
+/**
+ * Ed25519 signatures. The message is hashed twice when signing, so
+ * it is collected until sign or verify is called.
+ */
+public final class Ed25519Signature extends SignatureSpi {
+
+    private Ed25519PublicKey      publicKey;
+    private Ed25519PrivateKey     privateKey;
+    private ByteArrayOutputStream msg = new ByteArrayOutputStream(256);
+
+    protected void engineInitVerify(PublicKey publicKey)
+    throws InvalidKeyException {
+        if(!(publicKey instanceof Ed25519PublicKey)) {
+            throw new InvalidKeyException("Wrong key for Ed25519 verify: " +
+                                          publicKey);
+        }
+        this.publicKey = (Ed25519PublicKey)publicKey;
+        msg.reset();
+    }
+
+    protected void engineInitSign(PrivateKey privateKey)
+    throws InvalidKeyException {
+        if(!(privateKey instanceof Ed25519PrivateKey)) {
+            throw new InvalidKeyException("Wrong key for Ed25519 sign: " +
+                                          privateKey);
+        }
+        this.privateKey = (Ed25519PrivateKey)privateKey;
+        msg.reset();
+    }
+
+    protected void engineUpdate(byte b) throws SignatureException {
+        msg.write(b);
+    }
+
+    protected void engineUpdate(byte[] b, int off, int len)
+    throws SignatureException {
+        msg.write(b, off, len);
+    }
+
+    protected byte[] engineSign() throws SignatureException {
+        if(privateKey == null) {
+            throw new SignatureException("Ed25519 not initialized for sign");
+        }
+        byte[] sig = Ed25519.sign(privateKey.key, privateKey.publicKey,
+                                  msg.toByteArray());
+        msg.reset();
+        return sig;
+    }
+
+    protected boolean engineVerify(byte[] sigBytes) throws SignatureException {
+        if(publicKey == null) {
+            throw new SignatureException("Ed25519 not initialized for verify");
+        }
+        boolean ok = Ed25519.verify(publicKey.key, msg.toByteArray(), sigBytes);
+        msg.reset();
+        return ok;
+    }
+
+    @Deprecated
+    protected void engineSetParameter(String param, Object value)
+    throws InvalidParameterException {
+        throw new InvalidParameterException("Param not supported: " + param);
+    }
+
+    @Deprecated
+    protected Object engineGetParameter(String param)
+    throws InvalidParameterException {
+        throw new InvalidParameterException("Param not supported: " + param);
+    }
+}
@@ -15,21 +15,29 @@
 
 package com.mindbright.nio;
 
-import java.util.ArrayList;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
 
 /**
  * Queue to use together with nio handling. This is a first-in
  * first-out queue where handling can be stopped. The handling of
  * objects is started automatically when the queue is created.
+ * <p>
+ * Objects are handled by the thread which appends to an idle
+ * queue. Any number of threads may append concurrently, the queue
+ * itself is lock-free and at most one thread at a time handles
+ * objects.
  *
  * @see NQueueCallback
  */
 public class NQueue {
-    private ArrayList<Object> _queue;
+    private ConcurrentLinkedQueue<Object> _queue;
     private NQueueCallback _callback;
     private volatile boolean _stopped = false;
-    private volatile boolean _running = false;
-    private long _currhandler = -1;
+    private final AtomicBoolean _running = new AtomicBoolean(false);
+    private volatile Thread _currhandler = null;
+    private volatile Thread _stopwaiter = null;
 
     /**
      * Create a new queue which is going to use the provided
@@ -38,7 +46,7 @@ public class NQueue {
      * @param callback interface to call once new object arrive
      */
     public NQueue(NQueueCallback callback) {
-        _queue = new ArrayList<Object>();
+        _queue = new ConcurrentLinkedQueue<Object>();
         _callback = callback;
     }
 
@@ -48,32 +56,34 @@ public class NQueue {
      * @param obj object to append
      */
     public void append(Object obj) {
-        synchronized (_queue) {
-            if (_running || _stopped) {
-                _queue.add (obj);
-                return;
-            }
-            _running = true;
-            _currhandler = Thread.currentThread().getId();
-        }
-
-        handleQueue (obj);
+        _queue.offer(obj);
+        handleQueue();
     }
 
-    private void handleQueue(Object obj) {
-        for (;;) {
-            if (obj != null)
-                try {
-                    _callback.handleQueue(obj);
-                } catch (Throwable t) {
-                }
-            synchronized (_queue) {
-                if (_stopped || _queue.isEmpty()) {
-                    _running = false;
-                    _currhandler = -1;
-                    break;
+    /**
+     * Handle queued objects in the calling thread unless another
+     * thread already does so or the queue is stopped. The queue is
+     * checked again after giving up the handler role so that an
+     * object appended just before that is not left behind.
+     */
+    private void handleQueue() {
+        while (!_stopped && !_queue.isEmpty()
+               && _running.compareAndSet(false, true)) {
+            _currhandler = Thread.currentThread();
+            try {
+                Object obj;
+                while (!_stopped && (obj = _queue.poll()) != null) {
+                    try {
+                        _callback.handleQueue(obj);
+                    } catch (Throwable t) {
+                    }
                 }
-                obj = _queue.remove(0);
+            } finally {
+                _currhandler = null;
+                _running.set(false);
+                Thread waiter = _stopwaiter;
+                if (waiter != null)
+                    LockSupport.unpark(waiter);
             }
         }
     }
@@ -81,16 +91,21 @@ public class NQueue {
     /**
      * Stop the processing of objects on this queue. This just means
      * that new objects are "queued" up instead of beeing processed.
+     * If another thread is handling an object the call waits until
+     * that object has been handled.
      */
     public void stop() {
-        synchronized (_queue) {
-            _stopped = true;
-            if (_currhandler == Thread.currentThread().getId())
-                return;
+        _stopped = true;
+        if (_currhandler == Thread.currentThread())
+            return;
+        _stopwaiter = Thread.currentThread();
+        try {
+            while (_running.get() && _stopped)
+                // Bounded park in case several threads are stopping
+                LockSupport.parkNanos(this, 10000000L);
+        } finally {
+            _stopwaiter = null;
         }
-        Thread.yield();
-        while (_running && _stopped)
-            Thread.yield();
     }
 
     /**
@@ -98,17 +113,11 @@ public class NQueue {
      * the queue at the moment.
      */
     public void restart() {
-        synchronized (_queue) {
-            _stopped = false;
-            if (_running) return;
-            _running = true;
-        }
-        handleQueue(null);
+        _stopped = false;
+        handleQueue();
     }
 
     public String toString() {
-        synchronized (_queue) {
-            return "NQueue[stopped=" + _stopped + ",queued=" + _queue.size() + ",callback=" + _callback + "]";
-        }
+        return "NQueue[stopped=" + _stopped + ",queued=" + _queue.size() + ",callback=" + _callback + "]";
     }
 }
@@ -38,7 +38,8 @@ public class NetworkConnection {
 
     /**
      * Creates a new NetworkConnection based on the provided SocketChannel.
-     * The SocketChannel must be connected or at least connecting.
+     * The SocketChannel must be connected or at least connecting. The
+     * connection is served by the least loaded switchboard.
      */
     public NetworkConnection(SocketChannel channel) 
         throws IOException {
@@ -149,6 +150,14 @@ public class NetworkConnection {
         }
     }
 
+    /**
+     * Creates a new NetworkConnection based on the provided SocketChannel
+     * which is served by the given switchboard. If <code>s</code> is
+     * null the least loaded switchboard is used.
+     *
+     * @param s       switchboard to pin the connection to, or null
+     * @param channel a connected or connecting SocketChannel
+     */
     public NetworkConnection(Switchboard s, SocketChannel channel) 
         throws IOException {
 
@@ -158,7 +167,7 @@ public class NetworkConnection {
         }
 
         if (s == null) {
-            s = Switchboard.getSwitchboard();
+            s = Switchboard.getLeastLoadedSwitchboard();
         }
 
         _channel     = channel;
@@ -34,6 +34,7 @@ import java.util.Enumeration;
 import java.util.Hashtable;
 import java.util.Iterator;
 import java.util.LinkedList;
+import java.util.PriorityQueue;
 
 import java.util.concurrent.locks.ReentrantLock;
 
@@ -43,10 +44,20 @@ import com.mindbright.util.Log;
 /**
  * A central switchboard class which handles all the waiting on
  * different events. This subclass handles the java.nio case.
+ * <p>
+ * Each switchboard instance is one event loop with its own selector,
+ * thread, timers and channel registry. A small pool of loops is kept
+ * so that many connections do not all have to be served by one
+ * thread. The size of the pool is taken from the system property
+ * <code>mindbright.switchboard.loops</code> (default is the number of
+ * available processors, at most 8) or from {@link #setPoolSize}.
  */
 public class Switchboard implements Runnable {
-    // The global default instance
-    private static Switchboard _switchboard;
+    // The pool of event loops, the first one is the global default instance
+    private static Switchboard[] _pool;
+    private static int _poolSize =
+        Integer.getInteger("mindbright.switchboard.loops",
+                           Math.min(8, Runtime.getRuntime().availableProcessors())).intValue();
 
     private final static int OP_CONNECT = SelectionKey.OP_CONNECT;
     private final static int OP_READ    = SelectionKey.OP_READ;
@@ -54,46 +65,118 @@ public class Switchboard implements Runnable {
 
     private Selector _selector;
     private Hashtable<Object, TimerData> _timers;
+    private PriorityQueue<TimerData> _timerQueue;
+    private int _cancelledTimers = 0;
     private Hashtable<SelectionKey, ChannelData> _channels;
     private ReentrantLock _channelslock;
     private long _id = 0;
     private Thread _handler;
-    private boolean _running = true;
+    private volatile boolean _running = true;
     private Log _log = null;
     
-    private Switchboard() throws IOException {
+    private Switchboard(String name) throws IOException {
         _timers = new Hashtable<Object, TimerData>();
+        _timerQueue = new PriorityQueue<TimerData>();
         _channels = new Hashtable<SelectionKey, ChannelData>();
         _channelslock = new ReentrantLock(true);
         _selector = Selector.open();
 
-        _handler = new Thread(this, "Switchboard");
+        _handler = new Thread(this, name);
         _handler.setDaemon(true);
         _handler.start();
 
     }
 
     /**
-     * Get the global switchboard instance. This will create a new
-     * instance if none exists.
+     * Get the pool of event loops, creating it if needed.
      */
-    public synchronized static Switchboard getSwitchboard() {
+    private synchronized static Switchboard[] getPool() {
         try {
-            if (_switchboard == null) {
-                _switchboard = new Switchboard();
+            if (_pool == null) {
+                Switchboard[] pool = new Switchboard[Math.max(1, _poolSize)];
+                for (int i = 0; i < pool.length; i++) {
+                    pool[i] = new Switchboard(i == 0 ? "Switchboard"
+                                              : "Switchboard-" + i);
+                }
+                _pool = pool;
             }
         } catch (Exception e) {}
-        return _switchboard;
+        return _pool;
+    }
+
+    /**
+     * Set the number of event loops to use. This only has effect if
+     * called before any switchboard has been requested, or after
+     * {@link #stop}.
+     *
+     * @param size number of event loops, at least one
+     */
+    public synchronized static void setPoolSize(int size) {
+        _poolSize = Math.max(1, size);
+    }
+
+    /**
+     * Get the global switchboard instance. This will create a new
+     * instance if none exists.
+     */
+    public static Switchboard getSwitchboard() {
+        Switchboard[] pool = getPool();
+        return pool == null ? null : pool[0];
+    }
+
+    /**
+     * Get the switchboard which the given object hashes to. The same
+     * object always maps to the same event loop as long as the pool
+     * is running.
+     *
+     * @param affinity object whose hash code selects the event loop
+     */
+    public static Switchboard getSwitchboard(Object affinity) {
+        Switchboard[] pool = getPool();
+        if (pool == null)
+            return null;
+        return pool[(affinity.hashCode() & 0x7fffffff) % pool.length];
+    }
+
+    /**
+     * Get the switchboard which currently has the fewest registered
+     * channels. New connections should normally be placed here.
+     */
+    public static Switchboard getLeastLoadedSwitchboard() {
+        Switchboard[] pool = getPool();
+        if (pool == null)
+            return null;
+        Switchboard best = pool[0];
+        int load = best.getLoad();
+        for (int i = 1; i < pool.length && load > 0; i++) {
+            int l = pool[i].getLoad();
+            if (l < load) {
+                best = pool[i];
+                load = l;
+            }
+        }
+        return best;
     }
 
     /**
-     * Stop the switchboard instance
+     * Stop all switchboard instances
      */
-    public static void stop() {
-        if (_switchboard == null) 
+    public synchronized static void stop() {
+        if (_pool == null) 
             return;
-        _switchboard._running = false;
-        _switchboard = null;
+        for (int i = 0; i < _pool.length; i++) {
+            _pool[i]._running = false;
+            _pool[i]._selector.wakeup();
+        }
+        _pool = null;
+    }
+
+    /**
+     * Get the number of channels currently registered with this
+     * switchboard.
+     */
+    public int getLoad() {
+        return _channels.size();
     }
     
     
@@ -118,8 +201,10 @@ public class Switchboard implements Runnable {
     public synchronized Object registerTimer(long interval,
                                              TimerCallback callback) {
         Object key = new Long(_id++);
+        TimerData t = new TimerData(interval, callback);
         synchronized (_timers) {
-            _timers.put(key, new TimerData(interval, callback));
+            _timers.put(key, t);
+            schedule(t);
         }
         notify();
         return key;
@@ -133,11 +218,53 @@ public class Switchboard implements Runnable {
      */
     public synchronized void unregisterTimer(Object key) {
         synchronized (_timers) {
-            _timers.remove(key);
+            TimerData t = _timers.remove(key);
+            if (t != null) {
+                // Left in the queue, it is dropped once it reaches the
+                // head unless cancelled timers start to dominate. A timer
+                // unregistered from its own timerTrig is not in the queue
+                t._cancelled = true;
+                if (t._queued && ++_cancelledTimers > 64
+                    && _cancelledTimers > _timerQueue.size() / 2) {
+                    Iterator<TimerData> iter = _timerQueue.iterator();
+                    while (iter.hasNext()) {
+                        TimerData c = iter.next();
+                        if (c._cancelled) {
+                            c._queued = false;
+                            iter.remove();
+                        }
+                    }
+                    _cancelledTimers = 0;
+                }
+            }
         }
         notify();
     }
 
+    /**
+     * Put a timer in the deadline queue and wake up the selector if
+     * it is now the first one to expire. Must be called with the
+     * _timers lock held.
+     */
+    private void schedule(TimerData t) {
+        t._queued = true;
+        _timerQueue.add(t);
+        if (_timerQueue.peek() == t) {
+            _selector.wakeup();
+        }
+    }
+
+    /**
+     * Take the first timer out of the deadline queue. Must be called
+     * with the _timers lock held.
+     */
+    private void pollTimer() {
+        TimerData t = _timerQueue.poll();
+        t._queued = false;
+        if (t._cancelled)
+            _cancelledTimers--;
+    }
+
     /**
      * Establish a new network connection.
      *
@@ -178,8 +305,12 @@ public class Switchboard implements Runnable {
                 try {
                     _selector.wakeup();
                     key = channel.register(_selector, OP_CONNECT);
-                    _channels.put(key, new ChannelData(callback, timeout,
-                                                       channel));
+                    ChannelData data = new ChannelData(callback, timeout,
+                                                       channel);
+                    _channels.put(key, data);
+                    synchronized (_timers) {
+                        schedule(new TimerData(key, data));
+                    }
                 } finally {
                     _channelslock.unlock();
                 }
@@ -241,13 +372,21 @@ public class Switchboard implements Runnable {
      * and should help guard against deadlocks. The function will
      * throw an exception if the thread may not wait.
      *
-     * @throws Exception if the current thread is the event handling thread
+     * @throws Exception if the current thread is an event handling thread
      */
     public void checkForDeadlock() throws Exception {
-        if (_handler.equals(Thread.currentThread())) {
+        Switchboard[] pool = _pool;
+        Thread current = Thread.currentThread();
+        if (_handler.equals(current)) {
             throw new Exception(
                 "Can't wait here since it might cause a deadlock");
         }
+        for (int i = 0; pool != null && i < pool.length; i++) {
+            if (pool[i]._handler.equals(current)) {
+                throw new Exception(
+                    "Can't wait here since it might cause a deadlock");
+            }
+        }
     }
 
     protected void write(AbstractSelectableChannel channel, ByteBuffer buf,
@@ -298,8 +437,9 @@ public class Switchboard implements Runnable {
     }
 
     /**
-     * This is the main loop which never exits. It waits for stuff to
-     * happen and calls the relevant callbacks.
+     * This is the main loop which runs until the switchboard is
+     * stopped. It waits for stuff to happen and calls the relevant
+     * callbacks.
      */
     public void run() {
         assert dbg("run", "starting");
@@ -308,7 +448,6 @@ public class Switchboard implements Runnable {
             try {
                 long wait = 42000; // arbitrary value = 42 seconds
                 long now = System.currentTimeMillis();
-                boolean connectTimeout = false;
                 
                 /*
                  * The synchronized() here is really to make this code
@@ -316,16 +455,6 @@ public class Switchboard implements Runnable {
                  */
                 _channelslock.lock();
                 try {
-                    Iterator<ChannelData> iter = _channels.values().iterator();
-                    while (iter.hasNext()) {
-                        ChannelData data = iter.next();
-                        if (data._timeoutWhen != 0
-                            && now+wait > data._timeoutWhen) {
-                            wait = data._timeoutWhen - now;
-                            connectTimeout = true;
-                        }
-                    }
-
                     Enumeration<SelectionKey> e = _channels.keys();
                     while (e.hasMoreElements()) {
                         SelectionKey key = e.nextElement();
@@ -339,14 +468,15 @@ public class Switchboard implements Runnable {
                     _channelslock.unlock();
                 }
 
-                // Figure out how long to sleep
+                // Figure out how long to sleep, this only needs to
+                // look at the first live timer in the queue
                 synchronized (_timers) {
-                    Iterator<TimerData> iter = _timers.values().iterator();
-                    while (iter.hasNext()) {
-                        TimerData t = iter.next();
-                        if (t._next < now+wait) {
-                            wait = t._next-now;
-                        }
+                    TimerData t;
+                    while ((t = _timerQueue.peek()) != null && t.isDead()) {
+                        pollTimer();
+                    }
+                    if (t != null && t._next < now+wait) {
+                        wait = t._next-now;
                     }
                 }
 
@@ -380,42 +510,32 @@ public class Switchboard implements Runnable {
                     _channelslock.unlock();
                 }
 
-                // Call expired timers
+                // Call expired timers and connect timeouts
                 now = System.currentTimeMillis();
-                synchronized (_timers) {
-                    Iterator<TimerData> iter = _timers.values().iterator();
-                    while (iter.hasNext()) {
-                        TimerData t = iter.next();
-                        if (now >= t._next) {
-                            try {
-                                assert dbg("run", "calling timer trig: " + t._callback);
-                                t._callback.timerTrig();
-                            } catch (Throwable uppkast) {}
-                            t._next = now+t._interval;
-                        }
+                for (;;) {
+                    TimerData t;
+                    synchronized (_timers) {
+                        t = _timerQueue.peek();
+                        if (t == null || t._next > now)
+                            break;
+                        pollTimer();
+                    }
+                    if (t.isDead()) {
+                        continue;
+                    }
+                    if (t._key != null) {
+                        connectTimeout(t._key, t._conn);
+                        continue;
                     }
-                }
-            
-                if (connectTimeout) {
-                    _channelslock.lock();
                     try {
-                        Iterator<SelectionKey> iter = _channels.keySet().iterator();
-                        while (iter.hasNext()) {
-                            SelectionKey key = iter.next();
-                            ChannelData data = _channels.get(key);
-                            if (data._timeoutWhen != 0 && data._timeoutWhen < now) {
-                                data._timeoutWhen = 0;
-                                try {
-                                    assert dbg("run", "calling connected callback timeout: " + data._callback);
-                                    data._callback.connected(true);
-                                } catch (Throwable t) {}
-                                if (key.isValid())
-                                    key.cancel();
-                                iter.remove();
-                            }
+                        assert dbg("run", "calling timer trig: " + t._callback);
+                        t._callback.timerTrig();
+                    } catch (Throwable uppkast) {}
+                    synchronized (_timers) {
+                        if (!t._cancelled) {
+                            t._next = now+t._interval;
+                            schedule(t);
                         }
-                    } finally {
-                        _channelslock.unlock();
                     }
                 }
 
@@ -427,6 +547,32 @@ public class Switchboard implements Runnable {
                     _log.debug(t);
             }
         }
+
+        try {
+            _selector.close();
+        } catch (IOException e) {}
+    }
+
+    /**
+     * Report a connect timeout for a channel which still has not
+     * been connected.
+     */
+    private void connectTimeout(SelectionKey key, ChannelData data) {
+        _channelslock.lock();
+        try {
+            if (data._timeoutWhen == 0)
+                return;
+            data._timeoutWhen = 0;
+            try {
+                assert dbg("run", "calling connected callback timeout: " + data._callback);
+                data._callback.connected(true);
+            } catch (Throwable t) {}
+            if (key.isValid())
+                key.cancel();
+            _channels.remove(key);
+        } finally {
+            _channelslock.unlock();
+        }
     }
 
     /**
@@ -543,18 +689,41 @@ public class Switchboard implements Runnable {
     }
 
     /**
-     * Class holding data about a registered timer
+     * Class holding data about a registered timer or a pending
+     * connect timeout. Entries are ordered on their next deadline.
      */
-    private static class TimerData {
+    private static class TimerData implements Comparable<TimerData> {
         TimerCallback _callback;
         long _interval;
         long _next;
+        boolean _cancelled;
+        boolean _queued;
+        SelectionKey _key;
+        ChannelData _conn;
 
         private TimerData(long interval, TimerCallback callback) {
             _interval = interval;
             _callback = callback;
             _next = System.currentTimeMillis() + interval;
         }
+
+        private TimerData(SelectionKey key, ChannelData conn) {
+            _key = key;
+            _conn = conn;
+            _next = conn._timeoutWhen;
+        }
+
+        /**
+         * True if this entry has been cancelled or, for a connect
+         * timeout, the connect has already completed.
+         */
+        private boolean isDead() {
+            return _cancelled || (_conn != null && _conn._timeoutWhen == 0);
+        }
+
+        public int compareTo(TimerData other) {
+            return _next < other._next ? -1 : (_next == other._next ? 0 : 1);
+        }
     }
 
     /**
@@ -630,6 +799,7 @@ public class Switchboard implements Runnable {
         }
 
         private void clear() {
+            _timeoutWhen = 0;
             _callback  = null;
             _readBuf   = null;
             if (_writeBufs != null) {
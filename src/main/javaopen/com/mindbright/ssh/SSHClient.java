@@ -502,7 +502,7 @@ public class SSHClient extends SSH implements NIOCallback {
             if(sshSocket == null) {
                 InetAddress serverAddresses[] =
                     InetAddress.getAllByName(serverAddrStr);
-		switchboard = Switchboard.getSwitchboard();
+		switchboard = Switchboard.getLeastLoadedSwitchboard();
                 for (int i=0; sshSocket == null && i<serverAddresses.length; i++) {
                     serverAddr = serverAddresses[i];
                     if (SSH.DEBUG) {
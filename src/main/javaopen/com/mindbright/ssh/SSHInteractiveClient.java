@@ -366,7 +366,7 @@ public final class SSHInteractiveClient extends SSHClient
         // This starts a connection to the sshd and all the related stuff...
         //
         bootSSH(shell, true);
-        switchboard.notifyWhenConnected(sshSocket, getConnectTimeout(), this);
+        sshSocket.getSwitchboard().notifyWhenConnected(sshSocket, getConnectTimeout(), this);
     }
     byte[] versionBuf;
     int versionLength;
@@ -0,0 +1,133 @@
+/******************************************************************************
+ *
+ * Copyright (c) 1999-2011 Cryptzone Group AB. All Rights Reserved.
+ * 
+ * This file contains Original Code and/or Modifications of Original Code as
+ * defined in and that are subject to the MindTerm Public Source License,
+ * Version 2.0, (the 'License'). You may not use this file except in compliance
+ * with the License.
+ * 
+ * You should have received a copy of the MindTerm Public Source License
+ * along with this software; see the file LICENSE.  If not, write to
+ * Cryptzone Group AB, Drakegatan 7, SE-41250 Goteborg, SWEDEN
+ *
+ *****************************************************************************/
+
+package com.mindbright.ssh2;
+
+import java.security.GeneralSecurityException;
+
+/**
+ * This is the abstract base class for ciphers which both encrypt and
+ * authenticate the ssh stream (AEAD ciphers). When one of these is
+ * used there is no separate MAC, the cipher protects the packet and
+ * produces/checks an authentication tag in one pass.
+ */
+public abstract class SSH2AEADCipher {
+
+    /**
+     * Check if the given ssh2 cipher name is an AEAD cipher.
+     *
+     * @param algorithm ssh2 or JCE name of cipher
+     */
+    public static boolean isAEAD(String algorithm) {
+        return algorithm != null
+            && (algorithm.startsWith("AES/GCM")
+                || algorithm.startsWith("ChaCha20-Poly1305")
+                || algorithm.endsWith("-gcm@openssh.com")
+                || algorithm.equals("chacha20-poly1305@openssh.com"));
+    }
+
+    /**
+     * Get an instance of an AEAD cipher which implements the given
+     * algorithm.
+     *
+     * @param algorithm ssh2 or JCE name of the cipher.
+     *
+     * @return An instance of <code>SSH2AEADCipher</code> or <code>null</code>.
+     */
+    public static SSH2AEADCipher getInstance(String algorithm) {
+        if (algorithm == null) {
+            return null;
+        }
+        if (algorithm.startsWith("AES/GCM")
+            || algorithm.endsWith("-gcm@openssh.com")) {
+            return new SSH2AEADCipherAESGCM();
+        }
+        if (algorithm.startsWith("ChaCha20-Poly1305")
+            || algorithm.equals("chacha20-poly1305@openssh.com")) {
+            return new SSH2AEADCipherChaCha20Poly1305();
+        }
+        return null;
+    }
+
+    /**
+     * Initialize the cipher with keys derived in the key exchange.
+     *
+     * @param encrypt true if this instance protects outgoing packets
+     * @param key     the cipher key
+     * @param iv      the initial IV, may be empty
+     */
+    public abstract void init(boolean encrypt, byte[] key, byte[] iv)
+        throws GeneralSecurityException;
+
+    /**
+     * Get the block size which packets must be padded to.
+     */
+    public abstract int getBlockSize();
+
+    /**
+     * Get the number of bytes of IV material needed from the key
+     * exchange.
+     */
+    public abstract int getIVLength();
+
+    /**
+     * Get the length of the authentication tag which follows each
+     * packet.
+     */
+    public abstract int getTagLength();
+
+    /**
+     * Get the packet length from the four byte length field. The
+     * field itself is not modified since it is covered by the tag.
+     *
+     * @param seqNum sequence number of packet
+     * @param buf    buffer holding the length field
+     * @param off    offset of the length field
+     */
+    public abstract int getPacketLength(int seqNum, byte[] buf, int off);
+
+    /**
+     * Encrypt a packet in place and append its tag. On entry the
+     * buffer holds the four byte length field followed by
+     * <code>len</code> bytes of packet.
+     *
+     * @param seqNum sequence number of packet
+     * @param buf    buffer holding the packet
+     * @param off    offset of the length field
+     * @param len    length of the packet, excluding the length field
+     */
+    public abstract void seal(int seqNum, byte[] buf, int off, int len)
+        throws GeneralSecurityException;
+
+    /**
+     * Check the tag of a packet and decrypt it in place. On entry the
+     * buffer holds the length field, <code>len</code> bytes of
+     * encrypted packet and the tag.
+     *
+     * @param seqNum sequence number of packet
+     * @param buf    buffer holding the packet
+     * @param off    offset of the length field
+     * @param len    length of the packet, excluding the length field
+     *
+     * @exception SSH2MacCheckException if the tag does not match
+     */
+    public abstract void open(int seqNum, byte[] buf, int off, int len)
+        throws SSH2MacCheckException, GeneralSecurityException;
+
+    /**
+     * Get the name of the algorithm.
+     */
+    public abstract String getAlgorithm();
+}
@@ -0,0 +1,105 @@
+/******************************************************************************
+ *
+ * Copyright (c) 1999-2011 Cryptzone Group AB. All Rights Reserved.
+ * 
+ * This file contains Original Code and/or Modifications of Original Code as
+ * defined in and that are subject to the MindTerm Public Source License,
+ * Version 2.0, (the 'License'). You may not use this file except in compliance
+ * with the License.
+ * 
+ * You should have received a copy of the MindTerm Public Source License
+ * along with this software; see the file LICENSE.  If not, write to
+ * Cryptzone Group AB, Drakegatan 7, SE-41250 Goteborg, SWEDEN
+ *
+ *****************************************************************************/
+
+package com.mindbright.ssh2;
+
+import java.security.GeneralSecurityException;
+
+import javax.crypto.AEADBadTagException;
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+import com.mindbright.util.Crypto;
+
+/**
+ * AES in Galois/Counter mode as used by aes128-gcm@openssh.com and
+ * aes256-gcm@openssh.com (RFC 5647). The packet length is sent in
+ * the clear but covered by the tag. The work is done by the JCE
+ * implementation of AES/GCM, which uses the AES and carry-less
+ * multiply instructions where the JVM supports them.
+ */
+public class SSH2AEADCipherAESGCM extends SSH2AEADCipher {
+
+    private final static int TAG_LEN = 16;
+
+    private Cipher        cipher;
+    private SecretKeySpec key;
+    private byte[]        iv;
+    private int           mode;
+
+    public void init(boolean encrypt, byte[] key, byte[] iv)
+        throws GeneralSecurityException {
+        this.cipher = Crypto.getCipher("AES/GCM/NoPadding");
+        this.key    = new SecretKeySpec(key, "AES");
+        this.iv     = new byte[12];
+        this.mode   = encrypt ? Cipher.ENCRYPT_MODE : Cipher.DECRYPT_MODE;
+        System.arraycopy(iv, 0, this.iv, 0, this.iv.length);
+    }
+
+    public int getBlockSize() {
+        return 16;
+    }
+
+    public int getIVLength() {
+        return 12;
+    }
+
+    public int getTagLength() {
+        return TAG_LEN;
+    }
+
+    public int getPacketLength(int seqNum, byte[] buf, int off) {
+        return ((buf[off]   & 0xff) << 24) | ((buf[off+1] & 0xff) << 16)
+             | ((buf[off+2] & 0xff) <<  8) |  (buf[off+3] & 0xff);
+    }
+
+    public void seal(int seqNum, byte[] buf, int off, int len)
+        throws GeneralSecurityException {
+        cipher.init(mode, key, new GCMParameterSpec(TAG_LEN * 8, iv));
+        cipher.updateAAD(buf, off, 4);
+        cipher.doFinal(buf, off + 4, len, buf, off + 4);
+        nextIV();
+    }
+
+    public void open(int seqNum, byte[] buf, int off, int len)
+        throws SSH2MacCheckException, GeneralSecurityException {
+        cipher.init(mode, key, new GCMParameterSpec(TAG_LEN * 8, iv));
+        cipher.updateAAD(buf, off, 4);
+        try {
+            cipher.doFinal(buf, off + 4, len + TAG_LEN, buf, off + 4);
+        } catch (AEADBadTagException e) {
+            throw new SSH2MacCheckException("MAC check failed (" +
+                                            getAlgorithm() + ")");
+        }
+        nextIV();
+    }
+
+    /**
+     * The last eight bytes of the IV is a counter which is
+     * incremented after each packet.
+     */
+    private void nextIV() {
+        for (int i = 11; i >= 4; i--) {
+            if (++iv[i] != 0) {
+                break;
+            }
+        }
+    }
+
+    public String getAlgorithm() {
+        return "AES/GCM";
+    }
+}
@@ -0,0 +1,252 @@
+/******************************************************************************
+ *
+ * Copyright (c) 1999-2011 Cryptzone Group AB. All Rights Reserved.
+ * 
+ * This file contains Original Code and/or Modifications of Original Code as
+ * defined in and that are subject to the MindTerm Public Source License,
+ * Version 2.0, (the 'License'). You may not use this file except in compliance
+ * with the License.
+ * 
+ * You should have received a copy of the MindTerm Public Source License
+ * along with this software; see the file LICENSE.  If not, write to
+ * Cryptzone Group AB, Drakegatan 7, SE-41250 Goteborg, SWEDEN
+ *
+ *****************************************************************************/
+
+package com.mindbright.ssh2;
+
+/**
+ * The chacha20-poly1305@openssh.com cipher. The 64 byte key is split
+ * in a main key, which encrypts the packet and derives the Poly1305
+ * key, and a header key which only encrypts the packet length. The
+ * nonce is the packet sequence number.
+ * <p>
+ * This uses the original ChaCha20 with a 64 bit nonce and block
+ * counter, which is not what the JCE offers, so both ChaCha20 and
+ * Poly1305 are implemented here.
+ */
+public class SSH2AEADCipherChaCha20Poly1305 extends SSH2AEADCipher {
+
+    private final static int TAG_LEN = 16;
+
+    private final int[]  mainKey   = new int[8];
+    private final int[]  headerKey = new int[8];
+    private final int[]  state     = new int[16];
+    private final int[]  x         = new int[16];
+    private final byte[] stream    = new byte[64];
+    private final byte[] polyKey   = new byte[32];
+    private final byte[] tag       = new byte[TAG_LEN];
+    private final byte[] len       = new byte[4];
+
+    public void init(boolean encrypt, byte[] key, byte[] iv) {
+        for (int i = 0; i < 8; i++) {
+            mainKey[i]   = le32(key, i * 4);
+            headerKey[i] = le32(key, 32 + i * 4);
+        }
+    }
+
+    public int getBlockSize() {
+        return 8;
+    }
+
+    public int getIVLength() {
+        return 0;
+    }
+
+    public int getTagLength() {
+        return TAG_LEN;
+    }
+
+    public int getPacketLength(int seqNum, byte[] buf, int off) {
+        System.arraycopy(buf, off, len, 0, 4);
+        chacha20(headerKey, seqNum, 0, len, 0, 4);
+        return ((len[0] & 0xff) << 24) | ((len[1] & 0xff) << 16)
+             | ((len[2] & 0xff) <<  8) |  (len[3] & 0xff);
+    }
+
+    public void seal(int seqNum, byte[] buf, int off, int plen) {
+        chacha20(headerKey, seqNum, 0, buf, off, 4);
+        makePolyKey(seqNum);
+        chacha20(mainKey, seqNum, 1, buf, off + 4, plen);
+        poly1305(polyKey, buf, off, plen + 4, buf, off + 4 + plen);
+    }
+
+    public void open(int seqNum, byte[] buf, int off, int plen)
+        throws SSH2MacCheckException {
+        makePolyKey(seqNum);
+        poly1305(polyKey, buf, off, plen + 4, tag, 0);
+        int diff = 0;
+        for (int i = 0; i < TAG_LEN; i++) {
+            diff |= tag[i] ^ buf[off + 4 + plen + i];
+        }
+        if (diff != 0) {
+            throw new SSH2MacCheckException("MAC check failed (" +
+                                            getAlgorithm() + ")");
+        }
+        chacha20(headerKey, seqNum, 0, buf, off, 4);
+        chacha20(mainKey, seqNum, 1, buf, off + 4, plen);
+    }
+
+    public String getAlgorithm() {
+        return "ChaCha20-Poly1305";
+    }
+
+    /**
+     * The Poly1305 key is the first 32 bytes of key stream block 0.
+     */
+    private void makePolyKey(int seqNum) {
+        java.util.Arrays.fill(polyKey, (byte)0);
+        chacha20(mainKey, seqNum, 0, polyKey, 0, 32);
+    }
+
+    private static int le32(byte[] b, int off) {
+        return (b[off] & 0xff) | ((b[off+1] & 0xff) << 8)
+            | ((b[off+2] & 0xff) << 16) | ((b[off+3] & 0xff) << 24);
+    }
+
+    private static void le32(int v, byte[] b, int off) {
+        b[off]   = (byte)v;
+        b[off+1] = (byte)(v >>> 8);
+        b[off+2] = (byte)(v >>> 16);
+        b[off+3] = (byte)(v >>> 24);
+    }
+
+    /**
+     * XOR <code>n</code> bytes of buf with the ChaCha20 key stream
+     * starting at the given block.
+     */
+    void chacha20(int[] key, int seqNum, long counter,
+                  byte[] buf, int off, int n) {
+        state[0] = 0x61707865;
+        state[1] = 0x3320646e;
+        state[2] = 0x79622d32;
+        state[3] = 0x6b206574;
+        System.arraycopy(key, 0, state, 4, 8);
+        state[12] = (int)counter;
+        state[13] = (int)(counter >>> 32);
+        // 64 bit big endian sequence number read as two LE words
+        state[14] = 0;
+        state[15] = Integer.reverseBytes(seqNum);
+
+        while (n > 0) {
+            chachaBlock();
+            int m = n < 64 ? n : 64;
+            for (int i = 0; i < m; i++) {
+                buf[off++] ^= stream[i];
+            }
+            n -= m;
+            if (++state[12] == 0) {
+                state[13]++;
+            }
+        }
+    }
+
+    private void chachaBlock() {
+        int[] x = this.x;
+        System.arraycopy(state, 0, x, 0, 16);
+        for (int i = 0; i < 10; i++) {
+            quarterRound(x, 0, 4,  8, 12);
+            quarterRound(x, 1, 5,  9, 13);
+            quarterRound(x, 2, 6, 10, 14);
+            quarterRound(x, 3, 7, 11, 15);
+            quarterRound(x, 0, 5, 10, 15);
+            quarterRound(x, 1, 6, 11, 12);
+            quarterRound(x, 2, 7,  8, 13);
+            quarterRound(x, 3, 4,  9, 14);
+        }
+        for (int i = 0; i < 16; i++) {
+            le32(x[i] + state[i], stream, i * 4);
+        }
+    }
+
+    private static void quarterRound(int[] x, int a, int b, int c, int d) {
+        x[a] += x[b]; x[d] = Integer.rotateLeft(x[d] ^ x[a], 16);
+        x[c] += x[d]; x[b] = Integer.rotateLeft(x[b] ^ x[c], 12);
+        x[a] += x[b]; x[d] = Integer.rotateLeft(x[d] ^ x[a],  8);
+        x[c] += x[d]; x[b] = Integer.rotateLeft(x[b] ^ x[c],  7);
+    }
+
+    /**
+     * Poly1305 one-time authenticator, computed with 26 bit limbs.
+     */
+    static void poly1305(byte[] key, byte[] m, int off, int n,
+                         byte[] out, int outOff) {
+        final int mask = 0x3ffffff;
+        int r0 = le32(key,  0)         & 0x3ffffff;
+        int r1 = (le32(key,  3) >>> 2) & 0x3ffff03;
+        int r2 = (le32(key,  6) >>> 4) & 0x3ffc0ff;
+        int r3 = (le32(key,  9) >>> 6) & 0x3f03fff;
+        int r4 = (le32(key, 12) >>> 8) & 0x00fffff;
+        long s1 = r1 * 5L, s2 = r2 * 5L, s3 = r3 * 5L, s4 = r4 * 5L;
+        int h0 = 0, h1 = 0, h2 = 0, h3 = 0, h4 = 0;
+        byte[] last = null;
+
+        while (n > 0) {
+            byte[] b = m;
+            int    p = off;
+            int    hibit = 1 << 24;
+            if (n < 16) {
+                last = new byte[16];
+                System.arraycopy(m, off, last, 0, n);
+                last[n] = 1;
+                b = last;
+                p = 0;
+                hibit = 0;
+            }
+            h0 += le32(b, p)              & mask;
+            h1 += (le32(b, p + 3) >>> 2)  & mask;
+            h2 += (le32(b, p + 6) >>> 4)  & mask;
+            h3 += (le32(b, p + 9) >>> 6)  & mask;
+            h4 += (le32(b, p + 12) >>> 8) | hibit;
+
+            long d0 = (long)h0 * r0 + h1 * s4 + h2 * s3 + h3 * s2 + h4 * s1;
+            long d1 = (long)h0 * r1 + (long)h1 * r0 + h2 * s4 + h3 * s3 + h4 * s2;
+            long d2 = (long)h0 * r2 + (long)h1 * r1 + (long)h2 * r0 + h3 * s4 + h4 * s3;
+            long d3 = (long)h0 * r3 + (long)h1 * r2 + (long)h2 * r1 + (long)h3 * r0 + h4 * s4;
+            long d4 = (long)h0 * r4 + (long)h1 * r3 + (long)h2 * r2 + (long)h3 * r1 + (long)h4 * r0;
+
+            long c;
+            c = d0 >>> 26; h0 = (int)d0 & mask; d1 += c;
+            c = d1 >>> 26; h1 = (int)d1 & mask; d2 += c;
+            c = d2 >>> 26; h2 = (int)d2 & mask; d3 += c;
+            c = d3 >>> 26; h3 = (int)d3 & mask; d4 += c;
+            c = d4 >>> 26; h4 = (int)d4 & mask;
+            h0 += (int)(c * 5);
+            h1 += h0 >>> 26; h0 &= mask;
+
+            off += 16;
+            n   -= 16;
+        }
+
+        int c;
+        c = h1 >>> 26; h1 &= mask; h2 += c;
+        c = h2 >>> 26; h2 &= mask; h3 += c;
+        c = h3 >>> 26; h3 &= mask; h4 += c;
+        c = h4 >>> 26; h4 &= mask; h0 += c * 5;
+        c = h0 >>> 26; h0 &= mask; h1 += c;
+
+        // Compute h - p and keep it if it did not go negative
+        int g0 = h0 + 5; c = g0 >>> 26; g0 &= mask;
+        int g1 = h1 + c; c = g1 >>> 26; g1 &= mask;
+        int g2 = h2 + c; c = g2 >>> 26; g2 &= mask;
+        int g3 = h3 + c; c = g3 >>> 26; g3 &= mask;
+        int g4 = h4 + c - (1 << 26);
+        int sel = (g4 >>> 31) - 1;
+        h0 = (h0 & ~sel) | (g0 & sel);
+        h1 = (h1 & ~sel) | (g1 & sel);
+        h2 = (h2 & ~sel) | (g2 & sel);
+        h3 = (h3 & ~sel) | (g3 & sel);
+        h4 = (h4 & ~sel) | (g4 & sel);
+
+        // h mod 2^128 plus the second half of the key
+        long f;
+        f = ((h0 | (h1 << 26)) & 0xffffffffL) + (le32(key, 16) & 0xffffffffL);
+        le32((int)f, out, outOff);
+        f = (((h1 >>> 6) | (h2 << 20)) & 0xffffffffL) + (le32(key, 20) & 0xffffffffL) + (f >>> 32);
+        le32((int)f, out, outOff + 4);
+        f = (((h2 >>> 12) | (h3 << 14)) & 0xffffffffL) + (le32(key, 24) & 0xffffffffL) + (f >>> 32);
+        le32((int)f, out, outOff + 8);
+        f = (((h3 >>> 18) | (h4 << 8)) & 0xffffffffL) + (le32(key, 28) & 0xffffffffL) + (f >>> 32);
+        le32((int)f, out, outOff + 12);
+    }
+}
@@ -0,0 +1,75 @@
+/******************************************************************************
+ *
+ * Copyright (c) 1999-2011 Cryptzone Group AB. All Rights Reserved.
+ * 
+ * This file contains Original Code and/or Modifications of Original Code as
+ * defined in and that are subject to the MindTerm Public Source License,
+ * Version 2.0, (the 'License'). You may not use this file except in compliance
+ * with the License.
+ * 
+ * You should have received a copy of the MindTerm Public Source License
+ * along with this software; see the file LICENSE.  If not, write to
+ * Cryptzone Group AB, Drakegatan 7, SE-41250 Goteborg, SWEDEN
+ *
+ *****************************************************************************/
+
+package com.mindbright.ssh2;
+
+import java.security.PublicKey;
+
+import com.mindbright.jce.provider.publickey.Ed25519PublicKey;
+
+/**
+ * Implements "ssh-ed25519" signatures (RFC 8709).
+ */
+public final class SSH2Ed25519 extends SSH2SimpleSignature {
+    public final static String SSH2_KEY_FORMAT = "ssh-ed25519";
+
+    public SSH2Ed25519() {
+        super("Ed25519", SSH2_KEY_FORMAT);
+    }
+
+    /**
+     * Encode the given public key according to the ssh standard.
+     *
+     * @param publicKey The public key to encode. Must be an instance of
+     *                  <code>Ed25519PublicKey</code>.
+     *
+     * @return A byte array containing the key suitably encoded.
+     */
+    public byte[] encodePublicKey(PublicKey publicKey) throws SSH2Exception {
+        if(!(publicKey instanceof Ed25519PublicKey)) {
+            throw new SSH2FatalException("SSH2Ed25519, invalid public key type: " +
+                                         publicKey);
+        }
+        SSH2DataBuffer buf = new SSH2DataBuffer(64);
+        buf.writeString(SSH2_KEY_FORMAT);
+        buf.writeString(((Ed25519PublicKey)publicKey).getA());
+        return buf.readRestRaw();
+    }
+
+    /**
+     * Decode a public key encoded according to the ssh standard.
+     *
+     * @param pubKeyBlob A byte array containing a public key blob.
+     *
+     * @return A <code>Publickey</code> instance.
+     */
+    public PublicKey decodePublicKey(byte[] pubKeyBlob) throws SSH2Exception {
+        SSH2DataBuffer buf = new SSH2DataBuffer(pubKeyBlob.length);
+        buf.writeRaw(pubKeyBlob);
+
+        String type = buf.readJavaString();
+        if(!type.equals(SSH2_KEY_FORMAT)) {
+            throw new SSH2FatalException("SSH2Ed25519, keyblob type mismatch, got '"
+                                         + type + ", (expected '" +
+                                         SSH2_KEY_FORMAT + "')");
+        }
+        try {
+            return new Ed25519PublicKey(buf.readString());
+        } catch (IllegalArgumentException e) {
+            throw new SSH2FatalException("SSH2Ed25519, error decoding public key blob: " +
+                                         e.getMessage());
+        }
+    }
+}
@@ -21,6 +21,8 @@ import java.security.interfaces.DSAPublicKey;
 import java.security.interfaces.ECPublicKey;
 import java.security.interfaces.RSAPublicKey;
 
+import com.mindbright.jce.provider.publickey.Ed25519PublicKey;
+
 /**
  * This class is an adapter for the interface
  * <code>SSH2TransportEventHandler</code>.
@@ -138,6 +140,8 @@ public class SSH2HostKeyVerifier extends SSH2TransportEventAdapter {
             if (ec1.getW().getAffineX().equals(ec2.getW().getAffineX()) &&
                 ec1.getW().getAffineY().equals(ec2.getW().getAffineY()))
                 return true;
+        } else if (p1 instanceof Ed25519PublicKey) {
+            return p1.equals(p2);
         }
         
         return false;
@@ -0,0 +1,193 @@
+/******************************************************************************
+ *
+ * Copyright (c) 1999-2011 Cryptzone Group AB. All Rights Reserved.
+ * 
+ * This file contains Original Code and/or Modifications of Original Code as
+ * defined in and that are subject to the MindTerm Public Source License,
+ * Version 2.0, (the 'License'). You may not use this file except in compliance
+ * with the License.
+ * 
+ * You should have received a copy of the MindTerm Public Source License
+ * along with this software; see the file LICENSE.  If not, write to
+ * Cryptzone Group AB, Drakegatan 7, SE-41250 Goteborg, SWEDEN
+ *
+ *****************************************************************************/
+
+package com.mindbright.ssh2;
+
+import java.math.BigInteger;
+
+import java.security.MessageDigest;
+import java.security.KeyPair;
+import java.security.interfaces.DSAPublicKey;
+import java.security.interfaces.RSAPublicKey;
+
+import com.mindbright.jce.provider.publickey.Curve25519;
+import com.mindbright.jce.provider.publickey.Ed25519PublicKey;
+import com.mindbright.util.Crypto;
+
+/**
+ * Implements the curve25519-sha256 key exchange as defined in RFC 8731
+ * (also known by its older name curve25519-sha256@libssh.org). The
+ * X25519 function itself is implemented in pure java since the JCE
+ * providers we run on do not necessarily have it.
+ */
+public class SSH2KEXCurve25519SHA256 extends SSH2KeyExchanger {
+
+    protected SSH2Transport transport;
+    protected byte[]        privateKey;
+    protected byte[]        publicKey;
+    protected byte[]        serverHostKey;
+    protected byte[]        serverQ;
+    protected byte[]        clientQ;
+    protected byte[]        sharedSecret_K;
+    protected byte[]        exchangeHash_H;
+    protected MessageDigest sha2;
+    protected KeyPair       serverKey;
+
+    public void init(SSH2Transport transport)
+	throws SSH2Exception {
+	init(transport, null);
+    }
+
+    public void init(SSH2Transport transport, KeyPair serverKey)
+	throws SSH2Exception {
+	this.transport = transport;
+	this.serverKey = serverKey;
+        try {
+            this.sha2 = Crypto.getMessageDigest("SHA-256");
+        } catch (Exception e) {
+            throw new SSH2KEXFailedException("SHA-256 not implemented", e);
+        }
+
+        privateKey = new byte[Curve25519.KEY_SIZE];
+        transport.getSecureRandom().nextBytes(privateKey);
+        publicKey = Curve25519.x25519Base(privateKey);
+
+        if(!transport.isServer()) {
+            clientQ = publicKey;
+            SSH2TransportPDU pdu =
+                SSH2TransportPDU.createOutgoingPacket(SSH2.MSG_KEX_ECDH_INIT);
+            pdu.writeString(publicKey);
+            transport.transmitInternal(pdu);
+        }
+    }
+
+    public void processKEXMethodPDU(SSH2TransportPDU pdu)
+	throws SSH2Exception {
+	if(pdu.getType() == SSH2.MSG_KEX_ECDH_REPLY) {
+	    if(transport.isServer()) {
+		throw new SSH2KEXFailedException("Unexpected KEX_ECDH_REPLY");
+	    }
+
+            serverHostKey      = pdu.readString();
+            serverQ            = pdu.readString();
+            byte[] serverSigH  = pdu.readString();
+
+            computeSharedSecret_K(serverQ);
+            computeExchangeHash_H();
+
+            transport.authenticateHost(serverHostKey, serverSigH, exchangeHash_H);
+            transport.sendNewKeys();
+	} else if(pdu.getType() == SSH2.MSG_KEX_ECDH_INIT) {
+	    if(!transport.isServer()) {
+		throw new SSH2KEXFailedException("Unexpected KEX_ECDH_INIT");
+	    }
+
+	    clientQ = pdu.readString();
+	    serverQ = publicKey;
+
+	    computeSharedSecret_K(clientQ);
+
+	    String sigalg = null;
+	    if(serverKey.getPublic() instanceof DSAPublicKey) {
+		sigalg = "ssh-dss";
+	    } else if(serverKey.getPublic() instanceof RSAPublicKey) {
+		sigalg = "ssh-rsa";
+	    } else if(serverKey.getPublic() instanceof Ed25519PublicKey) {
+		sigalg = "ssh-ed25519";
+	    }
+	    SSH2Signature signature = SSH2Signature.getInstance(sigalg);
+	    signature.setPublicKey(serverKey.getPublic());
+	    signature.initSign(serverKey.getPrivate());
+
+	    serverHostKey = signature.getPublicKeyBlob();
+
+	    computeExchangeHash_H();
+
+	    SSH2TransportPDU out =
+		SSH2TransportPDU.createOutgoingPacket(SSH2.MSG_KEX_ECDH_REPLY);
+
+	    out.writeString(serverHostKey);
+	    out.writeString(publicKey);
+	    out.writeString(signature.sign(exchangeHash_H));
+	    transport.transmitInternal(out);
+
+	    transport.sendNewKeys();
+	}
+    }
+
+    public MessageDigest getExchangeHashAlgorithm() {
+        sha2.reset();
+        return sha2;
+    }
+
+    public byte[] getSharedSecret_K() {
+        SSH2DataBuffer buf = new SSH2DataBuffer(128);
+        buf.writeString(sharedSecret_K);
+        return buf.readRestRaw();
+    }
+
+    public byte[] getExchangeHash_H() {
+        return exchangeHash_H;
+    }
+
+    protected void computeExchangeHash_H() {
+        SSH2DataBuffer buf = new SSH2DataBuffer(64*1024);
+
+        buf.writeString(transport.getClientVersion());
+        buf.writeString(transport.getServerVersion());
+        buf.writeString(transport.getClientKEXINITPDU().getData(),
+                        transport.getClientKEXINITPDU().getPayloadOffset(),
+                        transport.getClientKEXINITPDU().getPayloadLength());
+        buf.writeString(transport.getServerKEXINITPDU().getData(),
+                        transport.getServerKEXINITPDU().getPayloadOffset(),
+                        transport.getServerKEXINITPDU().getPayloadLength());
+        buf.writeString(serverHostKey);
+        buf.writeString(clientQ);
+        buf.writeString(serverQ);
+        buf.writeString(sharedSecret_K);
+
+        sha2.reset();
+        sha2.update(buf.getData(), 0, buf.getWPos());
+        exchangeHash_H = sha2.digest();
+
+        transport.getLog().debug2("SSH2KEXCurve25519SHA256",
+                                  "computeExchangeHash_H", "Q_C: ", clientQ);
+        transport.getLog().debug2("SSH2KEXCurve25519SHA256",
+                                  "computeExchangeHash_H", "Q_S: ", serverQ);
+        transport.getLog().debug2("SSH2KEXCurve25519SHA256",
+                                  "computeExchangeHash_H", "H: ",
+                                  exchangeHash_H);
+    }
+
+    protected void computeSharedSecret_K(byte[] peerQ)
+    throws SSH2Exception {
+        if(peerQ == null || peerQ.length != Curve25519.KEY_SIZE) {
+            throw new SSH2KEXFailedException("Invalid curve25519 public key");
+        }
+        byte[] k = Curve25519.x25519(privateKey, peerQ);
+        int acc = 0;
+        for(int i = 0; i < k.length; i++) {
+            acc |= k[i];
+        }
+        if(acc == 0) {
+            // RFC 7748 section 6.1, reject low order points
+            throw new SSH2KEXFailedException("Invalid curve25519 shared secret");
+        }
+        // The 32 byte string is encoded as an mpint, X25519 output is
+        // little endian but RFC 8731 says to treat it as a big endian
+        // number as is
+        sharedSecret_K = new BigInteger(1, k).toByteArray();
+    }
+}
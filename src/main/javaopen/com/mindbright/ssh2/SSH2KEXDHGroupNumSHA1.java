@@ -30,6 +30,7 @@ import javax.crypto.interfaces.DHPrivateKey;
 import javax.crypto.spec.DHParameterSpec;
 import javax.crypto.spec.DHPublicKeySpec;
 
+import com.mindbright.jce.provider.publickey.Ed25519PublicKey;
 import com.mindbright.util.Crypto;
 
 /**
@@ -111,6 +112,8 @@ public abstract class SSH2KEXDHGroupNumSHA1 extends SSH2KeyExchanger {
 		sigalg = "ssh-dss";
 	    } else if(serverKey.getPublic() instanceof RSAPublicKey) {
 		sigalg = "ssh-rsa";
+	    } else if(serverKey.getPublic() instanceof Ed25519PublicKey) {
+		sigalg = "ssh-ed25519";
 	    }
 	    SSH2Signature signature = SSH2Signature.getInstance(sigalg);
 	    signature.setPublicKey(serverKey.getPublic());
@@ -33,6 +33,7 @@ import java.security.spec.EllipticCurve;
 
 import javax.crypto.KeyAgreement;
 
+import com.mindbright.jce.provider.publickey.Ed25519PublicKey;
 import com.mindbright.util.Crypto;
 
 /**
@@ -197,6 +198,8 @@ public abstract class SSH2KEXECDHSHA2NIST extends SSH2KeyExchanger {
 		sigalg = "ssh-dss";
 	    } else if(serverKey.getPublic() instanceof RSAPublicKey) {
 		sigalg = "ssh-rsa";
+	    } else if(serverKey.getPublic() instanceof Ed25519PublicKey) {
+		sigalg = "ssh-ed25519";
 	    }
 	    SSH2Signature signature = SSH2Signature.getInstance(sigalg);
 	    signature.setPublicKey(serverKey.getPublic());
@@ -36,6 +36,8 @@ public abstract class SSH2KeyExchanger {
         algorithms.put("ecdh-sha2-nistp256", SSH2KEXECDHSHA2NIST.P256.class.getName());
         algorithms.put("ecdh-sha2-nistp384", SSH2KEXECDHSHA2NIST.P384.class.getName());
         algorithms.put("ecdh-sha2-nistp521", SSH2KEXECDHSHA2NIST.P521.class.getName());                       
+        algorithms.put("curve25519-sha256", SSH2KEXCurve25519SHA256.class.getName());
+        algorithms.put("curve25519-sha256@libssh.org", SSH2KEXCurve25519SHA256.class.getName());
     }
 
     protected SSH2KeyExchanger() {}
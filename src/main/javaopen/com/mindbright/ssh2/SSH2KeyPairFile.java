@@ -66,6 +66,8 @@ import com.mindbright.asn1.ASN1BitString;
 import com.mindbright.asn1.ASN1OctetString;
 import com.mindbright.asn1.ASN1OID;
 import com.mindbright.asn1.ASN1Explicit;
+import com.mindbright.jce.provider.publickey.Ed25519PrivateKey;
+import com.mindbright.jce.provider.publickey.Ed25519PublicKey;
 import com.mindbright.util.ASCIIArmour;
 import com.mindbright.util.Crypto;
 import com.mindbright.util.HexDump;
@@ -111,6 +113,8 @@ public class SSH2KeyPairFile {
 
     public final static int SSH_PRIVATE_KEY_MAGIC = 0x3f6ff9eb;
 
+    public final static String OPENSSH_KEY_MAGIC = "openssh-key-v1";
+
     public final static String PRV_PROCTYPE = "Proc-Type";
     public final static String PRV_DEKINFO  = "DEK-Info";
 
@@ -410,6 +414,8 @@ public class SSH2KeyPairFile {
             return ((DSAPublicKey)publicKey).getParams().getP().bitLength();
         } else if (publicKey instanceof RSAPublicKey) {
             return ((RSAPublicKey)publicKey).getModulus().bitLength();
+        } else if (publicKey instanceof Ed25519PublicKey) {
+            return 256;
         } else {
             return ((ECPublicKey)publicKey).getParams().getCurve().getField().getFieldSize();
         }
@@ -746,6 +752,66 @@ public class SSH2KeyPairFile {
         }
     }
 
+    /**
+     * Read a key pair stored in the "openssh-key-v1" format which is
+     * what ssh-keygen uses for ed25519 keys. Only unencrypted ed25519
+     * keys are handled.
+     */
+    private KeyPair readKeyPairOpenSSH(byte[] keyBlob)
+    throws SSH2Exception {
+        SSH2DataBuffer buf = new SSH2DataBuffer(keyBlob.length);
+        buf.writeRaw(keyBlob);
+
+        byte[] magic = OPENSSH_KEY_MAGIC.getBytes();
+        if(keyBlob.length < magic.length + 1) {
+            throw new SSH2FatalException("Corrupt or unsupported key file");
+        }
+        for(int i = 0; i < magic.length; i++) {
+            if(buf.readByte() != magic[i]) {
+                throw new SSH2FatalException("Corrupt or unsupported key file");
+            }
+        }
+        buf.readByte();
+
+        String cipher = buf.readJavaString();
+        String kdf    = buf.readJavaString();
+        buf.readString();
+        if(!"none".equals(cipher) || !"none".equals(kdf)) {
+            throw new SSH2FatalException(
+                "Encrypted OpenSSH keys are not supported (" + cipher + "/" +
+                kdf + "), remove the passphrase with 'ssh-keygen -p'");
+        }
+        if(buf.readInt() != 1) {
+            throw new SSH2FatalException("Only one key per file is supported");
+        }
+        buf.readString();
+
+        byte[] prv = buf.readString();
+        buf = new SSH2DataBuffer(prv.length);
+        buf.writeRaw(prv);
+        if(buf.readInt() != buf.readInt()) {
+            throw new SSH2AccessDeniedException("Invalid password or corrupt key blob");
+        }
+        String type = buf.readJavaString();
+        if(!SSH2Ed25519.SSH2_KEY_FORMAT.equals(type)) {
+            throw new SSH2FatalException("Unsupported key type: " + type);
+        }
+        byte[] pub = buf.readString();
+        byte[] sk  = buf.readString();
+        this.comment = buf.readJavaString();
+        if(pub.length != 32 || sk.length != 64) {
+            throw new SSH2FatalException("Corrupt ed25519 key");
+        }
+        byte[] seed = new byte[32];
+        System.arraycopy(sk, 0, seed, 0, 32);
+
+        Ed25519PrivateKey prvKey = new Ed25519PrivateKey(seed);
+        if(!java.util.Arrays.equals(prvKey.getA(), pub)) {
+            throw new SSH2FatalException("Corrupt ed25519 key, public key mismatch");
+        }
+        return new KeyPair(new Ed25519PublicKey(pub), prvKey);
+    }
+
     private void readKeyPairPutty(PushbackInputStream in, String password) 
       throws IOException, SSH2Exception, NoSuchAlgorithmException, 
              InvalidKeySpecException {
@@ -918,6 +984,9 @@ public class SSH2KeyPairFile {
         if(armour.getHeaderLine().indexOf("SSH2") != -1) {
             this.sshComFormat = true;
             this.keyPair = readKeyPairSSHCom(keyBlob, password);
+        } else if(armour.getHeaderLine().indexOf("OPENSSH") != -1) {
+            this.keyPair = readKeyPairOpenSSH(keyBlob);
+            return;
         } else {
             this.keyPair = readKeyPair(armour, keyBlob, password);
         }
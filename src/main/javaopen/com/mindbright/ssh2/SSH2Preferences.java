@@ -70,6 +70,8 @@ public class SSH2Preferences {
     public static final String TX_MAX_PKT_SZ  = "tx-max-pkt-sz";
     public static final String X11_DISPLAY    = "x11-display";
     public static final String QUEUED_RX_CHAN = "queued-rx-chan";
+    public static final String SFTP_MAX_REQUESTS = "sftp-max-requests";
+    public static final String SFTP_TRANSFERS = "sftp-transfers";
 
     /**
      * Misc internal preferences
@@ -95,8 +97,9 @@ public class SSH2Preferences {
      * Socket option preferences
      * Examples:
      *
-     * Enable TCP_NODELAY for the socket connected to the server:
-     *     socketoption.transport.tcp-nodelay = true
+     * Disable TCP_NODELAY, which is on by default, for the socket
+     * connected to the server:
+     *     socketoption.transport.tcp-nodelay = false
      *
      * Enable TCP_NODELAY for all sockets to local forward '127.0.0.1:4711':
      *     socketoption.local.127.0.0.1.4711.tcp-nodelay = true
@@ -165,6 +168,9 @@ public class SSH2Preferences {
         { "arcfour",         "RC4" },
         { "arcfour128",      "RC4" },
         { "arcfour256",      "RC4" },
+        { "aes128-gcm@openssh.com", "AES/GCM" },
+        { "aes256-gcm@openssh.com", "AES/GCM" },
+        { "chacha20-poly1305@openssh.com", "ChaCha20-Poly1305" },
     };
 
     final static String[][] macs = {
@@ -180,6 +186,8 @@ public class SSH2Preferences {
         { "hmac-sha256@ssh.com", "HmacSHA256" },
         { "hmac-sha256-2@ssh.com", "HmacSHA256" },
         { "hmac-sha512@ssh.com", "HmacSHA512" },
+        { "hmac-sha2-256-etm@openssh.com", "HmacSHA256" },
+        { "hmac-sha2-512-etm@openssh.com", "HmacSHA512" },
     };
 
     public final static String FIPS_KEX_ALGORITHMS = "diffie-hellman-group14-sha1";
@@ -189,12 +197,14 @@ public class SSH2Preferences {
     public final static String FIPS_HMACS = "hmac-sha1,hmac-sha2-256,hmac-sha256-2@ssh.com,hmac-sha256@ssh.com";
 
     public final static String DEFAULT_CIPHERS_UNLIMITED = 
+        "chacha20-poly1305@openssh.com,aes128-gcm@openssh.com,aes256-gcm@openssh.com," +
         "aes128-ctr,aes192-ctr,aes256-ctr,arcfour256,arcfour128,aes128-cbc,blowfish-ctr,blowfish-cbc,aes192-cbc," +
         "aes256-cbc,3des-ctr,3des-cbc,arcfour,rijndael-cbc@lysator.liu.se";
 
     public final static String DEFAULT_CIPHERS_LIMITED = 
-        "aes128-ctr,arcfour128,aes128-cbc,blowfish-ctr,blowfish-cbc,3des-ctr,3des-cbc,arcfour";
+        "aes128-gcm@openssh.com,aes128-ctr,arcfour128,aes128-cbc,blowfish-ctr,blowfish-cbc,3des-ctr,3des-cbc,arcfour";
 
+    public final static String DEFAULT_KEX_CURVE25519 = "curve25519-sha256,curve25519-sha256@libssh.org";
     public final static String DEFAULT_KEX_ECDH = "ecdh-sha2-nistp256,ecdh-sha2-nistp384,ecdh-sha2-nistp521";
     public final static String DEFAULT_KEX_UNLIMITED = 
         "diffie-hellman-group-exchange-sha256,diffie-hellman-group-exchange-sha1," +
@@ -203,17 +213,18 @@ public class SSH2Preferences {
     public final static String DEFAULT_KEX_LIMITED =
         "diffie-hellman-group1-sha1";
 
-    public final static String DEFAULT_HOST_KEY_ALGS = "ssh-dss,ssh-rsa";
+    public final static String DEFAULT_HOST_KEY_ALGS = "ssh-dss,ssh-rsa,ssh-ed25519";
     public final static String DEFAULT_HOST_KEY_ALGS_EC =
         "ecdsa-sha2-nistp256,ecdsa-sha2-nistp384,ecdsa-sha2-nistp521," + 
         DEFAULT_HOST_KEY_ALGS;
     
     public final static String DEFAULT_HMACS = 
+	"hmac-sha2-256-etm@openssh.com,hmac-sha2-512-etm@openssh.com," +
 	"hmac-sha1,hmac-md5,hmac-sha2-256,hmac-sha2-512," + 
         "hmac-sha256-2@ssh.com,hmac-sha256@ssh.com,hmac-sha512@ssh.com,hmac-sha1-96,hmac-md5-96";
 
     public final static String DEFAULT_HMACS_NO_SHA2_512 = 
-	"hmac-sha1,hmac-md5,hmac-sha2-256,hmac-sha256-2@ssh.com,"+
+	"hmac-sha2-256-etm@openssh.com,hmac-sha1,hmac-md5,hmac-sha2-256,hmac-sha256-2@ssh.com,"+
 	"hmac-sha256@ssh.com,hmac-sha1-96,hmac-md5-96";
 
     private final static Properties defaultProperties = new Properties();
@@ -226,6 +237,8 @@ public class SSH2Preferences {
             Crypto.hasUnlimitedDHSupport() ? DEFAULT_KEX_UNLIMITED : DEFAULT_KEX_LIMITED;
         if (Crypto.hasECDHSupport())
             kexalgs = DEFAULT_KEX_ECDH + "," + kexalgs;
+        // curve25519 is implemented in pure java so it is always available
+        kexalgs = DEFAULT_KEX_CURVE25519 + "," + kexalgs;
         
         String cipheralgs = Crypto.hasUnlimitedStrengthJCE() ? 
             DEFAULT_CIPHERS_UNLIMITED : DEFAULT_CIPHERS_LIMITED;        
@@ -254,6 +267,8 @@ public class SSH2Preferences {
         defaultProperties.put(TX_MAX_PKT_SZ,  "16384");
         defaultProperties.put(X11_DISPLAY, X11_DISPLAY_AUTO);
         defaultProperties.put(QUEUED_RX_CHAN, "true");
+        defaultProperties.put(SFTP_MAX_REQUESTS, "256");
+        defaultProperties.put(SFTP_TRANSFERS, "4");
         defaultProperties.put(DEFAULT_PKT_SZ, "1024");
         defaultProperties.put(PKT_POOL_SZ, "1024");
         defaultProperties.put(TERM_MIN_LAT, "false");
@@ -268,6 +283,10 @@ public class SSH2Preferences {
         defaultProperties.put(CONNECT_TIMEOUT, "60");
         defaultProperties.put(PROXY_TIMEOUT, "30");
         defaultProperties.put(KEX_TIMEOUT, "180");
+        // sftp requests and window adjusts are small packets which
+        // Nagle's algorithm would hold until the server acks
+        defaultProperties.put(SOCK_OPT + SOCK_OPT_TRANSPORT + "." +
+                              SO_TCP_NODELAY, "true");
     };
 
     private Properties preferences;
@@ -451,6 +470,10 @@ public class SSH2Preferences {
         for(int i = 2; i < 8; i++) {
             String type = kexFields[i];
             String alg = choosePref(type, peerPrefs, weAreAServer);
+            if(alg == null && isImplicitMac(type)) {
+                // AEAD ciphers authenticate themselves, the MAC is not used
+                alg = "none";
+            }
             if(alg == null) {
                 haveAgreed   = false;
                 sameKEXGuess = false;
@@ -462,6 +485,14 @@ public class SSH2Preferences {
         return haveAgreed;
     }
 
+    private boolean isImplicitMac(String type) {
+        if (MACS_C2S.equals(type))
+            return SSH2AEADCipher.isAEAD(kexAgreedAlgs.get(CIPHERS_C2S));
+        if (MACS_S2C.equals(type))
+            return SSH2AEADCipher.isAEAD(kexAgreedAlgs.get(CIPHERS_S2C));
+        return false;
+    }
+
     public String getDisagreeType() {
         return disagreeType;
     }
@@ -518,6 +549,8 @@ public class SSH2Preferences {
                 len = 192;
             } else if(cipherName.indexOf("256") != -1) {
                 len = 256;
+            } else if(cipherName.startsWith("chacha20")) {
+                len = 512;
             } else if(cipherName.startsWith("twofish") ||
                       cipherName.startsWith("rijndael") ||
                       cipherName.startsWith("aes")) {
@@ -529,6 +562,16 @@ public class SSH2Preferences {
         return len / 8;
     }
 
+    /**
+     * Check if the given mac is computed over the encrypted packet
+     * (encrypt-then-mac) rather than over the plaintext.
+     *
+     * @param macName ssh2 name of mac
+     */
+    public static boolean isEtMMac(String macName) {
+        return macName != null && macName.endsWith("-etm@openssh.com");
+    }
+
     public static int getMacKeyLen(String macName) {
         int len = 16;
         if(macName != null) {
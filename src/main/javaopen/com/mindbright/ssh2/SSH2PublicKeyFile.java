@@ -28,6 +28,7 @@ import java.security.interfaces.DSAPublicKey;
 import java.security.interfaces.ECPublicKey;
 import java.security.interfaces.RSAPublicKey;
 
+import com.mindbright.jce.provider.publickey.Ed25519PublicKey;
 import com.mindbright.util.Base64;
 import com.mindbright.util.ASCIIArmour;
 
@@ -84,6 +85,8 @@ public class SSH2PublicKeyFile {
         } else if (key instanceof ECPublicKey) {
             alg = "ecdsa-sha2-nistp" + 
                 ((ECPublicKey)key).getParams().getCurve().getField().getFieldSize();
+        } else if (key instanceof Ed25519PublicKey) {
+            alg = SSH2Ed25519.SSH2_KEY_FORMAT;
         }
         return alg;
     }
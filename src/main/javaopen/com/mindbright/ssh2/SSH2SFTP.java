@@ -64,6 +64,12 @@ public class SSH2SFTP {
          */
         protected volatile long lastOffset;
 
+        /**
+         * Paces the asynchronous requests of a transfer, used by
+         * SSH2SFTPClient.
+         */
+        volatile SSH2SFTPWindow window;
+
         /**
          * Construct a new FileHandle with the provided data
          *
@@ -15,10 +15,13 @@
 
 package com.mindbright.ssh2;
 
+import java.io.EOFException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 
 import java.util.ArrayList;
 import java.util.Enumeration;
@@ -43,8 +46,6 @@ import com.mindbright.nio.NonBlockingPipe;
 public final class SSH2SFTPClient extends SSH2SFTP
     implements SSH2SFTP.Callback {
 
-    private final static int MAX_OUTSTANDING_ASYNCH = 24;
-	
     private class ReplyLock {
         protected int        expectType;
         protected SFTPPacket replyPkt;
@@ -82,11 +83,13 @@ public final class SSH2SFTPClient extends SSH2SFTP
 
         private FileHandle handle;
         private int        len;
+        private long       sentAt;
 
         protected WriteReplyLock(FileHandle handle, int len) {
             super(SSH_FXP_STATUS);
             this.handle = handle;
             this.len    = len;
+            this.sentAt = System.nanoTime();
             handle.asyncStart(len);
         }
 
@@ -97,6 +100,9 @@ public final class SSH2SFTPClient extends SSH2SFTP
                     return;
                 }
                 checkType(replyPkt, expectType);
+                if (handle.window != null) {
+                    handle.window.completed(len, sentAt);
+                }
                 handle.asyncEnd(len);
             } catch (SFTPException e) {
                 handle.asyncException(e);
@@ -118,8 +124,10 @@ public final class SSH2SFTPClient extends SSH2SFTP
         private byte[]     buf;
         private int        off;
         private int        len;
+        private long       sentAt;
         
         private RandomAccessFile fileTarget;
+        private FileChannel      chanTarget;
         private OutputStream     strmTarget;
 
         private ReadReplyLock(FileHandle handle, long fileOffset, int len) {
@@ -127,6 +135,7 @@ public final class SSH2SFTPClient extends SSH2SFTP
             this.handle     = handle;
             this.fileOffset = fileOffset;
             this.len        = len;
+            this.sentAt     = System.nanoTime();
             handle.asyncStart(len);
         }
 
@@ -142,6 +151,12 @@ public final class SSH2SFTPClient extends SSH2SFTP
             this.fileTarget = fileTarget;
         }
 
+        protected ReadReplyLock(FileHandle handle, long fileOffset,
+                                FileChannel chanTarget, int len) {
+            this(handle, fileOffset, len);
+            this.chanTarget = chanTarget;
+        }
+
         protected ReadReplyLock(FileHandle handle, long fileOffset,
                                 byte[] buf, int off, int len) {
             this(handle, fileOffset, len);
@@ -162,6 +177,13 @@ public final class SSH2SFTPClient extends SSH2SFTP
                     fileTarget.seek(fileOffset);
                     if (n > 0)
                         fileTarget.write(replyPkt.getData(), replyPkt.getRPos(), n);
+                } else if (chanTarget != null) {
+                    // written where it belongs, whatever order the
+                    // replies come in
+                    n = replyPkt.readInt();
+                    if (n > 0)
+                        writeAt(chanTarget, replyPkt.getData(),
+                                replyPkt.getRPos(), n, fileOffset);
                 } else if (strmTarget != null) {
                     if (handle.lastOffset != fileOffset) {
                         handle.asyncException(
@@ -180,6 +202,9 @@ public final class SSH2SFTPClient extends SSH2SFTP
                 if (n < 0)
                     throw new SFTPEOFException("");
 
+                if (handle.window != null && n > 0) {
+                    handle.window.completed(n, sentAt);
+                }
                 if (n < len) {
                     resend(replyPkt, n);
                 } else {
@@ -202,6 +227,7 @@ public final class SSH2SFTPClient extends SSH2SFTP
             fileOffset += n;
             len        -= n;
             off        += n;
+            sentAt     = System.nanoTime();
             pkt.reset(SSH_FXP_READ, i);
             pkt.writeString(handle.getHandle());
             pkt.writeLong(fileOffset);
@@ -225,6 +251,7 @@ public final class SSH2SFTPClient extends SSH2SFTP
     private int                id;
     private int                version;
     private int                maxDataSize;
+    private int                maxRequests;
     private boolean            isBlocking;
     private boolean            isOpen;
 
@@ -269,6 +296,8 @@ public final class SSH2SFTPClient extends SSH2SFTP
         this.id         = 0;
         this.isBlocking = isBlocking;
         this.maxDataSize = maxSize;
+        this.maxRequests = connection.getPreferences().
+            getIntPreference(SSH2Preferences.SFTP_MAX_REQUESTS);
         this.restart();
 
         // INIT pkt don't have an id but version is in same place
@@ -468,6 +497,64 @@ public final class SSH2SFTPClient extends SSH2SFTP
 	return len;
     }
 
+    /**
+     * Read data from an open file on the server and stores it in a
+     * local file, at the same position as it is read from in the
+     * remote file. The data is written with a positional write, so
+     * several reads may be outstanding on the same channel and their
+     * replies may arrive in any order.
+     * <p>
+     * Note that if the client is operating in
+     * asynchronous mode then the method will return before data has been
+     * written to the channel. In this case the <code>asyncWait</code>
+     * method must be called, or the sftp file closed, before the channel
+     * can be closed.
+     *
+     * @param handle Handle identifying file.
+     * @param fileOffset Where in the file to start to read.
+     * @param fileTarget Local file to write the data into.
+     * @param len Number of bytes to read. Must be less than
+     *            maxDataSize, which by default is 32768 bytes.
+     *
+     * @return The number of read bytes.
+     */
+    public int read(FileHandle handle, long fileOffset,
+                    FileChannel fileTarget, int len)
+        throws SFTPException, IOException {
+        if(!handle.isOpen()) {
+            throw new SFTPAsyncAbortException();
+        }
+        if (len <= 0 || len > maxDataSize) {
+            throw new IllegalArgumentException("len must be: 0 < len <= " + maxDataSize);
+        }
+        SFTPPacket pkt = createPacket(SSH_FXP_READ, handle);
+        pkt.writeLong(fileOffset);
+        pkt.writeInt(len);
+
+        if(isBlocking) {
+            try {
+                pkt = transmitExpectReply(pkt, SSH_FXP_DATA);
+                len = pkt.readInt();
+                writeAt(fileTarget, pkt.getData(), pkt.getRPos(), len,
+                        fileOffset);
+                return len;
+            } catch (SFTPEOFException e) {
+                return 0;
+            } finally {
+                if(pkt != null)
+                    releasePacket(pkt);
+            }
+        }
+        if(!isOpen) {
+            throw new SFTPDisconnectException();
+        }
+        Integer   id    = Integer.valueOf(pkt.getId());
+        ReplyLock reply = new ReadReplyLock(handle, fileOffset, fileTarget, len);
+        replyLocks.put(id, reply);
+        transmit(pkt);
+        return len;
+    }
+
     /**
      * Read data from an open file on the server and stores it in a
      * local buffer. Note that if the client is operating in
@@ -594,7 +681,10 @@ public final class SSH2SFTPClient extends SSH2SFTP
 
         boolean useAsyncRead = !isBlocking && len >= 0;
         long foffs = 0;
-        int cnt   = 0;
+
+        if (useAsyncRead) {
+            handle.window = new SSH2SFTPWindow(maxRequests);
+        }
 
         try {
             while (len == -1 || foffs < len) {
@@ -607,11 +697,12 @@ public final class SSH2SFTPClient extends SSH2SFTP
                 pkt.writeInt(toread);
 
                 if (!useAsyncRead) {
+                    SFTPPacket reply = null;
                     try {
-                        pkt = transmitExpectReply(pkt, SSH_FXP_DATA);
-                        int n = pkt.readInt();
+                        reply = transmitExpectReply(pkt, SSH_FXP_DATA);
+                        int n = reply.readInt();
                         if (n >= 0) {
-                            out.write(pkt.getData(), pkt.getRPos(), n);
+                            out.write(reply.getData(), reply.getRPos(), n);
                             foffs += n;
                             rlen += n;
                             handle.asyncProgress(n);
@@ -621,8 +712,8 @@ public final class SSH2SFTPClient extends SSH2SFTP
                             break;
                         }
                     } finally {
-                        if (pkt != null)
-                            releasePacket(pkt);
+                        if (reply != null)
+                            releasePacket(reply);
                     }
                 } else {
                     Integer   id    = Integer.valueOf(pkt.getId());
@@ -633,9 +724,9 @@ public final class SSH2SFTPClient extends SSH2SFTP
                     rlen += toread;
                }
 
-                if (useAsyncRead && ++cnt == MAX_OUTSTANDING_ASYNCH) {
-                    cnt = 0;
-                    handle.asyncWait(MAX_OUTSTANDING_ASYNCH/2);
+                if (useAsyncRead) {
+                    // wait for room in the window before the next request
+                    handle.asyncWait(handle.window.getWindow() - 1);
                 }
             }
 
@@ -654,7 +745,103 @@ public final class SSH2SFTPClient extends SSH2SFTP
             }
         }
 
-        return (int) rlen; 
+        return (int) rlen;
+    }
+
+    /**
+     * Read a part of a file on the server and store it at the same
+     * position in a local file. Several parts of a large file can be
+     * read at once this way, each through a client of its own. It
+     * will always wait until the operation has completed before
+     * returning, even if running in asynchronous mode.
+     *
+     * @param handle Handle identifying file. The handle is left open.
+     * @param fileOffset Where in the file the part starts.
+     * @param len Length of the part.
+     * @param fileTarget Local file to write the part into.
+     */
+    public void readFully(FileHandle handle, long fileOffset, long len,
+                          FileChannel fileTarget)
+        throws SFTPException, IOException {
+        if(!handle.isOpen()) {
+            throw new SFTPAsyncAbortException();
+        }
+
+        long end = fileOffset + len;
+
+        if (!isBlocking) {
+            handle.window = new SSH2SFTPWindow(maxRequests);
+        }
+
+        while (fileOffset < end) {
+            int toread = (int)Math.min(maxDataSize, end - fileOffset);
+            if (isBlocking) {
+                int n = read(handle, fileOffset, fileTarget, toread);
+                if (n <= 0)
+                    throw new SFTPEOFException("Unexpected end of file");
+                handle.asyncProgress(n);
+                fileOffset += n;
+            } else {
+                read(handle, fileOffset, fileTarget, toread);
+                fileOffset += toread;
+                // wait for room in the window before the next request
+                if (handle.asyncWait(handle.window.getWindow() - 1))
+                    throw new SFTPEOFException("Unexpected end of file");
+            }
+        }
+
+        if (!isBlocking && handle.asyncWait()) {
+            throw new SFTPEOFException("Unexpected end of file");
+        }
+    }
+
+    /**
+     * Read the entire file on the server into a local file. The
+     * replies to the asynchronous reads are written at their offsets
+     * as they arrive, so unlike with a stream they need not come in
+     * order and are not buffered. A file of unknown size is read one
+     * request at a time. It will always wait until the operation has completed
+     * before returning, even if running in asynchronous mode.
+     *
+     * @param handle Handle identifying file. The handle is left open.
+     * @param fileTarget Local file to write the data into, from its
+     *                   start.
+     *
+     * @return Number of bytes read.
+     */
+    public long readFully(FileHandle handle, FileChannel fileTarget)
+        throws SFTPException, IOException {
+        if(!handle.isOpen()) {
+            throw new SFTPAsyncAbortException();
+        }
+
+        long len = getRealSize(handle);
+        if (len > 0) {
+            readFully(handle, 0, len, fileTarget);
+            return len;
+        }
+
+        long foffs = 0;
+        for (;;) {
+            SFTPPacket pkt = createPacket(SSH_FXP_READ, handle);
+            pkt.writeLong(foffs);
+            pkt.writeInt(maxDataSize);
+            // in asynchronous mode the request is back in the pool once
+            // sent, only a reply may be released here
+            SFTPPacket reply = null;
+            try {
+                reply = transmitExpectReply(pkt, SSH_FXP_DATA);
+                int n = reply.readInt();
+                writeAt(fileTarget, reply.getData(), reply.getRPos(), n, foffs);
+                foffs += n;
+                handle.asyncProgress(n);
+            } catch (SFTPEOFException e) {
+                return foffs;
+            } finally {
+                if (reply != null)
+                    releasePacket(reply);
+            }
+        }
     }
 
     /**
@@ -738,7 +925,6 @@ public final class SSH2SFTPClient extends SSH2SFTP
 
         int len   = 0;
         long foffs = 0;
-        int cnt   = 0;
         int lPos  = 0;
 
         if (append) {
@@ -747,6 +933,10 @@ public final class SSH2SFTPClient extends SSH2SFTP
 		foffs = 0;
 	}
 
+        if (!isBlocking) {
+            handle.window = new SSH2SFTPWindow(maxRequests);
+        }
+
         try {
             for(;;) {
                 SFTPPacket pkt = createPacket(SSH_FXP_WRITE, handle);
@@ -763,14 +953,10 @@ public final class SSH2SFTPClient extends SSH2SFTP
                     pkt.setWPos(lPos + 4 + len);
                     writeInternal(handle, pkt, len);
                     foffs += len;
-                    if(!isBlocking && ++cnt == MAX_OUTSTANDING_ASYNCH) {
-                        cnt = 0;
-                        handle.asyncWait(MAX_OUTSTANDING_ASYNCH/2);
+                    if(!isBlocking) {
+                        // wait for room in the window before the next request
+                        handle.asyncWait(handle.window.getWindow() - 1);
                     }
-
-                    if((cnt % (MAX_OUTSTANDING_ASYNCH/4) == 1))
-                         Thread.yield();
-
                 } else {
                     break;
                 }
@@ -805,6 +991,54 @@ public final class SSH2SFTPClient extends SSH2SFTP
         return writeFully(handle, new java.io.ByteArrayInputStream(in), append);
     }
 
+    /**
+     * Write a part of a local file to the same position in a file on
+     * the server. Several parts of a large file can be written at once
+     * this way, each through a client of its own. It will always wait
+     * until the operation has completed before returning, even if
+     * running in asynchronous mode.
+     *
+     * @param handle Handle identifying file. The handle is left open.
+     * @param fileOffset Where in the file the part starts.
+     * @param len Length of the part.
+     * @param fileSource Local file to read the part from.
+     */
+    public void writeFully(FileHandle handle, long fileOffset, long len,
+                           FileChannel fileSource)
+        throws SFTPException, IOException {
+        if(!handle.isOpen()) {
+            throw new SFTPAsyncAbortException();
+        }
+
+        long end = fileOffset + len;
+
+        if (!isBlocking) {
+            handle.window = new SSH2SFTPWindow(maxRequests);
+        }
+
+        while (fileOffset < end) {
+            SFTPPacket pkt = createPacket(SSH_FXP_WRITE, handle);
+            pkt.writeLong(fileOffset);
+            int lPos = pkt.getWPos();
+            int n = pkt.getMaxWriteSize() - 4;
+            n = (n > (maxDataSize - lPos - 4) ? (maxDataSize - lPos - 4) : n);
+            n = (int)Math.min(n, end - fileOffset);
+            pkt.writeInt(n);
+            readAt(fileSource, pkt.getData(), pkt.getWPos(), n, fileOffset);
+            pkt.setWPos(lPos + 4 + n);
+            writeInternal(handle, pkt, n);
+            fileOffset += n;
+            if (!isBlocking) {
+                // wait for room in the window before the next request
+                handle.asyncWait(handle.window.getWindow() - 1);
+            }
+        }
+
+        if (!isBlocking) {
+            handle.asyncWait();
+        }
+    }
+
 
     /**
      * Get attributes of a file on the server. If the name refers to a
@@ -1264,6 +1498,27 @@ public final class SSH2SFTPClient extends SSH2SFTP
 	}
     }
 
+    private static void writeAt(FileChannel chan, byte[] buf, int off,
+                                int len, long position)
+        throws IOException {
+        ByteBuffer src = ByteBuffer.wrap(buf, off, len);
+        while (src.hasRemaining()) {
+            position += chan.write(src, position);
+        }
+    }
+
+    private static void readAt(FileChannel chan, byte[] buf, int off,
+                               int len, long position)
+        throws IOException {
+        ByteBuffer dst = ByteBuffer.wrap(buf, off, len);
+        while (dst.hasRemaining()) {
+            int n = chan.read(dst, position);
+            if (n < 0)
+                throw new EOFException();
+            position += n;
+        }
+    }
+
     private static void checkType(SFTPPacket pkt, int type) throws SFTPException {
         if(pkt.getType() == SSH_FXP_STATUS) {
             int error = pkt.readInt();
@@ -16,11 +16,12 @@
 package com.mindbright.ssh2;
 
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
 
 import java.util.ArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
 
 import com.mindbright.sshcommon.SSHFileTransfer;
 import com.mindbright.sshcommon.SSHFileTransferProgress;
@@ -29,12 +30,214 @@ import com.mindbright.util.Util;
 
 /**
  * Convenience class for transferring files to and from the server.
+ * <p>
+ * The files are transferred by a number of workers at once, each
+ * with a sftp session of its own on the connection, while the
+ * directories are walked and created. Files of 8 MB or more are
+ * split into parts transferred by different workers. The number of
+ * workers is given by the <code>sftp-transfers</code> preference.
+ * The first worker uses the session of this object, the others are
+ * only started once more files or parts are queued than there are
+ * workers.
+ * <p>
+ * The progress is told about one file at a time, in the order the
+ * workers started them.
  */
 public class SSH2SFTPTransfer implements SSHFileTransfer,
     SSH2SFTP.AsyncListener {
+
+    private final static long SPLIT_SIZE    = 8L << 20;
+    private final static long MIN_PART_SIZE = 4L << 20;
+
     private SSHFileTransferProgress progress = null;
+    private SSH2Connection          connection;
     private SSH2SFTPClient          client;
     private File                    cwd;
+    private volatile Batch          batch;
+
+    // files the workers started, reported to the progress in this order
+    private final ArrayList<FileTransfer> started =
+        new ArrayList<FileTransfer>();
+
+    /**
+     * A file to transfer, in one or more parts.
+     */
+    private static final class FileTransfer {
+        final File    local;
+        final String  remote;
+        final long    size;
+        final boolean toRemote;
+        int     partsLeft;
+        boolean started;
+        boolean done;
+
+        FileTransfer(File local, String remote, long size, boolean toRemote) {
+            this.local    = local;
+            this.remote   = remote;
+            this.size     = size;
+            this.toRemote = toRemote;
+        }
+    }
+
+    /**
+     * A part of a file for a worker to transfer. The whole file if
+     * <code>len</code> is -1.
+     */
+    private static final class Part {
+        final FileTransfer file;
+        final long         offset;
+        final long         len;
+
+        Part(FileTransfer file, long offset, long len) {
+            this.file   = file;
+            this.offset = offset;
+            this.len    = len;
+        }
+    }
+
+    private final static Part END = new Part(null, 0, 0);
+
+    /**
+     * The workers of one copy operation and the parts queued for them.
+     */
+    private final class Batch {
+        private final LinkedBlockingQueue<Part> queue =
+            new LinkedBlockingQueue<Part>();
+        // sessions opened for the workers after the first one
+        private final ArrayList<SSH2SFTPClient> sessions =
+            new ArrayList<SSH2SFTPClient>();
+        private final ArrayList<Thread> workers = new ArrayList<Thread>();
+        private final int maxWorkers;
+        private int queued;
+        private boolean sessionsRefused;
+        private boolean closed;
+        private volatile IOException failure;
+
+        Batch() {
+            maxWorkers = Math.max(1, connection.getPreferences().
+                                  getIntPreference(SSH2Preferences.SFTP_TRANSFERS));
+        }
+
+        int getMaxWorkers() {
+            return maxWorkers;
+        }
+
+        /**
+         * Queues a part and starts another worker if there are more
+         * parts than workers.
+         */
+        void add(Part part) {
+            queue.add(part);
+            queued++;
+            if (workers.isEmpty()) {
+                start(client);
+            } else if (queued > workers.size() &&
+                       workers.size() < maxWorkers && !sessionsRefused) {
+                SSH2SFTPClient c;
+                try {
+                    c = new SSH2SFTPClient(connection, false);
+                } catch (SSH2SFTP.SFTPException e) {
+                    // the server may limit the sessions per connection
+                    connection.getLog().warning("SSH2SFTPTransfer",
+                                                "could only start " +
+                                                workers.size() +
+                                                " sftp sessions");
+                    sessionsRefused = true;
+                    return;
+                }
+                synchronized (this) {
+                    if (closed) {
+                        c.terminate();
+                        return;
+                    }
+                    sessions.add(c);
+                }
+                start(c);
+            }
+        }
+
+        private void start(final SSH2SFTPClient c) {
+            Thread t = new Thread(new Runnable() {
+                public void run() {
+                    work(c);
+                }
+            }, "SSH2SFTPTransfer-" + workers.size());
+            t.setDaemon(true);
+            t.start();
+            workers.add(t);
+        }
+
+        synchronized void fail(IOException e) {
+            if (failure == null) {
+                failure = e;
+            }
+        }
+
+        /**
+         * Waits for the queued parts and stops the workers.
+         *
+         * @throws IOException the first error of a worker
+         */
+        void finish() throws IOException {
+            for (int i = 0; i < workers.size(); i++) {
+                queue.add(END);
+            }
+            for (Thread t : workers) {
+                while (t.isAlive()) {
+                    try {
+                        t.join();
+                    } catch (InterruptedException e) {}
+                }
+            }
+            closeSessions();
+            if (failure != null) {
+                throw failure;
+            }
+        }
+
+        /**
+         * Stops the workers, the session of this object is terminated
+         * by the caller.
+         */
+        void abort() {
+            fail(new IOException("Transfer aborted"));
+            closeSessions();
+        }
+
+        private synchronized void closeSessions() {
+            closed = true;
+            for (SSH2SFTPClient c : sessions) {
+                c.terminate();
+            }
+        }
+
+        private void work(SSH2SFTPClient c) {
+            for (;;) {
+                Part part;
+                try {
+                    part = queue.take();
+                } catch (InterruptedException e) {
+                    continue;
+                }
+                if (part == END) {
+                    return;
+                }
+                if (failure != null) {
+                    // skip the rest after an error
+                    continue;
+                }
+                try {
+                    transfer(c, part);
+                } catch (SSH2SFTP.SFTPException e) {
+                    fail(new IOException(part.file.toRemote ?
+                                         "Error writing file: " + e.getMessage() :
+                                         e.getMessage()));
+                } catch (IOException e) {
+                    fail(e);
+                }
+            }
+        }
+    }
 
     /**
      * @param cwd Directory on server to transfer the files to/from.
@@ -43,8 +246,9 @@ public class SSH2SFTPTransfer implements SSHFileTransfer,
     public SSH2SFTPTransfer(File cwd, SSH2Connection connection)
         throws SSH2Exception {
         try {
-            this.cwd    = cwd;
-            this.client = new SSH2SFTPClient(connection, false);
+            this.cwd        = cwd;
+            this.connection = connection;
+            this.client     = new SSH2SFTPClient(connection, false);
         } catch (SSH2SFTP.SFTPException e) {
             throw new SSH2FatalException("Could not start sftp session", e);
         }
@@ -62,18 +266,32 @@ public class SSH2SFTPTransfer implements SSHFileTransfer,
         if(remoteFile == null || remoteFile.equals(""))
             remoteFile = "./";
 
-		for(String f: localFiles) {
-            File lf = new File(f);
-            if(!lf.isAbsolute())
-                lf = new File(cwd, f);
-            if(!lf.isFile() && !lf.isDirectory()) {
-                throw new IOException("File: " + lf.getName() +
-                                      " is not a regular file or directory");
+        synchronized(this) {
+            started.clear();
+        }
+        Batch b = batch = new Batch();
+        try {
+            for(String f: localFiles) {
+                File lf = new File(f);
+                if(!lf.isAbsolute())
+                    lf = new File(cwd, f);
+                if(!lf.isFile() && !lf.isDirectory()) {
+                    throw new IOException("File: " + lf.getName() +
+                                          " is not a regular file or directory");
+                }
+                try {
+                    writeFileToRemote(b, lf, remoteFile, recursive);
+                } catch (SSH2SFTP.SFTPException e) {
+                    throw new IOException("Error writing file: " + e.getMessage());
+                }
             }
+        } catch (IOException e) {
+            b.fail(e);
+        } finally {
             try {
-                writeFileToRemote(lf, remoteFile, recursive);
-            } catch (SSH2SFTP.SFTPException e) {
-                throw new IOException("Error writing file: " + e.getMessage());
+                b.finish();
+            } finally {
+                batch = null;
             }
         }
     }
@@ -94,27 +312,39 @@ public class SSH2SFTPTransfer implements SSHFileTransfer,
                                   " is not a regular file or directory");
         }
 
-        for(int i = 0; i < remoteFiles.length; i++) {
-            String fName = remoteFiles[i];
+        synchronized(this) {
+            started.clear();
+        }
+        Batch b = batch = new Batch();
+        try {
+            for(int i = 0; i < remoteFiles.length; i++) {
+                String fName = remoteFiles[i];
+                try {
+                    readFileFromRemote(b, fName, client.stat(fName),
+                                       localFile, recursive);
+                } catch (SSH2SFTP.SFTPException e) {
+                    throw new IOException(e.getMessage());
+                }
+            }
+        } catch (IOException e) {
+            b.fail(e);
+        } finally {
             try {
-                readFileFromRemote(fName, localFile, recursive);
-            } catch (SSH2SFTP.SFTPException e) {
-                throw new IOException(e.getMessage());
+                b.finish();
+            } finally {
+                batch = null;
             }
         }
     }
 
-    private void writeFileToRemote(File file, String remoteFile,
+    private void writeFileToRemote(Batch b, File file, String remoteFile,
                                    boolean recursive)
     throws IOException, SSH2SFTP.SFTPException {
         String fName = file.getName();
 
         if(file.isDirectory() && recursive) {
-            writeDirToRemote(file, remoteFile);
+            writeDirToRemote(b, file, remoteFile);
         } else if(file.isFile()) {
-            if(progress != null)
-                progress.startFile(fName, file.length());
-
             String remoteFileName;
 
             SSH2SFTP.FileAttributes attrs = null;
@@ -131,31 +361,19 @@ public class SSH2SFTPTransfer implements SSHFileTransfer,
                 remoteFileName = remoteFile;
             }
 
-            FileInputStream     fin = new FileInputStream(file);
-            SSH2SFTP.FileHandle fh  = null;
-            try {
-                fh = client.open(remoteFileName,
-                                 SSH2SFTP.SSH_FXF_WRITE |
-                                 SSH2SFTP.SSH_FXF_TRUNC |
-                                 SSH2SFTP.SSH_FXF_CREAT,
-                                 new SSH2SFTP.FileAttributes());
-                fh.addAsyncListener(this);
-                client.writeFully(fh, fin);
-            } finally {
-                fin.close();
-            }
-
-            if(progress != null)
-                progress.endFile();
+            queue(b, new FileTransfer(file, remoteFileName, file.length(),
+                                      true));
         } else {
             throw new IOException("Not ordinary file: " + fName);
         }
     }
 
-    private void writeDirToRemote(File dir, String remoteDir)
+    private void writeDirToRemote(Batch b, File dir, String remoteDir)
     throws IOException, SSH2SFTP.SFTPException {
-        if(progress != null)
-            progress.startDir(dir.getAbsolutePath());
+        synchronized(this) {
+            if(progress != null)
+                progress.startDir(dir.getAbsolutePath());
+        }
         if(!remoteDir.endsWith("/")) {
             remoteDir += "/";
         }
@@ -168,19 +386,25 @@ public class SSH2SFTPTransfer implements SSHFileTransfer,
 		for (String d : dir.list()) {
 			if (d.equals(".") || d.equals("..")) continue;
             File f = new File(dir, d);
-			if ((f.isFile() || f.isDirectory()) && !Util.isLink(f))
-				writeFileToRemote(f, remoteDir, true);
+            if (Util.isLink(f))
+                continue;
+            // the name on the server is known, no need to stat it
+            if (f.isDirectory())
+                writeDirToRemote(b, f, remoteDir);
+            else if (f.isFile())
+                queue(b, new FileTransfer(f, remoteDir + "/" + d, f.length(),
+                                          true));
+        }
+        synchronized(this) {
+            if(progress != null)
+                progress.endDir();
         }
-        if(progress != null)
-            progress.endDir();
     }
 
-    private void readFileFromRemote(String fName, String localFile,
-                                    boolean recursive)
+    private void readFileFromRemote(Batch b, String fName,
+                                    SSH2SFTP.FileAttributes attrs,
+                                    String localFile, boolean recursive)
     throws IOException, SSH2SFTP.SFTPException {
-        SSH2SFTP.FileAttributes attrs = client.stat(fName);
-        SSH2SFTP.FileHandle     fh    = null;
-
         File targetFile = new File(localFile);
         if(targetFile.isDirectory()) {
             String f = fName;
@@ -204,32 +428,147 @@ public class SSH2SFTPTransfer implements SSHFileTransfer,
                                           targetFile.getName());
                 }
             }
-            fh = client.opendir(fName);
+            SSH2SFTP.FileHandle fh = client.opendir(fName);
             SSH2SFTP.FileAttributes[] list = client.readdir(fh);
             for(int i = 0; i < list.length; i++) {
                 String name = list[i].name;
                 if("..".equals(name) || ".".equals(name) || list[i].isLink())
                     continue;
-                readFileFromRemote(fName + "/" + name,
+                // readdir has the attributes, no need to stat each file
+                readFileFromRemote(b, fName + "/" + name, list[i],
                                    targetFile.getAbsolutePath(), recursive);
             }
             client.close(fh);
         } else if(attrs.isFile()) {
-            FileOutputStream fout = new FileOutputStream(targetFile);
+            queue(b, new FileTransfer(targetFile, fName,
+                                      attrs.hasSize ? attrs.size : -1, false));
+        } else {
+            throw new IOException("Not ordinary file: " + fName);
+        }
+    }
+
+    /**
+     * Queues a file for the workers, split into parts if it is large.
+     */
+    private void queue(Batch b, FileTransfer file)
+    throws IOException, SSH2SFTP.SFTPException {
+        int parts = 1;
+        if (file.size >= SPLIT_SIZE) {
+            parts = (int)Math.min(b.getMaxWorkers(), file.size / MIN_PART_SIZE);
+        }
+        if (parts <= 1) {
+            file.partsLeft = 1;
+            b.add(new Part(file, 0, -1));
+            return;
+        }
+
+        // the parts are written at their offsets into an empty file
+        if (file.toRemote) {
+            SSH2SFTP.FileHandle fh =
+                client.open(file.remote,
+                            SSH2SFTP.SSH_FXF_WRITE |
+                            SSH2SFTP.SSH_FXF_TRUNC |
+                            SSH2SFTP.SSH_FXF_CREAT,
+                            new SSH2SFTP.FileAttributes());
+            client.close(fh);
+        } else {
+            RandomAccessFile raf = new RandomAccessFile(file.local, "rw");
             try {
-                fh = client.open(fName, SSH2SFTP.SSH_FXF_READ,
-                                 new SSH2SFTP.FileAttributes());
-                if(progress != null)
-                    progress.startFile(targetFile.getName(), attrs.hasSize ? attrs.size : -1);
-                fh.addAsyncListener(this);
-                client.readFully(fh, fout);
-                if(progress != null)
-                    progress.endFile();
+                preallocate(raf, file.size);
             } finally {
-                fout.close();
+                raf.close();
             }
-        } else {
-            throw new IOException("Not ordinary file: " + fName);
+        }
+
+        // whole requests in each part
+        long partSize = ((file.size / parts) + 32767) & ~32767L;
+        file.partsLeft = (int)((file.size + partSize - 1) / partSize);
+        for (long offset = 0; offset < file.size; offset += partSize) {
+            b.add(new Part(file, offset,
+                           Math.min(partSize, file.size - offset)));
+        }
+    }
+
+    private void transfer(SSH2SFTPClient c, Part part)
+    throws IOException, SSH2SFTP.SFTPException {
+        FileTransfer file = part.file;
+        synchronized(this) {
+            if (!file.started) {
+                file.started = true;
+                started.add(file);
+                if (started.size() == 1 && progress != null)
+                    progress.startFile(file.local.getName(), file.size);
+            }
+        }
+
+        RandomAccessFile raf =
+            new RandomAccessFile(file.local, file.toRemote ? "r" : "rw");
+        try {
+            FileChannel chan = raf.getChannel();
+            int flags = file.toRemote ? SSH2SFTP.SSH_FXF_WRITE :
+                SSH2SFTP.SSH_FXF_READ;
+            if (part.len < 0 && file.toRemote) {
+                flags |= SSH2SFTP.SSH_FXF_TRUNC | SSH2SFTP.SSH_FXF_CREAT;
+            } else if (part.len < 0) {
+                preallocate(raf, file.size);
+            }
+            SSH2SFTP.FileHandle fh =
+                c.open(file.remote, flags, new SSH2SFTP.FileAttributes());
+            fh.addAsyncListener(this);
+            try {
+                if (part.len >= 0 && file.toRemote) {
+                    c.writeFully(fh, part.offset, part.len, chan);
+                } else if (part.len >= 0) {
+                    c.readFully(fh, part.offset, part.len, chan);
+                } else if (file.toRemote) {
+                    c.writeFully(fh, 0, chan.size(), chan);
+                } else {
+                    // the size may have been a guess
+                    raf.setLength(c.readFully(fh, chan));
+                }
+            } finally {
+                c.close(fh);
+            }
+        } finally {
+            raf.close();
+        }
+
+        synchronized(this) {
+            if (--file.partsLeft == 0) {
+                file.done = true;
+                reportDoneFiles();
+            }
+        }
+    }
+
+    /**
+     * Ends the files at the head of the started ones that are done,
+     * and starts the next one, so that the progress sees one file
+     * after the other even while several are transferred.
+     */
+    private synchronized void reportDoneFiles() {
+        while (!started.isEmpty() && started.get(0).done) {
+            started.remove(0);
+            if (progress != null) {
+                progress.endFile();
+                if (!started.isEmpty()) {
+                    FileTransfer next = started.get(0);
+                    progress.startFile(next.local.getName(), next.size);
+                }
+            }
+        }
+    }
+
+    /**
+     * Empties a local file and gives it the size it will have, so that
+     * the file system can allocate it at once rather than growing it
+     * with every write, whatever order the writes come in.
+     */
+    private static void preallocate(RandomAccessFile raf, long size)
+    throws IOException {
+        raf.setLength(0);
+        if (size > 0) {
+            raf.setLength(size);
         }
     }
 
@@ -280,9 +619,13 @@ public class SSH2SFTPTransfer implements SSHFileTransfer,
         if(client != null) {
             client.terminate();
         }
+        Batch b = batch;
+        if(b != null) {
+            b.abort();
+        }
     }
 
-    public void progress(long size) {
+    public synchronized void progress(long size) {
         if (progress != null)
             progress.progress((int)size);
     }
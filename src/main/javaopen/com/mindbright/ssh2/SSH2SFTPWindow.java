@@ -0,0 +1,117 @@
+/******************************************************************************
+ *
+ * Copyright (c) 1999-2011 Cryptzone Group AB. All Rights Reserved.
+ *
+ * This file contains Original Code and/or Modifications of Original Code as
+ * defined in and that are subject to the MindTerm Public Source License,
+ * Version 2.0, (the 'License'). You may not use this file except in compliance
+ * with the License.
+ *
+ * You should have received a copy of the MindTerm Public Source License
+ * along with this software; see the file LICENSE.  If not, write to
+ * Cryptzone Group AB, Drakegatan 7, SE-41250 Goteborg, SWEDEN
+ *
+ *****************************************************************************/
+
+package com.mindbright.ssh2;
+
+/**
+ * Decides how many asynchronous read or write requests a file transfer
+ * keeps outstanding. The number starts small and grows by one for every
+ * completed request, doubling each round trip, until the rate the
+ * requests complete at stops growing. From then on it is kept at twice
+ * the requests the link holds, the highest rate seen times the shortest
+ * round trip seen, and every eighth round trip a few more are tried to
+ * find out if the link got faster.
+ * <p>
+ * A round trip is measured from when a request is handed to the
+ * channel to when its reply arrives, so requests queueing up locally
+ * show as a longer round trip rather than a higher rate.
+ */
+final class SSH2SFTPWindow {
+
+    final static int INITIAL = 16;
+    final static int MIN     = 4;
+
+    private final static long MIN_ROUND_NANOS    = 1000000L;
+    private final static int  FULL_PIPE_ROUNDS   = 3;
+    private final static int  PROBE_ROUNDS       = 8;
+
+    private final int ceiling;
+
+    private int     window;
+    private boolean slowStart = true;
+
+    private long   minRtt = Long.MAX_VALUE;
+    private double maxRate;
+    private int    roundsWithoutGrowth;
+    private int    rounds;
+
+    private long roundStart;
+    private long roundBytes;
+    private int  roundRequests;
+
+    /**
+     * @param ceiling Most requests to keep outstanding.
+     */
+    SSH2SFTPWindow(int ceiling) {
+        this.ceiling = Math.max(MIN, ceiling);
+        this.window  = Math.min(INITIAL, this.ceiling);
+    }
+
+    /**
+     * Number of requests to keep outstanding.
+     */
+    synchronized int getWindow() {
+        return window;
+    }
+
+    /**
+     * A request has completed.
+     *
+     * @param len    Number of bytes read or written by the request.
+     * @param sentAt When the request was sent, as by
+     *               <code>System.nanoTime</code>.
+     */
+    synchronized void completed(int len, long sentAt) {
+        long now = System.nanoTime();
+        long rtt = now - sentAt;
+        if (rtt > 0 && rtt < minRtt) {
+            minRtt = rtt;
+        }
+        if (roundStart == 0) {
+            roundStart = sentAt;
+        }
+        roundBytes += len;
+        roundRequests++;
+
+        if (slowStart) {
+            window = Math.min(window + 1, ceiling);
+        }
+
+        long elapsed = now - roundStart;
+        if (elapsed < Math.max(minRtt, MIN_ROUND_NANOS)) {
+            return;
+        }
+
+        double rate = roundBytes * 1e9 / elapsed;
+        if (rate > maxRate * 1.25) {
+            roundsWithoutGrowth = 0;
+        } else if (++roundsWithoutGrowth >= FULL_PIPE_ROUNDS) {
+            slowStart = false;
+        }
+        // the best rate fades slowly, so a link which got slower is followed
+        maxRate = Math.max(rate, maxRate * 0.95);
+
+        if (!slowStart) {
+            double requestLen = (double)roundBytes / roundRequests;
+            double bdp        = maxRate * minRtt / 1e9 / requestLen;
+            double gain       = (++rounds % PROBE_ROUNDS == 0) ? 2.5 : 2.0;
+            window = (int)Math.max(MIN, Math.min(ceiling, Math.ceil(bdp * gain)));
+        }
+
+        roundStart    = now;
+        roundBytes    = 0;
+        roundRequests = 0;
+    }
+}
@@ -37,6 +37,7 @@ public abstract class SSH2Signature implements SSH2PKISigner {
         algorithms.put("ecdsa-sha2-nistp256", SSH2ECDSASHA2NIST.P256.class.getName());
         algorithms.put("ecdsa-sha2-nistp384", SSH2ECDSASHA2NIST.P384.class.getName());
         algorithms.put("ecdsa-sha2-nistp521", SSH2ECDSASHA2NIST.P521.class.getName());
+        algorithms.put("ssh-ed25519", SSH2Ed25519.class.getName());
     };
 
     protected String     algorithm;
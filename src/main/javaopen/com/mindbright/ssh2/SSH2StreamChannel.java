@@ -126,7 +126,10 @@ public class SSH2StreamChannel extends SSH2Channel implements NIOCallback {
         
         if (channel != null) {
             try {
-                NetworkConnection nconn = new NetworkConnection(channel);
+                // Serve the local end from the same event loop as the
+                // transport so channel data does not cross loops
+                NetworkConnection nconn = new NetworkConnection(
+                    connection.getTransport().getSwitchboard(), channel);
                 in  = nconn.getInput();
                 out = nconn.getOutput();
             } catch (IOException ioe) {
@@ -152,7 +152,9 @@ public class SSH2Transport implements NIOCallback, NQueueCallback {
 
         protected Mac mac;
         protected int maclength;
+        protected boolean etm;
         protected Cipher cipher = null;
+        protected SSH2AEADCipher aead = null;
         protected int discard = 0;
         protected SSH2Compressor compressor;
         protected NonBlockingInput in;
@@ -163,12 +165,25 @@ public class SSH2Transport implements NIOCallback, NQueueCallback {
 
         public int getCipherBlockSize() {
             int bs = 0;
-            if (cipher != null) {
+            if (aead != null) {
+                bs = aead.getBlockSize();
+            } else if (cipher != null) {
                 bs = cipher.getBlockSize();
             }
             return (bs == 0) ? 8 : bs;
         }
 
+        /**
+         * Get the number of IV bytes the cipher needs from the key
+         * exchange.
+         */
+        public int getIVLength() {
+            if (aead != null) {
+                return aead.getIVLength();
+            }
+            return getCipherBlockSize();
+        }
+
         public int getMacLength() {
             if (maclength == 0 && mac != null) {
                 return mac.getMacLength();
@@ -204,6 +219,9 @@ public class SSH2Transport implements NIOCallback, NQueueCallback {
                     }
                     cipherDiscard();
                 }
+                if (aead != null) {
+                    aead.init(transmitter, cKey, iv);
+                }
 
                 if (mac != null) {
                     mac.init(new SecretKeySpec(mKey, mac.getAlgorithm()));
@@ -218,6 +236,8 @@ public class SSH2Transport implements NIOCallback, NQueueCallback {
                 throw new SSH2FatalException("Invalid algorithm parameter in TransceiverContext.init");
             } catch (java.security.InvalidKeyException e) {
                 throw new SSH2FatalException("Invalid key in TransceiverContext.init");
+            } catch (GeneralSecurityException e) {
+                throw new SSH2FatalException("Error in TransceiverContext.init", e);
             }
         }
 
@@ -1796,9 +1816,16 @@ public class SSH2Transport implements NIOCallback, NQueueCallback {
 
             String cipherName = SSH2Preferences.ssh2ToJCECipher(sshCipherName);
             String macName = SSH2Preferences.ssh2ToJCEMac(sshMacName);
+            if (SSH2AEADCipher.isAEAD(sshCipherName)) {
+                // The cipher computes the tag, any negotiated MAC is ignored
+                macName = "none";
+                mKeyLen = 0;
+                mLen = 0;
+            }
 
             TransceiverContext ctx =
                     SSH2TransportPDU.createTransceiverContext(cipherName, cDiscard, macName, mLen, sshCompName, tpIn);
+            ctx.etm = ctx.mac != null && SSH2Preferences.isEtMMac(sshMacName);
             initTransceiverContext(ctx, cKeyLen,
                     (incompatibleHMACKeyLength ? 16 : mKeyLen),
                     transmitter);
@@ -1838,7 +1865,7 @@ public class SSH2Transport implements NIOCallback, NQueueCallback {
             ids = new char[]{'B', 'D', 'F'};
         }
 
-        iv = deriveKey(ids[0], context.getCipherBlockSize());
+        iv = deriveKey(ids[0], context.getIVLength());
         cKey = deriveKey(ids[1], ckLen);
         mKey = deriveKey(ids[2], mkLen);
 
@@ -1910,13 +1937,22 @@ public class SSH2Transport implements NIOCallback, NQueueCallback {
     private final static int STATE_READ_IDSTRING = 0;
     private final static int STATE_READ_PDU = 1;
     private int state = STATE_READ_IDSTRING;
-    private byte[] cache_buf;
+    // Room for a few full packets, refilled once it is drained
+    private final static int RX_BUFFER_SIZE =
+        4 * SSH2TransportPDU.PACKET_MAX_SIZE;
     private ByteBuffer cache;
+    private ByteBuffer cacheView;
     private int cachepos;
 
+    /**
+     * The receive buffer is direct so the socket read lands in it
+     * without the extra heap copy the JDK does for heap buffers. Data
+     * is then copied once, straight into the PDU, where it is
+     * decrypted and MAC checked in place.
+     */
     private void initCache() {
-        cache_buf = new byte[64 * SSH2TransportPDU.PACKET_MAX_SIZE];
-        cache = ByteBuffer.wrap(cache_buf);
+        cache = ByteBuffer.allocateDirect(RX_BUFFER_SIZE);
+        cacheView = cache.duplicate();
         cachepos = 0;
     }
 
@@ -1938,20 +1974,20 @@ public class SSH2Transport implements NIOCallback, NQueueCallback {
             for (;;) {
                 int len = buf.position() - cachepos;
                 if (len < need) {
-                    if ((buf.limit() - buf.position()) < SSH2TransportPDU.PACKET_MAX_SIZE) {
-                        System.arraycopy(cache_buf, cachepos, cache_buf, 0, len);
-                        buf.position(len);
-                        cachepos = 0;
-                    } else if (len == 0) {
-                        buf.clear();
-                        cachepos = 0;
+                    if (len > 0) {
+                        // Hand over what has arrived so the PDU can
+                        // start working on it (e.g. an EtM mac)
+                        pduIn.fillData(cacheView, cachepos, len);
+                        need -= len;
                     }
+                    buf.clear();
+                    cachepos = 0;
                     if (tpIn.read(buf, this, true, true)) {
                         continue;
                     }
                     return;
                 }
-                pduIn.fillData(cache_buf, cachepos, need);
+                pduIn.fillData(cacheView, cachepos, need);
                 cachepos += need;
                 handleReadData();
                 need = pduIn.getNeededBytes();
@@ -17,6 +17,8 @@ package com.mindbright.ssh2;
 
 import java.io.IOException;
 
+import java.nio.ByteBuffer;
+
 import java.security.GeneralSecurityException;
 
 import javax.crypto.Mac;
@@ -222,6 +224,7 @@ public class SSH2TransportPDU extends SSH2DataBuffer {
 
     private int bs;
     private int macSize;
+    private int seqNum;
     private int state;
     private int needbytes = 0;
     private SSH2Transport.TransceiverContext context;
@@ -247,10 +250,13 @@ public class SSH2TransportPDU extends SSH2DataBuffer {
         rPos = 4;          // Skip it also (i.e. we don't want to read it)
         bs = 8;
         macSize = 0;
+        this.seqNum = seqNum;
         this.context = context;
         state = STATE_READ_HEADER;
 
-        if(context.cipher != null) {
+        if(context.aead != null || context.etm) {
+            bs = 4; // Only the length field is needed to get started
+        } else if(context.cipher != null) {
             bs = context.cipher.getBlockSize();
             bs = (bs > 8 ? bs : 8);
         }
@@ -291,8 +297,47 @@ public class SSH2TransportPDU extends SSH2DataBuffer {
     }
 
     public void fillData(byte[] buf, int bufpos, int n) {
-        System.arraycopy(buf, bufpos, data, wPos - needbytes, n);
+        int off = wPos - needbytes;
+        System.arraycopy(buf, bufpos, data, off, n);
+        needbytes -= n;
+        etmUpdate(off, n);
+    }
+
+    /**
+     * Fill in needed data from a (possibly direct) buffer. The
+     * position of <code>buf</code> is moved so it should be a view
+     * which is not used for anything else at the same time.
+     *
+     * @param buf    buffer holding received data
+     * @param bufpos where in <code>buf</code> the data starts
+     * @param n      number of bytes to copy
+     */
+    public void fillData(ByteBuffer buf, int bufpos, int n) {
+        buf.limit(bufpos + n);
+        buf.position(bufpos);
+        int off = wPos - needbytes;
+        buf.get(data, off, n);
         needbytes -= n;
+        etmUpdate(off, n);
+    }
+
+    /**
+     * With encrypt-then-mac the mac covers the ciphertext, so it is
+     * computed on the encrypted packet body as it arrives. Only the
+     * tag is left to compute once the packet is complete.
+     *
+     * @param off offset in data of the bytes just filled in
+     * @param n   number of bytes filled in
+     */
+    private void etmUpdate(int off, int n) {
+        if (state != STATE_READ_DATA || !context.etm) {
+            return;
+        }
+        int lo = Math.max(off, 8);
+        int hi = Math.min(off + n, 8 + pktSize);
+        if (hi > lo) {
+            context.mac.update(data, lo, hi - lo);
+        }
     }
 
     private final static int STATE_READ_HEADER = 0;
@@ -313,16 +358,23 @@ public class SSH2TransportPDU extends SSH2DataBuffer {
         GeneralSecurityException {
         switch(state) {
         case STATE_READ_HEADER:
-            if (context.cipher != null) {
-                context.cipher.update(data, 4, bs, data, 4); // Skip seqNum
+            if (context.aead != null) {
+                // The length field stays as received since it is
+                // covered by the tag
+                pktSize = context.aead.getPacketLength(seqNum, data, 4);
+                rPos += 4;
+                macSize = context.aead.getTagLength();
+            } else {
+                if (context.cipher != null && !context.etm) {
+                    context.cipher.update(data, 4, bs, data, 4); // Skip seqNum
+                }
+                pktSize = readInt();
+                if (context.mac != null) {
+                    macSize = context.getMacLength();
+                }
             }
 
             bs -= 4; // The part of body pre-read above (subtract len-field)
-            pktSize = readInt();
-
-            if (context.mac != null) {
-                macSize = context.getMacLength();
-            }
 
             int totPktSz = (pktSize + 4 + macSize);
             if(totPktSz > PACKET_MAX_SIZE || totPktSz < PACKET_MIN_SIZE) {
@@ -330,15 +382,39 @@ public class SSH2TransportPDU extends SSH2DataBuffer {
                                                  pktSize);
             }
             state = STATE_READ_DATA;
-            prepareForRead(pktSize - bs);
+            if (context.aead != null) {
+                if ((pktSize % context.aead.getBlockSize()) != 0) {
+                    throw new SSH2CorruptPacketException("Invalid packet size: " +
+                                                         pktSize);
+                }
+                prepareForRead(pktSize + macSize);
+            } else if (context.etm) {
+                if ((pktSize % getEtMBlockSize(context)) != 0) {
+                    throw new SSH2CorruptPacketException("Invalid packet size: " +
+                                                         pktSize);
+                }
+                // Sequence number and length, the body follows as it arrives
+                context.mac.update(data, 0, 8);
+                prepareForRead(pktSize + macSize);
+            } else {
+                prepareForRead(pktSize - bs);
+            }
             return true;
 
         case STATE_READ_DATA:
-            if (context.cipher != null) {
+            if (context.aead != null) {
+                context.aead.open(seqNum, data, 4, pktSize);
+            } else if (context.etm) {
+                // Check the mac before spending any time on decryption
+                compareMac(context.mac, macSize);
+                if (context.cipher != null) {
+                    context.cipher.update(data, 8, pktSize, data, 8);
+                }
+            } else if (context.cipher != null) {
                 context.cipher.update(data, 8 + bs,pktSize - bs, data,8 + bs);
             }
 
-            if (context.mac != null) {
+            if (context.mac != null && !context.etm) {
                 state = STATE_READ_MAC;
                 prepareForRead(macSize);
                 return true;
@@ -348,11 +424,11 @@ public class SSH2TransportPDU extends SSH2DataBuffer {
         case STATE_READ_MAC:
             totSizeCompressed   = pktSize + 4;
             totSizeUncompressed = 4;
-            if (context.mac != null) {
+            if (context.mac != null && !context.etm) {
                 checkMac(context.mac, macSize);
-                totSizeCompressed   += macSize;
-                totSizeUncompressed += macSize;
             }
+            totSizeCompressed   += macSize;
+            totSizeUncompressed += macSize;
 
             padSize = readByte();
 
@@ -373,6 +449,15 @@ public class SSH2TransportPDU extends SSH2DataBuffer {
     protected void checkMac(Mac mac, int macSize)
         throws SSH2MacCheckException, GeneralSecurityException {
         mac.update(data, 0, 8 + pktSize);
+        compareMac(mac, macSize);
+    }
+
+    /**
+     * Finish a mac which has been fed the whole packet and compare it
+     * to the one received after the packet.
+     */
+    private void compareMac(Mac mac, int macSize)
+        throws SSH2MacCheckException, GeneralSecurityException {
         try {
             mac.doFinal(macTmpBuf, 0);
         } catch (GeneralSecurityException e) {
@@ -387,6 +472,15 @@ public class SSH2TransportPDU extends SSH2DataBuffer {
         }
     }
 
+    private static int getEtMBlockSize(SSH2Transport.TransceiverContext context) {
+        int bs = 8;
+        if (context.cipher != null) {
+            bs = context.cipher.getBlockSize();
+            bs = (bs > 8 ? bs : 8);
+        }
+        return bs;
+    }
+
     /**
      * Ensure that the buffer has room for at least n more bytes.
      *
@@ -445,21 +539,28 @@ public class SSH2TransportPDU extends SSH2DataBuffer {
             ubytes = ow - wPos;
         }
 
-        if(context.cipher != null) {
-            bs = context.cipher.getBlockSize();
-            bs = (bs > 8 ? bs : 8);
+        if(context.aead != null || context.etm) {
+            bs = context.aead != null
+                ? context.aead.getBlockSize() : getEtMBlockSize(context);
+            // The length field is not encrypted so it is not padded either
+            padSize = bs - ((wPos - 8) % bs);
+        } else {
+            if(context.cipher != null) {
+                bs = context.cipher.getBlockSize();
+                bs = (bs > 8 ? bs : 8);
+            }
+            // Subtract dummy sequence number since it is not sent
+            //
+            padSize = bs - ((wPos - 4) % bs);
         }
-
-        // Subtract dummy sequence number since it is not sent
-        //
-        padSize = bs - ((wPos - 4) % bs);
         if(padSize < 4)
             padSize += bs;
 
         // sequence + length fields not counted in packet-length
         //
         pktSize = wPos + padSize - 8;
-        ensureSize(pktSize+4);
+        ensureSize(pktSize + 4 +
+                   (context.aead != null ? context.aead.getTagLength() : 0));
         rand.nextPadBytes(data, wPos, padSize);
 
         wPos = 0;
@@ -468,7 +569,18 @@ public class SSH2TransportPDU extends SSH2DataBuffer {
         writeByte(padSize);
         int totPktSz = pktSize + 4; // packet size including length field
 
-        if(context.mac != null) {
+        if (context.etm) {
+            // Encrypt the body first, the MAC is then calculated on
+            // sequence number, length and the encrypted body
+            if (context.cipher != null) {
+                context.cipher.update(data, 8, pktSize, data, 8);
+            }
+            int macOffset = 4 + totPktSz;
+            ensureSize(macOffset + context.getMacLength());
+            context.mac.update(data, 0, macOffset);
+            context.mac.doFinal(data, macOffset);
+            macSize = context.getMacLength();
+        } else if(context.mac != null) {
             // The MAC is calculated on full packet including sequence number
             //
             int macOffset = 4 + totPktSz;
@@ -482,7 +594,10 @@ public class SSH2TransportPDU extends SSH2DataBuffer {
             macSize = context.getMacLength();
         }
 
-        if (context.cipher != null) {
+        if (context.aead != null) {
+            context.aead.seal(seqNum, data, 4, pktSize);
+            macSize = context.aead.getTagLength();
+        } else if (context.cipher != null && !context.etm) {
             context.cipher.update(data, 4, totPktSz, data, 4);
         }
 
@@ -523,7 +638,9 @@ public class SSH2TransportPDU extends SSH2DataBuffer {
         SSH2Transport.TransceiverContext ctx =
             new SSH2Transport.TransceiverContext(in);
 
-        if(!"none".equals(cipherName)) {
+        if(SSH2AEADCipher.isAEAD(cipherName)) {
+            ctx.aead = SSH2AEADCipher.getInstance(cipherName);
+        } else if(!"none".equals(cipherName)) {
             ctx.cipher = com.mindbright.util.Crypto.getCipher(cipherName);
         }
         if(!"none".equals(macName)) {
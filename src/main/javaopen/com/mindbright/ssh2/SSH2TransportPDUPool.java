@@ -15,14 +15,27 @@
 
 package com.mindbright.ssh2;
 
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
 /**
  * Implements a pool of PDUs which can be reused. This class holds a
  * pool of PDUs and tries to reuse them whenever possible.
+ * <p>
+ * PDUs are kept in power-of-two size classes, from 64 bytes up to
+ * 64 kilobytes. Each thread has a small cache per size class and
+ * the shared part of each size class is a lock-free bounded queue,
+ * so neither allocation nor release takes a lock.
  */
 public class SSH2TransportPDUPool extends SSH2TransportPDU {
 
     protected static int POOL_SIZE = 1024;
 
+    private final static int MIN_SHIFT   = 6;
+    private final static int MAX_SHIFT   = 16;
+    private final static int LOCAL_CACHE = 8;
+
     protected class PoolPDU extends SSH2TransportPDU {
         protected PoolPDU(int pktType, int bufSize) {
             super(pktType, bufSize);
@@ -34,49 +47,191 @@ public class SSH2TransportPDUPool extends SSH2TransportPDU {
         }
     }
 
-    int cnt;
+    /**
+     * Per thread cache, one small stack per size class.
+     */
+    private static class LocalCache {
+        SSH2TransportPDU[][] pdus =
+            new SSH2TransportPDU[MAX_SHIFT - MIN_SHIFT + 1][LOCAL_CACHE];
+        int[] cnt = new int[MAX_SHIFT - MIN_SHIFT + 1];
+    }
 
-    SSH2TransportPDU[] pool;
+    /**
+     * Bounded multi-producer/multi-consumer queue holding the shared
+     * PDUs of one size class. Each slot carries a sequence number
+     * which tells whether it is free for the next put or holds the
+     * element for the next take, so the queue needs no locks.
+     */
+    private static class Bucket {
+        private final SSH2TransportPDU[] items;
+        private final AtomicLongArray    seqs;
+        private final int                mask;
+        private final AtomicLong         putPos  = new AtomicLong();
+        private final AtomicLong         takePos = new AtomicLong();
 
-    protected SSH2TransportPDUPool() {
-        pool = new SSH2TransportPDU[POOL_SIZE];
-        cnt  = 0;
-    }
+        Bucket(int capacity) {
+            items = new SSH2TransportPDU[capacity];
+            seqs  = new AtomicLongArray(capacity);
+            mask  = capacity - 1;
+            for (int i = 0; i < capacity; i++) {
+                seqs.set(i, i);
+            }
+        }
 
-    protected SSH2TransportPDU createPDU(int pktType, int bufSize) {
-        synchronized(pool) {
-            if (cnt == 0) {
-                return new PoolPDU(pktType, bufSize);
+        boolean put(SSH2TransportPDU pdu) {
+            long pos = putPos.get();
+            for (;;) {
+                int  idx = (int)pos & mask;
+                long dif = seqs.get(idx) - pos;
+                if (dif == 0) {
+                    if (putPos.compareAndSet(pos, pos + 1)) {
+                        items[idx] = pdu;
+                        seqs.set(idx, pos + 1);
+                        return true;
+                    }
+                    pos = putPos.get();
+                } else if (dif < 0) {
+                    return false; // full
+                } else {
+                    pos = putPos.get();
+                }
             }
-            int best = -1;
-            for (int i = 0; i < cnt; i++) {
-                if (pool[i].getMaxSize() >= bufSize
-                    &&  (best < 0
-                         || pool[i].getMaxSize() < pool[best].getMaxSize())) {
-                    best = i;
+        }
+
+        SSH2TransportPDU take() {
+            long pos = takePos.get();
+            for (;;) {
+                int  idx = (int)pos & mask;
+                long dif = seqs.get(idx) - (pos + 1);
+                if (dif == 0) {
+                    if (takePos.compareAndSet(pos, pos + 1)) {
+                        SSH2TransportPDU pdu = items[idx];
+                        items[idx] = null;
+                        seqs.set(idx, pos + mask + 1);
+                        return pdu;
+                    }
+                    pos = takePos.get();
+                } else if (dif < 0) {
+                    return null; // empty
+                } else {
+                    pos = takePos.get();
                 }
             }
-            if (best >= 0) {
-                SSH2TransportPDU b = pool[best];
-                b.pktType = pktType;
-                pool[best] = pool[cnt-1];
-                cnt--;
-                return b;
+        }
+    }
+
+    private final Bucket[] buckets;
+    private final ThreadLocal<LocalCache> local =
+        new ThreadLocal<LocalCache>() {
+            protected LocalCache initialValue() {
+                return new LocalCache();
             }
-	    return new PoolPDU(pktType, bufSize);
+        };
+
+    private final LongAdder hits   = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder drops  = new LongAdder();
+
+    protected SSH2TransportPDUPool() {
+        int capacity = 16;
+        while (capacity < POOL_SIZE / 8) {
+            capacity <<= 1;
+        }
+        buckets = new Bucket[MAX_SHIFT - MIN_SHIFT + 1];
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = new Bucket(capacity);
+        }
+    }
+
+    /**
+     * Size class which can serve a request for the given size, or -1
+     * if the size is too large to be pooled.
+     */
+    private static int classFor(int bufSize) {
+        int shift = 32 - Integer.numberOfLeadingZeros(Math.max(bufSize, 1) - 1);
+        if (shift > MAX_SHIFT) {
+            return -1;
         }
+        return Math.max(shift, MIN_SHIFT) - MIN_SHIFT;
+    }
+
+    /**
+     * Size class a buffer of the given capacity belongs to, or -1 if
+     * it is too small or too large to be pooled.
+     */
+    private static int classOf(int maxSize) {
+        int shift = 31 - Integer.numberOfLeadingZeros(maxSize);
+        if (maxSize <= 0 || shift < MIN_SHIFT || shift > MAX_SHIFT) {
+            return -1;
+        }
+        return shift - MIN_SHIFT;
+    }
+
+    protected SSH2TransportPDU createPDU(int pktType, int bufSize) {
+        int c = classFor(bufSize);
+        if (c < 0) {
+            misses.increment();
+            return new PoolPDU(pktType, bufSize);
+        }
+        LocalCache lc = local.get();
+        SSH2TransportPDU b;
+        if (lc.cnt[c] > 0) {
+            b = lc.pdus[c][--lc.cnt[c]];
+            lc.pdus[c][lc.cnt[c]] = null;
+        } else {
+            b = buckets[c].take();
+        }
+        if (b != null) {
+            hits.increment();
+            b.pktType = pktType;
+            return b;
+        }
+        misses.increment();
+        return new PoolPDU(pktType, 1 << (c + MIN_SHIFT));
     }
 
     /**
      * Internal class which releases an incoming PDU.
      */
     protected void releasePDU(PoolPDU pdu) {
-        synchronized(pool) {
-            if(cnt < pool.length) {
-                pool[cnt++] = pdu;
-            } else {
-                /* stat */
-            }
+        int c = classOf(pdu.getMaxSize());
+        if (c < 0) {
+            drops.increment();
+            return;
+        }
+        LocalCache lc = local.get();
+        if (lc.cnt[c] < LOCAL_CACHE) {
+            lc.pdus[c][lc.cnt[c]++] = pdu;
+        } else if (!buckets[c].put(pdu)) {
+            drops.increment();
         }
     }
+
+    /**
+     * Get the number of PDUs which were served from the pool.
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * Get the number of PDUs which had to be allocated since the pool
+     * had none of a suitable size.
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * Get the number of released PDUs which were thrown away since
+     * the pool was full or they could not be pooled.
+     */
+    public long getDrops() {
+        return drops.sum();
+    }
+
+    public String toString() {
+        return "SSH2TransportPDUPool[hits=" + getHits() + ",misses="
+            + getMisses() + ",drops=" + getDrops() + "]";
+    }
 }
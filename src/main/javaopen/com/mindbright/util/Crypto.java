@@ -44,6 +44,7 @@ public final class Crypto {
     private static boolean useonlypreferredprovider;
     private static String prngname;
     private static SecureRandom rand;
+    private static Provider builtinprovider;
 
     private static boolean unlimitedstrengthjce = false;
     private static boolean unlimiteddhsupport   = false;
@@ -311,6 +312,11 @@ public final class Crypto {
     public static Signature getSignature(String alg) throws NoSuchAlgorithmException {
         Signature instance = null;
         try { 
+            if ("Ed25519".equals(alg)) {
+                // Our Ed25519 keys are only understood by our own implementation
+                instance = Signature.getInstance(alg, getBuiltinProvider());
+                return instance;
+            }
             for (String preferredprovider : preferredproviders) {
                 if (instance != null)
                     break;
@@ -329,6 +335,12 @@ public final class Crypto {
         return instance;
     }
 
+    private static synchronized Provider getBuiltinProvider() {
+        if (builtinprovider == null)
+            builtinprovider = new com.mindbright.jce.provider.MindTermProvider();
+        return builtinprovider;
+    }
+
     public static KeyPairGenerator getKeyPairGenerator(String alg) throws NoSuchAlgorithmException {
         KeyPairGenerator instance = null;
         try { 
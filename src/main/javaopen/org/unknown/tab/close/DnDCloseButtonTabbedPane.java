@@ -167,6 +167,26 @@ public class DnDCloseButtonTabbedPane extends JTabbedPane {
         setTabComponentAt(indexOfComponent(component), tab);
     }
 
+    /**
+     * Change the title of the tab holding the component, also in the label of the
+     * close button tab component.
+     */
+    public void setTabTitle(Component component, String title) {
+        int index = indexOfComponent(component);
+        if (index < 0) {
+            return;
+        }
+        setTitleAt(index, title);
+        Component tab = getTabComponentAt(index);
+        if (tab instanceof JPanel) {
+            for (Component c : ((JPanel) tab).getComponents()) {
+                if (c instanceof JLabel) {
+                    ((JLabel) c).setText(title);
+                }
+            }
+        }
+    }
+
     public TabAcceptor getAcceptor() {
         return m_acceptor;
     }
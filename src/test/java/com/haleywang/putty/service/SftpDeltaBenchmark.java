@@ -0,0 +1,134 @@
+package com.haleywang.putty.service;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Bytes SftpDeltaSync sends to update a file against how much of the file changed, next to what sending the 4 MB
+ * blocks which differ would take. A random file is changed by edits of 1 KB at random places, each of which also
+ * moves the rest of the file by a few bytes, and the instructions are applied here to check that they give the new
+ * file.
+ * <p>
+ * Run with: java -cp ... com.haleywang.putty.service.SftpDeltaBenchmark [megabytes [changed %...]]
+ */
+public class SftpDeltaBenchmark {
+
+    private static final int EDIT_SIZE = 1024;
+
+    public static void main(String[] args) throws Exception {
+        int megabytes = args.length > 0 ? Integer.parseInt(args[0]) : 64;
+        double[] ratios = {0, 0.01, 0.1, 1, 5, 10, 25, 50, 100};
+        if (args.length > 1) {
+            ratios = new double[args.length - 1];
+            for (int i = 1; i < args.length; i++) {
+                ratios[i - 1] = Double.parseDouble(args[i]);
+            }
+        }
+
+        Random random = new Random(1);
+        byte[] old = new byte[megabytes << 20];
+        random.nextBytes(old);
+        int blockSize = SftpDeltaSync.blockSize(old.length);
+        SftpDeltaSync.Signature signature =
+                SftpDeltaSync.Signature.of(new ByteArrayInputStream(old), old.length, blockSize);
+
+        System.out.printf("%d MB file, %d byte blocks, signature of about %d bytes%n", megabytes, blockSize,
+                (old.length + blockSize - 1) / blockSize * 50);
+        System.out.println("changed %   delta sent   4 MB blocks sent   time");
+        for (double ratio : ratios) {
+            byte[] changed = edit(old, ratio, random);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            long start = System.nanoTime();
+            SftpDeltaSync.Delta delta =
+                    SftpDeltaSync.encode(new ByteArrayInputStream(changed), signature, out, null);
+            long millis = (System.nanoTime() - start) / 1000000;
+
+            if (!Arrays.equals(changed, apply(old, out.toByteArray()))) {
+                throw new IllegalStateException("instructions do not give the new file at " + ratio + "%");
+            }
+            System.out.printf("%9.2f   %9.2f%%   %15.2f%%   %d ms%n", ratio, 100.0 * delta.sent / changed.length,
+                    100.0 * changedBlocks(old, changed) / changed.length, millis);
+        }
+    }
+
+    /**
+     * Replaces about the given percentage of the file by random edits, each also inserting or removing a few bytes.
+     */
+    private static byte[] edit(byte[] old, double ratio, Random random) {
+        int edits = (int) (old.length * ratio / 100 / EDIT_SIZE);
+        int[] at = new int[edits];
+        for (int i = 0; i < edits; i++) {
+            at[i] = random.nextInt(old.length - EDIT_SIZE);
+        }
+        Arrays.sort(at);
+        ByteArrayOutputStream out = new ByteArrayOutputStream(old.length + edits * 16);
+        int from = 0;
+        for (int i = 0; i < edits; i++) {
+            if (at[i] < from) {
+                continue;
+            }
+            out.write(old, from, at[i] - from);
+            byte[] edit = new byte[EDIT_SIZE + random.nextInt(33) - 16];
+            random.nextBytes(edit);
+            out.write(edit, 0, edit.length);
+            from = at[i] + EDIT_SIZE;
+        }
+        out.write(old, from, old.length - from);
+        return out.toByteArray();
+    }
+
+    private static byte[] apply(byte[] old, byte[] instructions) throws IOException {
+        InputStream in = new ByteArrayInputStream(instructions);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        while (true) {
+            String[] parts = readLine(in).split(" ");
+            if ("E".equals(parts[0])) {
+                return out.toByteArray();
+            } else if ("C".equals(parts[0])) {
+                out.write(old, Integer.parseInt(parts[1]), Integer.parseInt(parts[2]));
+            } else {
+                byte[] literal = new byte[Integer.parseInt(parts[1])];
+                if (in.read(literal) != literal.length) {
+                    throw new IOException("short literal");
+                }
+                out.write(literal);
+            }
+        }
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        for (int c = in.read(); c != '\n'; c = in.read()) {
+            if (c < 0) {
+                throw new IOException("no end");
+            }
+            line.write(c);
+        }
+        return new String(line.toByteArray(), StandardCharsets.US_ASCII);
+    }
+
+    private static long changedBlocks(byte[] old, byte[] changed) throws Exception {
+        int blockSize = SftpTransferService.BLOCK_SIZE;
+        long sent = 0;
+        for (int offset = 0; offset < changed.length; offset += blockSize) {
+            int len = Math.min(blockSize, changed.length - offset);
+            int oldLen = Math.max(0, Math.min(blockSize, old.length - offset));
+            if (!MessageDigest.isEqual(md5(changed, offset, len), md5(old, Math.min(offset, old.length), oldLen))) {
+                sent += len;
+            }
+        }
+        return sent;
+    }
+
+    private static byte[] md5(byte[] buf, int offset, int len) throws Exception {
+        MessageDigest md5 = MessageDigest.getInstance("MD5");
+        md5.update(buf, offset, len);
+        return md5.digest();
+    }
+}
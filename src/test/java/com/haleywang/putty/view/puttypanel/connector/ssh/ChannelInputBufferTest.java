@@ -0,0 +1,123 @@
+package com.haleywang.putty.view.puttypanel.connector.ssh;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+
+/**
+ * A channel flooded with output, with the window handled like JSch's session
+ * thread and a server that sends as much as its window allows.
+ */
+public class ChannelInputBufferTest {
+
+    private static final int WINDOW = 1 << 20;
+    private static final int PACKET = 32 * 1024;
+
+    @Test(timeout = 10_000)
+    public void floodStopsOnceTheWindowIsUsedUp() throws IOException {
+        Session session = new Session();
+        // nothing is read while the server keeps sending
+        while (session.send()) {
+            Assert.assertTrue(session.buffer.available() <= ChannelInputBuffer.HIGH_WATER + WINDOW);
+        }
+        Assert.assertTrue(session.buffer.available() > ChannelInputBuffer.HIGH_WATER);
+        Assert.assertTrue(session.sent < ChannelInputBuffer.HIGH_WATER + WINDOW + PACKET);
+    }
+
+    @Test(timeout = 10_000)
+    public void readingOpensTheWindowAgain() throws IOException {
+        Session session = new Session();
+        while (session.send()) {
+            // flood until the server has to wait
+        }
+        long stalled = session.sent;
+
+        byte[] buf = new byte[4096];
+        long read = 0;
+        while (read < 32L << 20) {
+            int count = session.buffer.getInput().read(buf, 0, buf.length);
+            for (int i = 0; i < count; i++) {
+                Assert.assertEquals(expected(read + i), buf[i]);
+            }
+            read += count;
+            session.send();
+            Assert.assertTrue(session.buffer.available() <= ChannelInputBuffer.HIGH_WATER + WINDOW);
+        }
+        Assert.assertTrue(session.sent > stalled);
+    }
+
+    @Test(timeout = 10_000)
+    public void nothingIsWithheldWhileTheReaderKeepsUp() throws IOException {
+        Session session = new Session();
+        byte[] buf = new byte[PACKET];
+        for (int i = 0; i < 1000; i++) {
+            Assert.assertTrue(session.send());
+            Assert.assertEquals(PACKET, session.buffer.getInput().read(buf, 0, buf.length));
+        }
+        Assert.assertEquals(0, session.withheld);
+    }
+
+    @Test(timeout = 10_000)
+    public void readsToTheEndOnceTheChannelIsClosed() throws IOException {
+        Session session = new Session();
+        session.send();
+        session.buffer.getOutput().close();
+
+        byte[] buf = new byte[PACKET * 2];
+        Assert.assertEquals(PACKET, session.buffer.getInput().read(buf, 0, buf.length));
+        Assert.assertEquals(-1, session.buffer.getInput().read(buf, 0, buf.length));
+    }
+
+    private static byte expected(long offset) {
+        return (byte) (offset % 251);
+    }
+
+    /**
+     * The server side of the window and the part of JSch's session thread that
+     * hands data to a channel and opens its window again.
+     */
+    private static class Session implements ChannelInputBuffer.Window {
+        final ChannelInputBuffer buffer = new ChannelInputBuffer(this, WINDOW);
+        final int lwsizeMax = WINDOW;
+        int lwsize = WINDOW;
+        long serverWindow = WINDOW;
+        long sent;
+        long withheld;
+
+        /**
+         * @return false if the server has no window left to send in
+         */
+        boolean send() throws IOException {
+            int len = (int) Math.min(PACKET, serverWindow);
+            if (len == 0) {
+                return false;
+            }
+            byte[] data = new byte[len];
+            for (int i = 0; i < len; i++) {
+                data[i] = expected(sent + i);
+            }
+            serverWindow -= len;
+            sent += len;
+
+            buffer.getOutput().write(data, 0, len);
+            lwsize -= len;
+            if (lwsize < lwsizeMax / 2) {
+                serverWindow += lwsizeMax - lwsize;
+                lwsize = lwsizeMax;
+            }
+            return true;
+        }
+
+        @Override
+        public void withhold(int count) {
+            withheld += count;
+            lwsize += count;
+        }
+
+        @Override
+        public void open(int count) {
+            serverWindow += count;
+        }
+    }
+}
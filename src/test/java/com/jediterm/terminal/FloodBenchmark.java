@@ -0,0 +1,126 @@
+package com.jediterm.terminal;
+
+import com.jediterm.terminal.model.JediTerminal;
+import com.jediterm.terminal.model.StyleState;
+import com.jediterm.terminal.model.TerminalTextBuffer;
+
+import java.awt.Dimension;
+import java.util.Arrays;
+
+/**
+ * Output of {@code yes} flooding a terminal while a painter locks the text buffer every 16 ms to draw the screen, like
+ * the redraw timer does. Prints how long the painter waited for the lock and how fast the output was emulated, with
+ * the connector read on the emulator thread as before and through a {@link TtyInputPipe}.
+ * <p>
+ * Run with: java -cp ... com.jediterm.terminal.FloodBenchmark [megabytes]
+ */
+public class FloodBenchmark {
+
+  private static final int COLUMNS = 120;
+  private static final int ROWS = 40;
+  private static final int PAINT_INTERVAL_MS = 16;
+
+  public static void main(String[] args) throws Exception {
+    int megabytes = args.length > 0 ? Integer.parseInt(args[0]) : 64;
+    for (int round = 0; round < 2; round++) {
+      System.out.println("round " + round);
+      run("emulator thread reads", megabytes << 20, false);
+      run("pipe                 ", megabytes << 20, true);
+    }
+  }
+
+  private static void run(String name, long size, boolean pipe) throws Exception {
+    StyleState styleState = new StyleState();
+    TerminalTextBuffer buffer = new TerminalTextBuffer(COLUMNS, ROWS, styleState);
+    JediTerminal terminal = new JediTerminal(new HeadlessDisplay(COLUMNS, ROWS), buffer, styleState);
+    TtyConnector connector = new YesConnector(size);
+    TerminalStarter starter = pipe ? new TerminalStarter(terminal, connector, buffer)
+            : new TerminalStarter(terminal, connector, new TtyBasedArrayDataStream(connector));
+
+    Thread emulator = new Thread(starter::start, "emulator");
+    long start = System.nanoTime();
+    emulator.start();
+
+    long[] waits = new long[1 << 16];
+    int paints = 0;
+    StyledTextConsumer painter = new StyledTextConsumerAdapter();
+    while (emulator.isAlive() && paints < waits.length) {
+      Thread.sleep(PAINT_INTERVAL_MS);
+      long before = System.nanoTime();
+      buffer.lock();
+      try {
+        waits[paints++] = System.nanoTime() - before;
+        buffer.processScreenLines(0, ROWS, painter);
+      }
+      finally {
+        buffer.unlock();
+      }
+    }
+    emulator.join();
+    long nanos = System.nanoTime() - start;
+    starter.close();
+
+    Arrays.sort(waits, 0, paints);
+    System.out.printf("  %s: %6.1f MB/s, %5d paints, lock wait median %7.3f ms, 99%% %7.3f ms, max %7.3f ms%n",
+            name, size * 1e3 / nanos, paints, waits[paints / 2] / 1e6, waits[paints * 99 / 100] / 1e6,
+            waits[paints - 1] / 1e6);
+  }
+
+  /**
+   * Endless lines of {@code y}, in reads of at most 4K like a pty delivers them.
+   */
+  private static class YesConnector implements TtyConnector {
+    private static final int READ_SIZE = 4096;
+    private long myRemaining;
+
+    YesConnector(long size) {
+      myRemaining = size;
+    }
+
+    @Override
+    public int read(char[] buf, int offset, int length) {
+      int count = (int)Math.min(Math.min(length, READ_SIZE), myRemaining);
+      for (int i = 0; i < count; i++) {
+        buf[offset + i] = "y\r\n".charAt((int)((myRemaining - i) % 3));
+      }
+      myRemaining -= count;
+      return count > 0 ? count : -1;
+    }
+
+    @Override
+    public boolean init(Questioner q) {
+      return true;
+    }
+
+    @Override
+    public void close() {
+    }
+
+    @Override
+    public void resize(Dimension termSize, Dimension pixelSize) {
+    }
+
+    @Override
+    public String getName() {
+      return "yes";
+    }
+
+    @Override
+    public void write(byte[] bytes) {
+    }
+
+    @Override
+    public boolean isConnected() {
+      return myRemaining > 0;
+    }
+
+    @Override
+    public void write(String string) {
+    }
+
+    @Override
+    public int waitFor() {
+      return 0;
+    }
+  }
+}
@@ -0,0 +1,86 @@
+package com.jediterm.terminal;
+
+import com.jediterm.terminal.emulator.mouse.MouseMode;
+import com.jediterm.terminal.model.JediTerminal;
+import com.jediterm.terminal.model.TerminalSelection;
+
+import java.awt.Dimension;
+
+/**
+ * Display of a terminal that is not shown anywhere, for benchmarks of the emulator and the text buffer.
+ */
+public class HeadlessDisplay implements TerminalDisplay {
+  private final int myColumns;
+  private final int myRows;
+
+  public HeadlessDisplay(int columns, int rows) {
+    myColumns = columns;
+    myRows = rows;
+  }
+
+  @Override
+  public int getRowCount() {
+    return myRows;
+  }
+
+  @Override
+  public int getColumnCount() {
+    return myColumns;
+  }
+
+  @Override
+  public void setCursor(int x, int y) {
+  }
+
+  @Override
+  public void setCursorShape(CursorShape shape) {
+  }
+
+  @Override
+  public void beep() {
+  }
+
+  @Override
+  public Dimension requestResize(Dimension pendingResize, RequestOrigin origin, int cursorY,
+                                 JediTerminal.ResizeHandler resizeHandler) {
+    return pendingResize;
+  }
+
+  @Override
+  public void scrollArea(int scrollRegionTop, int scrollRegionSize, int dy) {
+  }
+
+  @Override
+  public void setCursorVisible(boolean shouldDrawCursor) {
+  }
+
+  @Override
+  public void setScrollingEnabled(boolean enabled) {
+  }
+
+  @Override
+  public void setBlinkingCursor(boolean enabled) {
+  }
+
+  @Override
+  public void setWindowTitle(String name) {
+  }
+
+  @Override
+  public void setCurrentPath(String path) {
+  }
+
+  @Override
+  public void terminalMouseModeSet(MouseMode mode) {
+  }
+
+  @Override
+  public TerminalSelection getSelection() {
+    return null;
+  }
+
+  @Override
+  public boolean ambiguousCharsAreDoubleWidth() {
+    return false;
+  }
+}
@@ -0,0 +1,41 @@
+package com.jediterm.terminal;
+
+import com.jediterm.terminal.model.CharBuffer;
+import com.jediterm.terminal.model.LinesBuffer;
+import com.jediterm.terminal.util.Pair;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.List;
+
+public class SubstringFinderTest {
+
+    @Test
+    public void rangesAreFoundByRowInFrozenLines() {
+        // the oldest lines are frozen, each time they are processed they are decoded into new buffers
+        LinesBuffer buffer = new LinesBuffer(-1, 0, null);
+        for (int i = 0; i < 3000; i++) {
+            buffer.addNewLine(TextStyle.EMPTY, new CharBuffer(i == 5 || i == 2999 ? "abc needle" : "line " + i));
+        }
+        final SubstringFinder finder = new SubstringFinder("needle", false);
+        buffer.processLines(0, buffer.getLineCount(), new StyledTextConsumerAdapter() {
+            @Override
+            public void consume(int x, int y, TextStyle style, CharBuffer characters, int startRow) {
+                for (int i = 0; i < characters.length(); i++) {
+                    finder.nextChar(x, y - startRow, characters, i);
+                }
+            }
+        }, 0);
+
+        SubstringFinder.FindResult result = finder.getResult();
+        Assert.assertEquals(2, result.getItems().size());
+        for (int row : new int[] {5, 2999}) {
+            List<Pair<Integer, Integer>> ranges = result.getRanges(row);
+            Assert.assertNotNull("row " + row, ranges);
+            Assert.assertEquals(1, ranges.size());
+            Assert.assertEquals(4, (int) ranges.get(0).first);
+            Assert.assertEquals(10, (int) ranges.get(0).second);
+        }
+        Assert.assertNull(result.getRanges(6));
+    }
+}
@@ -0,0 +1,101 @@
+package com.jediterm.terminal;
+
+import com.jediterm.terminal.SubstringFinder.FindResult;
+import com.jediterm.terminal.model.JediTerminal;
+import com.jediterm.terminal.model.StyleState;
+import com.jediterm.terminal.model.TerminalTextBuffer;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.awt.Point;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class TerminalSearchTest {
+
+    private static final int COLUMNS = 80;
+    private static final int ROWS = 24;
+
+    @Test
+    public void findsMatchesAcrossWrappedRows() throws Exception {
+        TerminalTextBuffer buffer = createBuffer();
+        JediTerminal terminal = new JediTerminal(new HeadlessDisplay(COLUMNS, ROWS), buffer, new StyleState());
+        for (int i = 0; i < 100; i++) {
+            terminal.writeCharacters("line " + i);
+            terminal.newLine();
+            terminal.carriageReturn();
+        }
+        StringBuilder wrapped = new StringBuilder();
+        for (int i = 0; i < COLUMNS - 3; i++) {
+            wrapped.append('.');
+        }
+        terminal.writeUnwrappedString(wrapped + "needle");
+
+        TerminalSearch search = new TerminalSearch(buffer);
+        try {
+            FindResult result = searchAndWait(search, "needle", false);
+            Assert.assertEquals(1, result.getItems().size());
+            FindResult.FindItem item = result.getItems().get(0);
+            Assert.assertEquals("needle", item.getText());
+            int row = item.getStart().y;
+            Assert.assertEquals(COLUMNS - 3, item.getStart().x);
+            Assert.assertEquals(new Point(2, row + 1), item.getEnd());
+            Assert.assertEquals("dle", buffer.getLine(row + 1 - buffer.getHistoryLinesCount()).getText());
+
+            result = searchAndWait(search, "line 4\\d", true);
+            Assert.assertEquals(10, result.getItems().size());
+        }
+        finally {
+            search.dispose();
+        }
+    }
+
+    @Test
+    public void slowRegexRunsUnlockedAndIsCancelled() throws Exception {
+        final TerminalTextBuffer buffer = createBuffer();
+        JediTerminal terminal = new JediTerminal(new HeadlessDisplay(COLUMNS, ROWS), buffer, new StyleState());
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 60; i++) {
+            text.append('a');
+        }
+        terminal.writeCharacters(text.toString());
+
+        TerminalSearch search = new TerminalSearch(buffer);
+        try {
+            // backtracks for longer than the test would ever wait
+            search.search("(a+)+b", false, true, (result, finished) -> {
+            });
+            Thread.sleep(200);
+
+            Thread painter = new Thread(() -> {
+                buffer.lock();
+                buffer.unlock();
+            });
+            painter.start();
+            painter.join(5000);
+            Assert.assertFalse("the text buffer is locked while the regex runs", painter.isAlive());
+
+            FindResult result = searchAndWait(search, "aaa", false);
+            Assert.assertEquals(20, result.getItems().size());
+        }
+        finally {
+            search.dispose();
+        }
+    }
+
+    private static TerminalTextBuffer createBuffer() {
+        return new TerminalTextBuffer(COLUMNS, ROWS, new StyleState(), 1000, null);
+    }
+
+    private static FindResult searchAndWait(TerminalSearch search, String text, boolean regex) throws Exception {
+        CountDownLatch finished = new CountDownLatch(1);
+        FindResult result = search.search(text, false, regex, (r, done) -> {
+            if (done) {
+                finished.countDown();
+            }
+        });
+        Assert.assertNotNull(result);
+        Assert.assertTrue("search did not finish", finished.await(5, TimeUnit.SECONDS));
+        return result;
+    }
+}
@@ -0,0 +1,76 @@
+package com.jediterm.terminal;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class TextStyleTableTest {
+
+    private static final int THREADS = 8;
+    private static final int STYLES = 2000;
+
+    @Test
+    public void emptyStyleHasIdZero() {
+        Assert.assertEquals(0, TextStyleTable.getId(TextStyle.EMPTY));
+        Assert.assertEquals(0, TextStyleTable.getId(new TextStyle()));
+        Assert.assertSame(TextStyle.EMPTY, TextStyle.getCanonicalStyle(new TextStyle()));
+    }
+
+    @Test
+    public void internsEqualStylesFromManyThreads() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<int[]>> results = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++) {
+                final int offset = t * 97;
+                results.add(executor.submit(new Callable<int[]>() {
+                    @Override
+                    public int[] call() {
+                        int[] ids = new int[STYLES];
+                        for (int n = 0; n < STYLES; n++) {
+                            // every thread creates its own copies of the styles, in a different order
+                            int i = (n + offset) % STYLES;
+                            TextStyle style = createStyle(i);
+                            ids[i] = TextStyleTable.getId(style);
+                            Assert.assertEquals(style, TextStyleTable.getStyle(ids[i]));
+                            Assert.assertEquals(style, TextStyle.getCanonicalStyle(createStyle(i)));
+                        }
+                        return ids;
+                    }
+                }));
+            }
+
+            int[] first = results.get(0).get();
+            for (Future<int[]> result : results) {
+                Assert.assertArrayEquals(first, result.get());
+            }
+            for (int i = 0; i < STYLES; i++) {
+                Assert.assertEquals(createStyle(i), TextStyleTable.getStyle(first[i]));
+                Assert.assertSame(TextStyleTable.getStyle(first[i]), TextStyle.getCanonicalStyle(createStyle(i)));
+                for (int j = 0; j < i; j++) {
+                    Assert.assertNotEquals(first[i], first[j]);
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static TextStyle createStyle(int i) {
+        EnumSet<TextStyle.Option> options = EnumSet.noneOf(TextStyle.Option.class);
+        if (i % 3 == 0) {
+            options.add(TextStyle.Option.BOLD);
+        }
+        if (i % 5 == 0) {
+            options.add(TextStyle.Option.UNDERLINED);
+        }
+        return new TextStyle(new TerminalColor(i % 256), new TerminalColor(i / 256, i % 7, 200), options);
+    }
+}
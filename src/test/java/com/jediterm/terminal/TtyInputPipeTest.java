@@ -0,0 +1,113 @@
+package com.jediterm.terminal;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.awt.Dimension;
+
+public class TtyInputPipeTest {
+
+    private static final int OUTPUT_SIZE = 1 << 20;
+    private static final int CAPACITY = 1024;
+
+    @Test
+    public void staysBoundedUnderAFlood() throws Exception {
+        CountingConnector connector = new CountingConnector(Integer.MAX_VALUE);
+        TtyInputPipe pipe = new TtyInputPipe(connector, CAPACITY);
+        char[] buf = new char[100];
+        // the first read starts the reader, then the emulator is busy for a while
+        int count = pipe.read(buf, 0, buf.length);
+
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (pipe.available() < CAPACITY && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(CAPACITY, pipe.available());
+        Thread.sleep(200);
+        // the reader waits for room and leaves the rest to the connector
+        Assert.assertEquals(CAPACITY, pipe.available());
+        Assert.assertEquals(count + CAPACITY, connector.myOffset);
+        pipe.close();
+    }
+
+    @Test
+    public void readsEverythingInOrder() throws Exception {
+        CountingConnector connector = new CountingConnector(OUTPUT_SIZE);
+        TtyInputPipe pipe = new TtyInputPipe(connector, CAPACITY);
+        char[] buf = new char[100];
+        int count = pipe.read(buf, 0, buf.length);
+
+        int expected = 0;
+        while (count > 0) {
+            Assert.assertTrue(pipe.available() <= CAPACITY);
+            for (int i = 0; i < count; i++) {
+                Assert.assertEquals(CountingConnector.charAt(expected++), buf[i]);
+            }
+            count = pipe.read(buf, 0, buf.length);
+        }
+        Assert.assertEquals(OUTPUT_SIZE, expected);
+        Assert.assertEquals(-1, count);
+    }
+
+    private static class CountingConnector implements TtyConnector {
+        private final int mySize;
+        private volatile int myOffset;
+
+        CountingConnector(int size) {
+            mySize = size;
+        }
+
+        static char charAt(int offset) {
+            return (char) ('a' + offset % 26);
+        }
+
+        @Override
+        public int read(char[] buf, int offset, int length) {
+            int count = Math.min(Math.min(length, 4096), mySize - myOffset);
+            for (int i = 0; i < count; i++) {
+                buf[offset + i] = charAt(myOffset + i);
+            }
+            myOffset += count;
+            if (count == 0) {
+                return -1;
+            }
+            return count;
+        }
+
+        @Override
+        public boolean init(Questioner q) {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+
+        @Override
+        public void resize(Dimension termSize, Dimension pixelSize) {
+        }
+
+        @Override
+        public String getName() {
+            return "counting";
+        }
+
+        @Override
+        public void write(byte[] bytes) {
+        }
+
+        @Override
+        public boolean isConnected() {
+            return true;
+        }
+
+        @Override
+        public void write(String string) {
+        }
+
+        @Override
+        public int waitFor() {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package com.jediterm.terminal.emulator;
+
+import com.jediterm.terminal.HeadlessDisplay;
+import com.jediterm.terminal.Questioner;
+import com.jediterm.terminal.TtyBasedArrayDataStream;
+import com.jediterm.terminal.TtyConnector;
+import com.jediterm.terminal.model.JediTerminal;
+import com.jediterm.terminal.model.StyleState;
+import com.jediterm.terminal.model.TerminalTextBuffer;
+
+import java.awt.Dimension;
+import java.io.IOException;
+
+/**
+ * Emulator throughput for {@code cat} of a large ASCII file, read from a connector in chunks like the ones a pty
+ * delivers. The first rounds are JIT warm up, compare the later ones.
+ * <p>
+ * Run with: java -cp ... com.jediterm.terminal.emulator.EmulatorThroughputBenchmark [megabytes [read size]]
+ */
+public class EmulatorThroughputBenchmark {
+
+  private static final int COLUMNS = 120;
+  private static final int ROWS = 40;
+  private static final int ROUNDS = 12;
+
+  public static void main(String[] args) throws IOException {
+    int megabytes = args.length > 0 ? Integer.parseInt(args[0]) : 32;
+    int readSize = args.length > 1 ? Integer.parseInt(args[1]) : 16 * 1024;
+
+    char[] file = createFile(megabytes << 20);
+    for (int round = 0; round < ROUNDS; round++) {
+      System.out.println("round " + round);
+      run(file, readSize);
+    }
+  }
+
+  /**
+   * Lines of source-like text of varying length, some longer than the terminal is wide.
+   */
+  private static char[] createFile(int size) {
+    String words = "public static final int return new String char buffer offset length if else for while "
+            + "try catch throws IOException terminal line cursor scroll ";
+    StringBuilder sb = new StringBuilder(size + 200);
+    int line = 0;
+    while (sb.length() < size) {
+      int length = (line * 37) % 150;
+      for (int i = 0; i < length; i++) {
+        sb.append(words.charAt((line + i) % words.length()));
+      }
+      sb.append("\r\n");
+      line++;
+    }
+    char[] file = new char[sb.length()];
+    sb.getChars(0, sb.length(), file, 0);
+    return file;
+  }
+
+  private static void run(char[] file, int readSize) throws IOException {
+    StyleState styleState = new StyleState();
+    TerminalTextBuffer buffer = new TerminalTextBuffer(COLUMNS, ROWS, styleState);
+    JediTerminal terminal = new JediTerminal(new HeadlessDisplay(COLUMNS, ROWS), buffer, styleState);
+    TtyConnector connector = new FileConnector(file, readSize);
+    JediEmulator emulator = new JediEmulator(new TtyBasedArrayDataStream(connector), terminal);
+
+    long start = System.nanoTime();
+    while (emulator.hasNext()) {
+      emulator.next();
+    }
+    long nanos = System.nanoTime() - start;
+    System.out.printf("  %8.1f ms, %6.1f MB/s%n", nanos / 1e6, file.length * 1e3 / nanos);
+  }
+
+  private static class FileConnector implements TtyConnector {
+    private final char[] myFile;
+    private final int myReadSize;
+    private int myOffset;
+
+    FileConnector(char[] file, int readSize) {
+      myFile = file;
+      myReadSize = readSize;
+    }
+
+    @Override
+    public int read(char[] buf, int offset, int length) {
+      int count = Math.min(Math.min(length, myReadSize), myFile.length - myOffset);
+      System.arraycopy(myFile, myOffset, buf, offset, count);
+      myOffset += count;
+      return count;
+    }
+
+    @Override
+    public boolean init(Questioner q) {
+      return true;
+    }
+
+    @Override
+    public void close() {
+    }
+
+    @Override
+    public void resize(Dimension termSize, Dimension pixelSize) {
+    }
+
+    @Override
+    public String getName() {
+      return "file";
+    }
+
+    @Override
+    public void write(byte[] bytes) {
+    }
+
+    @Override
+    public boolean isConnected() {
+      return true;
+    }
+
+    @Override
+    public void write(String string) {
+    }
+
+    @Override
+    public int waitFor() {
+      return 0;
+    }
+  }
+}
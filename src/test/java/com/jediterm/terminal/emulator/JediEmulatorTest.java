@@ -0,0 +1,70 @@
+package com.jediterm.terminal.emulator;
+
+import com.jediterm.terminal.ArrayTerminalDataStream;
+import com.jediterm.terminal.HeadlessDisplay;
+import com.jediterm.terminal.model.JediTerminal;
+import com.jediterm.terminal.model.StyleState;
+import com.jediterm.terminal.model.TerminalTextBuffer;
+import com.jediterm.terminal.util.CharUtils;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Plain text runs, which the emulator writes to the terminal straight from the buffer of the data stream.
+ */
+public class JediEmulatorTest {
+
+    private static final int COLUMNS = 10;
+    private static final int ROWS = 4;
+
+    @Test
+    public void textIsCopiedOutOfTheStreamBuffer() throws IOException {
+        char[] input = "hello\r\nworld".toCharArray();
+        TerminalTextBuffer buffer = emulate(input);
+        // the stream reuses its buffer for the next read
+        Arrays.fill(input, 'x');
+        Assert.assertEquals("hello", buffer.getLine(0).getText());
+        Assert.assertEquals("world", buffer.getLine(1).getText());
+    }
+
+    @Test
+    public void controlCharacterEndsTheRun() throws IOException {
+        TerminalTextBuffer buffer = emulate("abc\bd\r\n\tx".toCharArray());
+        Assert.assertEquals("abd", buffer.getLine(0).getText());
+        Assert.assertEquals("x", buffer.getLine(1).getText().trim());
+    }
+
+    @Test
+    public void runLongerThanTheLineWraps() throws IOException {
+        TerminalTextBuffer buffer = emulate("0123456789abcdefghijKLM".toCharArray());
+        Assert.assertEquals("0123456789", buffer.getLine(0).getText());
+        Assert.assertEquals("abcdefghij", buffer.getLine(1).getText());
+        Assert.assertEquals("KLM", buffer.getLine(2).getText());
+    }
+
+    @Test
+    public void decSpecialGraphicsAreMapped() throws IOException {
+        TerminalTextBuffer buffer = emulate("a\u001b(0lqk\u001b(Bb".toCharArray());
+        Assert.assertEquals("a┌─┐b", buffer.getLine(0).getText());
+    }
+
+    @Test
+    public void doubleWidthCharacterTakesTwoCells() throws IOException {
+        TerminalTextBuffer buffer = emulate("a中b".toCharArray());
+        Assert.assertEquals("a中" + CharUtils.DWC + "b", buffer.getLine(0).getText());
+    }
+
+    private static TerminalTextBuffer emulate(char[] input) throws IOException {
+        StyleState styleState = new StyleState();
+        TerminalTextBuffer buffer = new TerminalTextBuffer(COLUMNS, ROWS, styleState);
+        JediTerminal terminal = new JediTerminal(new HeadlessDisplay(COLUMNS, ROWS), buffer, styleState);
+        JediEmulator emulator = new JediEmulator(new ArrayTerminalDataStream(input), terminal);
+        while (emulator.hasNext()) {
+            emulator.next();
+        }
+        return buffer;
+    }
+}
@@ -0,0 +1,92 @@
+package com.jediterm.terminal.emulator;
+
+import ch.qos.logback.classic.Level;
+import com.jediterm.terminal.ArrayTerminalDataStream;
+import com.jediterm.terminal.HeadlessDisplay;
+import com.jediterm.terminal.model.JediTerminal;
+import com.jediterm.terminal.model.StyleState;
+import com.jediterm.terminal.model.TerminalTextBuffer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Emulator throughput for output that changes the style every few characters, like {@code ls --color} of a huge
+ * directory, with one terminal and with several emulating at once like the panes of a split layout do.
+ * <p>
+ * Run with: java -cp ... com.jediterm.terminal.emulator.SgrBenchmark [lines [terminals]]
+ */
+public class SgrBenchmark {
+
+  private static final int COLUMNS = 120;
+  private static final int ROWS = 40;
+
+  private static final String[] COLORS = {"01;34", "01;32", "01;36", "40;33;01", "01;31", "00", "38;5;208", "01;35"};
+
+  public static void main(String[] args) throws Exception {
+    int lines = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+    int terminals = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+    // the emulator logs every control sequence at debug level, which would be measured instead
+    ((ch.qos.logback.classic.Logger) LoggerFactory.getLogger(Logger.ROOT_LOGGER_NAME)).setLevel(Level.INFO);
+
+    char[] output = createOutput(lines);
+    for (int round = 0; round < 3; round++) {
+      System.out.println("round " + round);
+      run(output, 1);
+      run(output, terminals);
+    }
+  }
+
+  /**
+   * Four coloured file names per line.
+   */
+  private static char[] createOutput(int lines) {
+    StringBuilder sb = new StringBuilder(lines * 120);
+    for (int i = 0; i < lines; i++) {
+      for (int j = 0; j < 4; j++) {
+        int n = i * 4 + j;
+        sb.append("\033[").append(COLORS[n % COLORS.length]).append('m').append("file-").append(n).append(".txt")
+                .append("\033[0m").append("  ");
+      }
+      sb.append("\r\n");
+    }
+    char[] output = new char[sb.length()];
+    sb.getChars(0, sb.length(), output, 0);
+    return output;
+  }
+
+  private static void run(char[] output, int terminals) throws InterruptedException {
+    List<Thread> threads = new ArrayList<>();
+    for (int i = 0; i < terminals; i++) {
+      threads.add(new Thread(() -> emulate(output)));
+    }
+    long start = System.nanoTime();
+    for (Thread thread : threads) {
+      thread.start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    long nanos = System.nanoTime() - start;
+    System.out.printf("  %d terminal(s): %8.1f ms, %6.1f MB/s%n", terminals, nanos / 1e6,
+            (long) output.length * terminals * 1e3 / nanos);
+  }
+
+  private static void emulate(char[] output) {
+    StyleState styleState = new StyleState();
+    TerminalTextBuffer buffer = new TerminalTextBuffer(COLUMNS, ROWS, styleState);
+    JediTerminal terminal = new JediTerminal(new HeadlessDisplay(COLUMNS, ROWS), buffer, styleState);
+    JediEmulator emulator = new JediEmulator(new ArrayTerminalDataStream(output), terminal);
+    try {
+      while (emulator.hasNext()) {
+        emulator.next();
+      }
+    }
+    catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+}
@@ -0,0 +1,125 @@
+package com.jediterm.terminal.model;
+
+import com.jediterm.terminal.TextStyle;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Frozen lines with no room on the heap, so every chunk goes to the spill file as soon as it is frozen.
+ */
+public class FrozenLinesTest {
+
+    private static final int CHUNKS = 6;
+
+    @Test
+    public void spilledLinesReadBackUnchanged() throws Exception {
+        FrozenLines frozen = new FrozenLines(0);
+        freeze(frozen, CHUNKS);
+        Assert.assertEquals(CHUNKS * FrozenLines.CHUNK_LINES, frozen.getLineCount());
+        // more chunks than stay decompressed, so most are read from the file again
+        for (int i = 0; i < frozen.getLineCount(); i++) {
+            Assert.assertEquals(text(i), frozen.getLine(i).getText());
+        }
+        frozen.clear();
+    }
+
+    @Test
+    public void thawLastReadsSpilledChunkAndMovesSpillEnd() throws Exception {
+        FrozenLines frozen = new FrozenLines(0);
+        long[] ends = freeze(frozen, 3);
+
+        List<TerminalLine> lines = frozen.thawLast();
+        Assert.assertEquals(FrozenLines.CHUNK_LINES, lines.size());
+        for (int i = 0; i < lines.size(); i++) {
+            Assert.assertEquals(text(2 * FrozenLines.CHUNK_LINES + i), lines.get(i).getText());
+        }
+        Assert.assertEquals(0, frozen.getSpillStart());
+        Assert.assertEquals(ends[1], frozen.getSpillEnd());
+
+        // the next chunk takes the place of the thawed one
+        frozen.freeze(chunk(2));
+        Assert.assertEquals(ends[2], frozen.getSpillEnd());
+        for (int i = 0; i < frozen.getLineCount(); i++) {
+            Assert.assertEquals(text(i), frozen.getLine(i).getText());
+        }
+        frozen.clear();
+    }
+
+    @Test
+    public void removeTopLinesMovesSpillStartAndCompacts() throws Exception {
+        FrozenLines frozen = new FrozenLines(0);
+        long[] ends = freeze(frozen, CHUNKS);
+
+        frozen.removeTopLines(FrozenLines.CHUNK_LINES + 10);
+        Assert.assertEquals(ends[0], frozen.getSpillStart());
+        Assert.assertEquals(ends[CHUNKS - 1], frozen.getSpillEnd());
+        Assert.assertEquals(text(FrozenLines.CHUNK_LINES + 10), frozen.getLine(0).getText());
+
+        // once more is removed than is left the chunks move to the start of the file
+        frozen.removeTopLines(3 * FrozenLines.CHUNK_LINES);
+        long live = ends[CHUNKS - 1] - ends[3];
+        Assert.assertEquals(live, frozen.getSpillEnd() - frozen.getSpillStart());
+        Assert.assertTrue(frozen.getSpillEnd() < ends[CHUNKS - 1]);
+        Assert.assertTrue(frozen.getSpillStart() <= live);
+        for (int i = 0; i < frozen.getLineCount(); i++) {
+            Assert.assertEquals(text(4 * FrozenLines.CHUNK_LINES + 10 + i), frozen.getLine(i).getText());
+        }
+
+        frozen.thawLast();
+        frozen.thawLast();
+        Assert.assertEquals(0, frozen.getLineCount());
+        Assert.assertEquals(0, frozen.getSpillStart());
+        Assert.assertEquals(0, frozen.getSpillEnd());
+    }
+
+    @Test
+    public void clearDeletesSpillFile() throws Exception {
+        FrozenLines frozen = new FrozenLines(0);
+        freeze(frozen, 2);
+        Path path = frozen.getSpillPath();
+        Assert.assertNotNull(path);
+
+        // some systems unlink the file as soon as it is open, others when it is closed
+        frozen.clear();
+        Assert.assertFalse(Files.exists(path));
+        Assert.assertNull(frozen.getSpillPath());
+        Assert.assertEquals(0, frozen.getLineCount());
+    }
+
+    /**
+     * @return end of the spilled data after each chunk
+     */
+    private static long[] freeze(FrozenLines frozen, int chunks) {
+        long[] ends = new long[chunks];
+        for (int c = 0; c < chunks; c++) {
+            frozen.freeze(chunk(c));
+            ends[c] = frozen.getSpillEnd();
+        }
+        return ends;
+    }
+
+    private static List<TerminalLine> chunk(int index) {
+        List<TerminalLine> lines = new ArrayList<>(FrozenLines.CHUNK_LINES);
+        for (int i = 0; i < FrozenLines.CHUNK_LINES; i++) {
+            lines.add(new TerminalLine(new TerminalLine.TextEntry(TextStyle.EMPTY,
+                    new CharBuffer(text(index * FrozenLines.CHUNK_LINES + i)))));
+        }
+        return lines;
+    }
+
+    // random letters, so a chunk does not compress to almost nothing
+    private static String text(int line) {
+        Random random = new Random(line);
+        StringBuilder text = new StringBuilder().append(line).append(' ');
+        for (int i = 0; i < 40; i++) {
+            text.append((char) ('a' + random.nextInt(26)));
+        }
+        return text.toString();
+    }
+}
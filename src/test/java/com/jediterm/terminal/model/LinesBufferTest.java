@@ -0,0 +1,127 @@
+package com.jediterm.terminal.model;
+
+import com.jediterm.terminal.TextStyle;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+public class LinesBufferTest {
+
+    private static final TerminalLine.TextEntry FILLER =
+            new TerminalLine.TextEntry(TextStyle.EMPTY, new CharBuffer("-"));
+
+    @Test
+    public void insertsAndDeletesAcrossTheEndOfTheArray() {
+        // 40 lines through a buffer of 10 leave its first line in the middle of the array
+        LinesBuffer buffer = createBuffer(10, 40);
+        Assert.assertEquals(lines(30, 40), texts(buffer));
+
+        buffer.insertLines(2, 3, 7, FILLER);
+        Assert.assertEquals(list("30", "31", "-", "-", "-", "32", "33", "34", "38", "39"), texts(buffer));
+
+        LinesBuffer removed = buffer.deleteLines(1, 4, 8, FILLER);
+        Assert.assertEquals(list("31", "-", "-", "-"), texts(removed));
+        Assert.assertEquals(list("30", "32", "33", "34", "38", "-", "-", "-", "-", "39"), texts(buffer));
+    }
+
+    @Test
+    public void negativeLineIndexIsTheTop() {
+        LinesBuffer buffer = createBuffer(10, 25);
+
+        buffer.insertLines(-1, 2, 4, FILLER);
+        Assert.assertEquals(list("-", "-", "15", "16", "17", "20", "21", "22", "23", "24"), texts(buffer));
+
+        LinesBuffer removed = buffer.deleteLines(-3, 3, 9, FILLER);
+        Assert.assertEquals(list("-", "-", "15"), texts(removed));
+        Assert.assertEquals(list("16", "17", "20", "21", "22", "23", "24", "-", "-", "-"), texts(buffer));
+    }
+
+    @Test
+    public void matchesAListAfterManyEdits() {
+        LinesBuffer buffer = createBuffer(-1, 0);
+        List<String> expected = new ArrayList<>();
+        Random random = new Random(7);
+        int next = 0;
+        for (int step = 0; step < 2000; step++) {
+            int size = expected.size();
+            int y = random.nextInt(size + 3) - 2;
+            int count = random.nextInt(5) + 1;
+            int lastLine = random.nextInt(size + 2) - 1;
+            switch (random.nextInt(4)) {
+                case 0:
+                    buffer.insertLines(y, count, lastLine, FILLER);
+                    insert(expected, y, count, lastLine);
+                    break;
+                case 1:
+                    buffer.deleteLines(y, count, lastLine, FILLER);
+                    delete(expected, y, count, lastLine);
+                    break;
+                case 2:
+                    buffer.removeTopLines(Math.min(count, size));
+                    expected.subList(0, Math.min(count, size)).clear();
+                    break;
+                default:
+                    for (int i = 0; i < count * 3; i++) {
+                        String text = Integer.toString(next++);
+                        buffer.addNewLine(TextStyle.EMPTY, new CharBuffer(text));
+                        expected.add(text);
+                    }
+            }
+            Assert.assertEquals("step " + step, expected, texts(buffer));
+        }
+    }
+
+    private static void insert(List<String> lines, int y, int count, int lastLine) {
+        int regionEnd = Math.min(lastLine + 1, lines.size());
+        int at = Math.max(0, Math.min(y, regionEnd));
+        int inserted = Math.min(count, regionEnd - at);
+        for (int i = 0; i < inserted; i++) {
+            lines.remove(regionEnd - 1);
+            lines.add(at, "-");
+        }
+    }
+
+    private static void delete(List<String> lines, int y, int count, int lastLine) {
+        int regionEnd = Math.min(lastLine + 1, lines.size());
+        int at = Math.max(0, Math.min(y, regionEnd));
+        int removed = Math.min(count, regionEnd - at);
+        for (int i = 0; i < removed; i++) {
+            lines.remove(at);
+            lines.add(regionEnd - 1, "-");
+        }
+    }
+
+    private static LinesBuffer createBuffer(int maxLines, int count) {
+        LinesBuffer buffer = new LinesBuffer(maxLines, null);
+        for (int i = 0; i < count; i++) {
+            buffer.addNewLine(TextStyle.EMPTY, new CharBuffer(Integer.toString(i)));
+        }
+        return buffer;
+    }
+
+    private static List<String> texts(LinesBuffer buffer) {
+        List<String> texts = new ArrayList<>();
+        for (int i = 0; i < buffer.getLineCount(); i++) {
+            texts.add(buffer.getLineText(i));
+        }
+        return texts;
+    }
+
+    private static List<String> lines(int from, int to) {
+        List<String> lines = new ArrayList<>();
+        for (int i = from; i < to; i++) {
+            lines.add(Integer.toString(i));
+        }
+        return lines;
+    }
+
+    private static List<String> list(String... texts) {
+        List<String> list = new ArrayList<>();
+        Collections.addAll(list, texts);
+        return list;
+    }
+}
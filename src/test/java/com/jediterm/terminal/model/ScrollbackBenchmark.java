@@ -0,0 +1,69 @@
+package com.jediterm.terminal.model;
+
+import com.jediterm.terminal.ArrayTerminalDataStream;
+import com.jediterm.terminal.HeadlessDisplay;
+import com.jediterm.terminal.emulator.JediEmulator;
+
+import java.io.IOException;
+
+/**
+ * Throughput of sustained output, like {@code cat} of a big file, scrolling through an 80x24 screen into scrollbacks
+ * of different sizes. The output is longer than every scrollback, so most lines push the oldest line out of it. The
+ * number of lines to print can be passed as the first argument, the scrollback sizes as the following ones.
+ * <p>
+ * Run with: java -Xmx2g -cp ... com.jediterm.terminal.model.ScrollbackBenchmark [lines [history...]]
+ */
+public class ScrollbackBenchmark {
+
+  private static final int COLUMNS = 80;
+  private static final int ROWS = 24;
+
+  public static void main(String[] args) throws IOException {
+    int lines = args.length > 0 ? Integer.parseInt(args[0]) : 300000;
+    int[] histories = {1000, 5000, 50000, 200000};
+    if (args.length > 1) {
+      histories = new int[args.length - 1];
+      for (int i = 1; i < args.length; i++) {
+        histories[i - 1] = Integer.parseInt(args[i]);
+      }
+    }
+
+    char[] output = createOutput(lines);
+    for (int round = 0; round < 2; round++) {
+      System.out.println("round " + round);
+      for (int history : histories) {
+        run(output, lines, history);
+      }
+    }
+  }
+
+  private static char[] createOutput(int lines) {
+    StringBuilder sb = new StringBuilder(lines * (COLUMNS / 2));
+    for (int i = 0; i < lines; i++) {
+      sb.append(i).append(": ");
+      for (int j = 0; j < i % (COLUMNS - 10); j++) {
+        sb.append((char) ('a' + (i + j) % 26));
+      }
+      sb.append("\r\n");
+    }
+    char[] output = new char[sb.length()];
+    sb.getChars(0, sb.length(), output, 0);
+    return output;
+  }
+
+  private static void run(char[] output, int lines, int history) throws IOException {
+    StyleState styleState = new StyleState();
+    TerminalTextBuffer buffer = new TerminalTextBuffer(COLUMNS, ROWS, styleState, history, null);
+    JediTerminal terminal = new JediTerminal(new HeadlessDisplay(COLUMNS, ROWS), buffer, styleState);
+    JediEmulator emulator = new JediEmulator(new ArrayTerminalDataStream(output), terminal);
+
+    long start = System.nanoTime();
+    while (emulator.hasNext()) {
+      emulator.next();
+    }
+    long nanos = System.nanoTime() - start;
+    System.out.printf("  history %8d: %8.1f ms, %6.2f Mlines/s, %6.1f MB/s (%d lines kept)%n",
+            history, nanos / 1e6, lines * 1e3 / nanos, output.length * 1e3 / nanos,
+            buffer.getHistoryLinesCount());
+  }
+}
@@ -0,0 +1,325 @@
+package com.jediterm.terminal.model;
+
+import com.jediterm.terminal.HyperlinkStyle;
+import com.jediterm.terminal.StyledTextConsumerAdapter;
+import com.jediterm.terminal.TerminalColor;
+import com.jediterm.terminal.TextStyle;
+import com.jediterm.terminal.model.hyperlinks.LinkInfo;
+import com.jediterm.terminal.util.CharUtils;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class TerminalLineTest {
+
+    private static final TextStyle RED = new TextStyle(TerminalColor.index(1), null);
+    private static final TextStyle GREEN = new TextStyle(TerminalColor.index(2), TerminalColor.index(0));
+
+    @Test
+    public void runsAreSplitAndMergedAgain() {
+        TerminalLine line = new TerminalLine();
+        line.writeString(0, new CharBuffer("hello world"), TextStyle.EMPTY);
+        Assert.assertEquals(list("0:hello world"), runs(line));
+
+        line.writeString(3, new CharBuffer("lo w"), RED);
+        Assert.assertEquals(list("0:hel", "3:lo w", "7:orld"), runs(line));
+        Assert.assertEquals(RED, line.getStyleAt(3));
+        Assert.assertEquals(TextStyle.EMPTY, line.getStyleAt(7));
+
+        line.writeString(5, new CharBuffer(" "), GREEN);
+        Assert.assertEquals(list("0:hel", "3:lo", "5: ", "6:w", "7:orld"), runs(line));
+
+        line.writeString(0, new CharBuffer("HELLO WORLD"), RED);
+        Assert.assertEquals(list("0:HELLO WORLD"), runs(line));
+        Assert.assertEquals(RED, line.getStyleAt(10));
+        Assert.assertNull(line.getStyleAt(11));
+    }
+
+    @Test
+    public void textAfterAGapTurnsNulCellsIntoSpaces() {
+        TerminalLine line = new TerminalLine();
+        line.writeString(4, new CharBuffer("ab"), RED);
+        Assert.assertEquals("    ab", line.getText());
+        Assert.assertEquals(list("0:    ", "4:ab"), runs(line));
+
+        line.clearArea(2, -1, GREEN);
+        Assert.assertEquals("  ", line.getText());
+        Assert.assertEquals(list("0:  ", "nul 2:4"), runs(line));
+
+        line.clearArea(0, -1, TextStyle.EMPTY);
+        Assert.assertTrue(line.isNul());
+    }
+
+    @Test
+    public void wideCharactersKeepTheirSecondCell() throws Exception {
+        TerminalLine line = new TerminalLine();
+        line.writeString(0, new CharBuffer("a中" + CharUtils.DWC + "b"), TextStyle.EMPTY);
+        line.writeString(4, new CharBuffer("가" + CharUtils.DWC), RED);
+        Assert.assertEquals("a中" + CharUtils.DWC + "b가" + CharUtils.DWC, line.getText());
+
+        line.insertBlankCharacters(1, 2, 80, GREEN);
+        Assert.assertEquals("a  中" + CharUtils.DWC + "b가" + CharUtils.DWC, line.getText());
+        Assert.assertEquals(CharUtils.DWC, line.charAt(4));
+
+        line.deleteCharacters(1, 2, TextStyle.EMPTY);
+        Assert.assertEquals("a中" + CharUtils.DWC + "b가" + CharUtils.DWC, line.getText());
+
+        TerminalLine copy = copy(line, new ArrayList<TextStyle>());
+        Assert.assertEquals(line.getText(), copy.getText());
+        Assert.assertEquals(runs(line), runs(copy));
+    }
+
+    @Test
+    public void linkStylesSurviveManyLinks() throws Exception {
+        HyperlinkStyle kept = link();
+        TerminalLine line = new TerminalLine();
+        line.writeString(0, new CharBuffer("0123456789abcdef"), TextStyle.EMPTY);
+        line.writeString(10, new CharBuffer("abc"), kept);
+        // every link overwrites the one before, the line drops the styles no cell refers to any more
+        HyperlinkStyle last = null;
+        for (int i = 0; i < 100; i++) {
+            last = link();
+            line.writeString(2, new CharBuffer("45678"), last);
+            Assert.assertSame(last, line.getStyleAt(2));
+            Assert.assertSame(kept, line.getStyleAt(10));
+            Assert.assertSame(kept, line.getStyleAt(12));
+            Assert.assertEquals(TextStyle.EMPTY, line.getStyleAt(13));
+        }
+
+        List<TextStyle> linkStyles = new ArrayList<>();
+        TerminalLine copy = copy(line, linkStyles);
+        Assert.assertEquals(2, linkStyles.size());
+        Assert.assertSame(last, copy.getStyleAt(6));
+        Assert.assertSame(kept, copy.getStyleAt(11));
+        Assert.assertEquals(runs(line), runs(copy));
+    }
+
+    @Test
+    public void lineWithOnlyALinkStyle() throws Exception {
+        HyperlinkStyle link = link();
+        TerminalLine line = new TerminalLine();
+        line.writeString(0, new CharBuffer("http://x"), link);
+        Assert.assertSame(link, line.getStyleAt(0));
+
+        List<TextStyle> linkStyles = new ArrayList<>();
+        TerminalLine copy = copy(line, linkStyles);
+        Assert.assertEquals(1, linkStyles.size());
+        Assert.assertSame(link, copy.getStyleAt(7));
+        Assert.assertEquals(list("0:http://x"), runs(copy));
+    }
+
+    @Test
+    public void matchesCellsAfterManyEdits() throws Exception {
+        TextStyle[] styles = {TextStyle.EMPTY, RED, GREEN, link(), link()};
+        Random random = new Random(11);
+        for (int round = 0; round < 20; round++) {
+            TerminalLine line = new TerminalLine();
+            List<Cell> cells = new ArrayList<>();
+            for (int step = 0; step < 200; step++) {
+                int x = random.nextInt(cells.size() + 5);
+                int count = random.nextInt(8) + 1;
+                TextStyle style = styles[random.nextInt(styles.length)];
+                switch (random.nextInt(5)) {
+                    case 0:
+                        line.deleteCharacters(x, count, style);
+                        delete(cells, x, count, style);
+                        break;
+                    case 1:
+                        int maxLen = cells.size() + random.nextInt(10);
+                        line.insertBlankCharacters(x, count, maxLen, style);
+                        insertBlanks(cells, x, count, maxLen, style);
+                        break;
+                    case 2:
+                        // to the end of the line from within it, as the terminal erases
+                        int right = random.nextBoolean() ? -1 : x + count;
+                        x = right == -1 ? Math.min(x, cells.size()) : x;
+                        line.clearArea(x, right, style);
+                        clear(cells, x, right, style);
+                        break;
+                    default:
+                        StringBuilder text = new StringBuilder();
+                        for (int i = 0; i < count; i++) {
+                            text.append((char) ('a' + random.nextInt(26)));
+                        }
+                        line.writeString(x, new CharBuffer(text.toString()), style);
+                        write(cells, x, text.toString(), style);
+                }
+                assertCells("round " + round + " step " + step, cells, line);
+            }
+            TerminalLine copy = copy(line, new ArrayList<TextStyle>());
+            assertCells("copy of round " + round, cells, copy);
+        }
+    }
+
+    private static void assertCells(String message, List<Cell> cells, TerminalLine line) {
+        int textLength = cells.size();
+        while (textLength > 0 && cells.get(textLength - 1).myChar == CharUtils.NUL_CHAR) {
+            textLength--;
+        }
+        StringBuilder text = new StringBuilder();
+        StringBuilder all = new StringBuilder();
+        for (int x = 0; x < cells.size(); x++) {
+            Cell cell = cells.get(x);
+            if (x < textLength) {
+                text.append(cell.myChar);
+            }
+            all.append(cell.myChar);
+            TextStyle style = line.getStyleAt(x);
+            if (cell.myStyle instanceof HyperlinkStyle) {
+                Assert.assertSame(message + " at " + x, cell.myStyle, style);
+            } else {
+                Assert.assertEquals(message + " at " + x, cell.myStyle, style);
+            }
+        }
+        Assert.assertEquals(message, text.toString(), line.getText());
+        Assert.assertEquals(message, textLength == 0, line.isNul());
+        Assert.assertNull(message, line.getStyleAt(cells.size()));
+
+        // the runs cover the cells in order, the ones next to each other differ in style or in being NUL
+        final StringBuilder processed = new StringBuilder();
+        final List<TextStyle> runStyles = new ArrayList<>();
+        final List<Boolean> runNuls = new ArrayList<>();
+        line.process(0, new StyledTextConsumerAdapter() {
+            @Override
+            public void consume(int x, int y, TextStyle style, CharBuffer characters, int startRow) {
+                Assert.assertEquals(processed.length(), x);
+                processed.append(characters);
+                runStyles.add(style);
+                runNuls.add(false);
+            }
+
+            @Override
+            public void consumeNul(int x, int y, int nulIndex, TextStyle style, CharBuffer characters, int startRow) {
+                Assert.assertEquals(processed.length(), x);
+                processed.append(characters);
+                runStyles.add(style);
+                runNuls.add(true);
+            }
+        }, 0);
+        Assert.assertEquals(message, all.toString(), processed.toString());
+        for (int i = 1; i < runStyles.size(); i++) {
+            // hyperlink styles are equal to each other, each link is a style of its own
+            Assert.assertFalse(message + " run " + i,
+                    runStyles.get(i - 1) == runStyles.get(i) && runNuls.get(i - 1) == runNuls.get(i));
+        }
+    }
+
+    private static void write(List<Cell> cells, int x, String text, TextStyle style) {
+        while (cells.size() < x) {
+            cells.add(new Cell(CharUtils.NUL_CHAR, TextStyle.EMPTY));
+        }
+        for (int i = 0; i < text.length(); i++) {
+            Cell cell = new Cell(text.charAt(i), style);
+            if (x + i < cells.size()) {
+                cells.set(x + i, cell);
+            } else {
+                cells.add(cell);
+            }
+        }
+        nulOnlyAtTheEnd(cells);
+    }
+
+    private static void clear(List<Cell> cells, int left, int right, TextStyle style) {
+        if (right == -1) {
+            right = cells.size();
+        }
+        char c = right >= cells.size() ? CharUtils.NUL_CHAR : CharUtils.EMPTY_CHAR;
+        StringBuilder text = new StringBuilder();
+        for (int i = left; i < right; i++) {
+            text.append(c);
+        }
+        write(cells, left, text.toString(), style);
+    }
+
+    private static void delete(List<Cell> cells, int x, int count, TextStyle style) {
+        for (int i = 0; i < count && x < cells.size(); i++) {
+            cells.remove(x);
+        }
+        if (style != TextStyle.EMPTY) {
+            for (int i = 0; i < count; i++) {
+                cells.add(new Cell(CharUtils.NUL_CHAR, style));
+            }
+        }
+    }
+
+    private static void insertBlanks(List<Cell> cells, int x, int count, int maxLen, TextStyle style) {
+        int length = Math.min(cells.size() + count, maxLen);
+        while (cells.size() < Math.min(x, length)) {
+            cells.add(new Cell(x < length ? CharUtils.EMPTY_CHAR : CharUtils.NUL_CHAR, TextStyle.EMPTY));
+        }
+        for (int i = 0; i < count && x < length; i++) {
+            cells.add(x, new Cell(CharUtils.EMPTY_CHAR, style));
+        }
+        while (cells.size() > length) {
+            cells.remove(cells.size() - 1);
+        }
+        nulOnlyAtTheEnd(cells);
+    }
+
+    private static void nulOnlyAtTheEnd(List<Cell> cells) {
+        int end = cells.size();
+        while (end > 0 && cells.get(end - 1).myChar == CharUtils.NUL_CHAR) {
+            end--;
+        }
+        for (int i = 0; i < end; i++) {
+            if (cells.get(i).myChar == CharUtils.NUL_CHAR) {
+                cells.set(i, new Cell(CharUtils.EMPTY_CHAR, cells.get(i).myStyle));
+            }
+        }
+    }
+
+    private static TerminalLine copy(TerminalLine line, List<TextStyle> linkStyles) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        line.writeTo(new DataOutputStream(bytes), linkStyles);
+        return TerminalLine.readFrom(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())), linkStyles);
+    }
+
+    private static List<String> runs(TerminalLine line) {
+        final List<String> runs = new ArrayList<>();
+        line.process(0, new StyledTextConsumerAdapter() {
+            @Override
+            public void consume(int x, int y, TextStyle style, CharBuffer characters, int startRow) {
+                runs.add(x + ":" + characters);
+            }
+
+            @Override
+            public void consumeNul(int x, int y, int nulIndex, TextStyle style, CharBuffer characters, int startRow) {
+                runs.add("nul " + x + ":" + characters.length());
+            }
+        }, 0);
+        return runs;
+    }
+
+    private static HyperlinkStyle link() {
+        return new HyperlinkStyle(TextStyle.EMPTY, new LinkInfo(new Runnable() {
+            @Override
+            public void run() {
+            }
+        }));
+    }
+
+    private static List<String> list(String... items) {
+        List<String> list = new ArrayList<>();
+        for (String item : items) {
+            list.add(item);
+        }
+        return list;
+    }
+
+    private static final class Cell {
+        private final char myChar;
+        private final TextStyle myStyle;
+
+        Cell(char c, TextStyle style) {
+            myChar = c;
+            myStyle = style;
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package com.jediterm.terminal.ui;
+
+import com.jediterm.terminal.TerminalColor;
+import com.jediterm.terminal.TextStyle;
+import com.jediterm.terminal.model.JediTerminal;
+import com.jediterm.terminal.model.StyleState;
+import com.jediterm.terminal.model.TerminalTextBuffer;
+import com.jediterm.terminal.ui.settings.DefaultSettingsProvider;
+
+import javax.swing.SwingUtilities;
+import java.util.Random;
+
+/**
+ * Rendering benchmark of a full 300x100 screen of coloured text. Every frame redraws all rows into the back buffer
+ * of the panel.
+ * <p>
+ * Run with: java -Djava.awt.headless=true -cp ... com.jediterm.terminal.ui.TerminalRenderBenchmark
+ */
+public class TerminalRenderBenchmark {
+
+  private static final int COLUMNS = 300;
+  private static final int ROWS = 100;
+  private static final int FRAMES = 50;
+
+  public static void main(String[] args) throws Exception {
+    TerminalPanel panel = createPanel();
+    for (int round = 0; round < 3; round++) {
+      run("round " + round, panel);
+    }
+    System.exit(0);
+  }
+
+  private static TerminalPanel createPanel() {
+    DefaultSettingsProvider settings = new DefaultSettingsProvider();
+    StyleState styleState = new StyleState();
+    styleState.setDefaultStyle(settings.getDefaultStyle());
+    TerminalTextBuffer buffer = new TerminalTextBuffer(COLUMNS, ROWS, styleState, 0, null);
+    TerminalPanel panel = new TerminalPanel(settings, buffer, styleState);
+    JediTerminal terminal = new JediTerminal(panel, buffer, styleState);
+    panel.init();
+    panel.setSize(panel.getPreferredSize());
+
+    Random random = new Random(1);
+    for (int row = 1; row <= ROWS; row++) {
+      terminal.cursorPosition(1, row);
+      for (int column = 0; column < COLUMNS; ) {
+        terminal.characterAttributes(new TextStyle.Builder()
+                .setForeground(TerminalColor.index(random.nextInt(16)))
+                .setBackground(random.nextInt(4) == 0 ? TerminalColor.index(random.nextInt(8)) : null)
+                .setOption(TextStyle.Option.BOLD, random.nextInt(4) == 0)
+                .build());
+        StringBuilder word = new StringBuilder();
+        int length = Math.min(1 + random.nextInt(12), COLUMNS - column);
+        for (int i = 0; i < length; i++) {
+          word.append((char) ('!' + random.nextInt(94)));
+        }
+        terminal.writeCharacters(word.toString());
+        column += length;
+      }
+    }
+    return panel;
+  }
+
+  private static void run(final String name, final TerminalPanel panel) throws Exception {
+    // on the EDT, where the redraw timer of the panel runs too
+    SwingUtilities.invokeAndWait(() -> {
+      TerminalPanel.WeakRedrawTimer timer = new TerminalPanel.WeakRedrawTimer(panel);
+      panel.repaint();
+      timer.actionPerformed(null); // warm up
+      long start = System.nanoTime();
+      for (int i = 0; i < FRAMES; i++) {
+        panel.repaint();
+        timer.actionPerformed(null);
+      }
+      long nanos = System.nanoTime() - start;
+      System.out.printf("  %s %dx%d: %6.1f fps (%5.1f ms/frame)%n",
+              name, COLUMNS, ROWS, FRAMES * 1e9 / nanos, nanos / 1e6 / FRAMES);
+    });
+  }
+}
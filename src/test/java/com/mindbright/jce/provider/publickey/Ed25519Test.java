@@ -0,0 +1,61 @@
+package com.mindbright.jce.provider.publickey;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import static com.mindbright.jce.provider.publickey.Curve25519Test.fromHex;
+
+/**
+ * Known answer tests of Ed25519 with the first three vectors of RFC 8032 section 7.1.
+ */
+public class Ed25519Test {
+
+    private static final String[][] VECTORS = {
+            {"9d61b19deffd5a60ba844af492ec2cc44449c5697b326919703bac031cae7f60",
+                    "d75a980182b10ab7d54bfed3c964073a0ee172f3daa62325af021a68f707511a",
+                    "",
+                    "e5564300c360ac729086e2cc806e828a84877f1eb8e5d974d873e06522490155"
+                            + "5fb8821590a33bacc61e39701cf9b46bd25bf5f0595bbe24655141438e7a100b"},
+            {"4ccd089b28ff96da9db6c346ec114e0f5b8a319f35aba624da8cf6ed4fb8a6fb",
+                    "3d4017c3e843895a92b70aa74d1b7ebc9c982ccf2ec4968cc0cd55f12af4660c",
+                    "72",
+                    "92a009a9f0d4cab8720e820b5f642540a2b27b5416503f8fb3762223ebdb69da"
+                            + "085ac1e43e15996e458f3613d0f11d8c387b2eaeb4302aeeb00d291612bb0c00"},
+            {"c5aa8df43f9f837bedb7442f31dcb7b166d38535076f094b85ce3a2e0b4458f7",
+                    "fc51cd8e6218a1a38da47ed00230f0580816ed13ba3303ac5deb911548908025",
+                    "af82",
+                    "6291d657deec24024827e69c3abe01a30ce548a284743a445e3680d7db5ac3ac"
+                            + "18ff9b538d16f290ae67f760984dc6594a7c15e9716ed28dc027beceea1ec40a"},
+    };
+
+    @Test
+    public void publicKeyMatchesRfc8032() {
+        for (String[] v : VECTORS) {
+            Assert.assertArrayEquals(fromHex(v[1]), Ed25519.publicKey(fromHex(v[0])));
+        }
+    }
+
+    @Test
+    public void signMatchesRfc8032() {
+        for (String[] v : VECTORS) {
+            Assert.assertArrayEquals(fromHex(v[3]), Ed25519.sign(fromHex(v[0]), fromHex(v[1]), fromHex(v[2])));
+        }
+    }
+
+    @Test
+    public void verifyAcceptsRfc8032() {
+        for (String[] v : VECTORS) {
+            Assert.assertTrue(Ed25519.verify(fromHex(v[1]), fromHex(v[2]), fromHex(v[3])));
+        }
+    }
+
+    @Test
+    public void verifyRejectsChangedSignatureOrMessage() {
+        for (String[] v : VECTORS) {
+            byte[] sig = fromHex(v[3]);
+            sig[5] ^= 1;
+            Assert.assertFalse(Ed25519.verify(fromHex(v[1]), fromHex(v[2]), sig));
+            Assert.assertFalse(Ed25519.verify(fromHex(v[1]), fromHex(v[2] + "00"), fromHex(v[3])));
+        }
+    }
+}
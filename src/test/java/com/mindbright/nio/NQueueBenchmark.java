@@ -0,0 +1,164 @@
+package com.mindbright.nio;
+
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Micro benchmark of NQueue against the previous ArrayList based
+ * implementation, kept here as LockedQueue. Two cases are measured:
+ * draining a backlog built up while the queue was stopped, and
+ * several threads appending concurrently.
+ * <p>
+ * Run with: java -cp ... com.mindbright.nio.NQueueBenchmark
+ */
+public class NQueueBenchmark {
+
+    private static final int BACKLOG = 200000;
+    private static final int PRODUCERS = 4;
+    private static final int PER_PRODUCER = 100000;
+
+    interface Queue {
+        void append(Object obj);
+        void stop();
+        void restart();
+    }
+
+    public static void main(String[] args) throws Exception {
+        for (int round = 0; round < 2; round++) {
+            System.out.println("round " + round);
+            backlog("NQueue     ", new Counter(), true);
+            backlog("LockedQueue", new Counter(), false);
+            producers("NQueue     ", new Counter(), true);
+            producers("LockedQueue", new Counter(), false);
+        }
+    }
+
+    private static Queue create(Counter counter, boolean lockFree) {
+        if (!lockFree) {
+            return new LockedQueue(counter);
+        }
+        final NQueue q = new NQueue(counter);
+        return new Queue() {
+            public void append(Object obj) { q.append(obj); }
+            public void stop() { q.stop(); }
+            public void restart() { q.restart(); }
+        };
+    }
+
+    private static void backlog(String name, Counter counter, boolean lockFree) {
+        Queue q = create(counter, lockFree);
+        q.stop();
+        for (int i = 0; i < BACKLOG; i++) {
+            q.append(counter);
+        }
+        long start = System.nanoTime();
+        q.restart();
+        long nanos = System.nanoTime() - start;
+        System.out.printf("  %s drain %d queued: %8.1f ms (handled %d)%n",
+                          name, BACKLOG, nanos / 1e6, counter.count.get());
+    }
+
+    private static void producers(String name, Counter counter, boolean lockFree)
+        throws InterruptedException {
+        final Queue q = create(counter, lockFree);
+        final CountDownLatch go = new CountDownLatch(1);
+        Thread[] threads = new Thread[PRODUCERS];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(() -> {
+                try {
+                    go.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int j = 0; j < PER_PRODUCER; j++) {
+                    q.append(counter);
+                }
+            });
+            threads[i].start();
+        }
+        long start = System.nanoTime();
+        go.countDown();
+        for (Thread t : threads) {
+            t.join();
+        }
+        long nanos = System.nanoTime() - start;
+        long total = (long)PRODUCERS * PER_PRODUCER;
+        System.out.printf("  %s %d producers: %8.1f ns/append (handled %d)%n",
+                          name, PRODUCERS, (double)nanos / total,
+                          counter.count.get());
+    }
+
+    private static class Counter implements NQueueCallback {
+        final AtomicLong count = new AtomicLong();
+
+        public void handleQueue(Object obj) {
+            count.incrementAndGet();
+        }
+    }
+
+    /**
+     * The ArrayList plus synchronized implementation NQueue used to have.
+     */
+    private static class LockedQueue implements Queue {
+        private ArrayList<Object> _queue = new ArrayList<Object>();
+        private NQueueCallback _callback;
+        private volatile boolean _stopped = false;
+        private volatile boolean _running = false;
+        private long _currhandler = -1;
+
+        LockedQueue(NQueueCallback callback) {
+            _callback = callback;
+        }
+
+        public void append(Object obj) {
+            synchronized (_queue) {
+                if (_running || _stopped) {
+                    _queue.add(obj);
+                    return;
+                }
+                _running = true;
+                _currhandler = Thread.currentThread().getId();
+            }
+            handleQueue(obj);
+        }
+
+        private void handleQueue(Object obj) {
+            for (;;) {
+                if (obj != null)
+                    try {
+                        _callback.handleQueue(obj);
+                    } catch (Throwable t) {
+                    }
+                synchronized (_queue) {
+                    if (_stopped || _queue.isEmpty()) {
+                        _running = false;
+                        _currhandler = -1;
+                        break;
+                    }
+                    obj = _queue.remove(0);
+                }
+            }
+        }
+
+        public void stop() {
+            synchronized (_queue) {
+                _stopped = true;
+                if (_currhandler == Thread.currentThread().getId())
+                    return;
+            }
+            Thread.yield();
+            while (_running && _stopped)
+                Thread.yield();
+        }
+
+        public void restart() {
+            synchronized (_queue) {
+                _stopped = false;
+                if (_running) return;
+                _running = true;
+            }
+            handleQueue(null);
+        }
+    }
+}
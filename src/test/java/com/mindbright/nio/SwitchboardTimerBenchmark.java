@@ -0,0 +1,53 @@
+package com.mindbright.nio;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Micro benchmark of the Switchboard timer handling. One fast timer is
+ * run next to a growing number of idle timers. The rate of the fast
+ * timer and the cost of register/unregister should not depend on how
+ * many idle timers there are.
+ * <p>
+ * Run with: java -cp ... com.mindbright.nio.SwitchboardTimerBenchmark
+ */
+public class SwitchboardTimerBenchmark {
+
+    private static final long RUN_MILLIS = 2000;
+
+    public static void main(String[] args) throws Exception {
+        Switchboard.setPoolSize(1);
+        int[] counts = {10, 1000, 10000, 100000};
+        run(10000, false); // warm up
+        for (int idle : counts) {
+            run(idle, true);
+        }
+        Switchboard.stop();
+    }
+
+    private static void run(int idle, boolean report) throws Exception {
+        Switchboard sb = Switchboard.getSwitchboard();
+        Object[] keys = new Object[idle];
+
+        long start = System.nanoTime();
+        for (int i = 0; i < idle; i++) {
+            keys[i] = sb.registerTimer(3600000L + i, () -> { });
+        }
+        long registerNanos = System.nanoTime() - start;
+
+        final AtomicLong trigs = new AtomicLong();
+        Object fast = sb.registerTimer(1, trigs::incrementAndGet);
+        Thread.sleep(RUN_MILLIS);
+        sb.unregisterTimer(fast);
+
+        start = System.nanoTime();
+        for (int i = 0; i < idle; i++) {
+            sb.unregisterTimer(keys[i]);
+        }
+        long unregisterNanos = System.nanoTime() - start;
+
+        if (report)
+            System.out.printf("idle timers %7d: %6d trigs/s, register %6d ns/op, unregister %6d ns/op%n",
+                              idle, trigs.get() * 1000 / RUN_MILLIS,
+                              registerNanos / idle, unregisterNanos / idle);
+    }
+}
@@ -0,0 +1,131 @@
+package com.mindbright.ssh2;
+
+import java.math.BigInteger;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.SecureRandom;
+import java.security.Signature;
+import java.security.spec.ECGenParameterSpec;
+
+import javax.crypto.KeyAgreement;
+
+import com.mindbright.jce.provider.publickey.Curve25519;
+import com.mindbright.jce.provider.publickey.DiffieHellman;
+import com.mindbright.jce.provider.publickey.Ed25519PrivateKey;
+import com.mindbright.jce.provider.publickey.Ed25519PublicKey;
+import com.mindbright.jce.provider.publickey.ModPGroups;
+import com.mindbright.util.Crypto;
+
+/**
+ * Micro benchmark of the public key work one client side handshake
+ * does: generating the ephemeral key, computing the shared secret and
+ * verifying the server host key signature. The network round trips
+ * are the same for all algorithms so they are left out.
+ * <p>
+ * Run with: java -cp ... com.mindbright.ssh2.KEXBenchmark
+ */
+public class KEXBenchmark {
+
+    private static final int ITERATIONS = 200;
+
+    private static final SecureRandom random = new SecureRandom();
+
+    interface Op {
+        void run() throws Exception;
+    }
+
+    public static void main(String[] args) throws Exception {
+        for (int round = 0; round < 2; round++) {
+            System.out.println("round " + round);
+            time("kex diffie-hellman-group14-sha1", KEXBenchmark::dhGroup14);
+            time("kex ecdh-sha2-nistp256", KEXBenchmark::ecdhP256);
+            time("kex curve25519-sha256", KEXBenchmark::curve25519);
+            hostKey("ssh-rsa", rsaKey(), "SHA1withRSA");
+            hostKey("ecdsa-sha2-nistp256", ecKey(), "SHA256withECDSA");
+            hostKey("ssh-ed25519", ed25519Key(), "Ed25519");
+        }
+    }
+
+    private static void time(String name, Op op) throws Exception {
+        for (int i = 0; i < ITERATIONS / 10; i++) {
+            op.run();
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            op.run();
+        }
+        long nanos = System.nanoTime() - start;
+        System.out.printf("  %-32s %8.3f ms/handshake%n", name,
+                          nanos / 1e6 / ITERATIONS);
+    }
+
+    private static void dhGroup14() {
+        BigInteger p = ModPGroups.oakleyGroup14P;
+        BigInteger g = ModPGroups.oakleyGroup14G;
+        BigInteger x = DiffieHellman.generateX(p, random);
+        BigInteger e = DiffieHellman.generateY(x, g, p);
+        // The server value is just another group element
+        DiffieHellman.computeKey(x, e, p);
+    }
+
+    private static KeyPair peerEC;
+
+    private static void ecdhP256() throws Exception {
+        KeyPairGenerator kpg = Crypto.getKeyPairGenerator("EC");
+        kpg.initialize(new ECGenParameterSpec("secp256r1"), random);
+        if (peerEC == null) {
+            peerEC = kpg.generateKeyPair();
+        }
+        KeyPair kp = kpg.generateKeyPair();
+        KeyAgreement ka = Crypto.getKeyAgreement("ECDH");
+        ka.init(kp.getPrivate());
+        ka.doPhase(peerEC.getPublic(), true);
+        ka.generateSecret();
+    }
+
+    private static final byte[] peer25519 = Curve25519.x25519Base(new byte[32]);
+
+    private static void curve25519() {
+        byte[] k = new byte[Curve25519.KEY_SIZE];
+        random.nextBytes(k);
+        Curve25519.x25519Base(k);
+        Curve25519.x25519(k, peer25519);
+    }
+
+    private static KeyPair rsaKey() throws Exception {
+        KeyPairGenerator kpg = Crypto.getKeyPairGenerator("RSA");
+        kpg.initialize(2048, random);
+        return kpg.generateKeyPair();
+    }
+
+    private static KeyPair ecKey() throws Exception {
+        KeyPairGenerator kpg = Crypto.getKeyPairGenerator("EC");
+        kpg.initialize(new ECGenParameterSpec("secp256r1"), random);
+        return kpg.generateKeyPair();
+    }
+
+    private static KeyPair ed25519Key() {
+        byte[] seed = new byte[32];
+        random.nextBytes(seed);
+        Ed25519PrivateKey prv = new Ed25519PrivateKey(seed);
+        return new KeyPair(new Ed25519PublicKey(prv.getA()), prv);
+    }
+
+    private static void hostKey(String name, KeyPair kp, String alg)
+        throws Exception {
+        byte[] h = new byte[32];
+        random.nextBytes(h);
+        Signature s = Crypto.getSignature(alg);
+        s.initSign(kp.getPrivate());
+        s.update(h);
+        final byte[] sig = s.sign();
+        time("host " + name, () -> {
+            Signature v = Crypto.getSignature(alg);
+            v.initVerify(kp.getPublic());
+            v.update(h);
+            if (!v.verify(sig)) {
+                throw new Exception("verify failed");
+            }
+        });
+    }
+}
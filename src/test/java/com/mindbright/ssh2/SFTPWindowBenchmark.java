@@ -0,0 +1,135 @@
+package com.mindbright.ssh2;
+
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of an asynchronous sftp transfer over a link with a given
+ * round trip time and bandwidth, with the requests paced by
+ * SSH2SFTPWindow and, like before, by sending 24 requests and then
+ * waiting for half of them. The link is simulated: every 32 KB request
+ * is answered half a round trip after it has been serialized at the
+ * link bandwidth, and half a round trip later the reply arrives.
+ * <p>
+ * Run with: java -cp ... com.mindbright.ssh2.SFTPWindowBenchmark
+ * [megabytes [MB/s [rtt ms...]]]
+ */
+public class SFTPWindowBenchmark {
+
+    private static final int REQUEST_SIZE = 32768;
+
+    public static void main(String[] args) throws Exception {
+        int megabytes = args.length > 0 ? Integer.parseInt(args[0]) : 16;
+        double bandwidth = args.length > 1 ? Double.parseDouble(args[1]) : 20;
+        int[] rtts = {1, 20, 80, 200};
+        if (args.length > 2) {
+            rtts = new int[args.length - 2];
+            for (int i = 2; i < args.length; i++) {
+                rtts[i - 2] = Integer.parseInt(args[i]);
+            }
+        }
+
+        System.out.println("link " + bandwidth + " MB/s, " + megabytes + " MB per transfer");
+        for (int rtt : rtts) {
+            run("fixed 24   ", rtt, bandwidth, megabytes, false);
+            run("adaptive   ", rtt, bandwidth, megabytes, true);
+        }
+    }
+
+    private static void run(String name, int rttMillis, double bandwidth, int megabytes, boolean adaptive)
+        throws InterruptedException {
+        Link link = new Link(rttMillis * 1000000L, bandwidth * 1e6);
+        SSH2SFTPWindow window = adaptive ? new SSH2SFTPWindow(256) : null;
+        Thread replies = new Thread(() -> link.deliver(window), "replies");
+        replies.setDaemon(true);
+        replies.start();
+
+        long requests = ((long)megabytes << 20) / REQUEST_SIZE;
+        long start = System.nanoTime();
+        int cnt = 0;
+        int maxWindow = 0;
+        for (long i = 0; i < requests; i++) {
+            link.send(REQUEST_SIZE);
+            if (adaptive) {
+                maxWindow = Math.max(maxWindow, window.getWindow());
+                link.await(window.getWindow() - 1);
+            } else if (++cnt == 24) {
+                cnt = 0;
+                link.await(12);
+            }
+        }
+        link.await(0);
+        long nanos = System.nanoTime() - start;
+        replies.interrupt();
+
+        System.out.printf("  rtt %4d ms %s: %6.2f MB/s%s%n", rttMillis, name,
+                          requests * REQUEST_SIZE / 1e6 * 1e9 / nanos,
+                          adaptive ? ", window up to " + maxWindow : "");
+    }
+
+    private static final class Link {
+        private final long rtt;
+        private final double bytesPerNano;
+        private final DelayQueue<Reply> inFlight = new DelayQueue<Reply>();
+        private long linkFree;
+        private int outstanding;
+
+        Link(long rtt, double bytesPerSecond) {
+            this.rtt = rtt;
+            this.bytesPerNano = bytesPerSecond / 1e9;
+        }
+
+        synchronized void send(int len) {
+            long now = System.nanoTime();
+            // requests queue up behind each other on the link
+            long arrival = Math.max(now + rtt / 2, linkFree) + (long)(len / bytesPerNano);
+            linkFree = arrival;
+            outstanding++;
+            inFlight.add(new Reply(len, now, arrival + rtt / 2));
+        }
+
+        synchronized void await(int left) throws InterruptedException {
+            while (outstanding > left) {
+                wait();
+            }
+        }
+
+        void deliver(SSH2SFTPWindow window) {
+            try {
+                for (;;) {
+                    Reply reply = inFlight.take();
+                    if (window != null) {
+                        window.completed(reply.len, reply.sentAt);
+                    }
+                    synchronized (this) {
+                        outstanding--;
+                        notifyAll();
+                    }
+                }
+            } catch (InterruptedException e) {
+                // done
+            }
+        }
+    }
+
+    private static final class Reply implements Delayed {
+        final int len;
+        final long sentAt;
+        final long due;
+
+        Reply(int len, long sentAt, long due) {
+            this.len = len;
+            this.sentAt = sentAt;
+            this.due = due;
+        }
+
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(due - System.nanoTime(), TimeUnit.NANOSECONDS);
+        }
+
+        public int compareTo(Delayed o) {
+            return Long.compare(due, ((Reply)o).due);
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package com.mindbright.ssh2;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+/**
+ * Known answer tests of the AEAD ciphers. The packet vectors follow the layout of RFC 5647 and of OpenSSH's
+ * PROTOCOL.chacha20poly1305 and were computed with the OpenSSL implementations of AES-GCM, ChaCha20 and Poly1305.
+ */
+public class SSH2AEADCipherTest {
+
+    /**
+     * Length field and packet of a CHANNEL_DATA message holding "hello", padded to 8 bytes.
+     */
+    private static final String CHACHA_PLAIN =
+            "00000018095e000000030000000568656c6c6fa0a1a2a3a4a5a6a7a8";
+    private static final String CHACHA_SEALED =
+            "a39afcb2211815434e802a5e6c68d395bbe3bc8c95109392db459a2b273caf7ab296650d284af79b3e888dcb";
+
+    /**
+     * The same message padded to 16 bytes, sealed as the first and the second packet.
+     */
+    private static final String GCM_PLAIN =
+            "00000020115e000000030000000568656c6c6fa0a1a2a3a4a5a6a7a8a9aaabacadaeafb0";
+    private static final String GCM_SEALED_1 =
+            "00000020858a85a7912b420af604f088ce85db6210aec2ff988b22a4c286f73de271c646aa3ed8b9757614f609b3cc4a51393edc";
+    private static final String GCM_SEALED_2 =
+            "00000020bb2ff6e8374e389f99555934fd668069fb5361706b1c9d87d52fb4be662501fa058c1e277da90fe3366763397061e834";
+
+    @Test
+    public void poly1305MatchesRfc8439() {
+        byte[] key = fromHex("85d6be7857556d337f4452fe42d506a80103808afb0db2fd4abff6af4149f51b");
+        byte[] msg = "Cryptographic Forum Research Group".getBytes();
+        byte[] tag = new byte[16];
+        SSH2AEADCipherChaCha20Poly1305.poly1305(key, msg, 0, msg.length, tag, 0);
+        Assert.assertArrayEquals(fromHex("a8061dc1305136c6c22b8baf0c0127a9"), tag);
+    }
+
+    @Test
+    public void chacha20MatchesRfc8439() {
+        SSH2AEADCipherChaCha20Poly1305 cipher = new SSH2AEADCipherChaCha20Poly1305();
+        byte[] stream = new byte[64];
+        cipher.chacha20(new int[8], 0, 0, stream, 0, stream.length);
+        Assert.assertArrayEquals(fromHex("76b8e0ada0f13d90405d6ae55386bd28bdd219b8a08ded1aa836efcc8b770dc7"
+                + "da41597c5157488d7724e03fb8d84a376a43b8f41518a11cc387b669b2ee6586"), stream);
+    }
+
+    @Test
+    public void chacha20Poly1305SealsAndOpensPacket() throws Exception {
+        byte[] key = range(0, 64);
+        SSH2AEADCipher tx = SSH2AEADCipher.getInstance("chacha20-poly1305@openssh.com");
+        SSH2AEADCipher rx = SSH2AEADCipher.getInstance("chacha20-poly1305@openssh.com");
+        tx.init(true, key, new byte[0]);
+        rx.init(false, key, new byte[0]);
+
+        byte[] buf = withTag(fromHex(CHACHA_PLAIN), 16);
+        tx.seal(7, buf, 0, buf.length - 4 - 16);
+        Assert.assertArrayEquals(fromHex(CHACHA_SEALED), buf);
+
+        Assert.assertEquals(0x18, rx.getPacketLength(7, buf, 0));
+        rx.open(7, buf, 0, 0x18);
+        Assert.assertArrayEquals(fromHex(CHACHA_PLAIN), Arrays.copyOf(buf, buf.length - 16));
+    }
+
+    @Test
+    public void aesGcmSealsPacketsWithIncrementedIV() throws Exception {
+        byte[] key = range(0x10, 16);
+        byte[] iv = range(0x20, 12);
+        SSH2AEADCipher tx = SSH2AEADCipher.getInstance("aes128-gcm@openssh.com");
+        SSH2AEADCipher rx = SSH2AEADCipher.getInstance("aes128-gcm@openssh.com");
+        tx.init(true, key, iv);
+        rx.init(false, key, iv);
+
+        String[] sealed = {GCM_SEALED_1, GCM_SEALED_2};
+        for (int seq = 0; seq < sealed.length; seq++) {
+            byte[] buf = withTag(fromHex(GCM_PLAIN), 16);
+            tx.seal(seq, buf, 0, 0x20);
+            Assert.assertArrayEquals(fromHex(sealed[seq]), buf);
+
+            Assert.assertEquals(0x20, rx.getPacketLength(seq, buf, 0));
+            rx.open(seq, buf, 0, 0x20);
+            Assert.assertArrayEquals(fromHex(GCM_PLAIN), Arrays.copyOf(buf, buf.length - 16));
+        }
+    }
+
+    @Test
+    public void tamperedPacketsAreRejected() throws Exception {
+        String[][] ciphers = {
+                {"chacha20-poly1305@openssh.com", CHACHA_SEALED, "7"},
+                {"aes128-gcm@openssh.com", GCM_SEALED_1, "0"},
+        };
+        for (String[] c : ciphers) {
+            // the length field, the body and the tag are all covered
+            for (int at : new int[] {1, 9, fromHex(c[1]).length - 1}) {
+                SSH2AEADCipher rx = SSH2AEADCipher.getInstance(c[0]);
+                rx.init(false, c[0].startsWith("aes") ? range(0x10, 16) : range(0, 64), range(0x20, 12));
+                byte[] buf = fromHex(c[1]);
+                buf[at] ^= 1;
+                try {
+                    rx.open(Integer.parseInt(c[2]), buf, 0, buf.length - 4 - 16);
+                    Assert.fail(c[0] + " accepted a packet changed at " + at);
+                } catch (SSH2MacCheckException e) {
+                    // expected
+                }
+            }
+        }
+    }
+
+    private static byte[] withTag(byte[] packet, int tagLength) {
+        return Arrays.copyOf(packet, packet.length + tagLength);
+    }
+
+    private static byte[] range(int first, int length) {
+        byte[] b = new byte[length];
+        for (int i = 0; i < length; i++) {
+            b[i] = (byte) (first + i);
+        }
+        return b;
+    }
+
+    static byte[] fromHex(String hex) {
+        byte[] b = new byte[hex.length() / 2];
+        for (int i = 0; i < b.length; i++) {
+            b[i] = (byte) Integer.parseInt(hex.substring(i * 2, i * 2 + 2), 16);
+        }
+        return b;
+    }
+}
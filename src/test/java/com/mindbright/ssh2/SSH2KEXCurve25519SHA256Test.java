@@ -0,0 +1,63 @@
+package com.mindbright.ssh2;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static com.mindbright.ssh2.SSH2AEADCipherTest.fromHex;
+
+/**
+ * Shared secret of curve25519-sha256 and the peer keys it must refuse, RFC 8731 section 3.
+ */
+public class SSH2KEXCurve25519SHA256Test {
+
+    private static final String ALICE = "77076d0a7318a57d3c16c17251b26645df4c2f87ebc0992ab177fba51db92c2a";
+    private static final String BOB_PUB = "de9edb7d7b7dc1b4d35b61c2ece435373f8343c85b78674dadfc7e146f882b4f";
+
+    /**
+     * K is sent to the exchange hash as an mpint, the secret of RFC 7748 section 6.1 has its top bit clear.
+     */
+    @Test
+    public void sharedSecretMatchesRfc7748() throws Exception {
+        SSH2KEXCurve25519SHA256 kex = kex();
+        kex.computeSharedSecret_K(fromHex(BOB_PUB));
+        Assert.assertArrayEquals(fromHex("00000020"
+                        + "4a5d9d5ba4ce2de1728e3bf480350f25e07e21c947d19e3376f09b3c1e161742"),
+                kex.getSharedSecret_K());
+    }
+
+    /**
+     * u = 0 and u = 1 are of small order, every private key maps them to an all zero secret.
+     */
+    @Test(expected = SSH2KEXFailedException.class)
+    public void rejectsZeroSharedSecretFromZero() throws Exception {
+        kex().computeSharedSecret_K(new byte[32]);
+    }
+
+    @Test(expected = SSH2KEXFailedException.class)
+    public void rejectsZeroSharedSecretFromOne() throws Exception {
+        byte[] one = new byte[32];
+        one[0] = 1;
+        kex().computeSharedSecret_K(one);
+    }
+
+    @Test
+    public void rejectsWrongLengthPublicKey() throws Exception {
+        byte[] q = fromHex(BOB_PUB);
+        for (byte[] bad : new byte[][] {null, new byte[0], Arrays.copyOf(q, 31), Arrays.copyOf(q, 33)}) {
+            try {
+                kex().computeSharedSecret_K(bad);
+                Assert.fail("accepted Q_S of " + (bad == null ? "null" : bad.length + " bytes"));
+            } catch (SSH2KEXFailedException e) {
+                // expected
+            }
+        }
+    }
+
+    private static SSH2KEXCurve25519SHA256 kex() {
+        SSH2KEXCurve25519SHA256 kex = new SSH2KEXCurve25519SHA256();
+        kex.privateKey = fromHex(ALICE);
+        return kex;
+    }
+}
@@ -0,0 +1,195 @@
+package com.mindbright.ssh2;
+
+import com.mindbright.nio.NonBlockingOutput;
+import com.mindbright.util.SecureRandomAndPad;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.security.SecureRandom;
+import java.util.Arrays;
+
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Packets sent through SSH2TransportPDU.writeTo and read back the way SSH2Transport reads them, a few bytes at a
+ * time.
+ */
+public class SSH2TransportPDUTest {
+
+    private static final String[] AEAD_CIPHERS = {
+            "aes128-gcm@openssh.com", "aes256-gcm@openssh.com", "chacha20-poly1305@openssh.com"};
+
+    private static final String[][] ETM_MODES = {
+            {"aes128-ctr", "hmac-sha2-256-etm@openssh.com"},
+            {"aes256-cbc", "hmac-sha2-512-etm@openssh.com"},
+            // an AEAD cipher ignores the mac, encrypt-then-mac or not
+            {"aes128-gcm@openssh.com", "hmac-sha2-256-etm@openssh.com"}};
+
+    private static final int[] PAYLOAD_SIZES = {0, 1, 15, 16, 17, 255, 1000, 30000};
+
+    private static final SecureRandomAndPad RANDOM = new SecureRandomAndPad(new SecureRandom());
+
+    @Test
+    public void aeadPacketsRoundTrip() throws Exception {
+        for (String cipher : AEAD_CIPHERS) {
+            // the negotiated mac is ignored with an AEAD cipher
+            roundTrip(cipher, "hmac-sha1");
+        }
+    }
+
+    @Test
+    public void tamperedAeadPacketsAreRejected() throws Exception {
+        for (String cipher : AEAD_CIPHERS) {
+            SSH2Transport.TransceiverContext tx = createContext(cipher, "none", true);
+            byte[] wire = send(tx, 5, payload(100));
+            for (int at : new int[] {0, 20, wire.length - 1}) {
+                byte[] tampered = wire.clone();
+                tampered[at] ^= 0x40;
+                assertRejected(cipher, createContext(cipher, "none", false), 5, tampered);
+            }
+        }
+    }
+
+    @Test
+    public void etmPacketsRoundTrip() throws Exception {
+        for (String[] mode : ETM_MODES) {
+            roundTrip(mode[0], mode[1]);
+        }
+    }
+
+    @Test
+    public void etmMacIsComputedOverTheCiphertext() throws Exception {
+        SSH2Transport.TransceiverContext tx = createContext("aes128-ctr", "hmac-sha2-256-etm@openssh.com", true);
+        byte[] payload = payload(100);
+        byte[] wire = send(tx, 9, payload);
+        int len = ((wire[0] & 0xff) << 24) | ((wire[1] & 0xff) << 16) | ((wire[2] & 0xff) << 8) | (wire[3] & 0xff);
+        Assert.assertEquals(4 + len + 32, wire.length);
+
+        Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(new SecretKeySpec(key(3, 32), "HmacSHA256"));
+        mac.update(new byte[] {0, 0, 0, 9});
+        mac.update(wire, 0, 4 + len);
+        Assert.assertArrayEquals(mac.doFinal(), Arrays.copyOfRange(wire, 4 + len, wire.length));
+
+        // the length is sent in the clear and the body decrypts on its own
+        Cipher aes = Cipher.getInstance("AES/CTR/NoPadding");
+        aes.init(Cipher.DECRYPT_MODE, new SecretKeySpec(key(1, 16), "AES"), new IvParameterSpec(key(2, 16)));
+        byte[] body = aes.doFinal(wire, 4, len);
+        Assert.assertEquals(SSH2.MSG_CHANNEL_DATA, body[1]);
+        Assert.assertArrayEquals(payload, Arrays.copyOfRange(body, 10, 10 + payload.length));
+    }
+
+    @Test
+    public void tamperedEtmPacketsAreRejected() throws Exception {
+        for (String[] mode : ETM_MODES) {
+            if (SSH2AEADCipher.isAEAD(mode[0])) {
+                continue;
+            }
+            SSH2Transport.TransceiverContext tx = createContext(mode[0], mode[1], true);
+            byte[] wire = send(tx, 5, payload(100));
+            for (int at : new int[] {4, 40, wire.length - 1}) {
+                byte[] tampered = wire.clone();
+                tampered[at] ^= 0x40;
+                assertRejected(mode[0], createContext(mode[0], mode[1], false), 5, tampered);
+            }
+        }
+    }
+
+    static void roundTrip(String cipher, String mac) throws Exception {
+        SSH2Transport.TransceiverContext tx = createContext(cipher, mac, true);
+        SSH2Transport.TransceiverContext rx = createContext(cipher, mac, false);
+        int seq = 0;
+        for (int size : PAYLOAD_SIZES) {
+            byte[] payload = payload(size);
+            byte[] wire = send(tx, seq, payload);
+            SSH2TransportPDU pdu = receive(rx, seq, wire, 7);
+            Assert.assertEquals(cipher + " " + mac, SSH2.MSG_CHANNEL_DATA, pdu.getType());
+            Assert.assertEquals(3, pdu.readInt());
+            Assert.assertArrayEquals(cipher + " " + mac + " " + size, payload, pdu.readString());
+            seq++;
+        }
+    }
+
+    static void assertRejected(String cipher, SSH2Transport.TransceiverContext rx, int seq, byte[] wire)
+            throws Exception {
+        try {
+            receive(rx, seq, wire, wire.length);
+            Assert.fail(cipher + " accepted a changed packet");
+        } catch (SSH2MacCheckException e) {
+            // expected
+        } catch (SSH2CorruptPacketException e) {
+            // a changed length field may give an impossible length
+        }
+    }
+
+    /**
+     * Creates a context the way SSH2Transport.changeKeys does, with fixed keys.
+     */
+    static SSH2Transport.TransceiverContext createContext(String cipher, String mac, boolean transmitter)
+            throws Exception {
+        boolean aead = SSH2AEADCipher.isAEAD(cipher);
+        SSH2Transport.TransceiverContext ctx = SSH2TransportPDU.createTransceiverContext(
+                SSH2Preferences.ssh2ToJCECipher(cipher), 0,
+                aead || "none".equals(mac) ? "none" : SSH2Preferences.ssh2ToJCEMac(mac), 0, "none", null);
+        ctx.etm = ctx.mac != null && SSH2Preferences.isEtMMac(mac);
+        ctx.init(key(1, SSH2Preferences.getCipherKeyLen(cipher)), key(2, ctx.getIVLength()),
+                key(3, SSH2Preferences.getMacKeyLen(mac)), 6, transmitter);
+        return ctx;
+    }
+
+    static byte[] send(SSH2Transport.TransceiverContext ctx, int seq, byte[] payload) throws Exception {
+        final ByteArrayOutputStream wire = new ByteArrayOutputStream();
+        NonBlockingOutput out = new NonBlockingOutput(null, null) {
+            @Override
+            public void write(byte[] data, int offset, int length) {
+                wire.write(data, offset, length);
+            }
+        };
+        SSH2TransportPDU pdu = SSH2TransportPDU.createOutgoingPacket(SSH2.MSG_CHANNEL_DATA, payload.length + 64);
+        pdu.writeInt(3);
+        pdu.writeString(payload);
+        pdu.writeTo(out, seq, ctx, RANDOM);
+        return wire.toByteArray();
+    }
+
+    static SSH2TransportPDU receive(SSH2Transport.TransceiverContext ctx, int seq, byte[] wire, int chunk)
+            throws Exception {
+        SSH2TransportPDU pdu = SSH2TransportPDU.createIncomingPacket();
+        pdu.initReceive(seq, ctx);
+        int pos = 0;
+        do {
+            for (int need = pdu.getNeededBytes(); need > 0; ) {
+                int n = Math.min(Math.min(chunk, need), wire.length - pos);
+                if (n == 0) {
+                    Assert.fail("packet needs " + need + " more bytes than were sent");
+                }
+                pdu.fillData(wire, pos, n);
+                pos += n;
+                need -= n;
+            }
+        } while (pdu.processData());
+        Assert.assertEquals("bytes left after the packet", wire.length, pos);
+        return pdu;
+    }
+
+    static byte[] payload(int size) {
+        byte[] payload = new byte[size];
+        for (int i = 0; i < size; i++) {
+            payload[i] = (byte) (i * 31 + 7);
+        }
+        return payload;
+    }
+
+    static byte[] key(int seed, int length) {
+        byte[] key = new byte[length];
+        Arrays.fill(key, (byte) seed);
+        for (int i = 0; i < length; i++) {
+            key[i] += (byte) i;
+        }
+        return key;
+    }
+}
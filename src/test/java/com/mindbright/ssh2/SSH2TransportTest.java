@@ -0,0 +1,49 @@
+package com.mindbright.ssh2;
+
+import com.mindbright.nio.NetworkConnection;
+import com.mindbright.util.SecureRandomAndPad;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.security.SecureRandom;
+
+/**
+ * Socket options SSH2Transport gives the connection to the server.
+ */
+public class SSH2TransportTest {
+
+    private static final String NO_DELAY =
+            SSH2Preferences.SOCK_OPT + SSH2Preferences.SOCK_OPT_TRANSPORT + "." + SSH2Preferences.SO_TCP_NODELAY;
+
+    /**
+     * With Nagle's algorithm on, sftp read requests and window adjusts wait for the server's delayed ack, which
+     * stalled downloads for 40 ms at a time with the server idle.
+     */
+    @Test
+    public void nagleIsOffByDefault() throws Exception {
+        Assert.assertTrue(noDelay(new SSH2Preferences()));
+    }
+
+    @Test
+    public void nagleCanBeTurnedOn() throws Exception {
+        SSH2Preferences prefs = new SSH2Preferences();
+        prefs.setPreference(NO_DELAY, "false");
+        Assert.assertFalse(noDelay(prefs));
+    }
+
+    private static boolean noDelay(SSH2Preferences prefs) throws Exception {
+        InetAddress loopback = InetAddress.getLoopbackAddress();
+        try (ServerSocket server = new ServerSocket(0, 1, loopback)) {
+            NetworkConnection conn = NetworkConnection.open(loopback, server.getLocalPort(), true);
+            try (Socket peer = server.accept()) {
+                new SSH2Transport(conn, prefs, new SecureRandomAndPad(new SecureRandom()));
+                return conn.getChannel().socket().getTcpNoDelay();
+            } finally {
+                conn.close();
+            }
+        }
+    }
+}